@@ -0,0 +1,83 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.plugin.kafka;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+// measures the overhead of consuming batches of records outside of a transaction, which is the
+// typical high throughput consumer loop (each non-empty batch is captured as a transaction)
+//
+// the baseline is the same benchmark run without the agent, e.g.
+//
+//   java -jar benchmarks.jar ConsumerBenchmark -prof gc
+//   java -jar benchmarks.jar ConsumerBenchmark -prof gc -jvmArgsAppend -javaagent:glowroot.jar
+//
+// smaller batch sizes show the per batch overhead, larger batch sizes show that there is no per
+// record overhead
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class ConsumerBenchmark {
+
+    @Param({"1", "100", "1000"})
+    private int batchSize;
+
+    private MockConsumer<Long, String> consumer;
+    private TopicPartition topicPartition;
+    private long offset;
+
+    @Setup
+    public void setup() {
+        consumer = new MockConsumer<Long, String>(OffsetResetStrategy.EARLIEST);
+        topicPartition = new TopicPartition("benchmark", 0);
+        consumer.assign(Collections.singletonList(topicPartition));
+        consumer.updateBeginningOffsets(Collections.singletonMap(topicPartition, 0L));
+    }
+
+    @TearDown
+    public void tearDown() {
+        consumer.close();
+    }
+
+    @Benchmark
+    public void poll(Blackhole blackhole) {
+        for (int i = 0; i < batchSize; i++) {
+            consumer.addRecord(new ConsumerRecord<Long, String>("benchmark", 0, offset++,
+                    (long) i, "value"));
+        }
+        ConsumerRecords<Long, String> records = consumer.poll(0);
+        for (ConsumerRecord<Long, String> record : records) {
+            blackhole.consume(record.value());
+        }
+    }
+}
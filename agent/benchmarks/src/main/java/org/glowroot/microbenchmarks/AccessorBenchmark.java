@@ -0,0 +1,65 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.microbenchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import org.glowroot.microbenchmarks.support.MessageTemplateWorthy.Command;
+
+// compares the message template path accessor before (Method.invoke()) and after (method handle
+// adapted to (Object)Object and called with invokeExact(), see org.glowroot.agent.weaving.Accessor)
+// without the rest of the agent, so it does not need to be run with -javaagent
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Thread)
+public class AccessorBenchmark {
+
+    private Method method;
+    private MethodHandle methodHandle;
+
+    // not final so the receiver is not constant folded
+    private Object command;
+
+    @Setup
+    public void setup() throws Exception {
+        method = Command.class.getMethod("getName");
+        methodHandle = MethodHandles.lookup().unreflect(method)
+                .asType(MethodType.methodType(Object.class, Object.class));
+        command = new Command();
+    }
+
+    @Benchmark
+    public Object methodInvoke() throws Exception {
+        return method.invoke(command);
+    }
+
+    @Benchmark
+    public Object methodHandle() throws Throwable {
+        return (Object) methodHandle.invokeExact(command);
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.microbenchmarks.support;
+
+public class MessageTemplateWorthy {
+
+    // the command parameter type is known, so the template path is resolved up front
+    public void sendCommand(Command command) {}
+
+    // the command parameter type is Object, so the template path is resolved reflectively
+    public void sendCommand2(Object command) {}
+
+    public String getHost() {
+        return "localhost";
+    }
+
+    public int getPort() {
+        return 6379;
+    }
+
+    public static class Command {
+
+        public String getName() {
+            return "GET";
+        }
+    }
+}
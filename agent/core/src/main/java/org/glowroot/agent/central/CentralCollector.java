@@ -64,6 +64,7 @@ import org.glowroot.wire.api.model.CollectorServiceOuterClass.LogMessage;
 import org.glowroot.wire.api.model.CollectorServiceOuterClass.LogMessage.LogEvent;
 import org.glowroot.wire.api.model.CollectorServiceOuterClass.LogMessage.LogEvent.Level;
 import org.glowroot.wire.api.model.CollectorServiceOuterClass.TraceStreamMessage;
+import org.glowroot.wire.api.model.CollectorServiceOuterClass.TraceStreamMessage.Entries;
 import org.glowroot.wire.api.model.CollectorServiceOuterClass.TraceStreamMessage.Queries;
 import org.glowroot.wire.api.model.CollectorServiceOuterClass.TraceStreamMessage.TraceStreamCounts;
 import org.glowroot.wire.api.model.CollectorServiceOuterClass.TraceStreamMessage.TraceStreamHeader;
@@ -81,6 +82,9 @@ public class CentralCollector implements Collector {
     // log startup messages using logger name "org.glowroot"
     private static final Logger startupLogger = LoggerFactory.getLogger("org.glowroot");
 
+    // small enough to avoid large message buffering, while still amortizing per message overhead
+    private static final int ENTRIES_PAGE_BYTES = 64 * 1024;
+
     // this is needed for webdriver tests that set aggregate interval to 1 second, which
     // then causes issues with aggregate backlogging due to the 0-10 seconds delay
     private static final boolean SKIP_DELAY;
@@ -484,6 +488,7 @@ public class CentralCollector implements Collector {
                             .setAgentId(agentId)
                             .setTraceId(traceReader.traceId())
                             .setUpdate(traceReader.update())
+                            .setIncrementalEntries(traceReader.incrementalEntries())
                             .setPostV09(true))
                     .build());
             // need to clear in case this is a retry
@@ -496,6 +501,7 @@ public class CentralCollector implements Collector {
                 requestObserver.onError(t);
                 return;
             }
+            traceVisitor.flushEntries();
             requestObserver.onNext(TraceStreamMessage.newBuilder()
                     .setStreamCounts(TraceStreamCounts.newBuilder()
                             .setEntryCount(traceVisitor.entryCount)
@@ -517,6 +523,13 @@ public class CentralCollector implements Collector {
         private final StreamObserver<TraceStreamMessage> requestObserver;
         private final List<String> fullTextSha1s;
 
+        // entries are sent in pages instead of one message per entry, since large traces can have
+        // tens of thousands of entries and each message has its own framing and flush overhead
+        private final List<Trace.Entry> pendingEntries = Lists.newArrayList();
+        // only used for incremental entries
+        private final List<Integer> pendingEntryIndexes = Lists.newArrayList();
+        private int pendingEntriesBytes;
+
         private int entryCount;
         private int sharedQueryTextCount;
 
@@ -528,12 +541,20 @@ public class CentralCollector implements Collector {
 
         @Override
         public void visitEntry(Trace.Entry entry) {
-            requestObserver.onNext(TraceStreamMessage.newBuilder()
-                    .setEntry(entry)
-                    .build());
+            pendingEntries.add(entry);
+            pendingEntriesBytes += entry.getSerializedSize();
+            if (pendingEntriesBytes >= ENTRIES_PAGE_BYTES) {
+                flushEntries();
+            }
             entryCount++;
         }
 
+        @Override
+        public void visitIncrementalEntry(int index, Trace.Entry entry) {
+            pendingEntryIndexes.add(index);
+            visitEntry(entry);
+        }
+
         @Override
         public void visitQueries(List<Aggregate.Query> queries) {
             requestObserver.onNext(TraceStreamMessage.newBuilder()
@@ -568,11 +589,32 @@ public class CentralCollector implements Collector {
                     .build());
         }
 
+        @Override
+        public void visitAllocationProfile(Profile profile) {
+            requestObserver.onNext(TraceStreamMessage.newBuilder()
+                    .setAllocationProfile(profile)
+                    .build());
+        }
+
         @Override
         public void visitHeader(Trace.Header header) {
             requestObserver.onNext(TraceStreamMessage.newBuilder()
                     .setHeader(header)
                     .build());
         }
+
+        private void flushEntries() {
+            if (pendingEntries.isEmpty()) {
+                return;
+            }
+            requestObserver.onNext(TraceStreamMessage.newBuilder()
+                    .setEntries(Entries.newBuilder()
+                            .addAllEntry(pendingEntries)
+                            .addAllIndex(pendingEntryIndexes))
+                    .build());
+            pendingEntries.clear();
+            pendingEntryIndexes.clear();
+            pendingEntriesBytes = 0;
+        }
     }
 }
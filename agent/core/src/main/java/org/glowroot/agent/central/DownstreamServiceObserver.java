@@ -22,6 +22,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Strings;
 import io.grpc.stub.StreamObserver;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
@@ -35,8 +36,13 @@ import org.glowroot.agent.util.ThreadFactories;
 import org.glowroot.common.live.LiveJvmService.DirectoryDoesNotExistException;
 import org.glowroot.common.live.LiveJvmService.UnavailableDueToRunningInJ9JvmException;
 import org.glowroot.common.live.LiveJvmService.UnavailableDueToRunningInJreException;
+import org.glowroot.common.live.ImmutableTracePointFilter;
 import org.glowroot.common.live.LiveTraceRepository.Entries;
 import org.glowroot.common.live.LiveTraceRepository.Queries;
+import org.glowroot.common.live.LiveTraceRepository.TraceKind;
+import org.glowroot.common.live.LiveTraceRepository.TracePoint;
+import org.glowroot.common.live.LiveTraceRepository.TracePointFilter;
+import org.glowroot.common.live.StringComparator;
 import org.glowroot.common.util.OnlyUsedByTests;
 import org.glowroot.common.util.Throwables;
 import org.glowroot.wire.api.model.DownstreamServiceGrpc;
@@ -61,6 +67,7 @@ import org.glowroot.wire.api.model.DownstreamServiceOuterClass.HeaderResponse;
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.HeapDumpFileInfo;
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.HeapDumpResponse;
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.HeapHistogram;
+import org.glowroot.wire.api.model.DownstreamServiceOuterClass.HeapHistogramRequest;
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.HeapHistogramResponse;
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.Hello;
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.JstackResponse;
@@ -77,6 +84,11 @@ import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MatchingMBeanObje
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MatchingMBeanObjectNamesResponse;
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MatchingMethodNamesRequest;
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MatchingMethodNamesResponse;
+import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MatchingTraceCountRequest;
+import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MatchingTraceCountResponse;
+import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MatchingTracePointsRequest;
+import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MatchingTracePointsRequest.TracePointSource;
+import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MatchingTracePointsResponse;
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MethodSignature;
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MethodSignaturesRequest;
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MethodSignaturesResponse;
@@ -286,6 +298,12 @@ class DownstreamServiceObserver implements StreamObserver<CentralRequest> {
             case FULL_TRACE_REQUEST:
                 getFullTraceAndRespond(request, responseObserver);
                 return;
+            case MATCHING_TRACE_COUNT_REQUEST:
+                getMatchingTraceCountAndRespond(request, responseObserver);
+                return;
+            case MATCHING_TRACE_POINTS_REQUEST:
+                getMatchingTracePointsAndRespond(request, responseObserver);
+                return;
             default:
                 responseObserver.onNext(AgentResponse.newBuilder()
                         .setRequestId(request.getRequestId())
@@ -425,7 +443,10 @@ class DownstreamServiceObserver implements StreamObserver<CentralRequest> {
             StreamObserver<AgentResponse> responseObserver) {
         HeapHistogram heapHistogram;
         try {
-            heapHistogram = liveJvmService.heapHistogram("");
+            HeapHistogramRequest heapHistogramRequest = request.getHeapHistogramRequest();
+            heapHistogram = liveJvmService.heapHistogram("",
+                    heapHistogramRequest.getMaxClasses(),
+                    heapHistogramRequest.getCompareIntervalSeconds());
         } catch (UnavailableDueToRunningInJreException e) {
             logger.debug(e.getMessage(), e);
             responseObserver.onNext(AgentResponse.newBuilder()
@@ -843,6 +864,63 @@ class DownstreamServiceObserver implements StreamObserver<CentralRequest> {
                 .build());
     }
 
+    private void getMatchingTraceCountAndRespond(CentralRequest request,
+            StreamObserver<AgentResponse> responseObserver) {
+        MatchingTraceCountRequest req = request.getMatchingTraceCountRequest();
+        int count;
+        try {
+            count = liveTraceRepository.getMatchingTraceCount("", req.getTransactionType(),
+                    Strings.emptyToNull(req.getTransactionName()));
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            sendExceptionResponse(request, responseObserver);
+            return;
+        }
+        responseObserver.onNext(AgentResponse.newBuilder()
+                .setRequestId(request.getRequestId())
+                .setMatchingTraceCountResponse(MatchingTraceCountResponse.newBuilder()
+                        .setCount(count))
+                .build());
+    }
+
+    private void getMatchingTracePointsAndRespond(CentralRequest request,
+            StreamObserver<AgentResponse> responseObserver) {
+        MatchingTracePointsRequest req = request.getMatchingTracePointsRequest();
+        List<TracePoint> points;
+        try {
+            TraceKind traceKind =
+                    req.getTraceKind() == MatchingTracePointsRequest.TraceKind.ERROR
+                            ? TraceKind.ERROR : TraceKind.SLOW;
+            String transactionName = Strings.emptyToNull(req.getTransactionName());
+            TracePointFilter filter = toTracePointFilter(req);
+            if (req.getSource() == TracePointSource.PENDING) {
+                points = liveTraceRepository.getMatchingPendingPoints("", traceKind,
+                        req.getTransactionType(), transactionName, filter, req.getCaptureTime());
+            } else {
+                points = liveTraceRepository.getMatchingActiveTracePoints(traceKind,
+                        req.getTransactionType(), transactionName, filter, req.getLimit(),
+                        req.getCaptureTime());
+            }
+        } catch (Exception e) {
+            logger.error(e.getMessage(), e);
+            sendExceptionResponse(request, responseObserver);
+            return;
+        }
+        MatchingTracePointsResponse.Builder response = MatchingTracePointsResponse.newBuilder();
+        for (TracePoint point : points) {
+            response.addPoint(MatchingTracePointsResponse.TracePoint.newBuilder()
+                    .setTraceId(point.traceId())
+                    .setCaptureTime(point.captureTime())
+                    .setDurationNanos(point.durationNanos())
+                    .setPartial(point.partial())
+                    .setError(point.error()));
+        }
+        responseObserver.onNext(AgentResponse.newBuilder()
+                .setRequestId(request.getRequestId())
+                .setMatchingTracePointsResponse(response)
+                .build());
+    }
+
     @OnlyUsedByTests
     void close() throws InterruptedException {
         StreamObserver<AgentResponse> responseObserver = currResponseObserver;
@@ -866,6 +944,31 @@ class DownstreamServiceObserver implements StreamObserver<CentralRequest> {
                 .build());
     }
 
+    private static TracePointFilter toTracePointFilter(MatchingTracePointsRequest request) {
+        return ImmutableTracePointFilter.builder()
+                .durationNanosLow(request.getDurationNanosLow())
+                .durationNanosHigh(request.hasDurationNanosHigh()
+                        ? request.getDurationNanosHigh().getValue() : null)
+                .headlineComparator(toStringComparator(request.getHeadlineComparator()))
+                .headline(Strings.emptyToNull(request.getHeadline()))
+                .errorMessageComparator(toStringComparator(request.getErrorMessageComparator()))
+                .errorMessage(Strings.emptyToNull(request.getErrorMessage()))
+                .userComparator(toStringComparator(request.getUserComparator()))
+                .user(Strings.emptyToNull(request.getUser()))
+                .attributeName(Strings.emptyToNull(request.getAttributeName()))
+                .attributeValueComparator(
+                        toStringComparator(request.getAttributeValueComparator()))
+                .attributeValue(Strings.emptyToNull(request.getAttributeValue()))
+                .build();
+    }
+
+    private static @Nullable StringComparator toStringComparator(String comparator) {
+        if (comparator.isEmpty()) {
+            return null;
+        }
+        return StringComparator.valueOf(comparator);
+    }
+
     private class RetryAfterError implements Runnable {
         @Override
         public void run() {
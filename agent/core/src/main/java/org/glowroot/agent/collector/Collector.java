@@ -55,6 +55,9 @@ public interface Collector {
         String traceId();
         boolean partial();
         boolean update();
+        // if true, accept() only visits the entries that were added or changed since the prior
+        // partial store of this trace, using visitIncrementalEntry() instead of visitEntry()
+        boolean incrementalEntries();
         void accept(TraceVisitor traceVisitor) throws Exception;
         // alternate to accept() if only header data may be needed, can still call accept afterwards
         Trace.Header readHeader();
@@ -69,10 +72,13 @@ public interface Collector {
 
     public interface TraceVisitor {
         void visitEntry(Trace.Entry entry);
+        // index is the position of the entry in the full list of entries, see incrementalEntries()
+        void visitIncrementalEntry(int index, Trace.Entry entry);
         void visitQueries(List<Aggregate.Query> queries);
         void visitSharedQueryTexts(List<String> sharedQueryTexts) throws SQLException;
         void visitMainThreadProfile(Profile profile);
         void visitAuxThreadProfile(Profile profile);
+        void visitAllocationProfile(Profile profile);
         void visitHeader(Trace.Header header);
     }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.impl;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.immutables.value.Value;
+
+// measures the overhead of the agent itself on 1 out of every N transactions, see OverheadMeter
+//
+// the per transaction averages over the sampled transactions since the last collection are
+// published as gauges by GaugeCollector
+//
+// the overhead is intentionally not added to the transaction timers, since it is only measured on
+// the sampled transactions (so would be understated by a factor of N in the aggregates), and since
+// it occurs while plugin timers are running (so would overlap them)
+//
+// the other (non-sampled) transactions only pay for a random number
+public class AgentOverhead {
+
+    // 0 means agent overhead is not measured
+    private static final int TRANSACTIONS_PER_SAMPLE =
+            Integer.getInteger("glowroot.agentOverhead.transactionsPerSample", 0);
+
+    private final int transactionsPerSample;
+
+    private final Object lock = new Object();
+
+    @GuardedBy("lock")
+    private long transactionCount;
+    @GuardedBy("lock")
+    private long instrumentationNanos;
+    @GuardedBy("lock")
+    private long instrumentationAllocatedBytes;
+    @GuardedBy("lock")
+    private long completionNanos;
+    @GuardedBy("lock")
+    private long completionAllocatedBytes;
+
+    static @Nullable AgentOverhead create() {
+        if (TRANSACTIONS_PER_SAMPLE <= 0) {
+            return null;
+        }
+        return new AgentOverhead(TRANSACTIONS_PER_SAMPLE);
+    }
+
+    AgentOverhead(int transactionsPerSample) {
+        this.transactionsPerSample = transactionsPerSample;
+    }
+
+    // called on transaction start
+    boolean sample() {
+        // not using a shared counter, since that would be contended across transaction threads
+        return ThreadLocalRandom.current().nextInt(transactionsPerSample) == 0;
+    }
+
+    // called once for each completed thread context of a sampled transaction
+    void record(OverheadMeter overheadMeter) {
+        synchronized (lock) {
+            if (overheadMeter.isTransactionEnded()) {
+                transactionCount++;
+            }
+            instrumentationNanos += overheadMeter.getTotalNanos();
+            instrumentationAllocatedBytes += overheadMeter.getTotalAllocatedBytes();
+            completionNanos += overheadMeter.getCompletionNanos();
+            completionAllocatedBytes += overheadMeter.getCompletionAllocatedBytes();
+        }
+    }
+
+    // returns null if no sampled transactions have ended since the last call
+    public @Nullable Overhead getAndReset() {
+        synchronized (lock) {
+            if (transactionCount == 0) {
+                // keep accumulating until the next sampled transaction ends
+                return null;
+            }
+            Overhead overhead = ImmutableOverhead.builder()
+                    .transactionCount(transactionCount)
+                    .instrumentationNanos(instrumentationNanos)
+                    .instrumentationAllocatedBytes(instrumentationAllocatedBytes)
+                    .completionNanos(completionNanos)
+                    .completionAllocatedBytes(completionAllocatedBytes)
+                    .build();
+            transactionCount = 0;
+            instrumentationNanos = 0;
+            instrumentationAllocatedBytes = 0;
+            completionNanos = 0;
+            completionAllocatedBytes = 0;
+            return overhead;
+        }
+    }
+
+    @Value.Immutable
+    public interface Overhead {
+        // number of sampled transactions that ended
+        long transactionCount();
+        // time spent in the agent's trace entry and timer methods
+        long instrumentationNanos();
+        long instrumentationAllocatedBytes();
+        // time spent processing the transaction completion
+        long completionNanos();
+        long completionAllocatedBytes();
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.impl;
+
+import java.lang.reflect.Method;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.glowroot.agent.util.RateLimitedLogger;
+import org.glowroot.common.util.OnlyUsedByTests;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+// attributes sampled allocations to the transaction that is active on the allocating thread, and
+// merges them into that transaction's allocation profile
+//
+// samples come from the JFR jdk.ObjectAllocationSample event (JDK 16+), which JFR throttles at the
+// source, so the sampling rate (and therefore the overhead) is bounded regardless of the
+// allocation rate
+//
+// JFR streaming delivers events in batches (roughly once a second), so samples can only be
+// attributed to transactions that are still active when the batch is delivered, which in practice
+// means the allocation profile is populated for the long running transactions whose traces are
+// stored (and not for short transactions)
+//
+// samples that were allocated before the thread context on the allocating thread started are
+// dropped, since on pooled threads they belong to a prior (already completed) transaction
+public class AllocationSampler {
+
+    private static final Logger logger = LoggerFactory.getLogger(AllocationSampler.class);
+
+    private static final boolean ENABLED = Boolean.getBoolean("glowroot.allocationProfiling");
+
+    private static final int SAMPLES_PER_SECOND =
+            Integer.getInteger("glowroot.allocationProfiling.samplesPerSecond", 100);
+
+    // cap memory consumption in case batches are delivered less frequently than expected
+    private static final int PENDING_SAMPLE_LIMIT = 10000;
+
+    private final TransactionRegistry transactionRegistry;
+
+    // pending samples are only accessed by the single JFR streaming thread
+    private final List<AllocationSample> pendingSamples = Lists.newArrayList();
+
+    private final RateLimitedLogger pendingLimitLogger =
+            new RateLimitedLogger(AllocationSampler.class);
+
+    private volatile @Nullable JfrStream jfrStream;
+
+    @VisibleForTesting
+    AllocationSampler(TransactionRegistry transactionRegistry) {
+        this.transactionRegistry = transactionRegistry;
+    }
+
+    public static @Nullable AllocationSampler create(TransactionRegistry transactionRegistry) {
+        if (!ENABLED) {
+            return null;
+        }
+        if (!isJava16OrGreater()) {
+            logger.warn("allocation profiling requires Java 16+");
+            return null;
+        }
+        AllocationSampler allocationSampler = new AllocationSampler(transactionRegistry);
+        try {
+            allocationSampler.jfrStream = new JfrStream(allocationSampler);
+        } catch (Exception e) {
+            logger.warn("could not start allocation profiling: {}", e.getMessage());
+            logger.debug(e.getMessage(), e);
+            return null;
+        }
+        return allocationSampler;
+    }
+
+    @OnlyUsedByTests
+    public void close() throws Exception {
+        JfrStream jfrStream = this.jfrStream;
+        if (jfrStream != null) {
+            jfrStream.close();
+        }
+    }
+
+    // stack trace is ordered the same as Thread.getStackTrace(), i.e. leaf first
+    void onSample(long threadId, long timeMillis, List<StackTraceElement> stackTrace,
+            long allocatedBytes) {
+        if (pendingSamples.size() >= PENDING_SAMPLE_LIMIT) {
+            pendingLimitLogger.warn("not capturing an allocation sample because of an excessive"
+                    + " backlog of {} allocation samples", PENDING_SAMPLE_LIMIT);
+            return;
+        }
+        pendingSamples.add(new AllocationSample(threadId, timeMillis, stackTrace, allocatedBytes));
+    }
+
+    void onFlush() {
+        if (pendingSamples.isEmpty()) {
+            return;
+        }
+        Map<Long, ActiveThreadContext> activeThreadContexts = Maps.newHashMap();
+        for (Transaction transaction : transactionRegistry.getTransactions()) {
+            ThreadContextImpl mainThreadContext = transaction.getMainThreadContext();
+            if (mainThreadContext.isActive()) {
+                activeThreadContexts.put(mainThreadContext.getThreadId(),
+                        new ActiveThreadContext(transaction, mainThreadContext));
+            }
+            for (ThreadContextImpl auxThreadContext : transaction.getActiveAuxThreadContexts()) {
+                activeThreadContexts.put(auxThreadContext.getThreadId(),
+                        new ActiveThreadContext(transaction, auxThreadContext));
+            }
+        }
+        for (AllocationSample sample : pendingSamples) {
+            ActiveThreadContext activeThreadContext = activeThreadContexts.get(sample.threadId);
+            if (activeThreadContext != null
+                    && sample.timeMillis >= activeThreadContext.startTimeMillis) {
+                activeThreadContext.transaction.captureAllocationSample(sample.stackTrace,
+                        sample.allocatedBytes);
+            }
+        }
+        pendingSamples.clear();
+    }
+
+    private static boolean isJava16OrGreater() {
+        String specificationVersion = System.getProperty("java.specification.version");
+        if (specificationVersion == null || specificationVersion.startsWith("1.")) {
+            return false;
+        }
+        try {
+            return Integer.parseInt(specificationVersion) >= 16;
+        } catch (NumberFormatException e) {
+            logger.debug(e.getMessage(), e);
+            return false;
+        }
+    }
+
+    private static class AllocationSample {
+
+        private final long threadId;
+        // wall clock time of the allocation
+        private final long timeMillis;
+        private final List<StackTraceElement> stackTrace;
+        private final long allocatedBytes;
+
+        private AllocationSample(long threadId, long timeMillis,
+                List<StackTraceElement> stackTrace, long allocatedBytes) {
+            this.threadId = threadId;
+            this.timeMillis = timeMillis;
+            this.stackTrace = stackTrace;
+            this.allocatedBytes = allocatedBytes;
+        }
+    }
+
+    private static class ActiveThreadContext {
+
+        private final Transaction transaction;
+        // wall clock time, derived from the transaction start time since thread contexts only
+        // record their start tick
+        private final long startTimeMillis;
+
+        private ActiveThreadContext(Transaction transaction, ThreadContextImpl threadContext) {
+            this.transaction = transaction;
+            startTimeMillis = transaction.getStartTime() + NANOSECONDS
+                    .toMillis(threadContext.getStartTick() - transaction.getStartTick());
+        }
+    }
+
+    // jdk.jfr is accessed via reflection since glowroot is compiled against Java 8
+    private static class JfrStream {
+
+        private static final String EVENT_NAME = "jdk.ObjectAllocationSample";
+
+        private final Object recordingStream;
+        private final Method closeMethod;
+
+        private final Method getThreadMethod;
+        private final Method getStartTimeMethod;
+        private final Method getJavaThreadIdMethod;
+        private final Method getStackTraceMethod;
+        private final Method getFramesMethod;
+        private final Method getMethodMethod;
+        private final Method getLineNumberMethod;
+        private final Method isJavaFrameMethod;
+        private final Method getTypeMethod;
+        private final Method getMethodNameMethod;
+        private final Method getClassNameMethod;
+        private final Method getLongMethod;
+        private final Method getClassMethod;
+
+        private final RateLimitedLogger eventErrorLogger = new RateLimitedLogger(JfrStream.class);
+
+        private JfrStream(final AllocationSampler allocationSampler) throws Exception {
+            Class<?> recordingStreamClass = Class.forName("jdk.jfr.consumer.RecordingStream");
+            Class<?> eventSettingsClass = Class.forName("jdk.jfr.EventSettings");
+            Class<?> recordedObjectClass = Class.forName("jdk.jfr.consumer.RecordedObject");
+            Class<?> recordedEventClass = Class.forName("jdk.jfr.consumer.RecordedEvent");
+            Class<?> recordedThreadClass = Class.forName("jdk.jfr.consumer.RecordedThread");
+            Class<?> recordedStackTraceClass =
+                    Class.forName("jdk.jfr.consumer.RecordedStackTrace");
+            Class<?> recordedFrameClass = Class.forName("jdk.jfr.consumer.RecordedFrame");
+            Class<?> recordedMethodClass = Class.forName("jdk.jfr.consumer.RecordedMethod");
+            Class<?> recordedClassClass = Class.forName("jdk.jfr.consumer.RecordedClass");
+
+            getThreadMethod = recordedEventClass.getMethod("getThread");
+            getStartTimeMethod = recordedEventClass.getMethod("getStartTime");
+            getJavaThreadIdMethod = recordedThreadClass.getMethod("getJavaThreadId");
+            getStackTraceMethod = recordedEventClass.getMethod("getStackTrace");
+            getFramesMethod = recordedStackTraceClass.getMethod("getFrames");
+            getMethodMethod = recordedFrameClass.getMethod("getMethod");
+            getLineNumberMethod = recordedFrameClass.getMethod("getLineNumber");
+            isJavaFrameMethod = recordedFrameClass.getMethod("isJavaFrame");
+            getTypeMethod = recordedMethodClass.getMethod("getType");
+            getMethodNameMethod = recordedMethodClass.getMethod("getName");
+            getClassNameMethod = recordedClassClass.getMethod("getName");
+            getLongMethod = recordedObjectClass.getMethod("getLong", String.class);
+            getClassMethod = recordedObjectClass.getMethod("getClass", String.class);
+
+            recordingStream = recordingStreamClass.getConstructor().newInstance();
+            closeMethod = recordingStreamClass.getMethod("close");
+            Object eventSettings = recordingStreamClass.getMethod("enable", String.class)
+                    .invoke(recordingStream, EVENT_NAME);
+            eventSettingsClass.getMethod("with", String.class, String.class)
+                    .invoke(eventSettings, "throttle", SAMPLES_PER_SECOND + "/s");
+            eventSettingsClass.getMethod("withStackTrace").invoke(eventSettings);
+            recordingStreamClass.getMethod("onEvent", String.class, Consumer.class)
+                    .invoke(recordingStream, EVENT_NAME, new Consumer<Object>() {
+                        @Override
+                        public void accept(Object event) {
+                            try {
+                                onEvent(allocationSampler, event);
+                            } catch (Throwable t) {
+                                eventErrorLogger.warn(t.getMessage(), t);
+                            }
+                        }
+                    });
+            recordingStreamClass.getMethod("onFlush", Runnable.class)
+                    .invoke(recordingStream, new Runnable() {
+                        @Override
+                        public void run() {
+                            try {
+                                allocationSampler.onFlush();
+                            } catch (Throwable t) {
+                                eventErrorLogger.warn(t.getMessage(), t);
+                            }
+                        }
+                    });
+            recordingStreamClass.getMethod("startAsync").invoke(recordingStream);
+        }
+
+        private void onEvent(AllocationSampler allocationSampler, Object event) throws Exception {
+            Object thread = getThreadMethod.invoke(event);
+            Object stackTrace = getStackTraceMethod.invoke(event);
+            if (thread == null || stackTrace == null) {
+                return;
+            }
+            long threadId = (Long) getJavaThreadIdMethod.invoke(thread);
+            long timeMillis = ((Instant) getStartTimeMethod.invoke(event)).toEpochMilli();
+            List<?> frames = (List<?>) getFramesMethod.invoke(stackTrace);
+            List<StackTraceElement> stackTraceElements =
+                    Lists.newArrayListWithCapacity(frames.size() + 1);
+            // the allocated class is added as the leaf so that the profile shows what is
+            // allocated at each allocation site
+            Object objectClass = getClassMethod.invoke(event, "objectClass");
+            if (objectClass != null) {
+                stackTraceElements.add(new StackTraceElement(
+                        (String) getClassNameMethod.invoke(objectClass), "<new>", null, -1));
+            }
+            for (Object frame : frames) {
+                if (!(Boolean) isJavaFrameMethod.invoke(frame)) {
+                    continue;
+                }
+                Object method = getMethodMethod.invoke(frame);
+                String className = (String) getClassNameMethod.invoke(getTypeMethod.invoke(method));
+                String methodName = (String) getMethodNameMethod.invoke(method);
+                int lineNumber = (Integer) getLineNumberMethod.invoke(frame);
+                stackTraceElements.add(new StackTraceElement(className, methodName, null,
+                        lineNumber));
+            }
+            long weight = (Long) getLongMethod.invoke(event, "weight");
+            allocationSampler.onSample(threadId, timeMillis, stackTraceElements, weight);
+        }
+
+        private void close() throws Exception {
+            closeMethod.invoke(recordingStream);
+        }
+    }
+}
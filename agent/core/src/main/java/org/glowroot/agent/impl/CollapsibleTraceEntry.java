@@ -0,0 +1,97 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.impl;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import org.glowroot.agent.model.AsyncTimer;
+import org.glowroot.agent.model.QueryData;
+
+// trace entry with the extra bookkeeping needed by TraceEntryCollapser, this is a subclass so that
+// the extra fields do not add to the memory of trace entries when adaptive capture is not enabled
+//
+// all fields are only accessed by the transaction thread
+class CollapsibleTraceEntry extends TraceEntryImpl {
+
+    // the trace entry linked list is singly linked, this is needed to unlink an evicted trace entry
+    private TraceEntryImpl prevTraceEntry;
+
+    // number of child trace entries that are still linked
+    private int childCount;
+
+    // pinned trace entries are never evicted, e.g. parents of error entries
+    private boolean pinned;
+
+    // completed, but not evictable until its children have been evicted, see TraceEntryCollapser
+    private boolean waitingForChildren;
+
+    // duration at completion, captured so that the ordering is stable even if the trace entry is
+    // later extended
+    private long cost;
+
+    CollapsibleTraceEntry(ThreadContextImpl threadContext, TraceEntryImpl parentTraceEntry,
+            TraceEntryImpl prevTraceEntry, @Nullable Object messageSupplier,
+            @Nullable QueryData queryData, long queryExecutionCount, long startTick,
+            @Nullable TimerImpl syncTimer, @Nullable AsyncTimer asyncTimer) {
+        super(threadContext, parentTraceEntry, messageSupplier, queryData, queryExecutionCount,
+                startTick, syncTimer, asyncTimer);
+        this.prevTraceEntry = prevTraceEntry;
+    }
+
+    TraceEntryImpl getPrevTraceEntry() {
+        return prevTraceEntry;
+    }
+
+    void setPrevTraceEntry(TraceEntryImpl prevTraceEntry) {
+        this.prevTraceEntry = prevTraceEntry;
+    }
+
+    int getChildCount() {
+        return childCount;
+    }
+
+    void incrementChildCount() {
+        childCount++;
+    }
+
+    void decrementChildCount() {
+        childCount--;
+    }
+
+    boolean isPinned() {
+        return pinned;
+    }
+
+    void pin() {
+        pinned = true;
+    }
+
+    boolean isWaitingForChildren() {
+        return waitingForChildren;
+    }
+
+    void setWaitingForChildren(boolean waitingForChildren) {
+        this.waitingForChildren = waitingForChildren;
+    }
+
+    long getCost() {
+        return cost;
+    }
+
+    void setCost(long cost) {
+        this.cost = cost;
+    }
+}
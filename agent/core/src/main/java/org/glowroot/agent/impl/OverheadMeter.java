@@ -0,0 +1,135 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.impl;
+
+import com.google.common.base.Ticker;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import org.glowroot.agent.util.ThreadAllocatedBytes;
+
+// measures the time and allocations spent in agent code by a single thread context of a
+// transaction that was sampled by AgentOverhead
+//
+// the ticks are read inside of the allocated bytes reads (bytes, tick, work, tick, bytes) so that
+// the time spent reading the thread's allocated bytes is not included in the measured time
+//
+// not thread safe, only accessed by the thread context's thread
+class OverheadMeter {
+
+    private static final int CALIBRATION_ITERATIONS = 10;
+
+    private final AgentOverhead agentOverhead;
+    private final Ticker ticker;
+    private final @Nullable ThreadAllocatedBytes threadAllocatedBytes;
+    private final long threadId;
+
+    // reading the thread's allocated bytes allocates a little itself (reflection and boxing), and
+    // reading the ticker takes a little time itself, these are subtracted from each measurement
+    private final long readAllocatedBytesOverhead;
+    private final long readTickOverhead;
+
+    private long startTick;
+    private long startAllocatedBytes;
+
+    private long totalNanos;
+    private long totalAllocatedBytes;
+
+    private long completionNanos;
+    private long completionAllocatedBytes;
+    private boolean transactionEnded;
+
+    OverheadMeter(AgentOverhead agentOverhead, Ticker ticker,
+            @Nullable ThreadAllocatedBytes threadAllocatedBytes) {
+        this.agentOverhead = agentOverhead;
+        this.ticker = ticker;
+        this.threadAllocatedBytes = threadAllocatedBytes;
+        threadId = Thread.currentThread().getId();
+        long allocatedBytes = readAllocatedBytes();
+        readAllocatedBytesOverhead = Math.max(readAllocatedBytes() - allocatedBytes, 0);
+        // use the minimum in order to exclude the occasional interruption
+        long minReadTickNanos = Long.MAX_VALUE;
+        for (int i = 0; i < CALIBRATION_ITERATIONS; i++) {
+            long tick = ticker.read();
+            minReadTickNanos = Math.min(ticker.read() - tick, minReadTickNanos);
+        }
+        readTickOverhead = Math.max(minReadTickNanos, 0);
+    }
+
+    void start() {
+        startAllocatedBytes = readAllocatedBytes();
+        startTick = ticker.read();
+    }
+
+    void stop() {
+        totalNanos += getNanosSince(startTick);
+        totalAllocatedBytes += getAllocatedBytesSince(startAllocatedBytes);
+    }
+
+    // completion processing is recorded separately, since it happens after the transaction has
+    // ended
+    void stopCompletion() {
+        completionNanos += getNanosSince(startTick);
+        completionAllocatedBytes += getAllocatedBytesSince(startAllocatedBytes);
+        transactionEnded = true;
+    }
+
+    void onComplete() {
+        agentOverhead.record(this);
+    }
+
+    long getTotalNanos() {
+        return totalNanos;
+    }
+
+    long getTotalAllocatedBytes() {
+        return totalAllocatedBytes;
+    }
+
+    long getCompletionNanos() {
+        return completionNanos;
+    }
+
+    long getCompletionAllocatedBytes() {
+        return completionAllocatedBytes;
+    }
+
+    boolean isTransactionEnded() {
+        return transactionEnded;
+    }
+
+    private long getNanosSince(long startTick) {
+        return Math.max(ticker.read() - startTick - readTickOverhead, 0);
+    }
+
+    private long readAllocatedBytes() {
+        if (threadAllocatedBytes == null) {
+            return 0;
+        }
+        return threadAllocatedBytes.getThreadAllocatedBytesSafely(threadId);
+    }
+
+    private long getAllocatedBytesSince(long startAllocatedBytes) {
+        if (startAllocatedBytes == -1) {
+            // error reading thread allocated bytes
+            return 0;
+        }
+        long allocatedBytes = readAllocatedBytes();
+        if (allocatedBytes == -1) {
+            return 0;
+        }
+        return Math.max(allocatedBytes - startAllocatedBytes - readAllocatedBytesOverhead, 0);
+    }
+}
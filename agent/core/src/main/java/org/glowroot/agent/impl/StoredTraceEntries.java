@@ -0,0 +1,135 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.impl;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+// the trace entries of a transaction (in the order they are visited by Transaction.visitEntries())
+// along with the state that their protobuf messages are built from, so that a partial trace store
+// only needs to include the trace entries that were added or changed since the prior partial store
+//
+// trace entries are only added in pre-order after the trace entries that are still active, so
+// the prior trace entries are normally an unchanged prefix, the exceptions being auxiliary thread
+// trace entries that are inserted under earlier trace entries, and collapsed trace entries (see
+// TraceEntryCollapser), in which case the partial trace store needs to include all trace entries
+//
+// not thread safe, only accessed by the trace collector thread
+class StoredTraceEntries {
+
+    private final List<StoredTraceEntry> entries = Lists.newArrayList();
+
+    private final long captureTick;
+
+    // does not include "auxiliary thread" entries, see TraceCreator.CountingEntryVisitorWrapper
+    private int entryCount;
+
+    StoredTraceEntries(long captureTick) {
+        this.captureTick = captureTick;
+    }
+
+    void add(TraceEntryImpl entry, int depth) {
+        entries.add(new StoredTraceEntry(entry, depth, captureTick));
+        if (!entry.isAuxThreadRoot()) {
+            entryCount++;
+        }
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    TraceEntryImpl getEntry(int index) {
+        return entries.get(index).entry;
+    }
+
+    int getDepth(int index) {
+        return entries.get(index).depth;
+    }
+
+    int getEntryCount() {
+        return entryCount;
+    }
+
+    // returns the indexes of the trace entries that were added or changed since the prior trace
+    // entries were captured, or null if the trace entries are not just additions and changes to the
+    // prior trace entries
+    @Nullable
+    List<Integer> getChangedIndexes(StoredTraceEntries prior) {
+        int priorSize = prior.entries.size();
+        if (entries.size() < priorSize) {
+            return null;
+        }
+        List<Integer> changedIndexes = Lists.newArrayList();
+        for (int i = 0; i < priorSize; i++) {
+            StoredTraceEntry priorEntry = prior.entries.get(i);
+            StoredTraceEntry entry = entries.get(i);
+            if (!entry.isSameEntry(priorEntry)) {
+                return null;
+            }
+            if (!entry.isUnchangedSince(priorEntry)) {
+                changedIndexes.add(i);
+            }
+        }
+        for (int i = priorSize; i < entries.size(); i++) {
+            changedIndexes.add(i);
+        }
+        return changedIndexes;
+    }
+
+    private static class StoredTraceEntry {
+
+        private final TraceEntryImpl entry;
+        private final int depth;
+        private final long startTick;
+
+        // active trace entries and collapsed trace entry summaries are always treated as changed
+        private final boolean changeable;
+        // the remaining fields are only captured for trace entries that are not changeable, since
+        // completed trace entries can still be extended (e.g. iterating over a query result set)
+        private final long endTick;
+        private final long durationNanos;
+        private final long rowCount;
+
+        private StoredTraceEntry(TraceEntryImpl entry, int depth, long captureTick) {
+            this.entry = entry;
+            this.depth = depth;
+            startTick = entry.getStartTick();
+            changeable = !entry.isCompleted(captureTick) || TraceEntryCollapser.isSummary(entry);
+            if (changeable) {
+                endTick = 0;
+                durationNanos = 0;
+                rowCount = 0;
+            } else {
+                endTick = entry.getEndTick();
+                durationNanos = entry.getDurationNanos();
+                rowCount = entry.getRowCountIfNavigated();
+            }
+        }
+
+        private boolean isSameEntry(StoredTraceEntry prior) {
+            return entry == prior.entry && depth == prior.depth;
+        }
+
+        private boolean isUnchangedSince(StoredTraceEntry prior) {
+            return !changeable && !prior.changeable && startTick == prior.startTick
+                    && endTick == prior.endTick && durationNanos == prior.durationNanos
+                    && rowCount == prior.rowCount;
+        }
+    }
+}
@@ -97,6 +97,9 @@ public class ThreadContextImpl implements ThreadContextPlus {
     // root entry for this trace
     private final TraceEntryComponent traceEntryComponent;
 
+    // only non-null when the transaction is sampled for measuring agent overhead
+    private final @Nullable OverheadMeter overheadMeter;
+
     // only accessed by the thread context's thread
     private boolean transactionAsyncComplete;
 
@@ -150,8 +153,12 @@ public class ThreadContextImpl implements ThreadContextPlus {
         this.parentTraceEntry = parentTraceEntry;
         rootTimer = TimerImpl.createRootTimer(castInitialized(this), (TimerNameImpl) rootTimerName);
         rootTimer.start(startTick);
+        // trace entries are only pooled and collapsed for the main thread context, since
+        // auxiliary thread contexts run on other threads
         traceEntryComponent = new TraceEntryComponent(castInitialized(this), messageSupplier,
-                rootTimer, startTick);
+                rootTimer, startTick,
+                parentTraceEntry == null ? transaction.getTraceEntryPool() : null,
+                parentTraceEntry == null ? transaction.getCollapsingEntryLimit() : 0);
         this.parentThreadContextPriorEntry = parentThreadContextPriorEntry;
         threadId = Thread.currentThread().getId();
         threadStatsComponent =
@@ -165,6 +172,9 @@ public class ThreadContextImpl implements ThreadContextPlus {
         this.outerTransactionThreadContext = (ThreadContextImpl) threadContextHolder.get();
         currentNestingGroupId = rootNestingGroupId;
         currentSuppressionKeyId = rootSuppressionKeyId;
+        AgentOverhead agentOverhead = transaction.getAgentOverhead();
+        overheadMeter = agentOverhead == null ? null
+                : new OverheadMeter(agentOverhead, ticker, threadAllocatedBytes);
     }
 
     public Transaction getTransaction() {
@@ -184,6 +194,14 @@ public class ThreadContextImpl implements ThreadContextPlus {
         return traceEntryComponent.getRootEntry();
     }
 
+    boolean isCollapsingHardLimitExceeded() {
+        return traceEntryComponent.isCollapsingHardLimitExceeded();
+    }
+
+    long getStartTick() {
+        return traceEntryComponent.getRootEntry().getStartTick();
+    }
+
     TimerImpl getRootTimer() {
         return rootTimer;
     }
@@ -244,6 +262,10 @@ public class ThreadContextImpl implements ThreadContextPlus {
         this.currentSuppressionKeyId = suppressionKeyId;
     }
 
+    boolean mayHaveChildAuxThreadContext() {
+        return mayHaveChildAuxThreadContext;
+    }
+
     // FIXME why is this safe when called from another thread?
     boolean isMergeable() {
         return !mayHaveChildAuxThreadContext && traceEntryComponent.isEmpty();
@@ -445,6 +467,7 @@ public class ThreadContextImpl implements ThreadContextPlus {
                     transaction.getTransactionService());
         } else {
             mayHaveChildAuxThreadContext = true;
+            traceEntryComponent.pinActiveAndTailEntries();
             return new AuxThreadContextImpl(transaction, traceEntryComponent.getActiveEntry(),
                     traceEntryComponent.getTailEntry(), servletRequestInfo, locationStackTrace,
                     transaction.getTransactionRegistry(), transaction.getTransactionService());
@@ -455,10 +478,12 @@ public class ThreadContextImpl implements ThreadContextPlus {
     // passed in just to make sure it is the one on top (and if not, then pop until is is found,
     // preventing any nasty bugs from a missed pop, e.g. a trace never being marked as complete)
     void popEntry(TraceEntryImpl entry, long endTick) {
+        startOverheadMeter();
         traceEntryComponent.popEntry(entry, endTick);
         // memory barrier write ensures partial trace capture will see data collected up to now
         // memory barrier read ensures timely visibility of detach()
         transaction.memoryBarrierReadWrite();
+        stopOverheadMeter(entry);
         if (traceEntryComponent.isCompleted()) {
             if (threadStatsComponent != null) {
                 threadStatsComponent.onComplete();
@@ -468,7 +493,10 @@ public class ThreadContextImpl implements ThreadContextPlus {
                 transaction.mergeLimitExceededAuxThreadContext(this);
             }
             if (!isAuxiliary() || transactionAsyncComplete) {
-                transaction.end(endTick, transactionAsyncComplete, false);
+                endTransaction(endTick);
+            }
+            if (overheadMeter != null) {
+                overheadMeter.onComplete();
             }
             threadContextHolder.set(outerTransactionThreadContext);
             if (outerTransactionThreadContext != null) {
@@ -477,6 +505,16 @@ public class ThreadContextImpl implements ThreadContextPlus {
         }
     }
 
+    private void endTransaction(long endTick) {
+        if (overheadMeter == null) {
+            transaction.end(endTick, transactionAsyncComplete, false);
+            return;
+        }
+        overheadMeter.start();
+        transaction.end(endTick, transactionAsyncComplete, false);
+        overheadMeter.stopCompletion();
+    }
+
     // typically pop() methods don't require the objects to pop, but for safety, the entry to pop is
     // passed in just to make sure it is the one on top (and if not, then pop until is is found,
     // preventing any nasty bugs from a missed pop, e.g. a trace never being marked as complete)
@@ -577,12 +615,15 @@ public class ThreadContextImpl implements ThreadContextPlus {
                     (ThreadContextImpl) checkNotNull(threadContextHolder.get());
             return traceEntry;
         }
+        startOverheadMeter();
         long startTick = ticker.read();
         TimerImpl timer = startTimer(timerName, startTick);
-        if (transaction.allowAnotherEntry()) {
-            return traceEntryComponent.pushEntry(startTick, messageSupplier, timer, null, null, 0);
+        if (allowAnotherEntry()) {
+            return stopOverheadMeter(traceEntryComponent.pushEntry(startTick, messageSupplier,
+                    timer, null, null, 0));
         } else {
-            return new DummyTraceEntryOrQuery(timer, null, startTick, messageSupplier, null, 0);
+            return stopOverheadMeter(
+                    new DummyTraceEntryOrQuery(timer, null, startTick, messageSupplier, null, 0));
         }
     }
 
@@ -596,12 +637,15 @@ public class ThreadContextImpl implements ThreadContextPlus {
             logger.error("startTraceEntry(): argument 'timerName' must be non-null");
             return NopTransactionService.TRACE_ENTRY;
         }
+        startOverheadMeter();
         long startTick = ticker.read();
         TimerImpl timer = startTimer(timerName, startTick);
-        if (transaction.allowAnotherEntry()) {
-            return traceEntryComponent.pushEntry(startTick, messageSupplier, timer, null, null, 0);
+        if (allowAnotherEntry()) {
+            return stopOverheadMeter(traceEntryComponent.pushEntry(startTick, messageSupplier,
+                    timer, null, null, 0));
         } else {
-            return new DummyTraceEntryOrQuery(timer, null, startTick, messageSupplier, null, 0);
+            return stopOverheadMeter(
+                    new DummyTraceEntryOrQuery(timer, null, startTick, messageSupplier, null, 0));
         }
     }
 
@@ -616,14 +660,17 @@ public class ThreadContextImpl implements ThreadContextPlus {
             logger.error("startAsyncTraceEntry(): argument 'timerName' must be non-null");
             return NopTransactionService.ASYNC_TRACE_ENTRY;
         }
+        startOverheadMeter();
         long startTick = ticker.read();
         TimerImpl syncTimer = startTimer(timerName, startTick);
         AsyncTimer asyncTimer = transaction.startAsyncTimer(timerName, startTick);
-        if (transaction.allowAnotherEntry()) {
-            return startAsyncTraceEntry(startTick, messageSupplier, syncTimer, asyncTimer);
+        if (allowAnotherEntry()) {
+            return stopOverheadMeter(
+                    startAsyncTraceEntry(startTick, messageSupplier, syncTimer, asyncTimer));
         } else {
-            return new DummyTraceEntryOrQuery(syncTimer, asyncTimer, startTick, messageSupplier,
-                    null, 0);
+            return stopOverheadMeter(
+                    new DummyTraceEntryOrQuery(syncTimer, asyncTimer, startTick, messageSupplier,
+                            null, 0));
         }
     }
 
@@ -646,16 +693,19 @@ public class ThreadContextImpl implements ThreadContextPlus {
             logger.error("startQueryEntry(): argument 'timerName' must be non-null");
             return NopTransactionService.QUERY_ENTRY;
         }
+        startOverheadMeter();
         long startTick = ticker.read();
         TimerImpl timer = startTimer(timerName, startTick);
-        if (transaction.allowAnotherEntry()) {
+        if (allowAnotherEntry()) {
             SyncQueryData queryData = getOrCreateQueryData(queryType, queryText, true);
-            return traceEntryComponent.pushEntry(startTick, queryMessageSupplier, timer, null,
-                    queryData, 1);
+            return stopOverheadMeter(
+                    traceEntryComponent.pushEntry(startTick, queryMessageSupplier, timer, null,
+                            queryData, 1));
         } else {
             SyncQueryData queryData = getOrCreateQueryData(queryType, queryText, false);
-            return new DummyTraceEntryOrQuery(timer, null, startTick, queryMessageSupplier,
-                    queryData, 1);
+            return stopOverheadMeter(
+                    new DummyTraceEntryOrQuery(timer, null, startTick, queryMessageSupplier,
+                            queryData, 1));
         }
     }
 
@@ -682,16 +732,19 @@ public class ThreadContextImpl implements ThreadContextPlus {
             logger.error("startQueryEntry(): argument 'timerName' must be non-null");
             return NopTransactionService.QUERY_ENTRY;
         }
+        startOverheadMeter();
         long startTick = ticker.read();
         TimerImpl timer = startTimer(timerName, startTick);
-        if (transaction.allowAnotherEntry()) {
+        if (allowAnotherEntry()) {
             SyncQueryData queryData = getOrCreateQueryData(queryType, queryText, true);
-            return traceEntryComponent.pushEntry(startTick, queryMessageSupplier, timer, null,
-                    queryData, queryExecutionCount);
+            return stopOverheadMeter(
+                    traceEntryComponent.pushEntry(startTick, queryMessageSupplier, timer, null,
+                            queryData, queryExecutionCount));
         } else {
             SyncQueryData queryData = getOrCreateQueryData(queryType, queryText, false);
-            return new DummyTraceEntryOrQuery(timer, null, startTick, queryMessageSupplier,
-                    queryData, queryExecutionCount);
+            return stopOverheadMeter(
+                    new DummyTraceEntryOrQuery(timer, null, startTick, queryMessageSupplier,
+                            queryData, queryExecutionCount));
         }
     }
 
@@ -715,19 +768,22 @@ public class ThreadContextImpl implements ThreadContextPlus {
             logger.error("startAsyncQueryEntry(): argument 'timerName' must be non-null");
             return NopTransactionService.ASYNC_QUERY_ENTRY;
         }
+        startOverheadMeter();
         long startTick = ticker.read();
         TimerImpl syncTimer = startTimer(timerName, startTick);
         AsyncTimer asyncTimer = transaction.startAsyncTimer(timerName, startTick);
-        if (transaction.allowAnotherEntry()) {
+        if (allowAnotherEntry()) {
             AsyncQueryData queryData =
                     transaction.getOrCreateAsyncQueryData(queryType, queryText, true);
-            return startAsyncQueryEntry(startTick, queryMessageSupplier, syncTimer, asyncTimer,
-                    queryData, 1);
+            return stopOverheadMeter(
+                    startAsyncQueryEntry(startTick, queryMessageSupplier, syncTimer, asyncTimer,
+                            queryData, 1));
         } else {
             AsyncQueryData queryData =
                     transaction.getOrCreateAsyncQueryData(queryType, queryText, false);
-            return new DummyTraceEntryOrQuery(syncTimer, asyncTimer, startTick,
-                    queryMessageSupplier, queryData, 1);
+            return stopOverheadMeter(
+                    new DummyTraceEntryOrQuery(syncTimer, asyncTimer, startTick,
+                            queryMessageSupplier, queryData, 1));
         }
     }
 
@@ -750,18 +806,20 @@ public class ThreadContextImpl implements ThreadContextPlus {
             logger.error("startServiceCallEntry(): argument 'timerName' must be non-null");
             return NopTransactionService.TRACE_ENTRY;
         }
+        startOverheadMeter();
         long startTick = ticker.read();
         TimerImpl timer = startTimer(timerName, startTick);
-        if (transaction.allowAnotherEntry()) {
+        if (allowAnotherEntry()) {
             SyncQueryData queryData =
                     getOrCreateServiceCallData(serviceCallType, serviceCallText, true);
-            return traceEntryComponent.pushEntry(startTick, messageSupplier, timer, null, queryData,
-                    1);
+            return stopOverheadMeter(
+                    traceEntryComponent.pushEntry(startTick, messageSupplier, timer, null,
+                            queryData, 1));
         } else {
             SyncQueryData queryData =
                     getOrCreateServiceCallData(serviceCallType, serviceCallText, false);
-            return new DummyTraceEntryOrQuery(timer, null, startTick, messageSupplier, queryData,
-                    1);
+            return stopOverheadMeter(new DummyTraceEntryOrQuery(timer, null, startTick,
+                    messageSupplier, queryData, 1));
         }
     }
 
@@ -787,19 +845,22 @@ public class ThreadContextImpl implements ThreadContextPlus {
             logger.error("startAsyncServiceCallEntry(): argument 'timerName' must be non-null");
             return NopTransactionService.ASYNC_TRACE_ENTRY;
         }
+        startOverheadMeter();
         long startTick = ticker.read();
         TimerImpl syncTimer = startTimer(timerName, startTick);
         AsyncTimer asyncTimer = transaction.startAsyncTimer(timerName, startTick);
-        if (transaction.allowAnotherEntry()) {
+        if (allowAnotherEntry()) {
             AsyncQueryData queryData = transaction.getOrCreateAsyncServiceCallData(serviceCallType,
                     serviceCallText, true);
-            return startAsyncServiceCallEntry(startTick, messageSupplier, syncTimer, asyncTimer,
-                    queryData);
+            return stopOverheadMeter(
+                    startAsyncServiceCallEntry(startTick, messageSupplier, syncTimer, asyncTimer,
+                            queryData));
         } else {
             AsyncQueryData queryData = transaction.getOrCreateAsyncServiceCallData(serviceCallType,
                     serviceCallText, false);
-            return new DummyTraceEntryOrQuery(syncTimer, asyncTimer, startTick, messageSupplier,
-                    queryData, 1);
+            return stopOverheadMeter(
+                    new DummyTraceEntryOrQuery(syncTimer, asyncTimer, startTick, messageSupplier,
+                            queryData, 1));
         }
     }
 
@@ -813,7 +874,12 @@ public class ThreadContextImpl implements ThreadContextPlus {
             logger.warn("startTimer(): called on completed thread context");
             return NopTimer.INSTANCE;
         }
-        return currentTimer.startNestedTimer(timerName);
+        if (overheadMeter == null) {
+            return currentTimer.startNestedTimer(timerName);
+        }
+        overheadMeter.start();
+        long startTick = ticker.read();
+        return stopOverheadMeter(currentTimer.startNestedTimer(timerName, startTick));
     }
 
     @Override
@@ -1050,6 +1116,16 @@ public class ThreadContextImpl implements ThreadContextPlus {
         }
     }
 
+    // with adaptive trace entry capture, the main thread context continues to capture trace
+    // entries past the limit, and TraceEntryComponent collapses the fastest ones, these are not
+    // counted toward the transaction's trace entry limit since they are collapsed, not dropped
+    private boolean allowAnotherEntry() {
+        if (traceEntryComponent.isCollapsing()) {
+            return traceEntryComponent.allowAnotherCollapsibleEntry();
+        }
+        return transaction.allowAnotherEntry();
+    }
+
     private boolean isAuxiliary() {
         return parentTraceEntry != null;
     }
@@ -1064,6 +1140,19 @@ public class ThreadContextImpl implements ThreadContextPlus {
         }
     }
 
+    private void startOverheadMeter() {
+        if (overheadMeter != null) {
+            overheadMeter.start();
+        }
+    }
+
+    private <T> T stopOverheadMeter(T result) {
+        if (overheadMeter != null) {
+            overheadMeter.stop();
+        }
+        return result;
+    }
+
     private TimerImpl startTimer(TimerName timerName, long startTick) {
         if (currentTimer == null) {
             // this really shouldn't happen as current timer should be non-null unless transaction
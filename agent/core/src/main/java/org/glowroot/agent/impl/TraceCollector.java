@@ -1,5 +1,5 @@
 /*
- * Copyright 2011-2023 the original author or authors.
+ * Copyright 2011-2026 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -19,11 +19,13 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
@@ -37,6 +39,7 @@ import org.slf4j.LoggerFactory;
 import org.glowroot.agent.collector.Collector;
 import org.glowroot.agent.collector.Collector.TraceReader;
 import org.glowroot.agent.config.ConfigService;
+import org.glowroot.agent.impl.TraceSampler.HeldTrace;
 import org.glowroot.agent.plugin.api.config.ConfigListener;
 import org.glowroot.agent.util.RateLimitedLogger;
 import org.glowroot.agent.util.ThreadFactories;
@@ -55,10 +58,17 @@ public class TraceCollector {
     // back pressure on writing captured data to disk/network
     private static final int PENDING_LIMIT = 50;
 
+    // when enabled, each partial store of a long running transaction after the first only includes
+    // the trace entries that were added or changed since the prior partial store (this requires the
+    // central collector to be 0.14.0 or later)
+    private static final boolean INCREMENTAL_PARTIAL_STORE =
+            Boolean.getBoolean("glowroot.partialTrace.incremental");
+
     private final ExecutorService dedicatedExecutor;
     private final Collector collector;
     private final Clock clock;
     private final Ticker ticker;
+    private final @Nullable TraceSampler traceSampler;
     // covers normal complete, partial complete and partial incomplete separately
     private final BlockingQueue<PendingTrace> pendingTraces =
             Queues.newLinkedBlockingQueue(PENDING_LIMIT * 3);
@@ -66,6 +76,14 @@ public class TraceCollector {
     private final AtomicInteger partialCompletePendingCount = new AtomicInteger();
     private final AtomicInteger partialIncompletePendingCount = new AtomicInteger();
 
+    // held traces from the end of the last trace sampling interval that have not been queued yet,
+    // these are queued gradually so that they only ever use half of the pending limit, leaving the
+    // other half for traces that are stored right away
+    //
+    // only written by the trace collector thread, but read by other threads (see
+    // getPendingTransactions())
+    private final Queue<HeldTrace> sampledBacklog = Queues.newConcurrentLinkedQueue();
+
     private final RateLimitedLogger backPressureLogger =
             new RateLimitedLogger(TraceCollector.class);
 
@@ -76,11 +94,19 @@ public class TraceCollector {
 
     private volatile boolean closed;
 
-    public TraceCollector(final ConfigService configService, Collector collector, Clock clock,
+    public TraceCollector(ConfigService configService, Collector collector, Clock clock,
             Ticker ticker) {
+        this(configService, collector, clock, ticker,
+                TraceSampler.create(ticker, PENDING_LIMIT / 2));
+    }
+
+    @VisibleForTesting
+    TraceCollector(ConfigService configService, Collector collector, Clock clock, Ticker ticker,
+            @Nullable TraceSampler traceSampler) {
         this.collector = collector;
         this.clock = clock;
         this.ticker = ticker;
+        this.traceSampler = traceSampler;
         dedicatedExecutor = Executors
                 .newSingleThreadExecutor(ThreadFactories.create("Glowroot-Trace-Collector"));
         dedicatedExecutor.execute(new TraceCollectorLoop());
@@ -145,6 +171,12 @@ public class TraceCollector {
         for (PendingTrace pendingTrace : pendingTraces) {
             pendingTransactions.add(pendingTrace.transaction());
         }
+        if (traceSampler != null) {
+            for (HeldTrace heldTrace : sampledBacklog) {
+                pendingTransactions.add(heldTrace.transaction());
+            }
+            pendingTransactions.addAll(traceSampler.getHeldTransactions());
+        }
         return pendingTransactions;
     }
 
@@ -158,34 +190,53 @@ public class TraceCollector {
         }
     }
 
-    void collectTrace(Transaction transaction) {
+    // returns true if the transaction was queued to be stored as a trace, or was handed off to the
+    // trace sampler (which releases the trace entries itself if the transaction is sampled out)
+    boolean collectTrace(Transaction transaction) {
         boolean slow = shouldStoreSlow(transaction);
         if (!slow && !shouldStoreError(transaction)) {
-            return;
+            return false;
         }
-        // don't need to worry about race condition since only ever called from a single thread
+        // partially stored traces are always completed
+        if (traceSampler != null && !transaction.isPartiallyStored()
+                && !traceSampler.sample(transaction, slow)) {
+            return true;
+        }
+        return queueCompleted(transaction, slow);
+    }
+
+    private boolean queueCompleted(Transaction transaction, boolean slow) {
+        // this is called from the transaction processor thread, and also from the trace collector
+        // thread at the end of each trace sampling interval, but a race condition here can only
+        // lead to slightly exceeding the pending limit
         if (transaction.isPartiallyStored()
                 && partialCompletePendingCount.get() >= PENDING_LIMIT) {
             backPressureLogger.warn("not storing a completed (and once partial) trace because of an"
                     + " excessive backlog of {} completed (and once partial) traces already waiting"
                     + " to be stored", PENDING_LIMIT);
-            return;
+            return false;
         } else if (!transaction.isPartiallyStored()
                 && normalCompletePendingCount.get() >= PENDING_LIMIT) {
             backPressureLogger.warn("not storing a completed trace because of an excessive backlog"
                     + " of {} completed traces already waiting to be stored", PENDING_LIMIT);
-            return;
+            return false;
         }
         PendingTrace pendingTransaction = ImmutablePendingTrace.builder()
                 .transaction(transaction)
                 .slow(slow)
                 .partial(false)
+                .partiallyStored(transaction.isPartiallyStored())
                 .build();
+        AtomicInteger pendingCount = getPendingCount(pendingTransaction);
+        pendingCount.getAndIncrement();
         if (!pendingTraces.offer(pendingTransaction)) {
             // this should never happen
+            pendingCount.getAndDecrement();
             backPressureLogger.warn("not storing a trace because of an excessive backlog of {}"
                     + " traces already waiting to be stored", PENDING_LIMIT * 3);
+            return false;
         }
+        return true;
     }
 
     public void storePartialTrace(Transaction transaction) {
@@ -199,14 +250,27 @@ public class TraceCollector {
                 .transaction(transaction)
                 .slow(false)
                 .partial(true)
+                .partiallyStored(false)
                 .build();
+        partialIncompletePendingCount.getAndIncrement();
         if (!pendingTraces.offer(pendingTransaction)) {
             // this should never happen
+            partialIncompletePendingCount.getAndDecrement();
             backPressureLogger.warn("not storing a trace because of an excessive backlog of {}"
                     + " traces already waiting to be stored", PENDING_LIMIT * 3);
         }
     }
 
+    private AtomicInteger getPendingCount(PendingTrace pendingTrace) {
+        if (pendingTrace.partial()) {
+            return partialIncompletePendingCount;
+        } else if (pendingTrace.partiallyStored()) {
+            return partialCompletePendingCount;
+        } else {
+            return normalCompletePendingCount;
+        }
+    }
+
     private static @Nullable Long getSlowThreshold(
             SlowThresholdOverridesForType slowThresholdOverridesForType, String transactionName) {
         Long slowThreshold = slowThresholdOverridesForType.thresholdNanos().get(transactionName);
@@ -289,7 +353,17 @@ public class TraceCollector {
         public void run() {
             while (!closed) {
                 try {
-                    PendingTrace pendingTrace = pendingTraces.take();
+                    PendingTrace pendingTrace;
+                    if (traceSampler == null) {
+                        pendingTrace = pendingTraces.take();
+                    } else {
+                        pendingTrace = pendingTraces.poll(1, SECONDS);
+                        queueSampledTraces(traceSampler);
+                        if (pendingTrace == null) {
+                            continue;
+                        }
+                    }
+                    getPendingCount(pendingTrace).getAndDecrement();
                     if (pendingTrace.partial()) {
                         collectPartial(pendingTrace.transaction());
                     } else {
@@ -305,9 +379,41 @@ public class TraceCollector {
             }
         }
 
+        private void queueSampledTraces(TraceSampler traceSampler) {
+            List<HeldTrace> heldTraces = traceSampler.flushIfIntervalEnded();
+            if (!heldTraces.isEmpty()) {
+                // anything left over from the prior interval could not be stored in an entire
+                // interval, so it is dropped in favor of the new sample
+                HeldTrace heldTrace;
+                while ((heldTrace = sampledBacklog.poll()) != null) {
+                    backPressureLogger.warn("not storing a sampled trace because of an excessive"
+                            + " backlog of completed traces already waiting to be stored");
+                    heldTrace.transaction().releaseTraceEntries();
+                }
+                sampledBacklog.addAll(heldTraces);
+            }
+            // the held traces are ordered slowest first, see TraceSampler.flushIfIntervalEnded()
+            while (normalCompletePendingCount.get() < PENDING_LIMIT / 2) {
+                HeldTrace heldTrace = sampledBacklog.poll();
+                if (heldTrace == null) {
+                    break;
+                }
+                Transaction transaction = heldTrace.transaction();
+                if (!queueCompleted(transaction, heldTrace.slow())) {
+                    transaction.releaseTraceEntries();
+                }
+            }
+        }
+
         private void collectPartial(Transaction transaction) throws Exception {
-            TraceReader traceReader = TraceCreator.createTraceReaderForPartial(transaction,
-                    clock.currentTimeMillis(), ticker.read());
+            TraceReader traceReader;
+            if (INCREMENTAL_PARTIAL_STORE) {
+                traceReader = TraceCreator.createTraceReaderForPartialStore(transaction,
+                        clock.currentTimeMillis(), ticker.read());
+            } else {
+                traceReader = TraceCreator.createTraceReaderForPartial(transaction,
+                        clock.currentTimeMillis(), ticker.read());
+            }
             // one last check if transaction has completed
             if (!transaction.isCompleted()) {
                 transaction.setPartiallyStored();
@@ -316,6 +422,8 @@ public class TraceCollector {
         }
 
         private void collectCompleted(Transaction transaction, boolean slow) throws Exception {
+            // completed traces always include all trace entries
+            transaction.setStoredTraceEntries(null);
             TraceReader traceReader = TraceCreator.createTraceReaderForCompleted(
                     transaction, slow);
             collector.collectTrace(traceReader);
@@ -327,6 +435,9 @@ public class TraceCollector {
         Transaction transaction();
         boolean slow();
         boolean partial();
+        // captured when queued (since it can change while pending), to decrement the same pending
+        // count that was incremented
+        boolean partiallyStored();
     }
 
     @Value.Immutable
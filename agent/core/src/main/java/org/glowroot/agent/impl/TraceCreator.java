@@ -25,6 +25,7 @@ import org.checkerframework.checker.nullness.qual.Nullable;
 
 import org.glowroot.agent.collector.Collector.TraceReader;
 import org.glowroot.agent.collector.Collector.TraceVisitor;
+import org.glowroot.agent.impl.Transaction.IndexedTraceEntryVisitor;
 import org.glowroot.agent.impl.Transaction.TraceEntryVisitor;
 import org.glowroot.agent.model.DetailMapWriter;
 import org.glowroot.agent.model.ErrorMessage;
@@ -47,6 +48,22 @@ public class TraceCreator {
                 transaction.getTraceId(), true, transaction.isPartiallyStored());
     }
 
+    // same as createTraceReaderForPartial(), except that when the trace was already partially
+    // stored, only the trace entries that were added or changed since then are included (if
+    // possible, see StoredTraceEntries)
+    static TraceReader createTraceReaderForPartialStore(Transaction transaction, long captureTime,
+            long captureTick) {
+        StoredTraceEntries entries = transaction.captureEntries(captureTick);
+        StoredTraceEntries priorEntries = transaction.getStoredTraceEntries();
+        List<Integer> changedIndexes = null;
+        if (priorEntries != null && transaction.isPartiallyStored()) {
+            changedIndexes = entries.getChangedIndexes(priorEntries);
+        }
+        return new TraceReaderImpl(transaction, true, captureTime, captureTick,
+                transaction.getTraceId(), true, transaction.isPartiallyStored(), entries,
+                changedIndexes);
+    }
+
     public static TraceReader createTraceReaderForCompleted(Transaction transaction, boolean slow) {
         return new TraceReaderImpl(transaction, slow, transaction.getCaptureTime(),
                 transaction.getEndTick(), transaction.getTraceId(), false,
@@ -59,9 +76,11 @@ public class TraceCreator {
         int queryCount = transaction.getQueryCount();
         long mainThreadProfileSampleCount = transaction.getMainThreadProfileSampleCount();
         long auxThreadProfileSampleCount = transaction.getAuxThreadProfileSampleCount();
+        long allocationProfileSampleCount = transaction.getAllocationProfileSampleCount();
         // only slow transactions reach this point, so setting slow=true (second arg below)
         return createTraceHeader(transaction, true, true, captureTime, captureTick,
-                entryCount, queryCount, mainThreadProfileSampleCount, auxThreadProfileSampleCount);
+                entryCount, queryCount, mainThreadProfileSampleCount, auxThreadProfileSampleCount,
+                allocationProfileSampleCount);
     }
 
     public static Trace.Header createCompletedTraceHeader(Transaction transaction) {
@@ -69,10 +88,11 @@ public class TraceCreator {
         int queryCount = transaction.getQueryCount();
         long mainProfileSampleCount = transaction.getMainThreadProfileSampleCount();
         long auxProfileSampleCount = transaction.getAuxThreadProfileSampleCount();
+        long allocationProfileSampleCount = transaction.getAllocationProfileSampleCount();
         // only slow transactions reach this point, so setting slow=true (second arg below)
         return createTraceHeader(transaction, true, false, transaction.getCaptureTime(),
                 transaction.getEndTick(), entryCount, queryCount, mainProfileSampleCount,
-                auxProfileSampleCount);
+                auxProfileSampleCount, allocationProfileSampleCount);
     }
 
     public static List<Trace.SharedQueryText> toProto(List<String> sharedQueryTexts) {
@@ -87,7 +107,8 @@ public class TraceCreator {
 
     private static Trace.Header createTraceHeader(Transaction transaction, boolean slow,
             boolean partial, long captureTime, long captureTick, int entryCount,
-            int queryCount, long mainThreadProfileSampleCount, long auxThreadProfileSampleCount) {
+            int queryCount, long mainThreadProfileSampleCount, long auxThreadProfileSampleCount,
+            long allocationProfileSampleCount) {
         Trace.Header.Builder builder = Trace.Header.newBuilder();
         builder.setPartial(partial);
         builder.setSlow(slow);
@@ -144,13 +165,14 @@ public class TraceCreator {
         transaction.mergeAsyncTimersInto(asyncTimers);
         builder.addAllAsyncTimer(asyncTimers.toProto());
         addCounts(builder, transaction, entryCount, queryCount,
-                mainThreadProfileSampleCount, auxThreadProfileSampleCount);
+                mainThreadProfileSampleCount, auxThreadProfileSampleCount,
+                allocationProfileSampleCount);
         return builder.build();
     }
 
     private static void addCounts(Trace.Header.Builder builder, Transaction transaction,
             int entryCount, int queryCount, long mainThreadProfileSampleCount,
-            long auxThreadProfileSampleCount) {
+            long auxThreadProfileSampleCount, long allocationProfileSampleCount) {
         builder.setEntryCount(entryCount);
         builder.setEntryLimitExceeded(transaction.isEntryLimitExceeded(entryCount));
         builder.setQueryCount(queryCount);
@@ -161,6 +183,9 @@ public class TraceCreator {
         builder.setAuxThreadProfileSampleCount(auxThreadProfileSampleCount);
         builder.setAuxThreadProfileSampleLimitExceeded(
                 transaction.isAuxThreadProfileSampleLimitExceeded(auxThreadProfileSampleCount));
+        builder.setAllocationProfileSampleCount(allocationProfileSampleCount);
+        builder.setAllocationProfileSampleLimitExceeded(
+                transaction.isAllocationProfileSampleLimitExceeded(allocationProfileSampleCount));
     }
 
     private static class TraceReaderImpl implements TraceReader {
@@ -173,10 +198,23 @@ public class TraceCreator {
         private final boolean partial;
         private final boolean update;
 
+        // only non-null for partial trace stores, see createTraceReaderForPartialStore()
+        private final @Nullable StoredTraceEntries entries;
+        // only non-null when only including the trace entries that were added or changed since the
+        // prior partial store
+        private final @Nullable List<Integer> changedIndexes;
+
         private Trace. /*@Nullable*/ Header header;
 
         private TraceReaderImpl(Transaction transaction, boolean slow, long captureTime,
                 long captureTick, String traceId, boolean partial, boolean update) {
+            this(transaction, slow, captureTime, captureTick, traceId, partial, update, null,
+                    null);
+        }
+
+        private TraceReaderImpl(Transaction transaction, boolean slow, long captureTime,
+                long captureTick, String traceId, boolean partial, boolean update,
+                @Nullable StoredTraceEntries entries, @Nullable List<Integer> changedIndexes) {
             this.transaction = transaction;
             this.slow = slow;
             this.captureTime = captureTime;
@@ -184,6 +222,8 @@ public class TraceCreator {
             this.traceId = traceId;
             this.partial = partial;
             this.update = update;
+            this.entries = entries;
+            this.changedIndexes = changedIndexes;
         }
 
         @Override
@@ -191,9 +231,25 @@ public class TraceCreator {
             // timings for traces that are still active are normalized to the capture tick in order
             // to *attempt* to present a picture of the trace at that exact tick
             // (without using synchronization to block updates to the trace while it is being read)
-            CountingEntryVisitorWrapper entryVisitorWrapper =
-                    new CountingEntryVisitorWrapper(traceVisitor);
-            transaction.visitEntries(captureTick, entryVisitorWrapper);
+            int entryCount;
+            if (entries == null) {
+                CountingEntryVisitorWrapper entryVisitorWrapper =
+                        new CountingEntryVisitorWrapper(traceVisitor);
+                transaction.visitEntries(captureTick, entryVisitorWrapper);
+                entryCount = entryVisitorWrapper.count;
+            } else {
+                if (changedIndexes == null) {
+                    transaction.visitEntries(entries, null, captureTick,
+                            new EntryVisitorAdapter(traceVisitor));
+                } else {
+                    transaction.visitEntries(entries, changedIndexes, captureTick,
+                            new IncrementalEntryVisitorAdapter(traceVisitor));
+                }
+                entryCount = entries.getEntryCount();
+                // partial trace stores are not retried, so the next partial store can be based on
+                // these trace entries
+                transaction.setStoredTraceEntries(entries);
+            }
 
             List<Aggregate.Query> queries = transaction.getQueries();
             traceVisitor.visitQueries(queries);
@@ -214,17 +270,25 @@ public class TraceCreator {
             long auxThreadProfileSampleCount = getProfileSampleCount(auxThreadProfile);
             // auxThreadProfile can be gc'd at this point
 
-            int entryCount = entryVisitorWrapper.count;
+            // allocation profile sample counts are weighted by bytes, so the number of samples is
+            // read from the transaction instead of being derived from the profile
+            long allocationProfileSampleCount = transaction.getAllocationProfileSampleCount();
+            Profile allocationProfile = transaction.getAllocationProfileProtobuf();
+            if (allocationProfile != null) {
+                traceVisitor.visitAllocationProfile(allocationProfile);
+            }
+
             int queryCount = queries.size();
 
             if (header == null) {
                 traceVisitor.visitHeader(createTraceHeader(transaction, slow, partial, captureTime,
                         captureTick, entryCount, queryCount, mainThreadProfileSampleCount,
-                        auxThreadProfileSampleCount));
+                        auxThreadProfileSampleCount, allocationProfileSampleCount));
             } else {
                 Trace.Header.Builder builder = header.toBuilder();
                 addCounts(builder, transaction, entryCount, queryCount,
-                        mainThreadProfileSampleCount, auxThreadProfileSampleCount);
+                        mainThreadProfileSampleCount, auxThreadProfileSampleCount,
+                        allocationProfileSampleCount);
                 traceVisitor.visitHeader(builder.build());
             }
         }
@@ -233,7 +297,7 @@ public class TraceCreator {
         public Trace.Header readHeader() {
             if (header == null) {
                 header = createTraceHeader(transaction, true, partial, captureTime, captureTick, 0,
-                        0, 0, 0);
+                        0, 0, 0, 0);
             }
             return header;
         }
@@ -258,6 +322,11 @@ public class TraceCreator {
             return update;
         }
 
+        @Override
+        public boolean incrementalEntries() {
+            return changedIndexes != null;
+        }
+
         private static long getProfileSampleCount(@Nullable Profile profile) {
             if (profile == null) {
                 return 0;
@@ -272,6 +341,34 @@ public class TraceCreator {
         }
     }
 
+    private static class EntryVisitorAdapter implements IndexedTraceEntryVisitor {
+
+        private final TraceVisitor delegate;
+
+        private EntryVisitorAdapter(TraceVisitor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void visitEntry(int index, Trace.Entry entry) {
+            delegate.visitEntry(entry);
+        }
+    }
+
+    private static class IncrementalEntryVisitorAdapter implements IndexedTraceEntryVisitor {
+
+        private final TraceVisitor delegate;
+
+        private IncrementalEntryVisitorAdapter(TraceVisitor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void visitEntry(int index, Trace.Entry entry) {
+            delegate.visitIncrementalEntry(index, entry);
+        }
+    }
+
     private static class CountingEntryVisitorWrapper implements TraceEntryVisitor {
 
         private final TraceVisitor delegate;
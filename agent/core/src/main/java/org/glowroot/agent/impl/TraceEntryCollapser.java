@@ -0,0 +1,256 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.impl;
+
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+
+import org.glowroot.agent.plugin.api.Message;
+import org.glowroot.agent.plugin.api.MessageSupplier;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+// adaptive trace entry capture, used instead of dropping all trace entries once the trace entry
+// limit is reached, which loses the tail of long running transactions (e.g. batch jobs)
+//
+// the number of linked trace entries is kept at the limit by evicting the cheapest completed trace
+// entry each time a trace entry completes past the limit, and accumulating evicted trace entries
+// into a single summary entry per parent (count and total time), so that the slowest trace entries
+// and subtrees are retained wherever they occur in the transaction
+//
+// only completed trace entries without (non-summary) children can be evicted, so the number of
+// linked trace entries can still exceed the limit, e.g. while a long running trace entry has many
+// active children, so there is also a hard limit, past which no more trace entries are captured
+// (same as when adaptive trace entry capture is not enabled)
+//
+// this is only accessed by the transaction thread
+class TraceEntryCollapser {
+
+    private final TraceEntryComponent traceEntryComponent;
+    private final int maxEntries;
+    private final int hardMaxEntries;
+
+    // min heap of completed trace entries that are eviction candidates
+    private final PriorityQueue<CollapsibleTraceEntry> candidates =
+            new PriorityQueue<CollapsibleTraceEntry>(16, CostOrdering.INSTANCE);
+
+    // key is parent trace entry
+    private @MonotonicNonNull Map<TraceEntryImpl, CollapsibleTraceEntry> summaryEntries;
+
+    // does not include the root trace entry
+    private int linkedCount;
+
+    // not volatile, so depends on memory barrier in Transaction for visibility
+    private boolean hardLimitExceeded;
+
+    TraceEntryCollapser(TraceEntryComponent traceEntryComponent, int maxEntries) {
+        this.traceEntryComponent = traceEntryComponent;
+        this.maxEntries = maxEntries;
+        hardMaxEntries = maxEntries * 2;
+    }
+
+    // this method has side effect of recording when the hard limit is exceeded
+    boolean allowAnotherEntry() {
+        if (linkedCount < hardMaxEntries) {
+            return true;
+        }
+        hardLimitExceeded = true;
+        return false;
+    }
+
+    boolean isHardLimitExceeded() {
+        return hardLimitExceeded;
+    }
+
+    // whether the trace entry is the summary entry of collapsed trace entries, which unlike other
+    // completed trace entries, continues to change as more trace entries are collapsed into it
+    static boolean isSummary(TraceEntryImpl entry) {
+        return entry.getMessageSupplier() instanceof CollapsedEntriesMessageSupplier;
+    }
+
+    void onEntryAdded(CollapsibleTraceEntry entry) {
+        linkedCount++;
+        TraceEntryImpl parentTraceEntry = entry.getParentTraceEntry();
+        if (parentTraceEntry instanceof CollapsibleTraceEntry) {
+            ((CollapsibleTraceEntry) parentTraceEntry).incrementChildCount();
+        }
+        if (entry.isAsync() || entry.getErrorMessage() != null) {
+            // async trace entries can still be active after being popped, and error entries are
+            // always worth keeping
+            pin(entry);
+        }
+    }
+
+    void onEntryCompleted(CollapsibleTraceEntry entry) {
+        if (entry.getErrorMessage() != null) {
+            pin(entry);
+            return;
+        }
+        if (entry.isPinned()) {
+            return;
+        }
+        entry.setCost(entry.getDurationNanos());
+        candidates.add(entry);
+        while (linkedCount > maxEntries) {
+            CollapsibleTraceEntry candidate = candidates.poll();
+            if (candidate == null) {
+                return;
+            }
+            if (isEvictable(candidate)) {
+                evict(candidate);
+            } else if (!candidate.isPinned()) {
+                // re-queued once its children have been evicted, see onChildEvicted()
+                candidate.setWaitingForChildren(true);
+            }
+        }
+    }
+
+    // pins the trace entry and its ancestors
+    void pin(TraceEntryImpl entry) {
+        TraceEntryImpl curr = entry;
+        while (curr instanceof CollapsibleTraceEntry) {
+            CollapsibleTraceEntry collapsibleEntry = (CollapsibleTraceEntry) curr;
+            if (collapsibleEntry.isPinned()) {
+                // ancestors are already pinned
+                return;
+            }
+            collapsibleEntry.pin();
+            curr = collapsibleEntry.getParentTraceEntry();
+        }
+    }
+
+    private boolean isEvictable(CollapsibleTraceEntry entry) {
+        if (entry.isPinned()) {
+            return false;
+        }
+        int childCount = entry.getChildCount();
+        // the only remaining child can be the summary entry of its own collapsed children
+        return childCount == 0 || childCount == 1 && summaryEntries != null
+                && summaryEntries.containsKey(entry);
+    }
+
+    private void evict(CollapsibleTraceEntry entry) {
+        int collapsedCount = 1;
+        if (entry.getChildCount() == 1) {
+            CollapsibleTraceEntry ownSummaryEntry = checkNotNull(checkNotNull(summaryEntries)
+                    .remove(entry));
+            collapsedCount += getMessageSupplier(ownSummaryEntry).count;
+            unlink(ownSummaryEntry);
+        }
+        if (summaryEntries == null) {
+            summaryEntries = new IdentityHashMap<TraceEntryImpl, CollapsibleTraceEntry>();
+        }
+        TraceEntryImpl parentTraceEntry = checkNotNull(entry.getParentTraceEntry());
+        CollapsibleTraceEntry summaryEntry = summaryEntries.get(parentTraceEntry);
+        if (summaryEntry == null) {
+            summaryEntry = new CollapsibleTraceEntry(entry.getThreadContext(), parentTraceEntry,
+                    entry.getPrevTraceEntry(), new CollapsedEntriesMessageSupplier(), null, 0,
+                    entry.getStartTick(), null, null);
+            summaryEntry.markCompleted(null, entry.getEndTick());
+            // summary entry takes the place of the first evicted trace entry
+            replace(entry, summaryEntry);
+            summaryEntries.put(parentTraceEntry, summaryEntry);
+        } else {
+            unlink(entry);
+            summaryEntry.expandCompletedSpan(entry.getStartTick(), entry.getEndTick());
+        }
+        CollapsedEntriesMessageSupplier messageSupplier = getMessageSupplier(summaryEntry);
+        messageSupplier.count += collapsedCount;
+        messageSupplier.totalNanos += entry.getCost();
+        onChildEvicted(parentTraceEntry);
+    }
+
+    private void onChildEvicted(TraceEntryImpl parentTraceEntry) {
+        if (!(parentTraceEntry instanceof CollapsibleTraceEntry)) {
+            return;
+        }
+        CollapsibleTraceEntry parentEntry = (CollapsibleTraceEntry) parentTraceEntry;
+        if (parentEntry.isWaitingForChildren() && isEvictable(parentEntry)) {
+            parentEntry.setWaitingForChildren(false);
+            candidates.add(parentEntry);
+        }
+    }
+
+    private void unlink(CollapsibleTraceEntry entry) {
+        TraceEntryImpl prevTraceEntry = entry.getPrevTraceEntry();
+        TraceEntryImpl nextTraceEntry = entry.getNextTraceEntry();
+        // the next trace entry of the unlinked trace entry is left as is, in case another thread
+        // is currently reading through it
+        prevTraceEntry.setNextTraceEntry(nextTraceEntry);
+        if (nextTraceEntry == null) {
+            traceEntryComponent.setTailEntry(prevTraceEntry);
+        } else {
+            ((CollapsibleTraceEntry) nextTraceEntry).setPrevTraceEntry(prevTraceEntry);
+        }
+        TraceEntryImpl parentTraceEntry = entry.getParentTraceEntry();
+        if (parentTraceEntry instanceof CollapsibleTraceEntry) {
+            ((CollapsibleTraceEntry) parentTraceEntry).decrementChildCount();
+        }
+        linkedCount--;
+    }
+
+    private void replace(CollapsibleTraceEntry entry, CollapsibleTraceEntry replacement) {
+        TraceEntryImpl nextTraceEntry = entry.getNextTraceEntry();
+        replacement.setNextTraceEntry(nextTraceEntry);
+        entry.getPrevTraceEntry().setNextTraceEntry(replacement);
+        if (nextTraceEntry == null) {
+            traceEntryComponent.setTailEntry(replacement);
+        } else {
+            ((CollapsibleTraceEntry) nextTraceEntry).setPrevTraceEntry(replacement);
+        }
+    }
+
+    private static CollapsedEntriesMessageSupplier getMessageSupplier(
+            CollapsibleTraceEntry summaryEntry) {
+        return (CollapsedEntriesMessageSupplier) checkNotNull(summaryEntry.getMessageSupplier());
+    }
+
+    private static class CollapsedEntriesMessageSupplier extends MessageSupplier {
+
+        // not volatile, so depends on memory barrier in Transaction for visibility
+        private int count;
+        private long totalNanos;
+
+        @Override
+        public Message get() {
+            return Message.create("collapsed " + count + " faster trace entries to stay within the"
+                    + " trace entry limit, total " + String.format(Locale.ENGLISH, "%.1f",
+                            totalNanos / 1000000.0)
+                    + " milliseconds");
+        }
+    }
+
+    private static class CostOrdering implements Comparator<CollapsibleTraceEntry> {
+
+        private static final CostOrdering INSTANCE = new CostOrdering();
+
+        // cheapest first, and for equal cost, the later started first so that children are
+        // evicted before their parent
+        @Override
+        public int compare(CollapsibleTraceEntry left, CollapsibleTraceEntry right) {
+            int result = Long.compare(left.getCost(), right.getCost());
+            if (result != 0) {
+                return result;
+            }
+            return Long.compare(right.getStartTick(), left.getStartTick());
+        }
+    }
+}
@@ -24,6 +24,8 @@ import org.glowroot.agent.model.ErrorMessage;
 import org.glowroot.agent.model.QueryData;
 import org.glowroot.agent.plugin.api.MessageSupplier;
 
+import static org.glowroot.agent.util.Checkers.castInitialized;
+
 // this supports updating by a single thread and reading by multiple threads
 class TraceEntryComponent {
 
@@ -43,14 +45,29 @@ class TraceEntryComponent {
 
     private TraceEntryImpl tailEntry;
 
+    // only non-null for main thread context when trace entry pooling is enabled
+    private final @Nullable TraceEntryPool traceEntryPool;
+
+    // only non-null for main thread context when adaptive trace entry capture is enabled
+    private final @Nullable TraceEntryCollapser traceEntryCollapser;
+
+    // collapsingEntryLimit 0 means adaptive trace entry capture is disabled
     TraceEntryComponent(ThreadContextImpl threadContext, MessageSupplier messageSupplier,
-            TimerImpl timer, long startTick) {
+            TimerImpl timer, long startTick, @Nullable TraceEntryPool traceEntryPool,
+            int collapsingEntryLimit) {
         this.threadContext = threadContext;
         this.startTick = startTick;
+        this.traceEntryPool = traceEntryPool;
         rootEntry = new TraceEntryImpl(threadContext, null, messageSupplier, null, 0, startTick,
                 timer, null);
         activeEntry = rootEntry;
         tailEntry = rootEntry;
+        if (collapsingEntryLimit > 0) {
+            traceEntryCollapser =
+                    new TraceEntryCollapser(castInitialized(this), collapsingEntryLimit);
+        } else {
+            traceEntryCollapser = null;
+        }
     }
 
     TraceEntryImpl getRootEntry() {
@@ -72,8 +89,24 @@ class TraceEntryComponent {
     TraceEntryImpl pushEntry(long startTick, Object messageSupplier, TimerImpl syncTimer,
             @Nullable AsyncTimer asyncTimer, @Nullable QueryData queryData,
             long queryExecutionCount) {
-        TraceEntryImpl entry = new TraceEntryImpl(threadContext, activeEntry, messageSupplier,
-                queryData, queryExecutionCount, startTick, syncTimer, asyncTimer);
+        if (traceEntryCollapser != null) {
+            CollapsibleTraceEntry entry = new CollapsibleTraceEntry(threadContext, activeEntry,
+                    tailEntry, messageSupplier, queryData, queryExecutionCount, startTick,
+                    syncTimer, asyncTimer);
+            tailEntry.setNextTraceEntry(entry);
+            tailEntry = entry;
+            activeEntry = entry;
+            traceEntryCollapser.onEntryAdded(entry);
+            return entry;
+        }
+        TraceEntryImpl entry = traceEntryPool == null ? null : traceEntryPool.poll();
+        if (entry == null) {
+            entry = new TraceEntryImpl(threadContext, activeEntry, messageSupplier, queryData,
+                    queryExecutionCount, startTick, syncTimer, asyncTimer);
+        } else {
+            entry.reinit(threadContext, activeEntry, messageSupplier, queryData,
+                    queryExecutionCount, startTick, syncTimer, asyncTimer);
+        }
         tailEntry.setNextTraceEntry(entry);
         tailEntry = entry;
         activeEntry = entry;
@@ -88,6 +121,8 @@ class TraceEntryComponent {
         if (entry == rootEntry) {
             this.endTick = endTick;
             this.completed = true;
+        } else if (traceEntryCollapser != null) {
+            traceEntryCollapser.onEntryCompleted((CollapsibleTraceEntry) entry);
         }
     }
 
@@ -100,6 +135,17 @@ class TraceEntryComponent {
 
     TraceEntryImpl addErrorEntry(long startTick, long endTick, @Nullable Object messageSupplier,
             @Nullable QueryData queryData, ErrorMessage errorMessage) {
+        if (traceEntryCollapser != null) {
+            // see TraceEntryImpl.createCompletedErrorEntry() for explanation of
+            // queryExecutionCount -1
+            CollapsibleTraceEntry entry = new CollapsibleTraceEntry(threadContext, activeEntry,
+                    tailEntry, messageSupplier, queryData, -1, startTick, null, null);
+            entry.markCompleted(errorMessage, endTick);
+            tailEntry.setNextTraceEntry(entry);
+            tailEntry = entry;
+            traceEntryCollapser.onEntryAdded(entry);
+            return entry;
+        }
         TraceEntryImpl entry = TraceEntryImpl.createCompletedErrorEntry(threadContext, activeEntry,
                 messageSupplier, queryData, errorMessage, startTick, endTick);
         tailEntry.setNextTraceEntry(entry);
@@ -115,6 +161,33 @@ class TraceEntryComponent {
         return tailEntry;
     }
 
+    // only called by TraceEntryCollapser when unlinking the tail entry
+    void setTailEntry(TraceEntryImpl tailEntry) {
+        this.tailEntry = tailEntry;
+    }
+
+    boolean isCollapsing() {
+        return traceEntryCollapser != null;
+    }
+
+    // this method has side effect of recording when the collapsing hard limit is exceeded
+    boolean allowAnotherCollapsibleEntry() {
+        return traceEntryCollapser == null || traceEntryCollapser.allowAnotherEntry();
+    }
+
+    boolean isCollapsingHardLimitExceeded() {
+        return traceEntryCollapser != null && traceEntryCollapser.isHardLimitExceeded();
+    }
+
+    // auxiliary thread contexts hold references to the active and tail entries in order to be
+    // placed correctly in the trace, so these must not be evicted
+    void pinActiveAndTailEntries() {
+        if (traceEntryCollapser != null) {
+            traceEntryCollapser.pin(activeEntry);
+            traceEntryCollapser.pin(tailEntry);
+        }
+    }
+
     boolean isEmpty() {
         return rootEntry == tailEntry;
     }
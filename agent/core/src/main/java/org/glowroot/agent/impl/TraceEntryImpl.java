@@ -57,14 +57,15 @@ class TraceEntryImpl extends QueryEntryBase implements AsyncQueryEntry, Timer {
     private static final Logger logger = LoggerFactory.getLogger(TraceEntryImpl.class);
     private static final Ticker ticker = Tickers.getTicker();
 
-    private final ThreadContextImpl threadContext;
-    private final @Nullable TraceEntryImpl parentTraceEntry;
-    private final @Nullable Object messageSupplier;
+    // these fields are not final since trace entries can be recycled, see TraceEntryPool
+    private ThreadContextImpl threadContext;
+    private @Nullable TraceEntryImpl parentTraceEntry;
+    private @Nullable Object messageSupplier;
 
     // volatile so it can be set from another thread (needed for async trace entries)
     private volatile @Nullable ErrorMessage errorMessage;
 
-    private final long startTick;
+    private long startTick;
 
     // these fields are not volatile, so depends on memory barrier in Transaction for visibility
     private long revisedStartTick;
@@ -76,8 +77,8 @@ class TraceEntryImpl extends QueryEntryBase implements AsyncQueryEntry, Timer {
     private @Nullable TraceEntryImpl nextTraceEntry;
 
     // only null for trace entries added using addEntryEntry()
-    private final @Nullable TimerImpl syncTimer;
-    private final @Nullable AsyncTimer asyncTimer;
+    private @Nullable TimerImpl syncTimer;
+    private @Nullable AsyncTimer asyncTimer;
     // not volatile, so depends on memory barrier in Transaction for visibility
     private @Nullable ImmutableList<StackTraceElement> locationStackTrace;
 
@@ -95,10 +96,7 @@ class TraceEntryImpl extends QueryEntryBase implements AsyncQueryEntry, Timer {
         // the queryData in the constructor below
         TraceEntryImpl entry = new TraceEntryImpl(threadContext, parentTraceEntry,
                 messageSupplier, queryData, -1, startTick, null, null);
-        entry.errorMessage = errorMessage;
-        entry.endTick = endTick;
-        entry.selfNestingLevel = 0;
-        entry.initialComplete = true;
+        entry.markCompleted(errorMessage, endTick);
         return entry;
     }
 
@@ -117,6 +115,70 @@ class TraceEntryImpl extends QueryEntryBase implements AsyncQueryEntry, Timer {
         selfNestingLevel = 1;
     }
 
+    // re-initializes a trace entry that was obtained from TraceEntryPool, this mirrors the
+    // constructor above (and the field initial values)
+    void reinit(ThreadContextImpl threadContext, TraceEntryImpl parentTraceEntry,
+            Object messageSupplier, @Nullable QueryData queryData, long queryExecutionCount,
+            long startTick, TimerImpl syncTimer, @Nullable AsyncTimer asyncTimer) {
+        reinitQueryEntry(queryData, startTick, queryExecutionCount);
+        this.threadContext = threadContext;
+        this.parentTraceEntry = parentTraceEntry;
+        this.messageSupplier = messageSupplier;
+        this.startTick = startTick;
+        this.syncTimer = syncTimer;
+        this.asyncTimer = asyncTimer;
+        revisedStartTick = startTick;
+        selfNestingLevel = 1;
+        initialComplete = false;
+    }
+
+    void markCompleted(@Nullable ErrorMessage errorMessage, long endTick) {
+        this.errorMessage = errorMessage;
+        this.endTick = endTick;
+        selfNestingLevel = 0;
+        initialComplete = true;
+    }
+
+    // only valid once the trace entry has completed
+    long getDurationNanos() {
+        return endTick - revisedStartTick;
+    }
+
+    // this is only used for summary entries of collapsed trace entries, see TraceEntryCollapser
+    void expandCompletedSpan(long startTick, long endTick) {
+        if (Tickers.lessThanOrEqual(startTick, this.startTick)) {
+            this.startTick = startTick;
+            revisedStartTick = startTick;
+        }
+        if (Tickers.lessThanOrEqual(this.endTick, endTick)) {
+            this.endTick = endTick;
+        }
+    }
+
+    // only trace entries that were never returned to a plugin are recycled (i.e. those added using
+    // addErrorEntry()), since a plugin can hold on to any trace entry that it was given past the end
+    // of the transaction, and there is no way to tell a later call from that plugin apart from a
+    // call from the plugin that the trace entry was re-used for
+    boolean isRecyclable() {
+        return syncTimer == null && asyncTimer == null && getQueryData() == null && isCompleted();
+    }
+
+    // clears references so that a trace entry sitting in TraceEntryPool does not retain objects
+    // from the transaction it was reclaimed from (threadContext is the exception since it is
+    // non-null, and it is overwritten when the trace entry is re-initialized)
+    void clearForRecycling() {
+        reinitQueryEntry(null, 0, 0);
+        parentTraceEntry = null;
+        messageSupplier = null;
+        errorMessage = null;
+        syncTimer = null;
+        asyncTimer = null;
+        endTick = 0;
+        locationStackTrace = null;
+        locationStackTraceThreshold = 0;
+        extendedTimer = null;
+    }
+
     @Override
     public @Nullable Object getMessageSupplier() {
         return messageSupplier;
@@ -137,7 +199,7 @@ class TraceEntryImpl extends QueryEntryBase implements AsyncQueryEntry, Timer {
         long offsetNanos = startTick - transactionStartTick;
         long durationNanos;
         boolean active;
-        if (isCompleted() && Tickers.lessThanOrEqual(endTick, captureTick)) {
+        if (isCompleted(captureTick)) {
             // total time is calculated relative to revised start tick
             durationNanos = endTick - revisedStartTick;
             active = false;
@@ -208,6 +270,10 @@ class TraceEntryImpl extends QueryEntryBase implements AsyncQueryEntry, Timer {
         return startTick;
     }
 
+    long getEndTick() {
+        return endTick;
+    }
+
     @Override
     public void end() {
         if (initialComplete) {
@@ -402,7 +468,7 @@ class TraceEntryImpl extends QueryEntryBase implements AsyncQueryEntry, Timer {
         return nextTraceEntry;
     }
 
-    void setNextTraceEntry(TraceEntryImpl nextTraceEntry) {
+    void setNextTraceEntry(@Nullable TraceEntryImpl nextTraceEntry) {
         this.nextTraceEntry = nextTraceEntry;
     }
 
@@ -411,14 +477,24 @@ class TraceEntryImpl extends QueryEntryBase implements AsyncQueryEntry, Timer {
         return syncTimer != null && syncTimer.getName().equals("auxiliary thread");
     }
 
-    private boolean isCompleted() {
+    boolean isCompleted() {
         // initialComplete is needed for async trace entries which have selfNestingLevel = 0 after
         // calling stopSyncTimer(), but are not complete until end() is called
         return initialComplete && selfNestingLevel == 0;
     }
 
+    // whether the trace entry had completed as of the capture tick
+    boolean isCompleted(long captureTick) {
+        return isCompleted() && Tickers.lessThanOrEqual(endTick, captureTick);
+    }
+
+    // -1 means no row navigation has been attempted
+    long getRowCountIfNavigated() {
+        return isRowNavigationAttempted() ? getRowCount() : -1;
+    }
+
     @EnsuresNonNullIf(expression = "asyncTimer", result = true)
-    private boolean isAsync() {
+    boolean isAsync() {
         return asyncTimer != null;
     }
 
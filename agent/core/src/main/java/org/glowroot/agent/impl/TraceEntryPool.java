@@ -0,0 +1,96 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.impl;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+// per-thread pool of trace entries, which are reclaimed from prior transactions on the same thread
+// once the transaction processor has determined that those transactions will not be captured as
+// traces (see Transaction.releaseTraceEntries())
+//
+// only trace entries that were never returned to a plugin are reclaimed, see
+// TraceEntryImpl.isRecyclable()
+//
+// this is only accessed by the thread that owns it, so needs no synchronization, the hand off from
+// the transaction processor is via the volatile state in Transaction
+class TraceEntryPool {
+
+    // transactions on this thread that have started but have not yet been reclaimed
+    private static final int MAX_PENDING_TRANSACTIONS = 8;
+
+    private final Queue<Transaction> pendingTransactions =
+            new ArrayDeque<Transaction>(MAX_PENDING_TRANSACTIONS);
+
+    // linked via TraceEntryImpl.nextTraceEntry
+    private @Nullable TraceEntryImpl head;
+    private int size;
+
+    void onTransactionStart(Transaction transaction, int maxSize) {
+        Iterator<Transaction> i = pendingTransactions.iterator();
+        while (i.hasNext()) {
+            Transaction pendingTransaction = i.next();
+            if (pendingTransaction.isTraceEntriesRecyclable()) {
+                reclaim(pendingTransaction, maxSize);
+                i.remove();
+            } else if (pendingTransaction.isTraceEntriesRetained()) {
+                i.remove();
+            }
+        }
+        if (pendingTransactions.size() == MAX_PENDING_TRANSACTIONS) {
+            // give up on the oldest, its trace entries will be garbage collected as usual
+            pendingTransactions.remove();
+        }
+        pendingTransactions.add(transaction);
+    }
+
+    @Nullable
+    TraceEntryImpl poll() {
+        TraceEntryImpl entry = head;
+        if (entry != null) {
+            head = entry.getNextTraceEntry();
+            entry.setNextTraceEntry(null);
+            size--;
+        }
+        return entry;
+    }
+
+    private void reclaim(Transaction transaction, int maxSize) {
+        // root entry is never recycled since it is returned from startTransaction()
+        TraceEntryImpl rootEntry = transaction.getMainThreadContext().getRootEntry();
+        TraceEntryImpl entry = rootEntry.getNextTraceEntry();
+        // unlink the prior transaction's trace entries, so that neither its root entry nor any of
+        // its non-recycled trace entries link into trace entries that are being re-used
+        rootEntry.setNextTraceEntry(null);
+        while (entry != null && size < maxSize) {
+            TraceEntryImpl next = entry.getNextTraceEntry();
+            // trace entries that were returned to plugins are not recycled, see
+            // TraceEntryImpl.isRecyclable()
+            if (entry.isRecyclable()) {
+                entry.clearForRecycling();
+                entry.setNextTraceEntry(head);
+                head = entry;
+                size++;
+            } else {
+                entry.setNextTraceEntry(null);
+            }
+            entry = next;
+        }
+    }
+}
@@ -0,0 +1,271 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.impl;
+
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.immutables.value.Value;
+
+import org.glowroot.common.util.Styles;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+// bounds the rate at which slow and error traces are stored per transaction type / transaction
+// name, e.g. during an incident when most transactions are suddenly slow or failing
+//
+// traces are stored right away as long as there are tokens left in the transaction's token bucket
+// (head-based sampling), and once the tokens run out, the slowest transactions plus a uniformly
+// random (reservoir) sample of the remaining transactions are held and stored at the end of the
+// interval (tail-based sampling)
+//
+// the held traces are selected across all transaction types / transaction names (a global top N
+// plus reservoir), and the total number of held traces is capped by what the trace collector can
+// actually queue, so that the slowest traces are never dropped by back pressure at the end of the
+// interval, and so that the memory retained by held traces (which include their trace entries and
+// profiles) stays bounded during an incident
+//
+// transactions that are sampled out are still reflected in the aggregates, since aggregates are
+// collected for every transaction regardless of whether it is stored as a trace
+class TraceSampler {
+
+    // 0 means adaptive trace sampling is disabled
+    private static final int TRACES_PER_MINUTE =
+            Integer.getInteger("glowroot.traceSampling.tracesPerMinute", 0);
+
+    // these are per interval across all transaction types / transaction names
+    private static final int SLOWEST_COUNT =
+            Integer.getInteger("glowroot.traceSampling.slowestCount", 10);
+
+    private static final int RESERVOIR_SIZE =
+            Integer.getInteger("glowroot.traceSampling.reservoirSize", 10);
+
+    // cap memory consumption in case of a large number of transaction names, transactions beyond
+    // this limit share a single token bucket per transaction type
+    private static final int MAX_BUCKETS = 500;
+
+    private static final long INTERVAL_NANOS = MINUTES.toNanos(1);
+
+    private static final Comparator<HeldTrace> DURATION_ORDERING = new Comparator<HeldTrace>() {
+        @Override
+        public int compare(HeldTrace left, HeldTrace right) {
+            return Long.compare(getDurationNanos(left), getDurationNanos(right));
+        }
+    };
+
+    private final int tracesPerMinute;
+    private final int slowestCount;
+    private final int reservoirSize;
+    private final Ticker ticker;
+    private final Random random;
+
+    private final Object lock = new Object();
+
+    @GuardedBy("lock")
+    private final Map<BucketKey, Bucket> buckets = Maps.newHashMap();
+    @GuardedBy("lock")
+    private long intervalStartTick;
+
+    // ordered from fastest to slowest so that the fastest is evicted first
+    @GuardedBy("lock")
+    private final PriorityQueue<HeldTrace> slowest =
+            new PriorityQueue<HeldTrace>(11, DURATION_ORDERING);
+    @GuardedBy("lock")
+    private final List<HeldTrace> reservoir = Lists.newArrayList();
+    @GuardedBy("lock")
+    private long reservoirCandidateCount;
+
+    @VisibleForTesting
+    TraceSampler(int tracesPerMinute, int slowestCount, int reservoirSize, Ticker ticker,
+            Random random) {
+        this.tracesPerMinute = tracesPerMinute;
+        this.slowestCount = slowestCount;
+        this.reservoirSize = reservoirSize;
+        this.ticker = ticker;
+        this.random = random;
+        intervalStartTick = ticker.read();
+    }
+
+    // maxHeldTraces is the number of completed traces that can be queued at once at the end of
+    // each interval, the slowest count takes precedence over the reservoir size when both do not
+    // fit
+    static @Nullable TraceSampler create(Ticker ticker, int maxHeldTraces) {
+        if (TRACES_PER_MINUTE <= 0) {
+            return null;
+        }
+        int slowestCount = Math.min(SLOWEST_COUNT, maxHeldTraces);
+        int reservoirSize = Math.min(RESERVOIR_SIZE, maxHeldTraces - slowestCount);
+        return new TraceSampler(TRACES_PER_MINUTE, slowestCount, reservoirSize, ticker,
+                new Random());
+    }
+
+    // returns true if the transaction should be stored right away, otherwise the sampler takes
+    // ownership of the transaction, and will either return it from a subsequent call to
+    // flushIfIntervalEnded() or release its trace entries
+    boolean sample(Transaction transaction, boolean slow) {
+        long currentTick = ticker.read();
+        synchronized (lock) {
+            Bucket bucket = getOrCreateBucket(transaction);
+            bucket.refill(currentTick);
+            if (bucket.tokens >= 1) {
+                bucket.tokens--;
+                return true;
+            }
+            hold(ImmutableHeldTrace.of(transaction, slow));
+            return false;
+        }
+    }
+
+    // returns the held traces, slowest first followed by the reservoir sample, so that if not all
+    // of them can be stored, the slowest are stored first
+    List<HeldTrace> flushIfIntervalEnded() {
+        long currentTick = ticker.read();
+        synchronized (lock) {
+            if (currentTick - intervalStartTick < INTERVAL_NANOS) {
+                return ImmutableList.of();
+            }
+            intervalStartTick = currentTick;
+            Iterator<Bucket> i = buckets.values().iterator();
+            while (i.hasNext()) {
+                Bucket bucket = i.next();
+                bucket.refill(currentTick);
+                if (bucket.tokens == tracesPerMinute) {
+                    // idle, so no need to retain the bucket
+                    i.remove();
+                }
+            }
+            List<HeldTrace> heldTraces = Lists.newArrayList(slowest);
+            Collections.sort(heldTraces, Collections.reverseOrder(DURATION_ORDERING));
+            heldTraces.addAll(reservoir);
+            slowest.clear();
+            reservoir.clear();
+            reservoirCandidateCount = 0;
+            return heldTraces;
+        }
+    }
+
+    List<Transaction> getHeldTransactions() {
+        List<Transaction> transactions = Lists.newArrayList();
+        synchronized (lock) {
+            for (HeldTrace heldTrace : slowest) {
+                transactions.add(heldTrace.transaction());
+            }
+            for (HeldTrace heldTrace : reservoir) {
+                transactions.add(heldTrace.transaction());
+            }
+        }
+        return transactions;
+    }
+
+    @GuardedBy("lock")
+    private Bucket getOrCreateBucket(Transaction transaction) {
+        String transactionType = transaction.getTransactionType();
+        BucketKey key = ImmutableBucketKey.of(transactionType, transaction.getTransactionName());
+        Bucket bucket = buckets.get(key);
+        if (bucket != null) {
+            return bucket;
+        }
+        if (buckets.size() >= MAX_BUCKETS) {
+            key = ImmutableBucketKey.of(transactionType, "");
+            bucket = buckets.get(key);
+            if (bucket != null) {
+                return bucket;
+            }
+        }
+        bucket = new Bucket();
+        bucket.lastRefillTick = ticker.read();
+        buckets.put(key, bucket);
+        return bucket;
+    }
+
+    @GuardedBy("lock")
+    private void hold(HeldTrace heldTrace) {
+        HeldTrace candidate = heldTrace;
+        if (slowestCount > 0) {
+            if (slowest.size() < slowestCount) {
+                slowest.add(candidate);
+                return;
+            }
+            HeldTrace fastestOfSlowest = checkNotNull(slowest.peek());
+            if (getDurationNanos(candidate) > getDurationNanos(fastestOfSlowest)) {
+                slowest.poll();
+                slowest.add(candidate);
+                candidate = fastestOfSlowest;
+            }
+        }
+        // reservoir sampling ("algorithm R") over the remaining transactions in the interval
+        reservoirCandidateCount++;
+        if (reservoir.size() < reservoirSize) {
+            reservoir.add(candidate);
+            return;
+        }
+        long index = (long) (random.nextDouble() * reservoirCandidateCount);
+        if (index < reservoirSize) {
+            HeldTrace replaced = reservoir.set((int) index, candidate);
+            replaced.transaction().releaseTraceEntries();
+        } else {
+            candidate.transaction().releaseTraceEntries();
+        }
+    }
+
+    private static long getDurationNanos(HeldTrace heldTrace) {
+        return heldTrace.transaction().getDurationNanos();
+    }
+
+    @Value.Immutable
+    @Styles.AllParameters
+    interface HeldTrace {
+        Transaction transaction();
+        boolean slow();
+    }
+
+    @Value.Immutable
+    @Styles.AllParameters
+    interface BucketKey {
+        String transactionType();
+        String transactionName();
+    }
+
+    private class Bucket {
+
+        private double tokens = tracesPerMinute;
+        private long lastRefillTick;
+
+        private void refill(long currentTick) {
+            long elapsedNanos = currentTick - lastRefillTick;
+            if (elapsedNanos <= 0) {
+                return;
+            }
+            tokens = Math.min(tracesPerMinute,
+                    tokens + elapsedNanos * (double) tracesPerMinute / INTERVAL_NANOS);
+            lastRefillTick = currentTick;
+        }
+    }
+}
@@ -107,6 +107,13 @@ public class Transaction {
 
     private static final Random random = new Random();
 
+    private static final int TRACE_ENTRIES_PENDING = 0;
+    // trace entries are being (or may have been) read by another thread, or are part of a trace
+    // that is being stored, so they must not be recycled
+    private static final int TRACE_ENTRIES_RETAINED = 1;
+    // trace entries can be reclaimed by the TraceEntryPool of the transaction's thread
+    private static final int TRACE_ENTRIES_RECYCLABLE = 2;
+
     private volatile @Nullable String traceId;
 
     private final long startTime;
@@ -144,6 +151,7 @@ public class Transaction {
     // stack trace data constructed from profiling
     private volatile @MonotonicNonNull ThreadProfile mainThreadProfile;
     private volatile @MonotonicNonNull ThreadProfile auxThreadProfile;
+    private volatile @MonotonicNonNull ThreadProfile allocationProfile;
 
     // overrides general store threshold
     // -1 means don't override the general store threshold
@@ -156,6 +164,10 @@ public class Transaction {
 
     private volatile boolean partiallyStored;
 
+    // the trace entries included in the prior partial store, only accessed by the trace collector
+    // thread, see TraceCreator.createTraceReaderForPartialStore()
+    private @Nullable StoredTraceEntries storedTraceEntries;
+
     private volatile long captureTime;
 
     // memory barrier is used to ensure memory visibility of entries and timers at key points,
@@ -178,6 +190,15 @@ public class Transaction {
 
     private final ThreadContextImpl mainThreadContext;
 
+    // only non-null when trace entry pooling is enabled
+    private final @Nullable TraceEntryPool traceEntryPool;
+    private final boolean adaptiveTraceEntryCapture;
+    // only non-null when this transaction is sampled for measuring agent overhead
+    private final @Nullable AgentOverhead agentOverhead;
+    // transitions are made under synchronized (this), see releaseTraceEntries() and
+    // retainTraceEntries()
+    private volatile int traceEntriesState;
+
     @GuardedBy("mainThreadContext")
     private @MonotonicNonNull List<ThreadContextImpl> auxThreadContexts;
     @GuardedBy("mainThreadContext")
@@ -220,7 +241,9 @@ public class Transaction {
             CompletionCallback completionCallback, Ticker ticker,
             TransactionRegistry transactionRegistry, TransactionService transactionService,
             ConfigService configService, ThreadContextThreadLocal.Holder threadContextHolder,
-            int rootNestingGroupId, int rootSuppressionKeyId) {
+            int rootNestingGroupId, int rootSuppressionKeyId,
+            @Nullable TraceEntryPool traceEntryPool, boolean adaptiveTraceEntryCapture,
+            @Nullable AgentOverhead agentOverhead) {
         this.startTime = startTime;
         this.startTick = startTick;
         this.transactionType = transactionType;
@@ -234,6 +257,10 @@ public class Transaction {
         this.transactionRegistry = transactionRegistry;
         this.transactionService = transactionService;
         this.configService = configService;
+        // these must be set prior to constructing the main thread context
+        this.traceEntryPool = traceEntryPool;
+        this.adaptiveTraceEntryCapture = adaptiveTraceEntryCapture;
+        this.agentOverhead = agentOverhead;
         mainThreadContext = new ThreadContextImpl(castInitialized(this), null, null,
                 messageSupplier, timerName, startTick, captureThreadStats, maxQueryAggregates,
                 maxServiceCallAggregates, threadAllocatedBytes, false, ticker, threadContextHolder,
@@ -507,8 +534,67 @@ public class Transaction {
         return entryVisitor.count;
     }
 
+    // captures the trace entries in the same order as visitEntries(), but without building their
+    // protobuf messages, see StoredTraceEntries
+    StoredTraceEntries captureEntries(long captureTick) {
+        StoredTraceEntries entries = new StoredTraceEntries(captureTick);
+        ListMultimap<TraceEntryImpl, TraceEntryImpl> parentChildMap =
+                buildParentChildMap(captureTick);
+        if (parentChildMap != null) {
+            addChildEntries(mainThreadContext.getRootEntry(), parentChildMap, 0, entries, async);
+        }
+        return entries;
+    }
+
+    // visits the captured trace entries at the given indexes (or all of them if indexes is null)
+    void visitEntries(StoredTraceEntries entries, @Nullable List<Integer> indexes,
+            long captureTick, IndexedTraceEntryVisitor entryVisitor) {
+        synchronized (sharedQueryTextCollectionLock) {
+            if (sharedQueryTextCollection == null) {
+                sharedQueryTextCollection = new SharedQueryTextCollectionImpl();
+            }
+            IndexingTraceEntryVisitor indexingEntryVisitor =
+                    new IndexingTraceEntryVisitor(entryVisitor);
+            if (indexes == null) {
+                for (int i = 0; i < entries.size(); i++) {
+                    visitEntry(entries, i, captureTick, indexingEntryVisitor,
+                            sharedQueryTextCollection);
+                }
+            } else {
+                for (int index : indexes) {
+                    visitEntry(entries, index, captureTick, indexingEntryVisitor,
+                            sharedQueryTextCollection);
+                }
+            }
+        }
+    }
+
+    private void visitEntry(StoredTraceEntries entries, int index, long captureTick,
+            IndexingTraceEntryVisitor entryVisitor,
+            SharedQueryTextCollection sharedQueryTextCollection) {
+        entryVisitor.index = index;
+        entries.getEntry(index).accept(entries.getDepth(index), startTick, captureTick,
+                entryVisitor, sharedQueryTextCollection);
+    }
+
     private void visitEntriesInternal(long captureTick, TraceEntryVisitor entryVisitor,
             SharedQueryTextCollection sharedQueryTextCollection) {
+        ListMultimap<TraceEntryImpl, TraceEntryImpl> parentChildMap =
+                buildParentChildMap(captureTick);
+        if (parentChildMap == null) {
+            return;
+        }
+        addProtobufChildEntries(mainThreadContext.getRootEntry(), parentChildMap, startTick,
+                captureTick, 0, entryVisitor, sharedQueryTextCollection, async);
+    }
+
+    private @Nullable ListMultimap<TraceEntryImpl, TraceEntryImpl> buildParentChildMap(
+            long captureTick) {
+        if (traceEntryPool != null && !retainTraceEntries()) {
+            // trace entries have been (or are about to be) recycled, this can only happen after
+            // the transaction has been removed from the active transactions and was not stored
+            return null;
+        }
         memoryBarrierRead();
         ListMultimap<TraceEntryImpl, ThreadContextImpl> priorEntryChildThreadContextMap =
                 buildPriorEntryChildThreadContextMap();
@@ -525,8 +611,7 @@ public class Transaction {
         }
         new ParentChildMapTrimmer(mainThreadContext.getRootEntry(), parentChildMap, captureTick)
                 .traverse();
-        addProtobufChildEntries(mainThreadContext.getRootEntry(), parentChildMap, startTick,
-                captureTick, 0, entryVisitor, sharedQueryTextCollection, async);
+        return parentChildMap;
     }
 
     long getMainThreadProfileSampleCount() {
@@ -579,6 +664,26 @@ public class Transaction {
                 && auxThreadProfile.isSampleLimitExceeded();
     }
 
+    long getAllocationProfileSampleCount() {
+        if (allocationProfile == null) {
+            return 0;
+        } else {
+            return allocationProfile.getSampleCount();
+        }
+    }
+
+    public @Nullable Profile getAllocationProfileProtobuf() {
+        if (allocationProfile == null) {
+            return null;
+        }
+        return allocationProfile.toProto();
+    }
+
+    boolean isAllocationProfileSampleLimitExceeded(long profileSampleCount) {
+        return profileSampleCount >= maxProfileSamples && allocationProfile != null
+                && allocationProfile.isSampleLimitExceeded();
+    }
+
     int getSlowThresholdMillisOverride() {
         return slowThresholdMillis;
     }
@@ -681,6 +786,15 @@ public class Transaction {
         partiallyStored = true;
     }
 
+    @Nullable
+    StoredTraceEntries getStoredTraceEntries() {
+        return storedTraceEntries;
+    }
+
+    void setStoredTraceEntries(@Nullable StoredTraceEntries storedTraceEntries) {
+        this.storedTraceEntries = storedTraceEntries;
+    }
+
     void setTransactionEntry(SelfRemovableEntry transactionEntry) {
         this.transactionEntry = transactionEntry;
     }
@@ -689,6 +803,60 @@ public class Transaction {
         checkNotNull(transactionEntry).remove();
     }
 
+    @Nullable
+    TraceEntryPool getTraceEntryPool() {
+        return traceEntryPool;
+    }
+
+    @Nullable
+    AgentOverhead getAgentOverhead() {
+        return agentOverhead;
+    }
+
+    // 0 means adaptive trace entry capture is disabled
+    int getCollapsingEntryLimit() {
+        return adaptiveTraceEntryCapture ? maxTraceEntries : 0;
+    }
+
+    // this is called by the transaction processor after the transaction has been removed from the
+    // active transactions, has been aggregated, and it has been determined that the transaction
+    // will not be stored as a trace
+    void releaseTraceEntries() {
+        if (traceEntryPool == null) {
+            return;
+        }
+        // trace entries may still be referenced from auxiliary threads and async trace entries
+        boolean recyclable = !async && !hasAuxThreadContexts() && asyncComponents == null
+                && !mainThreadContext.mayHaveChildAuxThreadContext();
+        synchronized (this) {
+            if (traceEntriesState == TRACE_ENTRIES_PENDING) {
+                traceEntriesState =
+                        recyclable ? TRACE_ENTRIES_RECYCLABLE : TRACE_ENTRIES_RETAINED;
+            }
+        }
+    }
+
+    boolean isTraceEntriesRecyclable() {
+        return traceEntriesState == TRACE_ENTRIES_RECYCLABLE;
+    }
+
+    boolean isTraceEntriesRetained() {
+        return traceEntriesState == TRACE_ENTRIES_RETAINED;
+    }
+
+    // returns false if the trace entries are recyclable and so can no longer be read
+    private boolean retainTraceEntries() {
+        if (traceEntriesState == TRACE_ENTRIES_RETAINED) {
+            return true;
+        }
+        synchronized (this) {
+            if (traceEntriesState == TRACE_ENTRIES_PENDING) {
+                traceEntriesState = TRACE_ENTRIES_RETAINED;
+            }
+            return traceEntriesState == TRACE_ENTRIES_RETAINED;
+        }
+    }
+
     @Nullable
     ThreadContextImpl startAuxThreadContext(@Nullable TraceEntryImpl parentTraceEntry,
             @Nullable TraceEntryImpl parentThreadContextPriorEntry, TimerName auxTimerName,
@@ -774,7 +942,8 @@ public class Transaction {
     }
 
     boolean isEntryLimitExceeded(int entryCount) {
-        return entryCount >= maxTraceEntries && entryLimitCounter > maxTraceEntries;
+        return entryCount >= maxTraceEntries && entryLimitCounter > maxTraceEntries
+                || mainThreadContext.isCollapsingHardLimitExceeded();
     }
 
     boolean isQueryLimitExceeded(int queryCount) {
@@ -812,6 +981,24 @@ public class Transaction {
         profile.addStackTrace(threadInfo);
     }
 
+    // only called from the single allocation sampling thread, so no race condition initializing the
+    // profile
+    void captureAllocationSample(List<StackTraceElement> stackTrace, long allocatedBytes) {
+        if (completed) {
+            return;
+        }
+        ThreadProfile profile = allocationProfile;
+        if (profile == null) {
+            // first sample is added prior to setting the transaction profile field, so that it is
+            // not possible to read a profile that doesn't have at least one sample
+            profile = new ThreadProfile(maxProfileSamples);
+            profile.addAllocationSample(stackTrace, allocatedBytes);
+            allocationProfile = profile;
+            return;
+        }
+        profile.addAllocationSample(stackTrace, allocatedBytes);
+    }
+
     void trackResourceAcquired(Object resource, boolean withLocationStackTrace) {
         if (withLocationStackTrace) {
             unreleasedResources.put(resource, Thread.currentThread().getStackTrace());
@@ -1040,6 +1227,27 @@ public class Transaction {
         }
     }
 
+    // this mirrors addProtobufChildEntries() above
+    private static void addChildEntries(TraceEntryImpl entry,
+            ListMultimap<TraceEntryImpl, TraceEntryImpl> parentChildMap, int depth,
+            StoredTraceEntries entries, boolean removeSingleAuxEntry) {
+        if (!parentChildMap.containsKey(entry)) {
+            // check containsKey to avoid creating garbage empty list via ListMultimap
+            return;
+        }
+        Collection<TraceEntryImpl> childEntries = parentChildMap.get(entry);
+        for (TraceEntryImpl childEntry : childEntries) {
+            boolean singleAuxEntry = childEntries.size() == 1 && childEntry.isAuxThreadRoot()
+                    && !childEntry.hasLocationStackTrace();
+            if (singleAuxEntry && removeSingleAuxEntry) {
+                addChildEntries(childEntry, parentChildMap, depth, entries, removeSingleAuxEntry);
+            } else {
+                entries.add(childEntry, depth);
+                addChildEntries(childEntry, parentChildMap, depth + 1, entries, false);
+            }
+        }
+    }
+
     private ListMultimap<TraceEntryImpl, ThreadContextImpl> buildPriorEntryChildThreadContextMap() {
         synchronized (mainThreadContext) {
             if (auxThreadContexts == null) {
@@ -1134,6 +1342,10 @@ public class Transaction {
         void visitEntry(Trace.Entry entry);
     }
 
+    interface IndexedTraceEntryVisitor {
+        void visitEntry(int index, Trace.Entry entry);
+    }
+
     private static class AuxThreadRootMessageSupplier extends MessageSupplier {
 
         private static final AuxThreadRootMessageSupplier INSTANCE =
@@ -1213,6 +1425,21 @@ public class Transaction {
         }
     }
 
+    private static class IndexingTraceEntryVisitor implements TraceEntryVisitor {
+
+        private final IndexedTraceEntryVisitor delegate;
+        private int index;
+
+        private IndexingTraceEntryVisitor(IndexedTraceEntryVisitor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void visitEntry(Trace.Entry entry) {
+            delegate.visitEntry(index, entry);
+        }
+    }
+
     private static class CountingEntryVisitor implements TraceEntryVisitor {
 
         private int count;
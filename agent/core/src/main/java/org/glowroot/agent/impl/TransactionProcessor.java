@@ -16,8 +16,10 @@
 package org.glowroot.agent.impl;
 
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -25,6 +27,7 @@ import javax.annotation.concurrent.GuardedBy;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Queues;
 import com.google.common.collect.Sets;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -35,6 +38,7 @@ import org.glowroot.agent.collector.Collector;
 import org.glowroot.agent.config.ConfigService;
 import org.glowroot.agent.util.RateLimitedLogger;
 import org.glowroot.agent.util.ThreadFactories;
+import org.glowroot.common.model.TransactionTypeMetrics;
 import org.glowroot.common.util.Clock;
 import org.glowroot.common.util.OnlyUsedByTests;
 
@@ -58,6 +62,11 @@ public class TransactionProcessor {
     private final BlockingQueue<AggregateIntervalCollector> pendingIntervalCollectors =
             Queues.newLinkedBlockingQueue(AGGREGATE_PENDING_LIMIT);
 
+    // cumulative since startup, these are not reset at the end of each aggregate interval (and
+    // not cleared by clearInMemoryData()) since they back monotonic counters
+    private final ConcurrentMap<String, TransactionTypeMetrics> transactionTypeMetrics =
+            Maps.newConcurrentMap();
+
     private final ExecutorService processingExecutor;
     private final ExecutorService flushingExecutor;
     private final Collector collector;
@@ -110,6 +119,10 @@ public class TransactionProcessor {
         return transactionTypes;
     }
 
+    public Map<String, TransactionTypeMetrics> getTransactionTypeMetrics() {
+        return transactionTypeMetrics;
+    }
+
     // from is non-inclusive
     public List<AggregateIntervalCollector> getOrderedIntervalCollectorsInRange(long from,
             long to) {
@@ -218,7 +231,7 @@ public class TransactionProcessor {
             // send to the trace collector before removing from transaction registry so that the
             // trace collector can cover the gap (via TraceCollector.getPendingTransactions())
             // between removing the transaction from the registry and storing it
-            traceCollector.collectTrace(transaction);
+            boolean traceQueued = traceCollector.collectTrace(transaction);
 
             transaction.removeFromActiveTransactions();
 
@@ -235,6 +248,22 @@ public class TransactionProcessor {
                 flushAndResetActiveIntervalCollector(pendingTransaction.captureTime);
             }
             activeIntervalCollector.add(transaction);
+            addToTransactionTypeMetrics(transaction);
+            if (!traceQueued) {
+                transaction.releaseTraceEntries();
+            }
+        }
+
+        private void addToTransactionTypeMetrics(Transaction transaction) {
+            String transactionType = transaction.getTransactionType();
+            TransactionTypeMetrics metrics = transactionTypeMetrics.get(transactionType);
+            if (metrics == null) {
+                // don't need to worry about race condition here because this is only called from a
+                // single thread (TransactionProcessorLoop)
+                metrics = new TransactionTypeMetrics();
+                transactionTypeMetrics.put(transactionType, metrics);
+            }
+            metrics.add(transaction.getDurationNanos(), transaction.getErrorMessage() != null);
         }
 
         private void maybeEndOfInterval() {
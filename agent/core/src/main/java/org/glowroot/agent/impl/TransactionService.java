@@ -40,12 +40,32 @@ public class TransactionService implements ConfigListener {
 
     private static final Logger logger = LoggerFactory.getLogger(TransactionService.class);
 
+    // when enabled, trace entries of transactions that are not stored as traces are recycled for
+    // use by later transactions on the same thread (only error entries, since all other trace
+    // entries are returned to plugins), see TraceEntryPool
+    private static final boolean TRACE_ENTRY_POOLING =
+            Boolean.getBoolean("glowroot.traceEntry.pooling");
+
+    // when enabled, transactions that exceed the trace entry limit keep capturing trace entries,
+    // collapsing the fastest ones so that the slowest are retained, see TraceEntryCollapser
+    private static final boolean ADAPTIVE_TRACE_ENTRY_CAPTURE =
+            Boolean.getBoolean("glowroot.traceEntry.adaptiveCapture");
+
+    // trace entry pooling is not used with adaptive trace entry capture, which needs its own trace
+    // entry subclass
+    private static final @Nullable ThreadLocal<TraceEntryPool> traceEntryPools =
+            TRACE_ENTRY_POOLING && !ADAPTIVE_TRACE_ENTRY_CAPTURE
+                    ? new ThreadLocal<TraceEntryPool>() : null;
+
     private final TransactionRegistry transactionRegistry;
     private final ConfigService configService;
     private final TimerNameCache timerNameCache;
     private final Clock clock;
     private final Ticker ticker;
 
+    // null unless agent overhead measurement is enabled, see AgentOverhead
+    private final @Nullable AgentOverhead agentOverhead;
+
     private final TransactionCompletionCallback transactionCompletionCallback =
             new TransactionCompletionCallback();
 
@@ -78,6 +98,7 @@ public class TransactionService implements ConfigListener {
         this.timerNameCache = timerNameCache;
         this.clock = clock;
         this.ticker = ticker;
+        agentOverhead = AgentOverhead.create();
     }
 
     public void setTransactionProcessor(TransactionProcessor transactionProcessor) {
@@ -89,6 +110,10 @@ public class TransactionService implements ConfigListener {
         this.threadAllocatedBytes = threadAllocatedBytes;
     }
 
+    public @Nullable AgentOverhead getAgentOverhead() {
+        return agentOverhead;
+    }
+
     TraceEntryImpl startTransaction(String transactionType, String transactionName,
             MessageSupplier messageSupplier, TimerName timerName,
             ThreadContextThreadLocal.Holder threadContextHolder, int rootNestingGroupId,
@@ -96,11 +121,17 @@ public class TransactionService implements ConfigListener {
         // ensure visibility of recent configuration updates
         configService.readMemoryBarrier();
         long startTick = ticker.read();
+        TraceEntryPool traceEntryPool = getTraceEntryPool();
         Transaction transaction = new Transaction(clock.currentTimeMillis(), startTick,
                 transactionType, transactionName, messageSupplier, timerName, captureThreadStats,
                 maxTraceEntries, maxQueryAggregates, maxServiceCallAggregates, maxProfileSamples,
                 threadAllocatedBytes, transactionCompletionCallback, ticker, transactionRegistry,
-                this, configService, threadContextHolder, rootNestingGroupId, rootSuppressionKeyId);
+                this, configService, threadContextHolder, rootNestingGroupId, rootSuppressionKeyId,
+                traceEntryPool, ADAPTIVE_TRACE_ENTRY_CAPTURE,
+                agentOverhead != null && agentOverhead.sample() ? agentOverhead : null);
+        if (traceEntryPool != null) {
+            traceEntryPool.onTransactionStart(transaction, maxTraceEntries);
+        }
         SelfRemovableEntry transactionEntry = transactionRegistry.addTransaction(transaction);
         transaction.setTransactionEntry(transactionEntry);
         threadContextHolder.set(transaction.getMainThreadContext());
@@ -120,6 +151,18 @@ public class TransactionService implements ConfigListener {
                 threadAllocatedBytes);
     }
 
+    private static @Nullable TraceEntryPool getTraceEntryPool() {
+        if (traceEntryPools == null) {
+            return null;
+        }
+        TraceEntryPool traceEntryPool = traceEntryPools.get();
+        if (traceEntryPool == null) {
+            traceEntryPool = new TraceEntryPool();
+            traceEntryPools.set(traceEntryPool);
+        }
+        return traceEntryPool;
+    }
+
     @Override
     public void onChange() {
         AdvancedConfig advancedConfig = configService.getAdvancedConfig();
@@ -26,6 +26,7 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.jar.JarFile;
 
 import com.google.common.base.Joiner;
+import com.google.common.base.Supplier;
 import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
@@ -39,6 +40,7 @@ import org.glowroot.agent.collector.Collector;
 import org.glowroot.agent.config.ConfigService;
 import org.glowroot.agent.config.PluginCache;
 import org.glowroot.agent.config.PluginDescriptor;
+import org.glowroot.agent.impl.AllocationSampler;
 import org.glowroot.agent.impl.BytecodeServiceImpl;
 import org.glowroot.agent.impl.BytecodeServiceImpl.OnEnteringMain;
 import org.glowroot.agent.impl.ConfigServiceImpl;
@@ -54,8 +56,10 @@ import org.glowroot.agent.impl.TransactionProcessor;
 import org.glowroot.agent.impl.TransactionRegistry;
 import org.glowroot.agent.impl.TransactionService;
 import org.glowroot.agent.init.PreCheckLoadedClasses.PreCheckClassFileTransformer;
+import org.glowroot.agent.live.ClassPreAnalyzer;
 import org.glowroot.agent.live.LiveAggregateRepositoryImpl;
 import org.glowroot.agent.live.LiveJvmServiceImpl;
+import org.glowroot.agent.live.LiveMetricsRepositoryImpl;
 import org.glowroot.agent.live.LiveTraceRepositoryImpl;
 import org.glowroot.agent.live.LiveWeavingServiceImpl;
 import org.glowroot.agent.plugin.api.internal.PluginService;
@@ -71,10 +75,13 @@ import org.glowroot.agent.weaving.IsolatedWeavingClassLoader;
 import org.glowroot.agent.weaving.PointcutClassFileTransformer;
 import org.glowroot.agent.weaving.PreInitializeWeavingClasses;
 import org.glowroot.agent.weaving.Weaver;
+import org.glowroot.agent.weaving.WeavingCache;
+import org.glowroot.agent.weaving.WeavingFilter;
 import org.glowroot.agent.weaving.WeavingClassFileTransformer;
 import org.glowroot.common.util.Clock;
 import org.glowroot.common.util.OnlyUsedByTests;
 import org.glowroot.common.util.ScheduledRunnable;
+import org.glowroot.wire.api.model.CollectorServiceOuterClass.GaugeValueMessage.GaugeValue;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
@@ -92,6 +99,16 @@ public class AgentModule {
     private static final long ROLLUP_0_INTERVAL_MILLIS =
             Long.getLong("glowroot.internal.rollup.0.intervalMillis", MINUTES.toMillis(1));
 
+    // persist weaving results across JVM restarts to reduce startup time (see WeavingCache)
+    private static final boolean WEAVING_CACHE = Boolean.getBoolean("glowroot.weaving.cache");
+
+    // skip classes that cannot need weaving without parsing them (see WeavingFilter)
+    private static final boolean WEAVING_FILTER = Boolean.getBoolean("glowroot.weaving.filter");
+
+    // warm up class analysis for new class loaders on a background pool (see ClassPreAnalyzer)
+    private static final int WEAVING_PRE_ANALYSIS_THREADS =
+            Integer.getInteger("glowroot.weaving.preAnalysis.threads", 0);
+
     private final Clock clock;
     private final Ticker ticker;
 
@@ -100,6 +117,8 @@ public class AgentModule {
     private final AdviceCache adviceCache;
     private final PreloadSomeSuperTypesCache preloadSomeSuperTypesCache;
     private final AnalyzedWorld analyzedWorld;
+    private final @Nullable WeavingCache weavingCache;
+    private final @Nullable WeavingFilter weavingFilter;
     private final Weaver weaver;
     private final Random random;
 
@@ -114,6 +133,7 @@ public class AgentModule {
 
     private volatile @MonotonicNonNull GaugeCollector gaugeCollector;
     private volatile @MonotonicNonNull StackTraceCollector stackTraceCollector;
+    private volatile @Nullable AllocationSampler allocationSampler;
 
     private volatile @MonotonicNonNull ImmediateTraceStoreWatcher immedateTraceStoreWatcher;
 
@@ -121,7 +141,9 @@ public class AgentModule {
 
     private volatile @MonotonicNonNull LiveTraceRepositoryImpl liveTraceRepository;
     private volatile @MonotonicNonNull LiveAggregateRepositoryImpl liveAggregateRepository;
+    private volatile @MonotonicNonNull LiveMetricsRepositoryImpl liveMetricsRepository;
     private volatile @MonotonicNonNull LiveWeavingServiceImpl liveWeavingService;
+    private volatile @MonotonicNonNull ClassPreAnalyzer classPreAnalyzer;
     private volatile @MonotonicNonNull LiveJvmServiceImpl liveJvmService;
 
     // accepts @Nullable Ticker to deal with shading issues when called from GlowrootModule
@@ -153,11 +175,24 @@ public class AgentModule {
         analyzedWorld =
                 new AnalyzedWorld(adviceCache.getAdvisorsSupplier(), adviceCache.getShimTypes(),
                         adviceCache.getMixinTypes(), preloadSomeSuperTypesCache);
+        if (WEAVING_CACHE) {
+            weavingCache = new WeavingCache(new File(tmpDir, "weaving-cache"), 100000,
+                    adviceCache.getAdvisorsSupplier(), adviceCache.getShimTypes(),
+                    adviceCache.getMixinTypes());
+        } else {
+            weavingCache = null;
+        }
+        if (WEAVING_FILTER) {
+            weavingFilter = new WeavingFilter(adviceCache.getAdvisorsSupplier(),
+                    adviceCache.getShimTypes(), adviceCache.getMixinTypes());
+        } else {
+            weavingFilter = null;
+        }
         TimerNameCache timerNameCache = new TimerNameCache();
 
         weaver = new Weaver(adviceCache.getAdvisorsSupplier(), adviceCache.getShimTypes(),
-                adviceCache.getMixinTypes(), analyzedWorld, transactionRegistry, ticker,
-                timerNameCache, configService);
+                adviceCache.getMixinTypes(), analyzedWorld, weavingCache, weavingFilter,
+                transactionRegistry, ticker, timerNameCache, configService);
 
         // need to initialize glowroot-agent-api, glowroot-agent-plugin-api and glowroot-weaving-api
         // services before enabling instrumentation
@@ -235,6 +270,7 @@ public class AgentModule {
 
         // init stack trace collector early for profiling other agents
         stackTraceCollector = new StackTraceCollector(transactionRegistry, configService, random);
+        allocationSampler = AllocationSampler.create(transactionRegistry);
     }
 
     public void setOnEnteringMain(OnEnteringMain onEnteringMain) {
@@ -280,8 +316,10 @@ public class AgentModule {
                         "org.glowroot:type=FileSystem,name=" + name);
             }
         }
-        gaugeCollector = new GaugeCollector(configService, collector, lazyPlatformMBeanServer,
-                instrumentation, clock, ticker);
+        final GaugeCollector gaugeCollector = new GaugeCollector(configService, collector,
+                lazyPlatformMBeanServer, transactionService.getAgentOverhead(), instrumentation,
+                clock, ticker);
+        this.gaugeCollector = gaugeCollector;
         // using fixed rate to keep gauge collections close to on the second mark
         long gaugeCollectionIntervalMillis = configService.getGaugeCollectionIntervalMillis();
         gaugeCollector.scheduleWithFixedDelay(gaugeCollectionIntervalMillis, MILLISECONDS);
@@ -295,6 +333,13 @@ public class AgentModule {
         liveTraceRepository = new LiveTraceRepositoryImpl(transactionRegistry, traceCollector,
                 clock, ticker);
         liveAggregateRepository = new LiveAggregateRepositoryImpl(transactionProcessor);
+        liveMetricsRepository = new LiveMetricsRepositoryImpl(transactionProcessor,
+                new Supplier<List<GaugeValue>>() {
+                    @Override
+                    public List<GaugeValue> get() {
+                        return gaugeCollector.getLatestGaugeValues();
+                    }
+                });
         liveWeavingService = new LiveWeavingServiceImpl(analyzedWorld, instrumentation,
                 configService, adviceCache, jvmRetransformClassesSupported);
         liveJvmService = new LiveJvmServiceImpl(lazyPlatformMBeanServer, transactionRegistry,
@@ -302,6 +347,17 @@ public class AgentModule {
                 glowrootJarFile, clock);
 
         preloadSomeSuperTypesCache.scheduleWithFixedDelay(backgroundExecutor, 5, 5, SECONDS);
+        if (weavingCache != null) {
+            weavingCache.scheduleWithFixedDelay(backgroundExecutor, 5, 5, SECONDS);
+        }
+        if (weavingFilter != null) {
+            weavingFilter.scheduleWithFixedDelay(backgroundExecutor, 5, 5, SECONDS);
+        }
+        if (WEAVING_PRE_ANALYSIS_THREADS > 0) {
+            classPreAnalyzer = new ClassPreAnalyzer(analyzedWorld, liveWeavingService,
+                    WEAVING_PRE_ANALYSIS_THREADS);
+            classPreAnalyzer.scheduleWithFixedDelay(backgroundExecutor, 1, 1, SECONDS);
+        }
     }
 
     public ConfigService getConfigService() {
@@ -329,6 +385,13 @@ public class AgentModule {
         return liveAggregateRepository;
     }
 
+    public LiveMetricsRepositoryImpl getLiveMetricsRepository() {
+        if (liveMetricsRepository == null) {
+            throw new IllegalStateException("onEnteringMain() was never called");
+        }
+        return liveMetricsRepository;
+    }
+
     public LiveWeavingServiceImpl getLiveWeavingService() {
         if (liveWeavingService == null) {
             throw new IllegalStateException("onEnteringMain() was never called");
@@ -447,6 +510,9 @@ public class AgentModule {
         if (stackTraceCollector != null) {
             stackTraceCollector.close();
         }
+        if (allocationSampler != null) {
+            allocationSampler.close();
+        }
         if (gaugeCollector != null) {
             gaugeCollector.close();
         }
@@ -462,6 +528,9 @@ public class AgentModule {
         if (deadlockedActiveWeavingRunnable != null) {
             deadlockedActiveWeavingRunnable.cancel();
         }
+        if (classPreAnalyzer != null) {
+            classPreAnalyzer.close();
+        }
     }
 
     private static class DeadlockedActiveWeavingRunnable extends ScheduledRunnable {
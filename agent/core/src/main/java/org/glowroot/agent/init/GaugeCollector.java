@@ -21,11 +21,15 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import javax.management.Attribute;
+import javax.management.AttributeList;
 import javax.management.AttributeNotFoundException;
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanServer;
@@ -49,6 +53,8 @@ import org.slf4j.LoggerFactory;
 
 import org.glowroot.agent.collector.Collector;
 import org.glowroot.agent.config.ConfigService;
+import org.glowroot.agent.impl.AgentOverhead;
+import org.glowroot.agent.impl.AgentOverhead.Overhead;
 import org.glowroot.agent.util.JavaVersion;
 import org.glowroot.agent.util.LazyPlatformMBeanServer;
 import org.glowroot.agent.util.LazyPlatformMBeanServer.InitListener;
@@ -57,12 +63,13 @@ import org.glowroot.agent.util.ThreadFactories;
 import org.glowroot.agent.weaving.Java9;
 import org.glowroot.common.config.GaugeConfig;
 import org.glowroot.common.config.GaugeConfig.MBeanAttribute;
-import org.glowroot.common.config.ImmutableMBeanAttribute;
 import org.glowroot.common.util.Clock;
 import org.glowroot.common.util.ScheduledRunnable;
 import org.glowroot.common.util.Styles;
 import org.glowroot.wire.api.model.CollectorServiceOuterClass.GaugeValueMessage.GaugeValue;
 
+import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 class GaugeCollector extends ScheduledRunnable {
@@ -73,9 +80,29 @@ class GaugeCollector extends ScheduledRunnable {
     // back pressure on writing captured data to disk/network
     private static final int PENDING_LIMIT = 60;
 
+    private static final int COLLECTION_THREADS =
+            Integer.getInteger("glowroot.gauge.collection.threads", 4);
+
+    // matching mbeans for object name patterns are re-resolved at this interval
+    private static final long RESOLUTION_INTERVAL_NANOS = MINUTES.toNanos(1);
+
+    private static final String COLLECTION_TIME_GAUGE_NAME =
+            "org.glowroot:type=GaugeCollector:CollectionTime";
+
+    // these are averages per sampled transaction since the prior collection, see AgentOverhead
+    private static final String AGENT_OVERHEAD_INSTRUMENTATION_TIME_GAUGE_NAME =
+            "org.glowroot:type=AgentOverhead:InstrumentationTime";
+    private static final String AGENT_OVERHEAD_INSTRUMENTATION_ALLOCATED_BYTES_GAUGE_NAME =
+            "org.glowroot:type=AgentOverhead:InstrumentationAllocatedBytes";
+    private static final String AGENT_OVERHEAD_COMPLETION_TIME_GAUGE_NAME =
+            "org.glowroot:type=AgentOverhead:CompletionTime";
+    private static final String AGENT_OVERHEAD_COMPLETION_ALLOCATED_BYTES_GAUGE_NAME =
+            "org.glowroot:type=AgentOverhead:CompletionAllocatedBytes";
+
     private final ConfigService configService;
     private final Collector collector;
     private final LazyPlatformMBeanServer lazyPlatformMBeanServer;
+    private final @Nullable AgentOverhead agentOverhead;
     private final Clock clock;
     private final Ticker ticker;
     private final long startTimeMillis;
@@ -87,6 +114,8 @@ class GaugeCollector extends ScheduledRunnable {
     // other glowroot background work
     private final ScheduledExecutorService collectionExecutor;
     private final ExecutorService flushingExecutor;
+    // reads mbeans in parallel (with bounded parallelism), null if configured with a single thread
+    private final @Nullable ExecutorService readExecutor;
 
     // need to guarantee these are processed in order (at least when running embedded collector
     // due to rollups relying on not seeing old data after newer data has been seen)
@@ -100,14 +129,21 @@ class GaugeCollector extends ScheduledRunnable {
     // priorRawCounterValues (except can't initialize here outside of the dedicated thread)
     private @MonotonicNonNull Map<String, RawCounterValue> priorRawCounterValues;
 
+    // only accessed from the dedicated thread (except for tests)
+    private final Map<GaugeConfig, ResolvedGauge> resolvedGauges = Maps.newHashMap();
+
+    // replaced (not mutated) on each collection so that it can be read from other threads
+    private volatile List<GaugeValue> latestGaugeValues = ImmutableList.of();
+
     private volatile boolean closed;
 
     GaugeCollector(ConfigService configService, Collector collector,
-            LazyPlatformMBeanServer lazyPlatformMBeanServer,
+            LazyPlatformMBeanServer lazyPlatformMBeanServer, @Nullable AgentOverhead agentOverhead,
             final @Nullable Instrumentation instrumentation, Clock clock, Ticker ticker) {
         this.configService = configService;
         this.collector = collector;
         this.lazyPlatformMBeanServer = lazyPlatformMBeanServer;
+        this.agentOverhead = agentOverhead;
         this.clock = clock;
         this.ticker = ticker;
         startTimeMillis = clock.currentTimeMillis();
@@ -115,6 +151,12 @@ class GaugeCollector extends ScheduledRunnable {
                 ThreadFactories.create("Glowroot-Gauge-Collection"));
         flushingExecutor = Executors
                 .newSingleThreadExecutor(ThreadFactories.create("Glowroot-Gauge-Flushing"));
+        if (COLLECTION_THREADS > 1) {
+            readExecutor = Executors.newFixedThreadPool(COLLECTION_THREADS,
+                    ThreadFactories.create("Glowroot-Gauge-Collection-Worker-%d"));
+        } else {
+            readExecutor = null;
+        }
         lazyPlatformMBeanServer.addInitListener(new InitListener() {
             @Override
             public void postInit(MBeanServer mbeanServer) {
@@ -139,21 +181,45 @@ class GaugeCollector extends ScheduledRunnable {
 
     @Override
     protected void runInternal() throws Exception {
-        final List<GaugeValue> gaugeValues = Lists.newArrayList();
+        long startTick = ticker.read();
         if (priorRawCounterValues == null) {
             // wait to now to initialize priorGaugeValues inside of the dedicated thread
             priorRawCounterValues = Maps.newHashMap();
         }
         List<MBeanServer> mbeanServers = lazyPlatformMBeanServer.findAllMBeanServers();
-        for (GaugeConfig gaugeConfig : configService.getGaugeConfigs()) {
-            gaugeValues.addAll(collectGaugeValues(gaugeConfig, mbeanServers));
+        List<GaugeConfig> gaugeConfigs = configService.getGaugeConfigs();
+        // discard resolved gauges whose config has been removed or changed
+        resolvedGauges.keySet().retainAll(Sets.newHashSet(gaugeConfigs));
+        List<MBeanHandle> mbeans = Lists.newArrayList();
+        for (GaugeConfig gaugeConfig : gaugeConfigs) {
+            mbeans.addAll(resolve(gaugeConfig, mbeanServers));
         }
+        List<GaugeValue> gaugeValues = Lists.newArrayList();
+        for (MBeanValues mbeanValues : readAll(mbeans, mbeanServers)) {
+            gaugeValues.addAll(toGaugeValues(mbeanValues));
+        }
+        // the collection time is recorded as its own gauge, since collections that take longer
+        // than the collection interval delay the subsequent collections
+        gaugeValues.add(GaugeValue.newBuilder()
+                .setGaugeName(COLLECTION_TIME_GAUGE_NAME)
+                .setCaptureTime(clock.currentTimeMillis())
+                .setValue(NANOSECONDS.toMicros(ticker.read() - startTick) / 1000.0)
+                .setWeight(1)
+                .build());
+        if (agentOverhead != null) {
+            addAgentOverheadGaugeValues(agentOverhead, gaugeValues);
+        }
+        latestGaugeValues = gaugeValues;
         if (!pending.offer(gaugeValues)) {
             backPressureLogger.warn("not storing a gauge collection because of an excessive backlog"
                     + " of {} gauge collections already waiting to be stored", PENDING_LIMIT);
         }
     }
 
+    List<GaugeValue> getLatestGaugeValues() {
+        return latestGaugeValues;
+    }
+
     void scheduleWithFixedDelay(long period, TimeUnit unit) {
         scheduleWithFixedDelay(collectionExecutor, 0, period, unit);
     }
@@ -164,6 +230,12 @@ class GaugeCollector extends ScheduledRunnable {
         if (!collectionExecutor.awaitTermination(10, SECONDS)) {
             throw new IllegalStateException("Could not terminate executor");
         }
+        if (readExecutor != null) {
+            readExecutor.shutdown();
+            if (!readExecutor.awaitTermination(10, SECONDS)) {
+                throw new IllegalStateException("Could not terminate executor");
+            }
+        }
         // shutdownNow() is needed here to send interrupt to flushing thread
         flushingExecutor.shutdownNow();
         if (!flushingExecutor.awaitTermination(10, SECONDS)) {
@@ -175,52 +247,146 @@ class GaugeCollector extends ScheduledRunnable {
     @RequiresNonNull("priorRawCounterValues")
     List<GaugeValue> collectGaugeValues(GaugeConfig gaugeConfig, List<MBeanServer> mbeanServers)
             throws Exception {
-        String mbeanObjectName = gaugeConfig.mbeanObjectName();
-        ObjectName objectName;
-        try {
-            objectName = ObjectName.getInstance(mbeanObjectName);
-        } catch (MalformedObjectNameException e) {
-            logger.debug(e.getMessage(), e);
-            logFirstTimeMBeanException(mbeanObjectName, e);
+        List<GaugeValue> gaugeValues = Lists.newArrayList();
+        for (MBeanHandle mbean : resolve(gaugeConfig, mbeanServers)) {
+            gaugeValues.addAll(toGaugeValues(read(mbean, mbeanServers)));
+        }
+        return gaugeValues;
+    }
+
+    // the parsed object name and attribute paths are cached per gauge config, and for object name
+    // patterns, the matching mbeans are cached and re-resolved periodically (or sooner if one of
+    // them is not found)
+    private List<MBeanHandle> resolve(GaugeConfig gaugeConfig, List<MBeanServer> mbeanServers)
+            throws Exception {
+        ResolvedGauge resolvedGauge = resolvedGauges.get(gaugeConfig);
+        if (resolvedGauge == null) {
+            resolvedGauge = createResolvedGauge(gaugeConfig);
+            resolvedGauges.put(gaugeConfig, resolvedGauge);
+        }
+        ObjectName objectName = resolvedGauge.objectName;
+        if (objectName == null) {
+            // invalid mbean object name, which has already been logged
             return ImmutableList.of();
         }
         if (!objectName.isPattern()) {
-            return collectGaugeValues(objectName, gaugeConfig.mbeanAttributes(), mbeanObjectName,
-                    mbeanServers);
+            if (resolvedGauge.mbeans.isEmpty()) {
+                resolvedGauge.mbeans = ImmutableList.of(
+                        new MBeanHandle(objectName, gaugeConfig.mbeanObjectName(), resolvedGauge));
+            }
+            return resolvedGauge.mbeans;
+        }
+        String mbeanObjectName = gaugeConfig.mbeanObjectName();
+        long currentTick = ticker.read();
+        if (resolvedGauge.stale || resolvedGauge.mbeans.isEmpty()
+                || currentTick - resolvedGauge.resolvedTick >= RESOLUTION_INTERVAL_NANOS) {
+            Set<ObjectName> matchingObjectNames =
+                    lazyPlatformMBeanServer.queryNames(objectName, null, mbeanServers);
+            List<MBeanHandle> mbeans = Lists.newArrayList();
+            for (ObjectName matchingObjectName : matchingObjectNames) {
+                mbeans.add(new MBeanHandle(matchingObjectName, matchingObjectName.getDomain() + ":"
+                        + matchingObjectName.getKeyPropertyListString(), resolvedGauge));
+            }
+            resolvedGauge.mbeans = mbeans;
+            resolvedGauge.resolvedTick = currentTick;
+            resolvedGauge.stale = false;
         }
-        Set<ObjectName> matchingObjectNames =
-                lazyPlatformMBeanServer.queryNames(objectName, null, mbeanServers);
-        if (matchingObjectNames.isEmpty()) {
+        if (resolvedGauge.mbeans.isEmpty()) {
             logFirstTimeMBeanNotMatchedOrFound(mbeanObjectName);
             return ImmutableList.of();
         }
         // remove from pendingLoggedMBeanGauges so if it is later not found, it will be logged
         // normally and not with "waited ... seconds after jvm startup before logging this" message
         pendingLoggedMBeanGauges.remove(mbeanObjectName);
-        List<GaugeValue> gaugeValues = Lists.newArrayList();
-        for (ObjectName matchingObjectName : matchingObjectNames) {
-            gaugeValues.addAll(collectGaugeValues(matchingObjectName, gaugeConfig.mbeanAttributes(),
-                    matchingObjectName.getDomain() + ":"
-                            + matchingObjectName.getKeyPropertyListString(),
-                    mbeanServers));
+        return resolvedGauge.mbeans;
+    }
+
+    private ResolvedGauge createResolvedGauge(GaugeConfig gaugeConfig) {
+        String mbeanObjectName = gaugeConfig.mbeanObjectName();
+        @Nullable
+        ObjectName objectName;
+        try {
+            objectName = ObjectName.getInstance(mbeanObjectName);
+        } catch (MalformedObjectNameException e) {
+            logger.debug(e.getMessage(), e);
+            logFirstTimeMBeanException(mbeanObjectName, e);
+            objectName = null;
         }
-        return gaugeValues;
+        List<AttributePath> attributePaths = Lists.newArrayList();
+        Set<String> attributeNames = Sets.newLinkedHashSet();
+        for (MBeanAttribute mbeanAttribute : gaugeConfig.mbeanAttributes()) {
+            AttributePath attributePath = new AttributePath(mbeanAttribute);
+            attributePaths.add(attributePath);
+            attributeNames.add(attributePath.attributeName);
+        }
+        return new ResolvedGauge(objectName, attributePaths,
+                attributeNames.toArray(new String[attributeNames.size()]));
     }
 
-    @RequiresNonNull("priorRawCounterValues")
-    private List<GaugeValue> collectGaugeValues(ObjectName objectName,
-            List<ImmutableMBeanAttribute> mbeanAttributes, String mbeanObjectName,
-            List<MBeanServer> mbeanServers) throws Exception {
-        List<GaugeValue> gaugeValues = Lists.newArrayList();
+    private List<MBeanValues> readAll(List<MBeanHandle> mbeans,
+            final List<MBeanServer> mbeanServers) throws Exception {
+        if (readExecutor == null || mbeans.size() <= 1) {
+            List<MBeanValues> mbeanValues = Lists.newArrayList();
+            for (MBeanHandle mbean : mbeans) {
+                mbeanValues.add(read(mbean, mbeanServers));
+            }
+            return mbeanValues;
+        }
+        List<Callable<MBeanValues>> tasks = Lists.newArrayList();
+        for (final MBeanHandle mbean : mbeans) {
+            tasks.add(new Callable<MBeanValues>() {
+                @Override
+                public MBeanValues call() {
+                    return read(mbean, mbeanServers);
+                }
+            });
+        }
+        List<MBeanValues> mbeanValues = Lists.newArrayList();
+        for (Future<MBeanValues> future : readExecutor.invokeAll(tasks)) {
+            mbeanValues.add(future.get());
+        }
+        return mbeanValues;
+    }
+
+    // this is called from the gauge collection worker threads, so it must not touch
+    // priorRawCounterValues
+    private MBeanValues read(MBeanHandle mbean, List<MBeanServer> mbeanServers) {
+        ResolvedGauge resolvedGauge = mbean.resolvedGauge;
+        String mbeanObjectName = mbean.mbeanObjectName;
         long captureTime = clock.currentTimeMillis();
-        for (MBeanAttribute mbeanAttribute : mbeanAttributes) {
-            String mbeanAttributeName = mbeanAttribute.name();
+        Map<String, Object> bulkValues = Maps.newHashMap();
+        try {
+            // read all of the attributes in a single call, any attributes missing from the
+            // response are read individually below in order to report the specific error
+            AttributeList attributeList = lazyPlatformMBeanServer
+                    .getAttributes(mbean.objectName, resolvedGauge.attributeNames, mbeanServers);
+            for (Attribute attribute : attributeList.asList()) {
+                bulkValues.put(attribute.getName(), attribute.getValue());
+            }
+        } catch (InstanceNotFoundException e) {
+            logger.debug(e.getMessage(), e);
+            logFirstTimeMBeanNotMatchedOrFound(mbeanObjectName);
+            resolvedGauge.stale = true;
+            return new MBeanValues(mbean, captureTime, 0, new double[0], new boolean[0]);
+        } catch (Exception e) {
+            logger.debug(e.getMessage(), e);
+        }
+        List<AttributePath> attributePaths = resolvedGauge.attributePaths;
+        double[] values = new double[attributePaths.size()];
+        boolean[] present = new boolean[attributePaths.size()];
+        boolean anyPresent = false;
+        for (int i = 0; i < attributePaths.size(); i++) {
+            AttributePath attributePath = attributePaths.get(i);
+            String mbeanAttributeName = attributePath.mbeanAttribute.name();
             Object attributeValue;
             try {
-                if (mbeanAttributeName.contains(".")) {
-                    String[] path = mbeanAttributeName.split("\\.");
-                    attributeValue =
-                            lazyPlatformMBeanServer.getAttribute(objectName, path[0], mbeanServers);
+                if (bulkValues.containsKey(attributePath.attributeName)) {
+                    attributeValue = bulkValues.get(attributePath.attributeName);
+                } else {
+                    attributeValue = lazyPlatformMBeanServer.getAttribute(mbean.objectName,
+                            attributePath.attributeName, mbeanServers);
+                }
+                if (attributePath.compositeKey != null) {
                     CompositeData compositeData = (CompositeData) attributeValue;
                     if (compositeData == null) {
                         // this is valid, e.g. attribute LastGcInfo on mbean
@@ -228,16 +394,14 @@ class GaugeCollector extends ScheduledRunnable {
                         // prior to first GC, this attribute value is null
                         continue;
                     }
-                    attributeValue = compositeData.get(path[1]);
-                } else {
-                    attributeValue = lazyPlatformMBeanServer.getAttribute(objectName,
-                            mbeanAttributeName, mbeanServers);
+                    attributeValue = compositeData.get(attributePath.compositeKey);
                 }
             } catch (InstanceNotFoundException e) {
                 logger.debug(e.getMessage(), e);
                 // other attributes for this mbean will give same error, so log mbean not
                 // found and break out of attribute loop
                 logFirstTimeMBeanNotMatchedOrFound(mbeanObjectName);
+                resolvedGauge.stale = true;
                 break;
             } catch (AttributeNotFoundException e) {
                 logger.debug(e.getMessage(), e);
@@ -248,12 +412,13 @@ class GaugeCollector extends ScheduledRunnable {
                 logFirstTimeMBeanAttributeError(mbeanObjectName, mbeanAttributeName, e);
                 continue;
             }
-            Double value = null;
             if (attributeValue instanceof Number) {
-                value = ((Number) attributeValue).doubleValue();
+                values[i] = ((Number) attributeValue).doubleValue();
+                present[i] = true;
             } else if (attributeValue instanceof String) {
                 try {
-                    value = Double.parseDouble((String) attributeValue);
+                    values[i] = Double.parseDouble((String) attributeValue);
+                    present[i] = true;
                 } catch (NumberFormatException e) {
                     logFirstTimeMBeanAttributeError(mbeanObjectName, mbeanAttributeName,
                             "MBean attribute value is not a valid number: \"" + attributeValue
@@ -263,42 +428,80 @@ class GaugeCollector extends ScheduledRunnable {
                 logFirstTimeMBeanAttributeError(mbeanObjectName, mbeanAttributeName,
                         "MBean attribute value is not a number or string");
             }
-            if (value != null) {
-                StringBuilder gaugeName = new StringBuilder(mbeanObjectName.length() + 1
-                        + mbeanAttributeName.length() + "[counter]".length());
-                gaugeName.append(mbeanObjectName);
-                gaugeName.append(':');
-                gaugeName.append(mbeanAttributeName);
-                if (mbeanAttribute.counter()) {
-                    // "[counter]" suffix is so gauge name (and gauge id) will change if gauge is
-                    // switched between counter and non-counter (which will prevent counter and
-                    // non-counter values showing up in same chart line)
-                    gaugeName.append("[counter]");
-                    String gaugeNameStr = gaugeName.toString();
-                    RawCounterValue priorRawCounterValue = priorRawCounterValues.get(gaugeNameStr);
-                    long captureTick = ticker.read();
-                    if (priorRawCounterValue != null) {
-                        long intervalNanos = captureTick - priorRawCounterValue.captureTick();
-                        // value is the average delta per second
-                        double averageDeltaPerSecond =
-                                1000000000 * (value - priorRawCounterValue.value()) / intervalNanos;
-                        gaugeValues.add(GaugeValue.newBuilder()
-                                .setGaugeName(gaugeNameStr)
-                                .setCaptureTime(captureTime)
-                                .setValue(averageDeltaPerSecond)
-                                .setWeight(intervalNanos)
-                                .build());
-                    }
-                    priorRawCounterValues.put(gaugeNameStr,
-                            ImmutableRawCounterValue.of(value, captureTick));
-                } else {
+            anyPresent |= present[i];
+        }
+        long captureTick = anyPresent && resolvedGauge.hasCounter ? ticker.read() : 0;
+        return new MBeanValues(mbean, captureTime, captureTick, values, present);
+    }
+
+    // the weight is the number of sampled transactions so that the averages are weighted correctly
+    // when they are rolled up
+    private void addAgentOverheadGaugeValues(AgentOverhead agentOverhead,
+            List<GaugeValue> gaugeValues) {
+        Overhead overhead = agentOverhead.getAndReset();
+        if (overhead == null) {
+            return;
+        }
+        long captureTime = clock.currentTimeMillis();
+        long transactionCount = overhead.transactionCount();
+        gaugeValues.add(createAgentOverheadGaugeValue(
+                AGENT_OVERHEAD_INSTRUMENTATION_TIME_GAUGE_NAME, captureTime,
+                overhead.instrumentationNanos() / 1000000.0, transactionCount));
+        gaugeValues.add(createAgentOverheadGaugeValue(
+                AGENT_OVERHEAD_INSTRUMENTATION_ALLOCATED_BYTES_GAUGE_NAME, captureTime,
+                overhead.instrumentationAllocatedBytes(), transactionCount));
+        gaugeValues.add(createAgentOverheadGaugeValue(AGENT_OVERHEAD_COMPLETION_TIME_GAUGE_NAME,
+                captureTime, overhead.completionNanos() / 1000000.0, transactionCount));
+        gaugeValues.add(createAgentOverheadGaugeValue(
+                AGENT_OVERHEAD_COMPLETION_ALLOCATED_BYTES_GAUGE_NAME, captureTime,
+                overhead.completionAllocatedBytes(), transactionCount));
+    }
+
+    private static GaugeValue createAgentOverheadGaugeValue(String gaugeName, long captureTime,
+            double total, long transactionCount) {
+        return GaugeValue.newBuilder()
+                .setGaugeName(gaugeName)
+                .setCaptureTime(captureTime)
+                .setValue(total / transactionCount)
+                .setWeight(transactionCount)
+                .build();
+    }
+
+    @RequiresNonNull("priorRawCounterValues")
+    private List<GaugeValue> toGaugeValues(MBeanValues mbeanValues) {
+        List<GaugeValue> gaugeValues = Lists.newArrayList();
+        MBeanHandle mbean = mbeanValues.mbean;
+        List<AttributePath> attributePaths = mbean.resolvedGauge.attributePaths;
+        for (int i = 0; i < mbeanValues.present.length; i++) {
+            if (!mbeanValues.present[i]) {
+                continue;
+            }
+            double value = mbeanValues.values[i];
+            String gaugeName = mbean.gaugeNames[i];
+            if (attributePaths.get(i).mbeanAttribute.counter()) {
+                RawCounterValue priorRawCounterValue = priorRawCounterValues.get(gaugeName);
+                long captureTick = mbeanValues.captureTick;
+                if (priorRawCounterValue != null) {
+                    long intervalNanos = captureTick - priorRawCounterValue.captureTick();
+                    // value is the average delta per second
+                    double averageDeltaPerSecond =
+                            1000000000 * (value - priorRawCounterValue.value()) / intervalNanos;
                     gaugeValues.add(GaugeValue.newBuilder()
-                            .setGaugeName(gaugeName.toString())
-                            .setCaptureTime(captureTime)
-                            .setValue(value)
-                            .setWeight(1)
+                            .setGaugeName(gaugeName)
+                            .setCaptureTime(mbeanValues.captureTime)
+                            .setValue(averageDeltaPerSecond)
+                            .setWeight(intervalNanos)
                             .build());
                 }
+                priorRawCounterValues.put(gaugeName,
+                        ImmutableRawCounterValue.of(value, captureTick));
+            } else {
+                gaugeValues.add(GaugeValue.newBuilder()
+                        .setGaugeName(gaugeName)
+                        .setCaptureTime(mbeanValues.captureTime)
+                        .setValue(value)
+                        .setWeight(1)
+                        .build());
             }
         }
         return gaugeValues;
@@ -357,6 +560,104 @@ class GaugeCollector extends ScheduledRunnable {
         GaugeCollector.logger = logger;
     }
 
+    // mutable fields are only updated from the gauge collection thread (except for stale, which
+    // is also set from the gauge collection worker threads)
+    private static class ResolvedGauge {
+
+        private final @Nullable ObjectName objectName; // null if the object name is invalid
+        private final List<AttributePath> attributePaths;
+        // distinct top-level attribute names, used for the bulk read
+        private final String[] attributeNames;
+        private final boolean hasCounter;
+
+        private List<MBeanHandle> mbeans = ImmutableList.of();
+        private long resolvedTick;
+        private volatile boolean stale;
+
+        private ResolvedGauge(@Nullable ObjectName objectName, List<AttributePath> attributePaths,
+                String[] attributeNames) {
+            this.objectName = objectName;
+            this.attributePaths = attributePaths;
+            this.attributeNames = attributeNames;
+            boolean hasCounter = false;
+            for (AttributePath attributePath : attributePaths) {
+                hasCounter |= attributePath.mbeanAttribute.counter();
+            }
+            this.hasCounter = hasCounter;
+        }
+    }
+
+    private static class AttributePath {
+
+        private final MBeanAttribute mbeanAttribute;
+        private final String attributeName;
+        // non-null for composite data attributes, e.g. HeapMemoryUsage.used
+        private final @Nullable String compositeKey;
+
+        private AttributePath(MBeanAttribute mbeanAttribute) {
+            this.mbeanAttribute = mbeanAttribute;
+            String name = mbeanAttribute.name();
+            int index = name.indexOf('.');
+            if (index == -1) {
+                attributeName = name;
+                compositeKey = null;
+            } else {
+                attributeName = name.substring(0, index);
+                int nextIndex = name.indexOf('.', index + 1);
+                compositeKey = nextIndex == -1 ? name.substring(index + 1)
+                        : name.substring(index + 1, nextIndex);
+            }
+        }
+    }
+
+    private static class MBeanHandle {
+
+        private final ObjectName objectName;
+        private final String mbeanObjectName;
+        private final ResolvedGauge resolvedGauge;
+        // gauge names are built once, indexed the same as resolvedGauge.attributePaths
+        private final String[] gaugeNames;
+
+        private MBeanHandle(ObjectName objectName, String mbeanObjectName,
+                ResolvedGauge resolvedGauge) {
+            this.objectName = objectName;
+            this.mbeanObjectName = mbeanObjectName;
+            this.resolvedGauge = resolvedGauge;
+            List<AttributePath> attributePaths = resolvedGauge.attributePaths;
+            gaugeNames = new String[attributePaths.size()];
+            for (int i = 0; i < attributePaths.size(); i++) {
+                MBeanAttribute mbeanAttribute = attributePaths.get(i).mbeanAttribute;
+                String gaugeName = mbeanObjectName + ':' + mbeanAttribute.name();
+                if (mbeanAttribute.counter()) {
+                    // "[counter]" suffix is so gauge name (and gauge id) will change if gauge is
+                    // switched between counter and non-counter (which will prevent counter and
+                    // non-counter values showing up in same chart line)
+                    gaugeName += "[counter]";
+                }
+                gaugeNames[i] = gaugeName;
+            }
+        }
+    }
+
+    private static class MBeanValues {
+
+        private final MBeanHandle mbean;
+        private final long captureTime;
+        private final long captureTick;
+        // indexed the same as resolvedGauge.attributePaths
+        private final double[] values;
+        private final boolean[] present;
+
+        private MBeanValues(MBeanHandle mbean, long captureTime, long captureTick,
+                double[] values, boolean[] present) {
+            this.mbean = mbean;
+            this.captureTime = captureTime;
+            this.captureTick = captureTick;
+            this.values = values;
+            this.present = present;
+        }
+    }
+
     @Value.Immutable
     @Styles.AllParameters
     interface RawCounterValue {
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.live;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import com.google.common.collect.Lists;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.glowroot.agent.util.ThreadFactories;
+import org.glowroot.agent.weaving.AnalyzedWorld;
+import org.glowroot.common.util.ScheduledRunnable;
+
+// warms up AnalyzedWorld ahead of class loading by analyzing, on a background thread pool, the
+// classes found in the classpath locations of each newly seen class loader, so that super type
+// hierarchy resolution inside ClassFileTransformer.transform() finds the super types already
+// analyzed instead of reading and parsing them from class loader resources one at a time
+//
+// this trades memory (AnalyzedClass entries for classes that may never be loaded) for shorter
+// deploy times when many class loaders load classes at once, e.g. an app server deploying many
+// web applications
+public class ClassPreAnalyzer extends ScheduledRunnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(ClassPreAnalyzer.class);
+
+    private static final int BATCH_SIZE = 500;
+
+    private final AnalyzedWorld analyzedWorld;
+    // the class names are read from the same (soft referenced) classpath cache that backs the
+    // instrumentation UI, instead of scanning the classpath locations a second time
+    private final LiveWeavingServiceImpl liveWeavingService;
+    private final ExecutorService executor;
+
+    // weak keys to prevent retention of class loaders
+    //
+    // only accessed from runInternal(), which never runs concurrently with itself
+    private final Set<ClassLoader> preAnalyzedLoaders =
+            Collections.newSetFromMap(new WeakHashMap<ClassLoader, Boolean>());
+
+    public ClassPreAnalyzer(AnalyzedWorld analyzedWorld, LiveWeavingServiceImpl liveWeavingService,
+            int threads) {
+        this.analyzedWorld = analyzedWorld;
+        this.liveWeavingService = liveWeavingService;
+        executor = Executors.newFixedThreadPool(threads,
+                ThreadFactories.create("Glowroot-Class-Pre-Analysis-%d"));
+    }
+
+    @Override
+    protected void runInternal() {
+        for (ClassLoader loader : analyzedWorld.getClassLoaders()) {
+            if (!preAnalyzedLoaders.add(loader)) {
+                continue;
+            }
+            List<String> classNames =
+                    liveWeavingService.getClasspathCache().getClassNames(loader);
+            logger.debug("pre-analyzing {} classes for class loader: {}", classNames.size(),
+                    loader);
+            for (List<String> batch : Lists.partition(classNames, BATCH_SIZE)) {
+                executor.execute(new PreAnalyzeBatch(batch, loader));
+            }
+        }
+    }
+
+    public void close() {
+        cancel();
+        executor.shutdownNow();
+    }
+
+    private class PreAnalyzeBatch implements Runnable {
+
+        private final List<String> classNames;
+        private final ClassLoader loader;
+
+        private PreAnalyzeBatch(List<String> classNames, ClassLoader loader) {
+            this.classNames = classNames;
+            this.loader = loader;
+        }
+
+        @Override
+        public void run() {
+            for (String className : classNames) {
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                try {
+                    analyzedWorld.preAnalyze(className, loader);
+                } catch (Throwable t) {
+                    // e.g. LinkageError, pre-analysis is only an optimization
+                    logger.debug(t.getMessage(), t);
+                }
+            }
+        }
+    }
+}
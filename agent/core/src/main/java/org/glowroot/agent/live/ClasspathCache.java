@@ -32,6 +32,7 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarInputStream;
@@ -165,6 +166,30 @@ class ClasspathCache {
         }
         updateCacheWithClasspathClasses(newClassNameLocations);
         updateCacheWithBootstrapClasses(newClassNameLocations);
+        mergeIntoClassNameLocations(newClassNameLocations);
+    }
+
+    // returns the names of the classes found in the class loader's own classpath locations (this
+    // is used by ClassPreAnalyzer)
+    synchronized ImmutableList<String> getClassNames(ClassLoader loader) {
+        Multimap<String, Location> newClassNameLocations = HashMultimap.create();
+        List<Location> locations = getLocations(loader);
+        for (Location location : locations) {
+            loadClassNames(location, newClassNameLocations);
+        }
+        mergeIntoClassNameLocations(newClassNameLocations);
+        Set<Location> locationSet = Sets.newHashSet(locations);
+        List<String> classNames = Lists.newArrayList();
+        for (Map.Entry<String, Location> entry : classNameLocations.entries()) {
+            if (locationSet.contains(entry.getValue())) {
+                classNames.add(entry.getKey());
+            }
+        }
+        return ImmutableList.copyOf(classNames);
+    }
+
+    @GuardedBy("this")
+    private void mergeIntoClassNameLocations(Multimap<String, Location> newClassNameLocations) {
         if (!newClassNameLocations.isEmpty()) {
             // multimap that sorts keys and de-dups values while maintains value ordering
             SetMultimap<String, Location> newMap =
@@ -208,6 +233,12 @@ class ClasspathCache {
 
     @GuardedBy("this")
     private void updateCache(ClassLoader loader, Multimap<String, Location> newClassNameLocations) {
+        for (Location location : getLocations(loader)) {
+            loadClassNames(location, newClassNameLocations);
+        }
+    }
+
+    private static List<Location> getLocations(ClassLoader loader) {
         List<URL> urls = getURLs(loader);
         List<Location> locations = Lists.newArrayList();
         for (URL url : urls) {
@@ -216,9 +247,7 @@ class ClasspathCache {
                 locations.add(location);
             }
         }
-        for (Location location : locations) {
-            loadClassNames(location, newClassNameLocations);
-        }
+        return locations;
     }
 
     private List<ClassLoader> getKnownClassLoaders() {
@@ -20,13 +20,14 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.StringReader;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import javax.management.ObjectName;
 
-import com.google.common.base.Splitter;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Ordering;
 import com.google.common.primitives.Longs;
@@ -38,83 +39,278 @@ import org.glowroot.agent.util.JavaVersion;
 import org.glowroot.agent.util.LazyPlatformMBeanServer;
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.HeapHistogram;
 
+import static java.util.concurrent.TimeUnit.SECONDS;
+
 class HeapHistogramTool {
 
+    // the second histogram delays the response (and the central request stream along with it)
+    private static final int MAX_COMPARE_INTERVAL_SECONDS = 60;
+
     private HeapHistogramTool() {}
 
-    static HeapHistogram run(LazyPlatformMBeanServer lazyPlatformMBeanServer) throws Exception {
+    static HeapHistogram run(LazyPlatformMBeanServer lazyPlatformMBeanServer, int maxClasses,
+            int compareIntervalSeconds) throws Exception {
+        boolean jrockit = JavaVersion.isJRockitJvm();
+        int intervalSeconds = getCompareIntervalSeconds(compareIntervalSeconds);
+        if (intervalSeconds == 0) {
+            return parse(gcClassHistogram(lazyPlatformMBeanServer), jrockit, maxClasses)
+                    .toProto();
+        }
+        Histogram first = parse(gcClassHistogram(lazyPlatformMBeanServer), jrockit, 0);
+        SECONDS.sleep(intervalSeconds);
+        Histogram second = parse(gcClassHistogram(lazyPlatformMBeanServer), jrockit, 0);
+        return diff(first, second, maxClasses, intervalSeconds);
+    }
+
+    static HeapHistogram runPriorToJava8(long pid, boolean allowAttachSelf,
+            @Nullable File glowrootJarFile, int maxClasses, int compareIntervalSeconds)
+            throws Exception {
+        int intervalSeconds = getCompareIntervalSeconds(compareIntervalSeconds);
+        if (intervalSeconds == 0) {
+            return JvmTool.run(pid, "heapHisto", new HeapHistogramProcessor(maxClasses),
+                    allowAttachSelf, glowrootJarFile).toProto();
+        }
+        Histogram first = JvmTool.run(pid, "heapHisto", new HeapHistogramProcessor(0),
+                allowAttachSelf, glowrootJarFile);
+        SECONDS.sleep(intervalSeconds);
+        Histogram second = JvmTool.run(pid, "heapHisto", new HeapHistogramProcessor(0),
+                allowAttachSelf, glowrootJarFile);
+        return diff(first, second, maxClasses, intervalSeconds);
+    }
+
+    // the histogram text is scanned in place, without splitting each row into strings, and only
+    // the first maxClasses distinct classes are retained (the remaining rows only contribute to
+    // the totals), which relies on the rows being ordered by bytes descending as they are in
+    // HotSpot's output
+    @VisibleForTesting
+    static Histogram parse(String text, boolean jrockit, int maxClasses) throws IOException {
+        Histogram histogram = new Histogram(jrockit, maxClasses);
+        int start = 0;
+        int length = text.length();
+        while (start < length && !histogram.done) {
+            int end = text.indexOf('\n', start);
+            if (end == -1) {
+                end = length;
+            }
+            int lineEnd = end;
+            if (lineEnd > start && text.charAt(lineEnd - 1) == '\r') {
+                lineEnd--;
+            }
+            histogram.addLine(text, start, lineEnd);
+            start = end + 1;
+        }
+        histogram.checkHeaderFound();
+        return histogram;
+    }
+
+    @VisibleForTesting
+    static HeapHistogram diff(Histogram first, Histogram second, int maxClasses,
+            int intervalSeconds) {
+        List<ClassInfo> classInfos = Lists.newArrayList();
+        for (ClassInfo classInfo : second.classInfos.values()) {
+            ClassInfo firstClassInfo = first.classInfos.get(classInfo.rawClassName);
+            if (firstClassInfo == null) {
+                classInfo.bytesDelta = classInfo.bytes;
+                classInfo.countDelta = classInfo.count;
+            } else {
+                classInfo.bytesDelta = classInfo.bytes - firstClassInfo.bytes;
+                classInfo.countDelta = classInfo.count - firstClassInfo.count;
+            }
+            classInfos.add(classInfo);
+        }
+        for (ClassInfo firstClassInfo : first.classInfos.values()) {
+            if (!second.classInfos.containsKey(firstClassInfo.rawClassName)) {
+                // all instances have been collected since the first histogram
+                ClassInfo classInfo =
+                        new ClassInfo(firstClassInfo.rawClassName, firstClassInfo.module);
+                classInfo.bytesDelta = -firstClassInfo.bytes;
+                classInfo.countDelta = -firstClassInfo.count;
+                classInfos.add(classInfo);
+            }
+        }
+        List<ClassInfo> ordered;
+        if (maxClasses == 0) {
+            ordered = ClassInfo.orderingByBytesDelta.sortedCopy(classInfos);
+        } else {
+            // bounded selection instead of sorting every class
+            ordered = ClassInfo.orderingByBytesDelta.leastOf(classInfos, maxClasses);
+        }
+        return second.toProto(ordered)
+                .setCompareIntervalSeconds(intervalSeconds)
+                .build();
+    }
+
+    private static String gcClassHistogram(LazyPlatformMBeanServer lazyPlatformMBeanServer)
+            throws Exception {
         ObjectName objectName =
                 ObjectName.getInstance("com.sun.management:type=DiagnosticCommand");
-        String result = (String) lazyPlatformMBeanServer.invoke(objectName, "gcClassHistogram",
+        return (String) lazyPlatformMBeanServer.invoke(objectName, "gcClassHistogram",
                 new Object[] {null}, new String[] {"[Ljava.lang.String;"});
-        return HeapHistogramProcessor.process(new BufferedReader(new StringReader(result)));
     }
 
-    static HeapHistogram runPriorToJava8(long pid, boolean allowAttachSelf,
-            @Nullable File glowrootJarFile) throws Exception {
-        return JvmTool.run(pid, "heapHisto", new HeapHistogramProcessor(), allowAttachSelf,
-                glowrootJarFile);
+    private static int getCompareIntervalSeconds(int compareIntervalSeconds) {
+        return Math.max(0, Math.min(compareIntervalSeconds, MAX_COMPARE_INTERVAL_SECONDS));
     }
 
-    private static class HeapHistogramProcessor implements InputStreamProcessor<HeapHistogram> {
+    private static class HeapHistogramProcessor implements InputStreamProcessor<Histogram> {
+
+        private final int maxClasses;
+
+        private HeapHistogramProcessor(int maxClasses) {
+            this.maxClasses = maxClasses;
+        }
 
         @Override
-        public HeapHistogram process(InputStream in) throws IOException {
-            return process(new BufferedReader(new InputStreamReader(in)));
+        public Histogram process(InputStream in) throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+            Histogram histogram = new Histogram(JavaVersion.isJRockitJvm(), maxClasses);
+            String line;
+            while (!histogram.done && (line = reader.readLine()) != null) {
+                histogram.addLine(line, 0, line.length());
+            }
+            histogram.checkHeaderFound();
+            return histogram;
         }
+    }
 
-        private static HeapHistogram process(BufferedReader in) throws IOException {
-            boolean jrockit = JavaVersion.isJRockitJvm();
-            // skip over header lines
-            String line = in.readLine();
-            while (line != null && !line.contains("--------")) {
-                line = in.readLine();
+    @VisibleForTesting
+    static class Histogram {
+
+        private final boolean jrockit;
+        private final int maxClasses;
+
+        // keyed by class name as it appears in the histogram (e.g. "[Ljava.lang.String;")
+        private final Map<String, ClassInfo> classInfos = Maps.newHashMap();
+
+        private long totalBytes;
+        private long totalCount;
+
+        private boolean headerFound;
+        private boolean done;
+
+        private Histogram(boolean jrockit, int maxClasses) {
+            this.jrockit = jrockit;
+            this.maxClasses = maxClasses;
+        }
+
+        HeapHistogram toProto() {
+            return toProto(ClassInfo.orderingByBytes.sortedCopy(classInfos.values())).build();
+        }
+
+        private HeapHistogram.Builder toProto(Collection<ClassInfo> orderedClassInfos) {
+            HeapHistogram.Builder builder = HeapHistogram.newBuilder()
+                    .setTotalBytes(totalBytes)
+                    .setTotalCount(totalCount);
+            for (ClassInfo classInfo : orderedClassInfos) {
+                builder.addClassInfo(classInfo.toProto());
             }
-            if (line == null) {
-                throw new IOException("Unexpected heapHisto output");
+            return builder;
+        }
+
+        private void addLine(String text, int start, int end) throws IOException {
+            if (!headerFound) {
+                // skip over header lines
+                int index = text.indexOf("--------", start);
+                headerFound = index != -1 && index < end;
+                return;
             }
-            Map<String, ClassInfo> classInfos = Maps.newHashMap();
-            Splitter splitter = Splitter.on(' ').omitEmptyStrings();
-            while ((line = in.readLine()) != null) {
-                if (line.startsWith("Total ") || line.endsWith(" total ---")) {
-                    break;
-                }
-                Iterator<String> parts = splitter.split(line).iterator();
-                parts.next();
-                long count;
-                long bytes;
-                if (jrockit) {
-                    String bytesStr = parts.next();
-                    bytes = 1024 * Long.parseLong(bytesStr.substring(0, bytesStr.length() - 1));
-                    count = Long.parseLong(parts.next());
-                    parts.next();
-                } else {
-                    count = Long.parseLong(parts.next());
-                    bytes = Long.parseLong(parts.next());
-                }
-                String className = parts.next();
-                // skipping PermGen objects
-                if (className.charAt(0) != '<') {
-                    if (className.charAt(0) == '[') {
-                        className = Type.getType(className).getClassName();
-                    }
-                    ClassInfo classInfo = classInfos.get(className);
-                    if (classInfo == null) {
-                        classInfo = new ClassInfo(className);
-                        classInfos.put(className, classInfo);
-                    }
-                    classInfo.bytes += bytes;
-                    classInfo.count += count;
+            if (text.startsWith("Total ", start)
+                    || end - start >= 10 && text.startsWith(" total ---", end - 10)) {
+                done = true;
+                return;
+            }
+            int pos = skipSpaces(text, start, end);
+            pos = skipSpaces(text, nextSpace(text, pos, end), end);
+            long count;
+            long bytes;
+            if (jrockit) {
+                int bytesEnd = nextSpace(text, pos, end);
+                bytes = 1024 * parseLong(text, pos, bytesEnd - 1, start, end);
+                pos = skipSpaces(text, bytesEnd, end);
+                int countEnd = nextSpace(text, pos, end);
+                count = parseLong(text, pos, countEnd, start, end);
+                pos = skipSpaces(text, nextSpace(text, skipSpaces(text, countEnd, end), end),
+                        end);
+            } else {
+                int countEnd = nextSpace(text, pos, end);
+                count = parseLong(text, pos, countEnd, start, end);
+                pos = skipSpaces(text, countEnd, end);
+                int bytesEnd = nextSpace(text, pos, end);
+                bytes = parseLong(text, pos, bytesEnd, start, end);
+                pos = skipSpaces(text, bytesEnd, end);
+            }
+            int classNameEnd = nextSpace(text, pos, end);
+            if (pos == classNameEnd) {
+                throw new IOException(
+                        "Unexpected heap histogram row: " + text.substring(start, end));
+            }
+            // skipping PermGen objects
+            if (text.charAt(pos) == '<') {
+                return;
+            }
+            totalBytes += bytes;
+            totalCount += count;
+            String className = text.substring(pos, classNameEnd);
+            ClassInfo classInfo = classInfos.get(className);
+            if (classInfo == null) {
+                if (maxClasses != 0 && classInfos.size() >= maxClasses) {
+                    return;
                 }
+                classInfo = new ClassInfo(className, parseModule(text, classNameEnd, end));
+                classInfos.put(className, classInfo);
+            }
+            classInfo.bytes += bytes;
+            classInfo.count += count;
+            // each class loader that loads a class with the same name gets its own row
+            classInfo.loaderCount++;
+        }
+
+        private void checkHeaderFound() throws IOException {
+            if (!headerFound) {
+                throw new IOException("Unexpected heapHisto output");
+            }
+        }
+
+        // Java 9+ appends the module, e.g. "(java.base@11.0.2)"
+        private static String parseModule(String text, int pos, int end) {
+            int moduleStart = skipSpaces(text, pos, end);
+            if (moduleStart < end && text.charAt(moduleStart) == '('
+                    && text.charAt(end - 1) == ')') {
+                return text.substring(moduleStart + 1, end - 1);
             }
-            HeapHistogram.Builder builder = HeapHistogram.newBuilder();
-            for (ClassInfo classInfo : ClassInfo.orderingByBytes.sortedCopy(classInfos.values())) {
-                builder.addClassInfo(HeapHistogram.ClassInfo.newBuilder()
-                        .setClassName(classInfo.className)
-                        .setBytes(classInfo.bytes)
-                        .setCount(classInfo.count));
+            return "";
+        }
+
+        private static int skipSpaces(String text, int pos, int end) {
+            while (pos < end && text.charAt(pos) == ' ') {
+                pos++;
             }
-            return builder.build();
+            return pos;
+        }
+
+        private static int nextSpace(String text, int pos, int end) {
+            while (pos < end && text.charAt(pos) != ' ') {
+                pos++;
+            }
+            return pos;
+        }
+
+        private static long parseLong(String text, int from, int to, int lineStart, int lineEnd)
+                throws IOException {
+            if (from >= to) {
+                throw new IOException(
+                        "Unexpected heap histogram row: " + text.substring(lineStart, lineEnd));
+            }
+            long value = 0;
+            for (int i = from; i < to; i++) {
+                int digit = text.charAt(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new IOException("Unexpected heap histogram row: "
+                            + text.substring(lineStart, lineEnd));
+                }
+                value = value * 10 + digit;
+            }
+            return value;
         }
     }
 
@@ -127,12 +323,42 @@ class HeapHistogramTool {
             }
         };
 
-        private final String className;
+        private static final Ordering<ClassInfo> orderingByBytesDelta =
+                new Ordering<ClassInfo>() {
+                    @Override
+                    public int compare(ClassInfo left, ClassInfo right) {
+                        return Longs.compare(right.bytesDelta, left.bytesDelta);
+                    }
+                };
+
+        private final String rawClassName;
+        private final String module;
         private long bytes;
         private long count;
+        private int loaderCount;
+        private long bytesDelta;
+        private long countDelta;
+
+        private ClassInfo(String rawClassName, String module) {
+            this.rawClassName = rawClassName;
+            this.module = module;
+        }
 
-        private ClassInfo(String className) {
-            this.className = className;
+        private HeapHistogram.ClassInfo toProto() {
+            String className = rawClassName;
+            if (className.charAt(0) == '[') {
+                // only converting the retained classes
+                className = Type.getType(className).getClassName();
+            }
+            return HeapHistogram.ClassInfo.newBuilder()
+                    .setClassName(className)
+                    .setBytes(bytes)
+                    .setCount(count)
+                    .setModule(module)
+                    .setLoaderCount(loaderCount)
+                    .setBytesDelta(bytesDelta)
+                    .setCountDelta(countDelta)
+                    .build();
         }
     }
 }
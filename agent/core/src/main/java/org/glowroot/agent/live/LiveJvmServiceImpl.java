@@ -156,15 +156,18 @@ public class LiveJvmServiceImpl implements LiveJvmService {
     }
 
     @Override
-    public HeapHistogram heapHistogram(String agentId) throws Exception {
+    public HeapHistogram heapHistogram(String agentId, int maxClasses,
+            int compareIntervalSeconds) throws Exception {
         if (JavaVersion.isJ9Jvm()) {
             throw new UnavailableDueToRunningInJ9JvmException();
         }
         if (JavaVersion.isGreaterThanOrEqualToJava8()) {
-            return HeapHistogramTool.run(lazyPlatformMBeanServer);
+            return HeapHistogramTool.run(lazyPlatformMBeanServer, maxClasses,
+                    compareIntervalSeconds);
         } else {
             long pid = checkNotNull(LiveJvmServiceImpl.getProcessId());
-            return HeapHistogramTool.runPriorToJava8(pid, allowAttachSelf(), glowrootJarFile);
+            return HeapHistogramTool.runPriorToJava8(pid, allowAttachSelf(), glowrootJarFile,
+                    maxClasses, compareIntervalSeconds);
         }
     }
 
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.live;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Supplier;
+
+import org.glowroot.agent.impl.TransactionProcessor;
+import org.glowroot.common.live.LiveMetricsRepository;
+import org.glowroot.common.model.TransactionTypeMetrics;
+import org.glowroot.wire.api.model.CollectorServiceOuterClass.GaugeValueMessage.GaugeValue;
+
+public class LiveMetricsRepositoryImpl implements LiveMetricsRepository {
+
+    private final TransactionProcessor transactionProcessor;
+    private final Supplier<List<GaugeValue>> latestGaugeValues;
+
+    public LiveMetricsRepositoryImpl(TransactionProcessor transactionProcessor,
+            Supplier<List<GaugeValue>> latestGaugeValues) {
+        this.transactionProcessor = transactionProcessor;
+        this.latestGaugeValues = latestGaugeValues;
+    }
+
+    @Override
+    public void accept(MetricsVisitor visitor) throws Exception {
+        for (Map.Entry<String, TransactionTypeMetrics> entry : transactionProcessor
+                .getTransactionTypeMetrics().entrySet()) {
+            visitor.visitTransactionType("", entry.getKey(), entry.getValue());
+        }
+        for (GaugeValue gaugeValue : latestGaugeValues.get()) {
+            visitor.visitGauge("", gaugeValue.getGaugeName(), gaugeValue.getValue());
+        }
+    }
+}
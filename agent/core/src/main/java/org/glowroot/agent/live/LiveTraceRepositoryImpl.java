@@ -151,6 +151,10 @@ public class LiveTraceRepositoryImpl implements LiveTraceRepository {
                 if (auxThreadProfile != null) {
                     builder.setAuxThreadProfile(auxThreadProfile);
                 }
+                Profile allocationProfile = traceVisitor.allocationProfile;
+                if (allocationProfile != null) {
+                    builder.setAllocationProfile(allocationProfile);
+                }
                 return builder.setHeader(checkNotNull(traceVisitor.header))
                         .addAllEntry(traceVisitor.entries)
                         .addAllQuery(traceVisitor.queries)
@@ -162,7 +166,8 @@ public class LiveTraceRepositoryImpl implements LiveTraceRepository {
     }
 
     @Override
-    public int getMatchingTraceCount(String transactionType, @Nullable String transactionName) {
+    public int getMatchingTraceCount(String agentRollupId, String transactionType,
+            @Nullable String transactionName) {
         // include active traces, this is mostly for the case where there is just a single very
         // long running active trace and it would be misleading to display Traces (0) on the tab
         int count = 0;
@@ -178,9 +183,9 @@ public class LiveTraceRepositoryImpl implements LiveTraceRepository {
     }
 
     @Override
-    public List<TracePoint> getMatchingActiveTracePoints(TraceKind traceKind,
-            String transactionType, @Nullable String transactionName, TracePointFilter filter,
-            int limit, long captureTime, long captureTick) {
+    public List<TracePoint> getMatchingActiveTracePoints(String agentRollupId,
+            TraceKind traceKind, String transactionType, @Nullable String transactionName,
+            TracePointFilter filter, int limit, long captureTime, long captureTick) {
         List<TracePoint> activeTracePoints = Lists.newArrayList();
         for (Transaction transaction : transactionRegistry.getTransactions()) {
             long startTick = transaction.getStartTick();
@@ -211,9 +216,19 @@ public class LiveTraceRepositoryImpl implements LiveTraceRepository {
         return activeTracePoints;
     }
 
+    // used when the central collector requests active trace points, in which case the capture
+    // tick has to be read locally since the central collector's ticker is not comparable
+    public List<TracePoint> getMatchingActiveTracePoints(TraceKind traceKind,
+            String transactionType, @Nullable String transactionName, TracePointFilter filter,
+            int limit, long captureTime) {
+        return getMatchingActiveTracePoints(AGENT_ID, traceKind, transactionType, transactionName,
+                filter, limit, captureTime, ticker.read());
+    }
+
     @Override
-    public List<TracePoint> getMatchingPendingPoints(TraceKind traceKind, String transactionType,
-            @Nullable String transactionName, TracePointFilter filter, long captureTime) {
+    public List<TracePoint> getMatchingPendingPoints(String agentRollupId, TraceKind traceKind,
+            String transactionType, @Nullable String transactionName, TracePointFilter filter,
+            long captureTime) {
         List<TracePoint> points = Lists.newArrayList();
         for (Transaction transaction : traceCollector.getPendingTransactions()) {
             if (matches(transaction, traceKind, transactionType, transactionName, filter)) {
@@ -315,6 +330,7 @@ public class LiveTraceRepositoryImpl implements LiveTraceRepository {
         private List<String> sharedQueryTexts = ImmutableList.of();
         private @Nullable Profile mainThreadProfile;
         private @Nullable Profile auxThreadProfile;
+        private @Nullable Profile allocationProfile;
         private Trace. /*@Nullable*/ Header header;
 
         @Override
@@ -322,6 +338,18 @@ public class LiveTraceRepositoryImpl implements LiveTraceRepository {
             entries.add(entry);
         }
 
+        @Override
+        public void visitIncrementalEntry(int index, Trace.Entry entry) {
+            // live traces are read with all of their entries, so this is only a fallback in case
+            // a reader ever visits incrementally, in which case the changed entry is applied at its
+            // index
+            if (index < entries.size()) {
+                entries.set(index, entry);
+            } else {
+                visitEntry(entry);
+            }
+        }
+
         @Override
         public void visitQueries(List<Aggregate.Query> queries) {
             this.queries = queries;
@@ -342,6 +370,11 @@ public class LiveTraceRepositoryImpl implements LiveTraceRepository {
             auxThreadProfile = profile;
         }
 
+        @Override
+        public void visitAllocationProfile(Profile profile) {
+            allocationProfile = profile;
+        }
+
         @Override
         public void visitHeader(Trace.Header header) {
             this.header = header;
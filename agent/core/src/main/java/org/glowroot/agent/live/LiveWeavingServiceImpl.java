@@ -196,7 +196,7 @@ public class LiveWeavingServiceImpl implements LiveWeavingService {
         return new UiAnalyzedMethodOrdering().sortedCopy(analyzedMethods);
     }
 
-    private ClasspathCache getClasspathCache() {
+    ClasspathCache getClasspathCache() {
         return classpathCache.getUnchecked(THE_SINGLE_KEY);
     }
 
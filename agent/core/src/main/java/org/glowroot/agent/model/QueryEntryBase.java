@@ -24,7 +24,8 @@ import org.glowroot.agent.plugin.api.QueryEntry;
 // addresses that must be navigated)
 public abstract class QueryEntryBase implements QueryEntry {
 
-    private final @Nullable QueryData queryData;
+    // not final since subclass instances can be recycled, see reinitQueryEntry()
+    private @Nullable QueryData queryData;
 
     // row numbers start at 1
     private long currRow = -1;
@@ -41,6 +42,16 @@ public abstract class QueryEntryBase implements QueryEntry {
 
     }
 
+    protected void reinitQueryEntry(@Nullable QueryData queryData, long startTick,
+            long queryExecutionCount) {
+        this.queryData = queryData;
+        currRow = -1;
+        maxRow = 0;
+        if (queryData != null && queryExecutionCount != -1) {
+            queryData.start(startTick, queryExecutionCount);
+        }
+    }
+
     public void extendQueryData(long startTick) {
         if (queryData != null) {
             queryData.extend(startTick);
@@ -106,6 +106,20 @@ public class ThreadProfile {
         }
     }
 
+    // allocation samples are merged right away (instead of first being retained unmerged) since
+    // they are weighted
+    public void addAllocationSample(List<StackTraceElement> stackTrace, long allocatedBytes) {
+        synchronized (lock) {
+            if (++sampleCount > maxSamples) {
+                return;
+            }
+            if (profile == null) {
+                profile = new MutableProfile();
+            }
+            profile.merge(stackTrace, Thread.State.RUNNABLE, allocatedBytes);
+        }
+    }
+
     @GuardedBy("lock")
     private void mergeTheUnmergedInto(MutableProfile profile) {
         for (int i = 0; i < unmergedStackTraces.size(); i++) {
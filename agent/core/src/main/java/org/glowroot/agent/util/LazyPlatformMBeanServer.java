@@ -21,6 +21,7 @@ import java.util.ListIterator;
 import java.util.Set;
 
 import javax.annotation.concurrent.GuardedBy;
+import javax.management.AttributeList;
 import javax.management.InstanceAlreadyExistsException;
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanInfo;
@@ -172,6 +173,14 @@ public class LazyPlatformMBeanServer {
         return getAttributeAcrossAll(name, attribute, mbeanServers);
     }
 
+    // attributes that cannot be read are left out of the returned list (see
+    // MBeanServer.getAttributes())
+    public AttributeList getAttributes(ObjectName name, String[] attributes,
+            List<MBeanServer> mbeanServers) throws Exception {
+        ensureInit();
+        return getAttributesAcrossAll(name, attributes, mbeanServers);
+    }
+
     public void addInitListener(InitListener initListener) {
         synchronized (initListeners) {
             if (platformMBeanServer == null) {
@@ -337,6 +346,22 @@ public class LazyPlatformMBeanServer {
         throw checkNotNull(firstException);
     }
 
+    private static AttributeList getAttributesAcrossAll(ObjectName name, String[] attributes,
+            List<MBeanServer> mbeanServers) throws Exception {
+        InstanceNotFoundException firstException = null;
+        for (MBeanServer mbeanServer : mbeanServers) {
+            try {
+                return mbeanServer.getAttributes(name, attributes);
+            } catch (InstanceNotFoundException e) {
+                logger.debug(e.getMessage(), e);
+                if (firstException == null) {
+                    firstException = e;
+                }
+            }
+        }
+        throw checkNotNull(firstException);
+    }
+
     public interface InitListener {
         void postInit(MBeanServer mbeanServer) throws Exception;
     }
@@ -1,5 +1,5 @@
 /*
- * Copyright 2014-2018 the original author or authors.
+ * Copyright 2014-2026 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,20 +15,42 @@
  */
 package org.glowroot.agent.weaving;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.WrongMethodTypeException;
 import java.lang.reflect.Array;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 
 import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
 class Accessor {
 
+    private static final Logger logger = LoggerFactory.getLogger(Accessor.class);
+
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
     private final AccessorType accessorType;
     private final @Nullable Method method;
     private final @Nullable Field field;
 
+    // the method handle is adapted to (Object)Object so that it can be called with invokeExact(),
+    // which avoids the argument array, access checks and (on older JVMs) the inflation threshold
+    // of Method.invoke() on every evaluation
+    //
+    // null if the method handle could not be created, in which case reflection is used instead
+    private final @Nullable MethodHandle methodHandle;
+    // null for static members, otherwise the receiver is checked against this type before calling
+    // the method handle, see invokeMethodHandle()
+    private final @Nullable Class<?> receiverType;
+
     static Accessor fromMethod(Method method) {
         return new Accessor(method);
     }
@@ -45,18 +67,24 @@ class Accessor {
         accessorType = AccessorType.METHOD;
         this.method = method;
         this.field = null;
+        methodHandle = createMethodHandle(method);
+        receiverType = getReceiverType(method.getModifiers(), method.getDeclaringClass());
     }
 
     private Accessor(Field field) {
         accessorType = AccessorType.FIELD;
         this.method = null;
         this.field = field;
+        methodHandle = createMethodHandle(field);
+        receiverType = getReceiverType(field.getModifiers(), field.getDeclaringClass());
     }
 
     private Accessor() {
         accessorType = AccessorType.ARRAY_LENGTH;
         this.method = null;
         this.field = null;
+        methodHandle = null;
+        receiverType = null;
     }
 
     Class<?> getValueType() {
@@ -79,6 +107,9 @@ class Accessor {
         if (isArrayEvaluation(object)) {
             return evaluateArray((/*@Nullable*/ Object[]) object);
         }
+        if (methodHandle != null) {
+            return invokeMethodHandle(methodHandle, object);
+        }
         switch (accessorType) {
             case METHOD:
                 checkNotNull(method);
@@ -106,6 +137,60 @@ class Accessor {
         return values;
     }
 
+    // throw and wrap exceptions the same as Method.invoke() and Field.get() so that callers can
+    // continue to distinguish exceptions thrown by the accessor itself
+    private @Nullable Object invokeMethodHandle(MethodHandle methodHandle, Object object)
+            throws InvocationTargetException {
+        // the receiver is checked up front since the ClassCastException thrown by the asType()
+        // adaptation would be indistinguishable from a ClassCastException thrown by the accessor
+        if (receiverType != null && !receiverType.isInstance(object)) {
+            throw new IllegalArgumentException("object of type " + object.getClass().getName()
+                    + " is not an instance of " + receiverType.getName());
+        }
+        try {
+            return (Object) methodHandle.invokeExact(object);
+        } catch (WrongMethodTypeException e) {
+            // not thrown by the accessor itself
+            throw new IllegalArgumentException(e);
+        } catch (Throwable t) {
+            if (accessorType == AccessorType.FIELD && t instanceof RuntimeException) {
+                // Field.get() doesn't wrap exceptions
+                throw (RuntimeException) t;
+            }
+            throw new InvocationTargetException(t);
+        }
+    }
+
+    private static @Nullable Class<?> getReceiverType(int modifiers, Class<?> declaringClass) {
+        return Modifier.isStatic(modifiers) ? null : declaringClass;
+    }
+
+    private static @Nullable MethodHandle createMethodHandle(Method method) {
+        try {
+            MethodHandle methodHandle = MethodHandles.lookup().unreflect(method);
+            if (Modifier.isStatic(method.getModifiers())) {
+                methodHandle = MethodHandles.dropArguments(methodHandle, 0, Object.class);
+            }
+            return methodHandle.asType(GETTER_TYPE);
+        } catch (Exception e) {
+            logger.debug(e.getMessage(), e);
+            return null;
+        }
+    }
+
+    private static @Nullable MethodHandle createMethodHandle(Field field) {
+        try {
+            MethodHandle methodHandle = MethodHandles.lookup().unreflectGetter(field);
+            if (Modifier.isStatic(field.getModifiers())) {
+                methodHandle = MethodHandles.dropArguments(methodHandle, 0, Object.class);
+            }
+            return methodHandle.asType(GETTER_TYPE);
+        } catch (Exception e) {
+            logger.debug(e.getMessage(), e);
+            return null;
+        }
+    }
+
     private enum AccessorType {
         METHOD, FIELD, ARRAY_LENGTH
     }
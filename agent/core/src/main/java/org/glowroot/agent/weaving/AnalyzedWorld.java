@@ -54,6 +54,9 @@ public class AnalyzedWorld {
 
     private static final Logger logger = LoggerFactory.getLogger(AnalyzedWorld.class);
 
+    // must be a power of 2
+    private static final int WORLD_STRIPES = 16;
+
     private static final AtomicReference<Exception> findLoadedClassMethodException = new AtomicReference<>();
 
     private static final @Nullable Method findLoadedClassMethod = getFindLoadedClassMethod();
@@ -78,8 +81,12 @@ public class AnalyzedWorld {
     // not using the much more convenient (and concurrent) guava CacheBuilder since it uses many
     // additional classes that must then be pre-initialized since this is called from inside
     // ClassFileTransformer.transform() (see PreInitializeClasses)
-    private final Map<ClassLoader, ConcurrentMap<String, AnalyzedClass>> world = Collections
-            .synchronizedMap(new WeakHashMap<ClassLoader, ConcurrentMap<String, AnalyzedClass>>());
+    //
+    // striped by class loader identity hash code so that bursty class loading across many class
+    // loaders (e.g. an app server deploying many web applications at once) doesn't serialize on a
+    // single lock
+    private final ImmutableList<Map<ClassLoader, ConcurrentMap<String, AnalyzedClass>>> world =
+            createWorldStripes();
 
     // the analyzed classes for the bootstrap class loader (null) have to be stored separately since
     // LoadingCache doesn't accept null keys, and using an Optional<ClassLoader> for the key makes
@@ -127,8 +134,29 @@ public class AnalyzedWorld {
     }
 
     public ImmutableList<ClassLoader> getClassLoaders() {
-        synchronized (world) {
-            return ImmutableList.copyOf(world.keySet());
+        List<ClassLoader> loaders = Lists.newArrayList();
+        for (Map<ClassLoader, ConcurrentMap<String, AnalyzedClass>> worldStripe : world) {
+            synchronized (worldStripe) {
+                loaders.addAll(worldStripe.keySet());
+            }
+        }
+        return ImmutableList.copyOf(loaders);
+    }
+
+    // this is used to warm up AnalyzedWorld ahead of class loading (see ClassPreAnalyzer), so that
+    // super type hierarchy resolution during ClassFileTransformer.transform() finds the super types
+    // already analyzed
+    public void preAnalyze(String className, ClassLoader loader) {
+        ConcurrentMap<String, AnalyzedClass> loaderAnalyzedClasses = getAnalyzedClasses(loader);
+        if (loaderAnalyzedClasses.containsKey(className)) {
+            return;
+        }
+        try {
+            putAnalyzedClass(loaderAnalyzedClasses, createAnalyzedClass(className, loader));
+        } catch (ClassNotFoundException e) {
+            logger.debug(e.getMessage(), e);
+        } catch (IOException e) {
+            logger.debug(e.getMessage(), e);
         }
     }
 
@@ -137,6 +165,12 @@ public class AnalyzedWorld {
         loaderAnalyzedClasses.put(analyzedClass.name(), analyzedClass);
     }
 
+    // this is used for classes skipped by WeavingFilter, so that their class loader is still known
+    // (e.g. see ClasspathCache)
+    void addClassLoader(@Nullable ClassLoader loader) {
+        getAnalyzedClasses(loader);
+    }
+
     // it's ok if there are duplicates in the returned list (e.g. an interface that appears twice
     // in a type hierarchy), it's rare, dups don't cause an issue for callers, and so it doesn't
     // seem worth the (minor) performance hit to de-dup every time
@@ -367,12 +401,14 @@ public class AnalyzedWorld {
         if (loader == null) {
             return bootstrapLoaderWorld;
         } else {
+            Map<ClassLoader, ConcurrentMap<String, AnalyzedClass>> worldStripe =
+                    world.get(System.identityHashCode(loader) & (WORLD_STRIPES - 1));
             // this synchronization is for atomicity of get/put
-            synchronized (world) {
-                ConcurrentMap<String, AnalyzedClass> map = world.get(loader);
+            synchronized (worldStripe) {
+                ConcurrentMap<String, AnalyzedClass> map = worldStripe.get(loader);
                 if (map == null) {
                     map = new ConcurrentHashMap<String, AnalyzedClass>();
-                    world.put(loader, map);
+                    worldStripe.put(loader, map);
                 }
                 return map;
             }
@@ -380,9 +416,24 @@ public class AnalyzedWorld {
     }
 
     private ImmutableList<ConcurrentMap<String, AnalyzedClass>> getWorldValues() {
-        synchronized (world) {
-            return ImmutableList.copyOf(world.values());
+        List<ConcurrentMap<String, AnalyzedClass>> values = Lists.newArrayList();
+        for (Map<ClassLoader, ConcurrentMap<String, AnalyzedClass>> worldStripe : world) {
+            synchronized (worldStripe) {
+                values.addAll(worldStripe.values());
+            }
+        }
+        return ImmutableList.copyOf(values);
+    }
+
+    private static ImmutableList<Map<ClassLoader, ConcurrentMap<String, AnalyzedClass>>>
+            createWorldStripes() {
+        List<Map<ClassLoader, ConcurrentMap<String, AnalyzedClass>>> worldStripes =
+                Lists.newArrayList();
+        for (int i = 0; i < WORLD_STRIPES; i++) {
+            worldStripes.add(Collections.synchronizedMap(
+                    new WeakHashMap<ClassLoader, ConcurrentMap<String, AnalyzedClass>>()));
         }
+        return ImmutableList.copyOf(worldStripes);
     }
 
     private static AnalyzedClass putAnalyzedClass(
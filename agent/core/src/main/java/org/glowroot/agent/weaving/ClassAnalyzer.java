@@ -72,6 +72,7 @@ class ClassAnalyzer {
     private final MatchedMixinTypes matchedMixinTypes;
     private final boolean hasMainMethod;
     private final boolean isClassLoader;
+    private final boolean ejb;
 
     private final ImmutableSet<String> superClassNames;
 
@@ -112,6 +113,8 @@ class ClassAnalyzer {
             }
         }
 
+        ejb = ejbRemote || ejbStateless;
+
         ParseContext parseContext = ImmutableParseContext.of(className, codeSource);
         List<AnalyzedClass> interfaceAnalyzedHierarchy = Lists.newArrayList();
         // it's ok if there are duplicates in the superAnalyzedClasses list (e.g. an interface
@@ -271,6 +274,17 @@ class ClassAnalyzer {
         return isClassLoader;
     }
 
+    // this is used by WeavingCache and WeavingFilter
+    ImmutableList<AnalyzedClass> getSuperAnalyzedClasses() {
+        return superAnalyzedClasses;
+    }
+
+    // this is used by WeavingCache, since the EJB remote hack has side effects (defining advice
+    // classes) that are not captured in the cached weaving
+    boolean isEjb() {
+        return ejb;
+    }
+
     List<AnalyzedMethod> getMethodsThatOnlyNowFulfillAdvice() {
         return checkNotNull(methodsThatOnlyNowFulfillAdvice);
     }
@@ -383,7 +383,11 @@ public class PreInitializeWeavingClasses {
         types.add("org.glowroot.agent.weaving.ThinClassVisitor$ThinClass");
         types.add("org.glowroot.agent.weaving.ThinClassVisitor$ThinMethod");
         types.add("org.glowroot.agent.weaving.Weaver");
+        types.add("org.glowroot.agent.weaving.WeavingCache");
+        types.add("org.glowroot.agent.weaving.WeavingCache$CachedWeaving");
         types.add("org.glowroot.agent.weaving.WeavingClassFileTransformer");
+        types.add("org.glowroot.agent.weaving.WeavingFilter");
+        types.add("org.glowroot.agent.weaving.WeavingFilter$Targets");
         types.add("org.glowroot.agent.weaving.WeavingClassVisitor");
         types.add("org.glowroot.agent.weaving.WeavingClassVisitor$InitMixins");
         types.add("org.glowroot.agent.weaving.WeavingClassVisitor$MethodMetaGroup");
@@ -546,6 +550,8 @@ public class PreInitializeWeavingClasses {
         types.add("org.glowroot.agent.weaving.Weaver$2");
         types.add("org.glowroot.agent.weaving.Weaver$FelixOsgiHackClassVisitor$1");
         types.add("org.glowroot.agent.weaving.Weaver$EclipseOsgiHackClassVisitor$1");
+        types.add("org.glowroot.agent.weaving.WeavingCache$1");
+        types.add("org.glowroot.agent.weaving.WeavingFilter$1");
         types.add("org.glowroot.agent.weaving.WeavingClassVisitor$1");
         // this is referenced and picked up via org.glowroot.agent.weaving.Weaver$1
         types.add("org.glowroot.agent.plugin.api.config.ConfigListener");
@@ -23,6 +23,7 @@ import java.lang.management.MonitorInfo;
 import java.lang.management.ThreadInfo;
 import java.lang.management.ThreadMXBean;
 import java.security.CodeSource;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
@@ -68,6 +69,9 @@ public class Weaver {
 
     private static final Logger logger = LoggerFactory.getLogger(Weaver.class);
 
+    // must be a power of 2
+    private static final int ACTIVE_WEAVING_STRIPES = 8;
+
     // useful for debugging java.lang.VerifyError and java.lang.ClassFormatError
     private static final @Nullable String DEBUG_CLASS_NAME;
 
@@ -84,9 +88,12 @@ public class Weaver {
     private final ImmutableList<ShimType> shimTypes;
     private final ImmutableList<MixinType> mixinTypes;
     private final AnalyzedWorld analyzedWorld;
+    private final @Nullable WeavingCache weavingCache;
+    private final @Nullable WeavingFilter weavingFilter;
     private final TransactionRegistry transactionRegistry;
     private final Ticker ticker;
     private final TimerName timerName;
+    private final TimerName skippedTimerName;
 
     private volatile boolean weavingTimerEnabled;
 
@@ -94,17 +101,21 @@ public class Weaver {
 
     private volatile boolean weavingDisabledForLoggingDeadlock;
 
-    private final IterableWithSelfRemovableEntries<ActiveWeaving> activeWeavings =
-            new IterableWithSelfRemovableEntries<ActiveWeaving>();
+    // striped by thread id so that concurrent class loading doesn't serialize on a single lock
+    private final ImmutableList<IterableWithSelfRemovableEntries<ActiveWeaving>> activeWeavings =
+            createActiveWeavingStripes();
 
     public Weaver(Supplier<List<Advice>> advisors, List<ShimType> shimTypes,
             List<MixinType> mixinTypes, AnalyzedWorld analyzedWorld,
+            @Nullable WeavingCache weavingCache, @Nullable WeavingFilter weavingFilter,
             TransactionRegistry transactionRegistry, Ticker ticker, TimerNameCache timerNameCache,
             final ConfigService configService) {
         this.advisors = advisors;
         this.shimTypes = ImmutableList.copyOf(shimTypes);
         this.mixinTypes = ImmutableList.copyOf(mixinTypes);
         this.analyzedWorld = analyzedWorld;
+        this.weavingCache = weavingCache;
+        this.weavingFilter = weavingFilter;
         this.transactionRegistry = transactionRegistry;
         this.ticker = ticker;
         configService.addConfigListener(new ConfigListener() {
@@ -114,6 +125,7 @@ public class Weaver {
             }
         });
         this.timerName = timerNameCache.getTimerName(OnlyForTheTimerName.class);
+        this.skippedTimerName = timerNameCache.getTimerName(OnlyForTheSkippedTimerName.class);
     }
 
     public void setNoLongerNeedToWeaveMainMethods() {
@@ -123,9 +135,11 @@ public class Weaver {
     public void checkForDeadlockedActiveWeaving() {
         long currTick = ticker.read();
         List<Long> threadIds = Lists.newArrayList();
-        for (ActiveWeaving activeWeaving : activeWeavings) {
-            if (NANOSECONDS.toSeconds(currTick - activeWeaving.startTick) > 5) {
-                threadIds.add(activeWeaving.threadId);
+        for (IterableWithSelfRemovableEntries<ActiveWeaving> stripe : activeWeavings) {
+            for (ActiveWeaving activeWeaving : stripe) {
+                if (NANOSECONDS.toSeconds(currTick - activeWeaving.startTick) > 5) {
+                    threadIds.add(activeWeaving.threadId);
+                }
             }
         }
         if (!threadIds.isEmpty()) {
@@ -141,12 +155,27 @@ public class Weaver {
         }
         long startTick = ticker.read();
         TimerImpl weavingTimer = startWeavingTimer(startTick);
+        WeavingFilter weavingFilter = this.weavingFilter;
+        if (weavingFilter != null && classBeingRedefined == null
+                && noLongerNeedToWeaveMainMethods
+                && weavingFilter.isSkippable(classBytes, className, loader)) {
+            analyzedWorld.addClassLoader(loader);
+            weavingFilter.recordSkipped(ticker.read() - startTick);
+            if (weavingTimer != null) {
+                // this makes the number of skipped classes visible under the weaving timer
+                weavingTimer.startNestedTimer(skippedTimerName, startTick).stop();
+                weavingTimer.stop();
+            }
+            return null;
+        }
+        long threadId = Thread.currentThread().getId();
         SelfRemovableEntry activeWeavingEntry =
-                activeWeavings.add(new ActiveWeaving(Thread.currentThread().getId(), startTick));
+                activeWeavings.get((int) (threadId & (ACTIVE_WEAVING_STRIPES - 1)))
+                        .add(new ActiveWeaving(threadId, startTick));
         try {
             logger.trace("transform(): className={}", className);
-            byte[] transformedBytes =
-                    weaveUnderTimer(classBytes, className, classBeingRedefined, codeSource, loader);
+            byte[] transformedBytes = weaveUnderTimer(classBytes, className, classBeingRedefined,
+                    codeSource, loader, startTick);
             if (transformedBytes != null) {
                 logger.debug("transform(): transformed {}", className);
             }
@@ -177,9 +206,27 @@ public class Weaver {
 
     private byte /*@Nullable*/ [] weaveUnderTimer(byte[] classBytes, String className,
             @Nullable Class<?> classBeingRedefined, @Nullable CodeSource codeSource,
-            @Nullable ClassLoader loader) {
-        List<Advice> advisors = AnalyzedWorld.mergeInstrumentationAnnotations(this.advisors.get(),
+            @Nullable ClassLoader loader, long startTick) {
+        List<Advice> baseAdvisors = this.advisors.get();
+        List<Advice> advisors = AnalyzedWorld.mergeInstrumentationAnnotations(baseAdvisors,
                 classBytes, loader, className);
+        WeavingCache weavingCache = this.weavingCache;
+        WeavingFilter weavingFilter = this.weavingFilter;
+        String weavingCacheKey = null;
+        if (weavingCache != null && classBeingRedefined == null && advisors == baseAdvisors) {
+            weavingCacheKey = weavingCache.getKey(advisors, classBytes, loader == null,
+                    noLongerNeedToWeaveMainMethods);
+        }
+        if (weavingCache != null && weavingCacheKey != null) {
+            WeavingCache.CachedWeaving cachedWeaving = weavingCache.get(weavingCacheKey, className,
+                    loader, codeSource, analyzedWorld);
+            if (cachedWeaving != null && defineUsedAdviceClasses(cachedWeaving.usedAdvisors(),
+                    className, loader)) {
+                analyzedWorld.add(cachedWeaving.analyzedClass(), loader);
+                weavingCache.recordHit(cachedWeaving, ticker.read() - startTick);
+                return cachedWeaving.transformedBytes();
+            }
+        }
         ThinClassVisitor accv = new ThinClassVisitor();
         new ClassReader(classBytes).accept(accv, ClassReader.SKIP_FRAMES + ClassReader.SKIP_CODE);
         boolean frames = accv.getMajorVersion() >= V1_6;
@@ -223,7 +270,18 @@ public class Weaver {
             return null;
         }
         if (!classAnalyzer.isWeavingRequired()) {
-            analyzedWorld.add(classAnalyzer.getAnalyzedClass(), loader);
+            AnalyzedClass analyzedClass = classAnalyzer.getAnalyzedClass();
+            analyzedWorld.add(analyzedClass, loader);
+            if (weavingFilter != null && maybeProcessedBytes == null && !classAnalyzer.isEjb()) {
+                weavingFilter.recordNoWeavingRequired(analyzedClass,
+                        classAnalyzer.getSuperAnalyzedClasses(), loader,
+                        ticker.read() - startTick);
+            }
+            if (weavingCache != null && weavingCacheKey != null && !classAnalyzer.isEjb()) {
+                weavingCache.put(weavingCacheKey, analyzedClass,
+                        classAnalyzer.getSuperAnalyzedClasses(), maybeProcessedBytes,
+                        ImmutableList.<Advice>of(), ticker.read() - startTick);
+            }
             return maybeProcessedBytes;
         }
         List<ShimType> matchedShimTypes = classAnalyzer.getMatchedShimTypes();
@@ -295,21 +353,49 @@ public class Weaver {
                 logger.warn(e.getMessage(), e);
             }
         }
-        if (loader != null) {
-            try {
-                for (Advice usedAdvice : cv.getUsedAdvisors()) {
-                    LazyDefinedClass nonBootstrapLoaderAdviceClass =
-                            usedAdvice.nonBootstrapLoaderAdviceClass();
-                    if (nonBootstrapLoaderAdviceClass != null) {
-                        ClassLoaders.defineClassIfNotExists(nonBootstrapLoaderAdviceClass, loader);
-                    }
+        Set<Advice> usedAdvisors = cv.getUsedAdvisors();
+        if (!defineUsedAdviceClasses(usedAdvisors, className, loader)) {
+            return null;
+        }
+        if (weavingCache != null && weavingCacheKey != null && !classAnalyzer.isEjb()
+                && !hasMetas(usedAdvisors)) {
+            weavingCache.put(weavingCacheKey, classAnalyzer.getAnalyzedClass(),
+                    classAnalyzer.getSuperAnalyzedClasses(), transformedBytes, usedAdvisors,
+                    ticker.read() - startTick);
+        }
+        return transformedBytes;
+    }
+
+    private static boolean defineUsedAdviceClasses(Collection<Advice> usedAdvisors,
+            String className, @Nullable ClassLoader loader) {
+        if (loader == null) {
+            return true;
+        }
+        try {
+            for (Advice usedAdvice : usedAdvisors) {
+                LazyDefinedClass nonBootstrapLoaderAdviceClass =
+                        usedAdvice.nonBootstrapLoaderAdviceClass();
+                if (nonBootstrapLoaderAdviceClass != null) {
+                    ClassLoaders.defineClassIfNotExists(nonBootstrapLoaderAdviceClass, loader);
                 }
-            } catch (Exception e) {
-                logger.error("unable to weave {}: {}", className, e.getMessage(), e);
-                return null;
             }
+            return true;
+        } catch (Exception e) {
+            logger.error("unable to weave {}: {}", className, e.getMessage(), e);
+            return false;
         }
-        return transformedBytes;
+    }
+
+    // class and method metas are generated into meta holder classes as a side effect of weaving,
+    // so these cannot be replayed from the weaving cache
+    private static boolean hasMetas(Collection<Advice> usedAdvisors) {
+        for (Advice usedAdvice : usedAdvisors) {
+            if (!usedAdvice.classMetaTypes().isEmpty()
+                    || !usedAdvice.methodMetaTypes().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
     }
 
     private void checkForDeadlockedActiveWeaving(List<Long> activeWeavingThreadIds) {
@@ -342,6 +428,16 @@ public class Weaver {
         }
     }
 
+    private static ImmutableList<IterableWithSelfRemovableEntries<ActiveWeaving>>
+            createActiveWeavingStripes() {
+        List<IterableWithSelfRemovableEntries<ActiveWeaving>> activeWeavingStripes =
+                Lists.newArrayList();
+        for (int i = 0; i < ACTIVE_WEAVING_STRIPES; i++) {
+            activeWeavingStripes.add(new IterableWithSelfRemovableEntries<ActiveWeaving>());
+        }
+        return ImmutableList.copyOf(activeWeavingStripes);
+    }
+
     private static File getTempFile(String className, String prefix, String suffix) {
         String tmpDirProperty = StandardSystemProperty.JAVA_IO_TMPDIR.value();
         File tmpDir = tmpDirProperty == null ? new File(".") : new File(tmpDirProperty);
@@ -558,4 +654,10 @@ public class Weaver {
     private static class OnlyForTheTimerName {
         private OnlyForTheTimerName() {}
     }
+
+    @Pointcut(className = "", methodName = "", methodParameterTypes = {},
+            timerName = "glowroot weaving skipped")
+    private static class OnlyForTheSkippedTimerName {
+        private OnlyForTheSkippedTimerName() {}
+    }
 }
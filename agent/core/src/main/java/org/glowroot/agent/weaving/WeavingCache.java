@@ -0,0 +1,715 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.weaving;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.CountingInputStream;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.commons.Method;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.glowroot.agent.plugin.api.weaving.Pointcut;
+import org.glowroot.common.util.ScheduledRunnable;
+import org.glowroot.common.util.Version;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+// on-disk cache of weaving results, so that unchanged classes can skip ASM parsing, analysis and
+// weaving on subsequent JVM starts
+//
+// entries are keyed by the SHA-1 of the original class bytes (plus the bootstrap loader and main
+// method weaving flags), and the whole file is tied to a fingerprint of the advisors, shim types,
+// mixin types and agent version that were in effect when it was written
+//
+// since the result of analyzing a class also depends on its super types (e.g. inherited advice,
+// shim and mixin matching), each entry also records a hash of the analyzed super type hierarchy,
+// which is re-computed (typically from AnalyzedWorld's in-memory state) and compared on each hit
+//
+// classes that need side effects other than defining advice classes in their class loader (e.g.
+// class/method meta holders, @Instrumentation annotations, EJB remote interfaces) are never cached
+public class WeavingCache extends ScheduledRunnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WeavingCache.class);
+
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int FLAG_BOOTSTRAP_LOADER = 1;
+    private static final int FLAG_NO_LONGER_NEED_TO_WEAVE_MAIN_METHODS = 2;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private final File file;
+    private final int maxSize;
+
+    // the cache is only used as long as the advisors are the same as the ones that were used to
+    // compute the fingerprint (the advisors can change at runtime via instrumentation config)
+    private final List<Advice> advisors;
+    private final ImmutableList<ShimType> shimTypes;
+    private final ImmutableList<MixinType> mixinTypes;
+    private final String fingerprint;
+
+    // includes both the advisors and their non-bootstrap loader variants
+    private final Map<String, Advice> advisorsByName;
+
+    // values are the encoded entries, decoding only happens on a cache hit
+    private final ConcurrentMap<String, byte[]> entries;
+    private volatile boolean rewriteFile;
+
+    private final Queue<String> needsToBeWritten = new ConcurrentLinkedQueue<String>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong savedNanos = new AtomicLong();
+
+    private volatile long lookupCountAtLastRun;
+    private volatile boolean statsLogged;
+
+    public WeavingCache(File file, int maxSize, Supplier<List<Advice>> advisors,
+            List<ShimType> shimTypes, List<MixinType> mixinTypes) {
+        this.file = file;
+        this.maxSize = maxSize;
+        this.advisors = advisors.get();
+        this.shimTypes = ImmutableList.copyOf(shimTypes);
+        this.mixinTypes = ImmutableList.copyOf(mixinTypes);
+        fingerprint = createFingerprint(this.advisors, this.shimTypes, this.mixinTypes,
+                Version.getVersion(WeavingCache.class));
+        Map<String, Advice> advisorsByName = Maps.newHashMap();
+        for (Advice advice : this.advisors) {
+            advisorsByName.put(advice.adviceType().getInternalName(), advice);
+            Advice nonBootstrapLoaderAdvice = advice.nonBootstrapLoaderAdvice();
+            if (nonBootstrapLoaderAdvice != null) {
+                advisorsByName.put(nonBootstrapLoaderAdvice.adviceType().getInternalName(),
+                        nonBootstrapLoaderAdvice);
+            }
+        }
+        this.advisorsByName = advisorsByName;
+        entries = new ConcurrentHashMap<String, byte[]>();
+        rewriteFile = !loadFromFile();
+        size.set(entries.size());
+    }
+
+    // returns null if the cache cannot be used for these advisors
+    @Nullable
+    String getKey(List<Advice> advisors, byte[] classBytes, boolean bootstrapLoader,
+            boolean noLongerNeedToWeaveMainMethods) {
+        if (advisors != this.advisors) {
+            return null;
+        }
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            logger.debug(e.getMessage(), e);
+            return null;
+        }
+        int flags = 0;
+        if (bootstrapLoader) {
+            flags |= FLAG_BOOTSTRAP_LOADER;
+        }
+        if (noLongerNeedToWeaveMainMethods) {
+            flags |= FLAG_NO_LONGER_NEED_TO_WEAVE_MAIN_METHODS;
+        }
+        messageDigest.update((byte) flags);
+        messageDigest.update(classBytes);
+        return toHex(messageDigest.digest());
+    }
+
+    @Nullable
+    CachedWeaving get(String key, String className, @Nullable ClassLoader loader,
+            @Nullable CodeSource codeSource, AnalyzedWorld analyzedWorld) {
+        byte[] entry = entries.get(key);
+        if (entry == null) {
+            missCount.getAndIncrement();
+            return null;
+        }
+        CachedWeaving cachedWeaving;
+        try {
+            cachedWeaving = decode(entry);
+        } catch (IOException e) {
+            logger.debug(e.getMessage(), e);
+            cachedWeaving = null;
+        }
+        if (cachedWeaving == null) {
+            // e.g. advice no longer exists
+            missCount.getAndIncrement();
+            return null;
+        }
+        List<AnalyzedClass> superAnalyzedClasses = getSuperAnalyzedClasses(
+                cachedWeaving.analyzedClass(), className, loader, codeSource, analyzedWorld);
+        if (hash(superAnalyzedClasses) != cachedWeaving.superAnalyzedClassesHash) {
+            // super type hierarchy has changed since this entry was cached
+            missCount.getAndIncrement();
+            return null;
+        }
+        return cachedWeaving;
+    }
+
+    void recordHit(CachedWeaving cachedWeaving, long hitNanos) {
+        hitCount.getAndIncrement();
+        savedNanos.getAndAdd(cachedWeaving.weavingNanos - hitNanos);
+    }
+
+    void put(String key, AnalyzedClass analyzedClass, List<AnalyzedClass> superAnalyzedClasses,
+            byte /*@Nullable*/ [] transformedBytes, Collection<Advice> usedAdvisors,
+            long weavingNanos) {
+        if (size.get() >= maxSize) {
+            return;
+        }
+        byte[] entry;
+        try {
+            entry = encode(analyzedClass, hash(superAnalyzedClasses), transformedBytes,
+                    usedAdvisors, weavingNanos);
+        } catch (IOException e) {
+            // e.g. shim type or mixin type not found
+            logger.debug(e.getMessage(), e);
+            return;
+        }
+        if (entries.putIfAbsent(key, entry) == null) {
+            size.getAndIncrement();
+            needsToBeWritten.add(key);
+        }
+    }
+
+    @Override
+    protected void runInternal() throws Exception {
+        if (rewriteFile || !needsToBeWritten.isEmpty()) {
+            writeToFile();
+        }
+        long lookupCount = hitCount.get() + missCount.get();
+        if (!statsLogged && lookupCount > 0 && lookupCount == lookupCountAtLastRun) {
+            // class loading has settled down, which is a good approximation of startup complete
+            logStats();
+            statsLogged = true;
+        }
+        lookupCountAtLastRun = lookupCount;
+    }
+
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    long getMissCount() {
+        return missCount.get();
+    }
+
+    long getSavedNanos() {
+        return savedNanos.get();
+    }
+
+    @VisibleForTesting
+    void writeToFile() throws IOException {
+        if (rewriteFile) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file, false)));
+            try {
+                out.writeInt(FORMAT_VERSION);
+                out.writeUTF(fingerprint);
+                needsToBeWritten.clear();
+                for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                    writeEntry(out, entry.getKey(), entry.getValue());
+                }
+            } finally {
+                out.close();
+            }
+            rewriteFile = false;
+        } else {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(file, true)));
+            try {
+                String key;
+                while ((key = needsToBeWritten.poll()) != null) {
+                    byte[] entry = entries.get(key);
+                    if (entry != null) {
+                        writeEntry(out, key, entry);
+                    }
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    private void logStats() {
+        long hits = hitCount.get();
+        long misses = missCount.get();
+        logger.info("weaving cache: {} hits, {} misses ({}% hit rate), saved approximately {}"
+                + " milliseconds of class weaving", hits, misses, (hits * 100) / (hits + misses),
+                NANOSECONDS.toMillis(Math.max(savedNanos.get(), 0)));
+    }
+
+    // returns false if the file does not exist or cannot be used
+    private boolean loadFromFile() {
+        if (!file.exists()) {
+            return false;
+        }
+        try {
+            long fileLength = file.length();
+            CountingInputStream countingIn =
+                    new CountingInputStream(new BufferedInputStream(new FileInputStream(file)));
+            DataInputStream in = new DataInputStream(countingIn);
+            try {
+                if (in.readInt() != FORMAT_VERSION || !in.readUTF().equals(fingerprint)) {
+                    logger.debug("discarding weaving cache since advisors have changed");
+                    return false;
+                }
+                while (true) {
+                    String key;
+                    try {
+                        key = in.readUTF();
+                    } catch (EOFException e) {
+                        return true;
+                    }
+                    int length = in.readInt();
+                    if (length < 0 || length > fileLength - countingIn.getCount()) {
+                        // e.g. corrupt file, don't allocate based on the length
+                        logger.warn("discarding weaving cache since {} is corrupt (invalid entry"
+                                + " length: {})", file.getAbsolutePath(), length);
+                        entries.clear();
+                        return false;
+                    }
+                    byte[] entry = new byte[length];
+                    in.readFully(entry);
+                    entries.put(key, entry);
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // e.g. partially written entry at the end of the file
+            logger.warn("error reading {}: {}", file.getAbsolutePath(), e.getMessage(), e);
+            entries.clear();
+            return false;
+        }
+    }
+
+    private byte[] encode(AnalyzedClass analyzedClass, long superAnalyzedClassesHash,
+            byte /*@Nullable*/ [] transformedBytes, Collection<Advice> usedAdvisors,
+            long weavingNanos) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(baos);
+        out.writeLong(superAnalyzedClassesHash);
+        out.writeLong(weavingNanos);
+        out.writeInt(analyzedClass.modifiers());
+        out.writeUTF(analyzedClass.name());
+        writeNullableString(out, analyzedClass.superName());
+        writeStrings(out, analyzedClass.interfaceNames());
+        out.writeInt(analyzedClass.analyzedMethods().size());
+        for (AnalyzedMethod analyzedMethod : analyzedClass.analyzedMethods()) {
+            out.writeUTF(analyzedMethod.name());
+            writeStrings(out, analyzedMethod.parameterTypes());
+            out.writeUTF(analyzedMethod.returnType());
+            out.writeInt(analyzedMethod.modifiers());
+            writeNullableString(out, analyzedMethod.signature());
+            writeStrings(out, analyzedMethod.exceptions());
+            writeAdvisors(out, analyzedMethod.advisors());
+            writeAdvisors(out, analyzedMethod.subTypeRestrictedAdvisors());
+        }
+        out.writeInt(analyzedClass.publicFinalMethods().size());
+        for (PublicFinalMethod publicFinalMethod : analyzedClass.publicFinalMethods()) {
+            out.writeUTF(publicFinalMethod.name());
+            writeStrings(out, publicFinalMethod.parameterTypes());
+        }
+        out.writeInt(analyzedClass.shimTypes().size());
+        for (ShimType shimType : analyzedClass.shimTypes()) {
+            out.writeInt(getIndex(shimTypes, shimType));
+        }
+        writeMixinTypes(out, analyzedClass.mixinTypes());
+        writeMixinTypes(out, analyzedClass.nonReweavableMixinTypes());
+        out.writeBoolean(analyzedClass.ejbRemote());
+        if (transformedBytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(transformedBytes.length);
+            out.write(transformedBytes);
+        }
+        writeAdvisors(out, usedAdvisors);
+        return baos.toByteArray();
+    }
+
+    private @Nullable CachedWeaving decode(byte[] entry) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry));
+        long superAnalyzedClassesHash = in.readLong();
+        long weavingNanos = in.readLong();
+        ImmutableAnalyzedClass.Builder classBuilder = ImmutableAnalyzedClass.builder()
+                .modifiers(in.readInt())
+                .name(in.readUTF())
+                .superName(readNullableString(in))
+                .addAllInterfaceNames(readStrings(in));
+        int analyzedMethodCount = readCount(in);
+        for (int i = 0; i < analyzedMethodCount; i++) {
+            ImmutableAnalyzedMethod.Builder methodBuilder = ImmutableAnalyzedMethod.builder()
+                    .name(in.readUTF())
+                    .addAllParameterTypes(readStrings(in))
+                    .returnType(in.readUTF())
+                    .modifiers(in.readInt())
+                    .signature(readNullableString(in))
+                    .addAllExceptions(readStrings(in));
+            List<Advice> advisors = readAdvisors(in);
+            List<Advice> subTypeRestrictedAdvisors = readAdvisors(in);
+            if (advisors == null || subTypeRestrictedAdvisors == null) {
+                return null;
+            }
+            classBuilder.addAnalyzedMethods(methodBuilder.addAllAdvisors(advisors)
+                    .addAllSubTypeRestrictedAdvisors(subTypeRestrictedAdvisors)
+                    .build());
+        }
+        int publicFinalMethodCount = readCount(in);
+        for (int i = 0; i < publicFinalMethodCount; i++) {
+            classBuilder.addPublicFinalMethods(ImmutablePublicFinalMethod.builder()
+                    .name(in.readUTF())
+                    .addAllParameterTypes(readStrings(in))
+                    .build());
+        }
+        int shimTypeCount = readCount(in);
+        for (int i = 0; i < shimTypeCount; i++) {
+            classBuilder.addShimTypes(shimTypes.get(readIndex(in, shimTypes)));
+        }
+        classBuilder.addAllMixinTypes(readMixinTypes(in));
+        classBuilder.addAllNonReweavableMixinTypes(readMixinTypes(in));
+        classBuilder.ejbRemote(in.readBoolean());
+        int transformedBytesLength = in.readInt();
+        byte[] transformedBytes = null;
+        if (transformedBytesLength != -1) {
+            if (transformedBytesLength < 0 || transformedBytesLength > in.available()) {
+                throw new IOException("invalid length: " + transformedBytesLength);
+            }
+            transformedBytes = new byte[transformedBytesLength];
+            in.readFully(transformedBytes);
+        }
+        List<Advice> usedAdvisors = readAdvisors(in);
+        if (usedAdvisors == null) {
+            return null;
+        }
+        return new CachedWeaving(classBuilder.build(), superAnalyzedClassesHash, transformedBytes,
+                usedAdvisors, weavingNanos);
+    }
+
+    private void writeAdvisors(DataOutputStream out, Collection<Advice> advisors)
+            throws IOException {
+        out.writeInt(advisors.size());
+        for (Advice advice : advisors) {
+            out.writeUTF(advice.adviceType().getInternalName());
+        }
+    }
+
+    private @Nullable List<Advice> readAdvisors(DataInputStream in) throws IOException {
+        int count = readCount(in);
+        List<Advice> advisors = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            Advice advice = advisorsByName.get(in.readUTF());
+            if (advice == null) {
+                return null;
+            }
+            advisors.add(advice);
+        }
+        return advisors;
+    }
+
+    private void writeMixinTypes(DataOutputStream out, List<MixinType> mixinTypes)
+            throws IOException {
+        out.writeInt(mixinTypes.size());
+        for (MixinType mixinType : mixinTypes) {
+            out.writeInt(getIndex(this.mixinTypes, mixinType));
+        }
+    }
+
+    private List<MixinType> readMixinTypes(DataInputStream in) throws IOException {
+        int count = readCount(in);
+        List<MixinType> mixinTypes = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            mixinTypes.add(this.mixinTypes.get(readIndex(in, this.mixinTypes)));
+        }
+        return mixinTypes;
+    }
+
+    // the decoded entries are always read from a ByteArrayInputStream, so available() is exactly
+    // the number of remaining bytes, and each item takes at least one byte
+    private static int readCount(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        if (count < 0 || count > in.available()) {
+            throw new IOException("invalid count: " + count);
+        }
+        return count;
+    }
+
+    private static int readIndex(DataInputStream in, List<?> list) throws IOException {
+        int index = in.readInt();
+        if (index < 0 || index >= list.size()) {
+            throw new IOException("invalid index: " + index);
+        }
+        return index;
+    }
+
+    private static int getIndex(List<?> list, Object item) throws IOException {
+        int index = list.indexOf(item);
+        if (index == -1) {
+            throw new IOException("not found: " + item);
+        }
+        return index;
+    }
+
+    // this mirrors the super type hierarchy construction in ClassAnalyzer
+    private static List<AnalyzedClass> getSuperAnalyzedClasses(AnalyzedClass analyzedClass,
+            String className, @Nullable ClassLoader loader, @Nullable CodeSource codeSource,
+            AnalyzedWorld analyzedWorld) {
+        AnalyzedWorld.ParseContext parseContext =
+                ImmutableParseContext.of(ClassNames.fromInternalName(className), codeSource);
+        List<AnalyzedClass> superAnalyzedClasses = Lists.newArrayList();
+        for (String interfaceName : analyzedClass.interfaceNames()) {
+            superAnalyzedClasses.addAll(analyzedWorld.getAnalyzedHierarchy(interfaceName, loader,
+                    analyzedClass.name(), parseContext));
+        }
+        if (!analyzedClass.isInterface()) {
+            superAnalyzedClasses.addAll(analyzedWorld.getAnalyzedHierarchy(
+                    analyzedClass.superName(), loader, analyzedClass.name(), parseContext));
+        }
+        return superAnalyzedClasses;
+    }
+
+    @VisibleForTesting
+    static long hash(List<AnalyzedClass> analyzedClasses) {
+        long hash = 1;
+        for (AnalyzedClass analyzedClass : analyzedClasses) {
+            hash = 31 * hash + analyzedClass.modifiers();
+            hash = 31 * hash + analyzedClass.name().hashCode();
+            hash = 31 * hash + hashNullable(analyzedClass.superName());
+            hash = 31 * hash + analyzedClass.interfaceNames().hashCode();
+            for (AnalyzedMethod analyzedMethod : analyzedClass.analyzedMethods()) {
+                hash = 31 * hash + analyzedMethod.name().hashCode();
+                hash = 31 * hash + analyzedMethod.parameterTypes().hashCode();
+                hash = 31 * hash + analyzedMethod.returnType().hashCode();
+                hash = 31 * hash + analyzedMethod.modifiers();
+                hash = 31 * hash + hashNullable(analyzedMethod.signature());
+                hash = 31 * hash + analyzedMethod.exceptions().hashCode();
+                hash = 31 * hash + hashAdvisors(analyzedMethod.advisors());
+                hash = 31 * hash + hashAdvisors(analyzedMethod.subTypeRestrictedAdvisors());
+            }
+            for (PublicFinalMethod publicFinalMethod : analyzedClass.publicFinalMethods()) {
+                hash = 31 * hash + publicFinalMethod.name().hashCode();
+                hash = 31 * hash + publicFinalMethod.parameterTypes().hashCode();
+            }
+            for (ShimType shimType : analyzedClass.shimTypes()) {
+                hash = 31 * hash + shimType.iface().getInternalName().hashCode();
+            }
+            for (MixinType mixinType : analyzedClass.mixinTypes()) {
+                hash = 31 * hash + mixinType.targets().hashCode();
+            }
+            for (MixinType mixinType : analyzedClass.nonReweavableMixinTypes()) {
+                hash = 31 * hash + mixinType.targets().hashCode();
+            }
+            hash = 31 * hash + (analyzedClass.ejbRemote() ? 1 : 0);
+        }
+        return hash;
+    }
+
+    private static int hashAdvisors(List<Advice> advisors) {
+        int hash = 1;
+        for (Advice advice : advisors) {
+            hash = 31 * hash + advice.adviceType().getInternalName().hashCode();
+        }
+        return hash;
+    }
+
+    private static int hashNullable(@Nullable String value) {
+        return value == null ? 0 : value.hashCode();
+    }
+
+    private static String createFingerprint(List<Advice> advisors, List<ShimType> shimTypes,
+            List<MixinType> mixinTypes, String agentVersion) {
+        MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        update(messageDigest, agentVersion);
+        update(messageDigest, System.getProperty("java.version"));
+        // sorted since order of generated advisors is not stable across JVM restarts
+        Map<String, Advice> sortedAdvisors = Maps.newTreeMap();
+        for (Advice advice : advisors) {
+            sortedAdvisors.put(advice.adviceType().getInternalName(), advice);
+        }
+        for (Advice advice : sortedAdvisors.values()) {
+            update(messageDigest, advice.adviceType().getInternalName());
+            updatePointcut(messageDigest, advice.pointcut());
+            update(messageDigest, getDescriptor(advice.travelerType()));
+            update(messageDigest, getDescriptor(advice.isEnabledAdvice()));
+            update(messageDigest, getDescriptor(advice.onBeforeAdvice()));
+            update(messageDigest, getDescriptor(advice.onReturnAdvice()));
+            update(messageDigest, getDescriptor(advice.onThrowAdvice()));
+            update(messageDigest, getDescriptor(advice.onAfterAdvice()));
+            update(messageDigest, Boolean.toString(advice.reweavable()));
+        }
+        for (ShimType shimType : shimTypes) {
+            update(messageDigest, shimType.iface().getInternalName());
+            update(messageDigest, shimType.targets().toString());
+        }
+        for (MixinType mixinType : mixinTypes) {
+            update(messageDigest, mixinType.targets().toString());
+            update(messageDigest, mixinType.interfaces().toString());
+            update(messageDigest, String.valueOf(mixinType.initMethodName()));
+            messageDigest.update(mixinType.implementationBytes());
+        }
+        return toHex(messageDigest.digest());
+    }
+
+    // Pointcut instances built from plugin bytecode are anonymous classes without a stable
+    // toString(), so the attributes are digested individually
+    private static void updatePointcut(MessageDigest messageDigest, Pointcut pointcut) {
+        update(messageDigest, pointcut.className());
+        update(messageDigest, pointcut.classAnnotation());
+        update(messageDigest, pointcut.subTypeRestriction());
+        update(messageDigest, pointcut.superTypeRestriction());
+        update(messageDigest, pointcut.methodName());
+        update(messageDigest, pointcut.methodAnnotation());
+        update(messageDigest, Arrays.toString(pointcut.methodParameterTypes()));
+        update(messageDigest, pointcut.methodReturnType());
+        update(messageDigest, Arrays.toString(pointcut.methodModifiers()));
+        update(messageDigest, pointcut.nestingGroup());
+        update(messageDigest, pointcut.timerName());
+        update(messageDigest, Integer.toString(pointcut.order()));
+        update(messageDigest, pointcut.suppressibleUsingKey());
+        update(messageDigest, pointcut.suppressionKey());
+    }
+
+    private static String getDescriptor(@Nullable Type type) {
+        return type == null ? "" : type.getDescriptor();
+    }
+
+    private static String getDescriptor(@Nullable Method method) {
+        return method == null ? "" : method.toString();
+    }
+
+    private static void update(MessageDigest messageDigest, @Nullable String value) {
+        if (value != null) {
+            messageDigest.update(value.getBytes(UTF_8));
+        }
+        // separator
+        messageDigest.update((byte) 0);
+    }
+
+    private static void writeEntry(DataOutputStream out, String key, byte[] entry)
+            throws IOException {
+        out.writeUTF(key);
+        out.writeInt(entry.length);
+        out.write(entry);
+    }
+
+    private static void writeNullableString(DataOutputStream out, @Nullable String value)
+            throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static @Nullable String readNullableString(DataInputStream in) throws IOException {
+        if (in.readBoolean()) {
+            return in.readUTF();
+        }
+        return null;
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values)
+            throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static List<String> readStrings(DataInputStream in) throws IOException {
+        int count = readCount(in);
+        List<String> values = Lists.newArrayListWithCapacity(count);
+        for (int i = 0; i < count; i++) {
+            values.add(in.readUTF());
+        }
+        return values;
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0xF];
+            chars[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0xF];
+        }
+        return new String(chars);
+    }
+
+    static class CachedWeaving {
+
+        private final AnalyzedClass analyzedClass;
+        private final long superAnalyzedClassesHash;
+        private final byte /*@Nullable*/ [] transformedBytes;
+        private final List<Advice> usedAdvisors;
+        private final long weavingNanos;
+
+        private CachedWeaving(AnalyzedClass analyzedClass, long superAnalyzedClassesHash,
+                byte /*@Nullable*/ [] transformedBytes, List<Advice> usedAdvisors,
+                long weavingNanos) {
+            this.analyzedClass = analyzedClass;
+            this.superAnalyzedClassesHash = superAnalyzedClassesHash;
+            this.transformedBytes = transformedBytes;
+            this.usedAdvisors = usedAdvisors;
+            this.weavingNanos = weavingNanos;
+        }
+
+        AnalyzedClass analyzedClass() {
+            return analyzedClass;
+        }
+
+        byte /*@Nullable*/ [] transformedBytes() {
+            return transformedBytes;
+        }
+
+        List<Advice> usedAdvisors() {
+            return usedAdvisors;
+        }
+    }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.weaving;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.google.common.base.Supplier;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Bytes;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.objectweb.asm.ClassReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.glowroot.agent.plugin.api.weaving.Pointcut;
+import org.glowroot.common.util.ScheduledRunnable;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+// fast rejection of classes that cannot need weaving, so that the (typically large) majority of
+// loaded classes are returned untouched without ASM parsing, class analysis or super type
+// hierarchy resolution
+//
+// a class is rejected when its name does not match any pointcut, shim or mixin target (exact names
+// plus the literal prefixes of wildcard patterns), its bytes do not contain any marker that
+// triggers special handling (e.g. @Pointcut, @Instrumentation, EJB and annotation-based pointcuts),
+// and each of its direct super types is already known to be "clean" in its class loader, meaning
+// that the super type's entire hierarchy has no matching names and no advice
+//
+// super types become known as clean either from the full analysis of a subclass (which resolves
+// the whole super type hierarchy) or from being rejected themselves
+//
+// rejected classes are not added to AnalyzedWorld, which will analyze them on demand (from their
+// class loader resource) in the uncommon case that a subclass still needs full analysis
+public class WeavingFilter extends ScheduledRunnable {
+
+    private static final Logger logger = LoggerFactory.getLogger(WeavingFilter.class);
+
+    private static final ImmutableList<String> MARKERS =
+            ImmutableList.of("Lorg/glowroot/agent/plugin/api/weaving/Pointcut;",
+                    "Lorg/glowroot/agent/api/Instrumentation$", "Ljavax/ejb/Remote;",
+                    "Ljakarta/ejb/Remote;", "Ljavax/ejb/Stateless;", "Ljakarta/ejb/Stateless;");
+
+    private final Supplier<List<Advice>> advisors;
+    private final ImmutableList<ShimType> shimTypes;
+    private final ImmutableList<MixinType> mixinTypes;
+
+    // re-built whenever the advisors change (the advisors can change at runtime via
+    // instrumentation config), which also discards all knowledge of clean types
+    private volatile Targets targets;
+
+    private final AtomicLong skippedCount = new AtomicLong();
+    private final AtomicLong skippedNanos = new AtomicLong();
+    private final AtomicLong analyzedCount = new AtomicLong();
+    private final AtomicLong analyzedNanos = new AtomicLong();
+
+    private volatile long skippedCountAtLastRun;
+    private volatile boolean statsLogged;
+
+    public WeavingFilter(Supplier<List<Advice>> advisors, List<ShimType> shimTypes,
+            List<MixinType> mixinTypes) {
+        this.advisors = advisors;
+        this.shimTypes = ImmutableList.copyOf(shimTypes);
+        this.mixinTypes = ImmutableList.copyOf(mixinTypes);
+        targets = new Targets(advisors.get(), this.shimTypes, this.mixinTypes);
+    }
+
+    // className is the internal name
+    boolean isSkippable(byte[] classBytes, String className, @Nullable ClassLoader loader) {
+        Targets targets = getTargets();
+        if (targets.matchAll || targets.isTargetName(className)) {
+            return false;
+        }
+        for (byte[] marker : targets.markers) {
+            if (Bytes.indexOf(classBytes, marker) != -1) {
+                return false;
+            }
+        }
+        // this only reads the constant pool offsets, it doesn't parse the class
+        ClassReader cr = new ClassReader(classBytes);
+        Set<String> cleanTypes = targets.getCleanTypes(loader);
+        if (!isCleanType(cr.getSuperName(), cleanTypes)) {
+            return false;
+        }
+        for (String interfaceName : cr.getInterfaces()) {
+            if (!isCleanType(interfaceName, cleanTypes)) {
+                return false;
+            }
+        }
+        cleanTypes.add(className);
+        return true;
+    }
+
+    void recordSkipped(long nanos) {
+        skippedCount.getAndIncrement();
+        skippedNanos.getAndAdd(nanos);
+    }
+
+    // called after full analysis of a class that turned out not to require weaving
+    void recordNoWeavingRequired(AnalyzedClass analyzedClass,
+            List<AnalyzedClass> superAnalyzedClasses, @Nullable ClassLoader loader, long nanos) {
+        analyzedCount.getAndIncrement();
+        analyzedNanos.getAndAdd(nanos);
+        Targets targets = getTargets();
+        if (targets.matchAll || !targets.isClean(analyzedClass)) {
+            return;
+        }
+        for (AnalyzedClass superAnalyzedClass : superAnalyzedClasses) {
+            if (!targets.isClean(superAnalyzedClass)) {
+                return;
+            }
+        }
+        // the hierarchy of each super type is a subset of the hierarchy of the analyzed class,
+        // so the super types are clean as well
+        Set<String> cleanTypes = targets.getCleanTypes(loader);
+        cleanTypes.add(ClassNames.toInternalName(analyzedClass.name()));
+        for (AnalyzedClass superAnalyzedClass : superAnalyzedClasses) {
+            cleanTypes.add(ClassNames.toInternalName(superAnalyzedClass.name()));
+        }
+    }
+
+    @Override
+    protected void runInternal() {
+        long skippedCount = this.skippedCount.get();
+        if (!statsLogged && skippedCount > 0 && skippedCount == skippedCountAtLastRun) {
+            // class loading has settled down, which is a good approximation of startup complete
+            logStats();
+            statsLogged = true;
+        }
+        skippedCountAtLastRun = skippedCount;
+    }
+
+    long getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    // estimated from the average time spent analyzing classes that turned out not to require
+    // weaving, which is what the skipped classes would have gone through otherwise
+    long getSavedNanos() {
+        long analyzedCount = this.analyzedCount.get();
+        if (analyzedCount == 0) {
+            return 0;
+        }
+        long skippedCount = this.skippedCount.get();
+        long estimatedNanos = (analyzedNanos.get() / analyzedCount) * skippedCount;
+        return Math.max(estimatedNanos - skippedNanos.get(), 0);
+    }
+
+    private Targets getTargets() {
+        List<Advice> advisors = this.advisors.get();
+        Targets targets = this.targets;
+        if (targets.advisors != advisors) {
+            targets = new Targets(advisors, shimTypes, mixinTypes);
+            this.targets = targets;
+        }
+        return targets;
+    }
+
+    private void logStats() {
+        long skippedCount = this.skippedCount.get();
+        long analyzedCount = this.analyzedCount.get();
+        logger.info("weaving filter: skipped {} of {} classes that did not require weaving,"
+                + " saved approximately {} milliseconds of class weaving", skippedCount,
+                skippedCount + analyzedCount, NANOSECONDS.toMillis(getSavedNanos()));
+    }
+
+    private static boolean isCleanType(@Nullable String internalName, Set<String> cleanTypes) {
+        return internalName == null || internalName.equals("java/lang/Object")
+                || cleanTypes.contains(internalName);
+    }
+
+    private static class Targets {
+
+        private final List<Advice> advisors;
+
+        // true if some advice can match any class, e.g. a regular expression class name
+        private final boolean matchAll;
+
+        // these are internal names
+        private final Set<String> names;
+        private final ImmutableList<String> namePrefixes;
+
+        private final ImmutableList<byte[]> markers;
+
+        // weak keys to prevent retention of class loaders (see AnalyzedWorld)
+        //
+        // not using the much more convenient (and concurrent) guava CacheBuilder since it uses
+        // many additional classes that must then be pre-initialized since this is called from
+        // inside ClassFileTransformer.transform() (see PreInitializeClasses)
+        private final Map<ClassLoader, Set<String>> cleanTypes =
+                Collections.synchronizedMap(new WeakHashMap<ClassLoader, Set<String>>());
+        private final Set<String> bootstrapLoaderCleanTypes = newConcurrentSet();
+
+        private Targets(List<Advice> advisors, List<ShimType> shimTypes,
+                List<MixinType> mixinTypes) {
+            this.advisors = advisors;
+            Set<String> names = Sets.newHashSet();
+            List<String> namePrefixes = Lists.newArrayList();
+            List<String> markers = Lists.newArrayList(MARKERS);
+            boolean matchAll = false;
+            for (Advice advice : advisors) {
+                Pointcut pointcut = advice.pointcut();
+                if (!pointcut.className().isEmpty()) {
+                    matchAll |= !addNames(pointcut.className(), names, namePrefixes);
+                } else if (!pointcut.classAnnotation().isEmpty()) {
+                    // the class itself must have the class annotation
+                    matchAll |= !addMarkers(pointcut.classAnnotation(), markers);
+                } else if (!pointcut.methodAnnotation().isEmpty()) {
+                    // one of the class's own methods must have the method annotation (advice
+                    // inherited from super types is covered by the clean type tracking)
+                    matchAll |= !addMarkers(pointcut.methodAnnotation(), markers);
+                } else {
+                    matchAll = true;
+                }
+            }
+            for (ShimType shimType : shimTypes) {
+                for (String target : shimType.targets()) {
+                    names.add(ClassNames.toInternalName(target));
+                }
+            }
+            for (MixinType mixinType : mixinTypes) {
+                for (String target : mixinType.targets()) {
+                    names.add(ClassNames.toInternalName(target));
+                }
+            }
+            // these are special cased in Weaver and ClassAnalyzer
+            names.add(ImportantClassNames.JBOSS_WELD_HACK_CLASS_NAME);
+            names.add(ImportantClassNames.JBOSS_URL_HACK_CLASS_NAME);
+            names.add("java/lang/ClassLoader");
+            this.matchAll = matchAll;
+            this.names = names;
+            this.namePrefixes = ImmutableList.copyOf(namePrefixes);
+            List<byte[]> markerBytes = Lists.newArrayList();
+            for (String marker : markers) {
+                markerBytes.add(marker.getBytes(UTF_8));
+            }
+            this.markers = ImmutableList.copyOf(markerBytes);
+        }
+
+        private boolean isTargetName(String internalName) {
+            if (names.contains(internalName)) {
+                return true;
+            }
+            for (String namePrefix : namePrefixes) {
+                if (internalName.startsWith(namePrefix)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean isClean(AnalyzedClass analyzedClass) {
+            if (isTargetName(ClassNames.toInternalName(analyzedClass.name()))
+                    || !analyzedClass.shimTypes().isEmpty()
+                    || !analyzedClass.mixinTypes().isEmpty()
+                    || !analyzedClass.nonReweavableMixinTypes().isEmpty()
+                    || analyzedClass.ejbRemote()) {
+                return false;
+            }
+            for (AnalyzedMethod analyzedMethod : analyzedClass.analyzedMethods()) {
+                if (!analyzedMethod.advisors().isEmpty()
+                        || !analyzedMethod.subTypeRestrictedAdvisors().isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private Set<String> getCleanTypes(@Nullable ClassLoader loader) {
+            if (loader == null) {
+                return bootstrapLoaderCleanTypes;
+            }
+            synchronized (cleanTypes) {
+                Set<String> loaderCleanTypes = cleanTypes.get(loader);
+                if (loaderCleanTypes == null) {
+                    loaderCleanTypes = newConcurrentSet();
+                    cleanTypes.put(loader, loaderCleanTypes);
+                }
+                return loaderCleanTypes;
+            }
+        }
+
+        // returns false if the class name cannot be reduced to exact names and prefixes
+        private static boolean addNames(String className, Set<String> names,
+                List<String> namePrefixes) {
+            if (className.startsWith("/") && className.endsWith("/")) {
+                // full regex
+                return false;
+            }
+            for (String part : className.split("\\|")) {
+                int index = part.indexOf('*');
+                if (index == 0) {
+                    return false;
+                } else if (index == -1) {
+                    names.add(ClassNames.toInternalName(part));
+                } else {
+                    namePrefixes.add(ClassNames.toInternalName(part.substring(0, index)));
+                }
+            }
+            return true;
+        }
+
+        // returns false if the annotation cannot be reduced to exact descriptors and prefixes
+        private static boolean addMarkers(String annotation, List<String> markers) {
+            if (annotation.startsWith("/") && annotation.endsWith("/")) {
+                // full regex
+                return false;
+            }
+            for (String part : annotation.split("\\|")) {
+                int index = part.indexOf('*');
+                if (index == 0) {
+                    return false;
+                } else if (index == -1) {
+                    markers.add("L" + ClassNames.toInternalName(part) + ";");
+                } else {
+                    markers.add("L" + ClassNames.toInternalName(part.substring(0, index)));
+                }
+            }
+            return true;
+        }
+
+        // intentionally avoiding Sets.newConcurrentHashSet() for the same reason as above
+        private static Set<String> newConcurrentSet() {
+            return Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.impl;
+
+import java.util.List;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.glowroot.agent.impl.AgentOverhead.Overhead;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AgentOverheadTest {
+
+    private Ticker ticker;
+
+    @BeforeEach
+    public void beforeEach() {
+        ticker = mock(Ticker.class);
+    }
+
+    @Test
+    public void shouldSampleEveryTransaction() {
+        // given
+        AgentOverhead agentOverhead = new AgentOverhead(1);
+
+        // when
+        List<Boolean> results = Lists.newArrayList();
+        for (int i = 0; i < 3; i++) {
+            results.add(agentOverhead.sample());
+        }
+
+        // then
+        assertThat(results).containsExactly(true, true, true);
+    }
+
+    @Test
+    public void shouldSampleOneOutOfEveryNTransactions() {
+        // given
+        AgentOverhead agentOverhead = new AgentOverhead(4);
+
+        // when
+        int sampled = 0;
+        for (int i = 0; i < 10000; i++) {
+            if (agentOverhead.sample()) {
+                sampled++;
+            }
+        }
+
+        // then
+        assertThat(sampled).isBetween(2000, 3000);
+    }
+
+    @Test
+    public void shouldAccumulateUntilTransactionEnds() {
+        // given
+        AgentOverhead agentOverhead = new AgentOverhead(1);
+        OverheadMeter auxThreadMeter = newOverheadMeter(agentOverhead);
+        OverheadMeter mainThreadMeter = newOverheadMeter(agentOverhead);
+        when(ticker.read()).thenReturn(100L, 310L, 500L, 710L, 800L, 1010L);
+
+        // when
+        auxThreadMeter.start();
+        auxThreadMeter.stop();
+        auxThreadMeter.onComplete();
+        Overhead beforeTransactionEnded = agentOverhead.getAndReset();
+        mainThreadMeter.start();
+        mainThreadMeter.stop();
+        mainThreadMeter.start();
+        mainThreadMeter.stopCompletion();
+        mainThreadMeter.onComplete();
+        Overhead afterTransactionEnded = agentOverhead.getAndReset();
+
+        // then
+        assertThat(beforeTransactionEnded).isNull();
+        assertThat(afterTransactionEnded).isNotNull();
+        assertThat(afterTransactionEnded.transactionCount()).isEqualTo(1);
+        assertThat(afterTransactionEnded.instrumentationNanos()).isEqualTo(400);
+        assertThat(afterTransactionEnded.completionNanos()).isEqualTo(200);
+        assertThat(agentOverhead.getAndReset()).isNull();
+    }
+
+    // the ticker advances by 10 nanoseconds on each calibration read, so each measurement is
+    // reduced by 10 nanoseconds
+    private OverheadMeter newOverheadMeter(AgentOverhead agentOverhead) {
+        Long[] ticks = new Long[19];
+        for (int i = 0; i < ticks.length; i++) {
+            ticks[i] = 10L * (i + 1);
+        }
+        when(ticker.read()).thenReturn(0L, ticks);
+        return new OverheadMeter(agentOverhead, ticker, null);
+    }
+}
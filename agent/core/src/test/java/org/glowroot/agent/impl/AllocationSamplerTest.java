@@ -0,0 +1,116 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.impl;
+
+import java.util.List;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class AllocationSamplerTest {
+
+    private static final List<StackTraceElement> STACK_TRACE = ImmutableList.of(
+            new StackTraceElement("java.lang.String", "<new>", null, -1),
+            new StackTraceElement("org.example.Service", "call", null, 42));
+
+    private Transaction transaction;
+    private TransactionRegistry transactionRegistry;
+
+    @BeforeEach
+    public void beforeEach() {
+        ThreadContextImpl mainThreadContext = mock(ThreadContextImpl.class);
+        when(mainThreadContext.isActive()).thenReturn(true);
+        when(mainThreadContext.getThreadId()).thenReturn(1L);
+        ThreadContextImpl auxThreadContext = mock(ThreadContextImpl.class);
+        when(auxThreadContext.getThreadId()).thenReturn(2L);
+        // aux thread context started 500 milliseconds after the transaction
+        when(auxThreadContext.getStartTick()).thenReturn(MILLISECONDS.toNanos(500));
+        transaction = mock(Transaction.class);
+        when(transaction.getStartTime()).thenReturn(10000L);
+        when(transaction.getMainThreadContext()).thenReturn(mainThreadContext);
+        when(transaction.getActiveAuxThreadContexts())
+                .thenReturn(ImmutableList.of(auxThreadContext));
+        transactionRegistry = mock(TransactionRegistry.class);
+        when(transactionRegistry.getTransactions())
+                .thenReturn(ImmutableList.of(transaction));
+    }
+
+    @Test
+    public void shouldAttributeSamplesToActiveTransaction() {
+        // given
+        AllocationSampler allocationSampler = new AllocationSampler(transactionRegistry);
+        allocationSampler.onSample(1, 10000, STACK_TRACE, 100);
+        allocationSampler.onSample(2, 10600, STACK_TRACE, 200);
+
+        // when
+        allocationSampler.onFlush();
+
+        // then
+        verify(transaction).captureAllocationSample(STACK_TRACE, 100);
+        verify(transaction).captureAllocationSample(STACK_TRACE, 200);
+    }
+
+    @Test
+    public void shouldNotAttributeSamplesFromOtherThreads() {
+        // given
+        AllocationSampler allocationSampler = new AllocationSampler(transactionRegistry);
+        allocationSampler.onSample(3, 10000, STACK_TRACE, 100);
+
+        // when
+        allocationSampler.onFlush();
+
+        // then
+        verify(transaction, never()).captureAllocationSample(anyList(), anyLong());
+    }
+
+    @Test
+    public void shouldNotReattributeSamplesOnNextFlush() {
+        // given
+        AllocationSampler allocationSampler = new AllocationSampler(transactionRegistry);
+        allocationSampler.onSample(1, 10000, STACK_TRACE, 100);
+        allocationSampler.onFlush();
+
+        // when
+        allocationSampler.onFlush();
+
+        // then
+        verify(transaction).captureAllocationSample(STACK_TRACE, 100);
+    }
+
+    @Test
+    public void shouldNotAttributeSamplesFromBeforeThreadContextStarted() {
+        // given
+        AllocationSampler allocationSampler = new AllocationSampler(transactionRegistry);
+        // allocated by a prior transaction on the same (pooled) threads
+        allocationSampler.onSample(1, 9999, STACK_TRACE, 100);
+        allocationSampler.onSample(2, 10400, STACK_TRACE, 200);
+
+        // when
+        allocationSampler.onFlush();
+
+        // then
+        verify(transaction, never()).captureAllocationSample(anyList(), anyLong());
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.impl;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.glowroot.agent.plugin.api.Message;
+import org.glowroot.agent.plugin.api.MessageSupplier;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class StoredTraceEntriesTest {
+
+    private TimerImpl timer;
+    private TraceEntryComponent traceEntryComponent;
+
+    @BeforeEach
+    public void beforeEach() {
+        timer = mock(TimerImpl.class);
+        when(timer.getName()).thenReturn("mock");
+        traceEntryComponent = new TraceEntryComponent(mock(ThreadContextImpl.class),
+                newMessageSupplier("root"), timer, 0, null, 0);
+    }
+
+    @Test
+    public void shouldReturnNewAndActiveEntries() {
+        // given
+        TraceEntryImpl parent = startEntry("parent", 0);
+        addEntry("a", 1, 2);
+        StoredTraceEntries prior = capture(3);
+        addEntry("b", 4, 5);
+        endEntry(parent, 6);
+
+        // when
+        StoredTraceEntries entries = capture(7);
+
+        // then
+        assertThat(entries.getChangedIndexes(prior)).containsExactly(0, 2);
+    }
+
+    @Test
+    public void shouldNotReturnUnchangedEntries() {
+        // given
+        addEntry("a", 0, 1);
+        addEntry("b", 1, 2);
+        StoredTraceEntries prior = capture(3);
+
+        // when
+        StoredTraceEntries entries = capture(4);
+
+        // then
+        assertThat(entries.getChangedIndexes(prior)).isEmpty();
+    }
+
+    @Test
+    public void shouldReturnEntryCompletedAfterPriorCapture() {
+        // given
+        addEntry("a", 0, 1);
+        addEntry("b", 1, 5);
+        // b had not completed yet as of the prior capture tick
+        StoredTraceEntries prior = capture(3);
+
+        // when
+        StoredTraceEntries entries = capture(6);
+
+        // then
+        assertThat(entries.getChangedIndexes(prior)).containsExactly(1);
+    }
+
+    @Test
+    public void shouldReturnNullWhenPriorEntriesAreNotPrefix() {
+        // given
+        addEntry("a", 0, 1);
+        addEntry("b", 1, 2);
+        StoredTraceEntries prior = capture(3);
+
+        // when
+        StoredTraceEntries entries = new StoredTraceEntries(MILLISECONDS.toNanos(4));
+        entries.add(prior.getEntry(1), 0);
+        entries.add(prior.getEntry(0), 0);
+
+        // then
+        assertThat(entries.getChangedIndexes(prior)).isNull();
+    }
+
+    @Test
+    public void shouldReturnNullWhenEntriesShrink() {
+        // given
+        addEntry("a", 0, 1);
+        addEntry("b", 1, 2);
+        StoredTraceEntries prior = capture(3);
+
+        // when
+        StoredTraceEntries entries = new StoredTraceEntries(MILLISECONDS.toNanos(4));
+        entries.add(prior.getEntry(0), 0);
+
+        // then
+        assertThat(entries.getChangedIndexes(prior)).isNull();
+    }
+
+    private StoredTraceEntries capture(long captureMillis) {
+        StoredTraceEntries entries = new StoredTraceEntries(MILLISECONDS.toNanos(captureMillis));
+        TraceEntryImpl entry = traceEntryComponent.getRootEntry().getNextTraceEntry();
+        while (entry != null) {
+            entries.add(entry, 0);
+            entry = entry.getNextTraceEntry();
+        }
+        return entries;
+    }
+
+    private void addEntry(String message, long startMillis, long endMillis) {
+        endEntry(startEntry(message, startMillis), endMillis);
+    }
+
+    private TraceEntryImpl startEntry(String message, long startMillis) {
+        return traceEntryComponent.pushEntry(MILLISECONDS.toNanos(startMillis),
+                newMessageSupplier(message), timer, null, null, 0);
+    }
+
+    private void endEntry(TraceEntryImpl entry, long endMillis) {
+        long endTick = MILLISECONDS.toNanos(endMillis);
+        entry.markCompleted(null, endTick);
+        traceEntryComponent.popEntry(entry, endTick);
+    }
+
+    private static MessageSupplier newMessageSupplier(String message) {
+        MessageSupplier messageSupplier = mock(MessageSupplier.class);
+        when(messageSupplier.get()).thenReturn(Message.create(message));
+        return messageSupplier;
+    }
+}
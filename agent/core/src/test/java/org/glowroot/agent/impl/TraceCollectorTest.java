@@ -0,0 +1,113 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.impl;
+
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import org.glowroot.agent.collector.Collector;
+import org.glowroot.agent.collector.Collector.TraceReader;
+import org.glowroot.agent.config.ConfigService;
+import org.glowroot.common.util.Clock;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TraceCollectorTest {
+
+    private Ticker ticker;
+    private Collector collector;
+    private TraceSampler traceSampler;
+    private TraceCollector traceCollector;
+
+    @BeforeEach
+    public void beforeEach() {
+        ticker = mock(Ticker.class);
+        collector = mock(Collector.class);
+        // 10 slowest plus reservoir of 15, which is half of the pending limit
+        traceSampler = new TraceSampler(1, 10, 15, ticker, new Random(0));
+        traceCollector = new TraceCollector(mock(ConfigService.class), collector,
+                mock(Clock.class), ticker, traceSampler);
+    }
+
+    @AfterEach
+    public void afterEach() throws Exception {
+        traceCollector.close();
+    }
+
+    @Test
+    public void shouldStoreSlowestSampledTracesAcrossManyTransactionNames() throws Exception {
+        // given
+        for (int i = 0; i < 100; i++) {
+            // use up the token for each transaction name
+            traceSampler.sample(newTransaction("name" + i, "warmup" + i, 1), true);
+        }
+        List<Transaction> transactions = Lists.newArrayList();
+        for (int i = 0; i < 200; i++) {
+            Transaction transaction = newTransaction("name" + (i % 100), "trace" + i, 10 + i);
+            transactions.add(transaction);
+            assertThat(traceCollector.collectTrace(transaction)).isTrue();
+        }
+
+        // when
+        when(ticker.read()).thenReturn(SECONDS.toNanos(60));
+
+        // then
+        ArgumentCaptor<TraceReader> captor = ArgumentCaptor.forClass(TraceReader.class);
+        verify(collector, timeout(10000).times(25)).collectTrace(captor.capture());
+        List<String> storedTraceIds = Lists.newArrayList();
+        for (TraceReader traceReader : captor.getAllValues()) {
+            storedTraceIds.add(traceReader.traceId());
+        }
+        for (int i = 190; i < 200; i++) {
+            assertThat(storedTraceIds).contains("trace" + i);
+        }
+        for (Transaction transaction : transactions) {
+            if (storedTraceIds.contains(transaction.getTraceId())) {
+                verify(transaction, never()).releaseTraceEntries();
+            } else {
+                verify(transaction, times(1)).releaseTraceEntries();
+            }
+        }
+        assertThat(traceCollector.getPendingTransactions()).isEmpty();
+    }
+
+    private static Transaction newTransaction(String transactionName, String traceId,
+            long durationMillis) {
+        Transaction transaction = mock(Transaction.class);
+        when(transaction.getTransactionType()).thenReturn("Web");
+        when(transaction.getTransactionName()).thenReturn(transactionName);
+        when(transaction.getTraceId()).thenReturn(traceId);
+        when(transaction.getDurationNanos()).thenReturn(MILLISECONDS.toNanos(durationMillis));
+        when(transaction.getSlowThresholdMillisOverride())
+                .thenReturn(Transaction.USE_GENERAL_STORE_THRESHOLD);
+        return transaction;
+    }
+}
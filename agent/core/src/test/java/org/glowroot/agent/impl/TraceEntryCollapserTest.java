@@ -0,0 +1,177 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.impl;
+
+import java.util.List;
+
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.glowroot.agent.model.ErrorMessage;
+import org.glowroot.agent.plugin.api.Message;
+import org.glowroot.agent.plugin.api.MessageSupplier;
+import org.glowroot.agent.plugin.api.internal.ReadableMessage;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TraceEntryCollapserTest {
+
+    private TimerImpl timer;
+    private TraceEntryComponent traceEntryComponent;
+
+    @BeforeEach
+    public void beforeEach() {
+        timer = mock(TimerImpl.class);
+        traceEntryComponent = new TraceEntryComponent(mock(ThreadContextImpl.class),
+                newMessageSupplier("root"), timer, 0, null, 3);
+    }
+
+    @Test
+    public void shouldCollapseFastestEntries() {
+        // when
+        addEntry("a", 0, 10);
+        addEntry("b", 10, 110);
+        addEntry("c", 110, 115);
+        addEntry("d", 115, 315);
+
+        // then
+        assertThat(getMessages()).containsExactly("b",
+                "collapsed 2 faster trace entries to stay within the trace entry limit,"
+                        + " total 15.0 milliseconds",
+                "d");
+    }
+
+    @Test
+    public void shouldCollapseSubtree() {
+        // when
+        TraceEntryImpl parent = startEntry("parent", 0);
+        addEntry("a", 0, 1);
+        addEntry("b", 1, 2);
+        addEntry("c", 2, 3);
+        addEntry("d", 3, 4);
+        endEntry(parent, 5);
+        addEntry("e", 5, 100);
+        addEntry("f", 100, 200);
+        addEntry("g", 200, 300);
+
+        // then
+        assertThat(getMessages()).containsExactly(
+                "collapsed 6 faster trace entries to stay within the trace entry limit,"
+                        + " total 100.0 milliseconds",
+                "f", "g");
+    }
+
+    @Test
+    public void shouldNotCollapseParentOfErrorEntry() {
+        // when
+        TraceEntryImpl parent = startEntry("parent", 0);
+        traceEntryComponent.addErrorEntry(1, 1, newMessageSupplier("error"), null,
+                ErrorMessage.create("error", null, null));
+        endEntry(parent, 2);
+        addEntry("a", 2, 100);
+        addEntry("b", 100, 200);
+        addEntry("c", 200, 300);
+
+        // then
+        assertThat(getMessages()).containsExactly("parent", "error",
+                "collapsed 3 faster trace entries to stay within the trace entry limit,"
+                        + " total 298.0 milliseconds");
+    }
+
+    @Test
+    public void shouldEvictParentOnceChildrenAreEvicted() {
+        // when
+        // same start tick and same duration, so the parent can be polled before its children
+        TraceEntryImpl parent = startEntry("parent", 0);
+        addEntry("a", 0, 0);
+        addEntry("b", 0, 0);
+        endEntry(parent, 0);
+        addEntry("c", 0, 0);
+        addEntry("d", 100, 300);
+        addEntry("e", 300, 600);
+
+        // then
+        assertThat(getMessages()).containsExactly(
+                "collapsed 4 faster trace entries to stay within the trace entry limit,"
+                        + " total 0.0 milliseconds",
+                "d", "e");
+    }
+
+    @Test
+    public void shouldEnforceHardLimit() {
+        // when
+        startEntry("a", 0);
+        startEntry("b", 1);
+        startEntry("c", 2);
+        startEntry("d", 3);
+        startEntry("e", 4);
+        startEntry("f", 5);
+
+        // then
+        assertThat(traceEntryComponent.allowAnotherCollapsibleEntry()).isFalse();
+        assertThat(traceEntryComponent.isCollapsingHardLimitExceeded()).isTrue();
+    }
+
+    @Test
+    public void shouldNotEnforceHardLimitBeforeReached() {
+        // when
+        startEntry("a", 0);
+        startEntry("b", 1);
+        startEntry("c", 2);
+        startEntry("d", 3);
+        startEntry("e", 4);
+
+        // then
+        assertThat(traceEntryComponent.allowAnotherCollapsibleEntry()).isTrue();
+        assertThat(traceEntryComponent.isCollapsingHardLimitExceeded()).isFalse();
+    }
+
+    private void addEntry(String message, long startMillis, long endMillis) {
+        endEntry(startEntry(message, startMillis), endMillis);
+    }
+
+    private TraceEntryImpl startEntry(String message, long startMillis) {
+        return traceEntryComponent.pushEntry(MILLISECONDS.toNanos(startMillis),
+                newMessageSupplier(message), timer, null, null, 0);
+    }
+
+    private void endEntry(TraceEntryImpl entry, long endMillis) {
+        long endTick = MILLISECONDS.toNanos(endMillis);
+        entry.markCompleted(null, endTick);
+        traceEntryComponent.popEntry(entry, endTick);
+    }
+
+    private List<String> getMessages() {
+        List<String> messages = Lists.newArrayList();
+        TraceEntryImpl entry = traceEntryComponent.getRootEntry().getNextTraceEntry();
+        while (entry != null) {
+            MessageSupplier messageSupplier = (MessageSupplier) entry.getMessageSupplier();
+            messages.add(((ReadableMessage) messageSupplier.get()).getText());
+            entry = entry.getNextTraceEntry();
+        }
+        return messages;
+    }
+
+    private static MessageSupplier newMessageSupplier(String message) {
+        MessageSupplier messageSupplier = mock(MessageSupplier.class);
+        when(messageSupplier.get()).thenReturn(Message.create(message));
+        return messageSupplier;
+    }
+}
@@ -34,7 +34,7 @@ public class TraceEntryComponentTest {
         when(messageSupplier.get()).thenReturn(Message.create("abc"));
         TimerImpl timer = mock(TimerImpl.class);
         TraceEntryComponent traceEntryComponent =
-                new TraceEntryComponent(threadContext, messageSupplier, timer, 0);
+                new TraceEntryComponent(threadContext, messageSupplier, timer, 0, null, 0);
         // when
         traceEntryComponent.popEntry(traceEntryComponent.getRootEntry(), 0);
         traceEntryComponent.popEntry(traceEntryComponent.getRootEntry(), 0);
@@ -52,7 +52,7 @@ public class TraceEntryComponentTest {
         TimerImpl timer1 = mock(TimerImpl.class);
         TimerImpl timer2 = mock(TimerImpl.class);
         TraceEntryComponent traceEntryComponent =
-                new TraceEntryComponent(threadContext, messageSupplier1, timer1, 0);
+                new TraceEntryComponent(threadContext, messageSupplier1, timer1, 0, null, 0);
         // when
         traceEntryComponent.pushEntry(0, messageSupplier2, timer2, null, null, 0);
         traceEntryComponent.popEntry(traceEntryComponent.getRootEntry(), 0);
@@ -71,7 +71,7 @@ public class TraceEntryComponentTest {
         TimerImpl timer1 = mock(TimerImpl.class);
         TimerImpl timer2 = mock(TimerImpl.class);
         TraceEntryComponent traceEntryComponent =
-                new TraceEntryComponent(threadContext, messageSupplier1, timer1, 0);
+                new TraceEntryComponent(threadContext, messageSupplier1, timer1, 0, null, 0);
         // when
         traceEntryComponent.pushEntry(0, messageSupplier2, timer2, null, null, 0);
         traceEntryComponent.popEntry(mock(TraceEntryImpl.class), 0);
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.impl;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import org.glowroot.agent.model.ErrorMessage;
+import org.glowroot.agent.model.QueryData;
+import org.glowroot.agent.plugin.api.Message;
+import org.glowroot.agent.plugin.api.MessageSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TraceEntryPoolTest {
+
+    @Test
+    public void shouldRecycleErrorEntriesOfRecyclableTransaction() {
+        // given
+        TraceEntryPool traceEntryPool = new TraceEntryPool();
+        MessageSupplier messageSupplier = newMessageSupplier();
+        TimerImpl timer = mock(TimerImpl.class);
+        TraceEntryComponent traceEntryComponent =
+                new TraceEntryComponent(mock(ThreadContextImpl.class), messageSupplier, timer, 0,
+                        traceEntryPool, 0);
+        TraceEntryImpl errorEntry = traceEntryComponent.addErrorEntry(0, 1, messageSupplier,
+                null, ErrorMessage.create("abc", null, new AtomicInteger()));
+        TraceEntryImpl queryErrorEntry = traceEntryComponent.addErrorEntry(0, 1, messageSupplier,
+                mock(QueryData.class), ErrorMessage.create("abc", null, new AtomicInteger()));
+        Transaction transaction = newTransaction(traceEntryComponent, true);
+        traceEntryPool.onTransactionStart(transaction, 100);
+
+        // when
+        traceEntryPool.onTransactionStart(mock(Transaction.class), 100);
+
+        // then
+        TraceEntryComponent nextTraceEntryComponent =
+                new TraceEntryComponent(mock(ThreadContextImpl.class), messageSupplier, timer, 0,
+                        traceEntryPool, 0);
+        TraceEntryImpl recycledEntry = nextTraceEntryComponent.pushEntry(0, messageSupplier,
+                timer, null, null, 0);
+        assertThat(recycledEntry).isSameAs(errorEntry);
+        assertThat(recycledEntry.getParentTraceEntry())
+                .isSameAs(nextTraceEntryComponent.getRootEntry());
+        assertThat(recycledEntry.getNextTraceEntry()).isNull();
+        assertThat(recycledEntry.getErrorMessage()).isNull();
+        assertThat(recycledEntry.isCompleted()).isFalse();
+        TraceEntryImpl newEntry = nextTraceEntryComponent.pushEntry(0, messageSupplier, timer,
+                null, null, 0);
+        assertThat(newEntry).isNotSameAs(queryErrorEntry);
+        assertThat(traceEntryComponent.getRootEntry().getNextTraceEntry()).isNull();
+        assertThat(queryErrorEntry.getNextTraceEntry()).isNull();
+    }
+
+    @Test
+    public void shouldNotRecycleEntriesReturnedToPlugins() {
+        // given
+        TraceEntryPool traceEntryPool = new TraceEntryPool();
+        MessageSupplier messageSupplier = newMessageSupplier();
+        TimerImpl timer = mock(TimerImpl.class);
+        TraceEntryComponent traceEntryComponent =
+                new TraceEntryComponent(mock(ThreadContextImpl.class), messageSupplier, timer, 0,
+                        traceEntryPool, 0);
+        TraceEntryImpl entry = traceEntryComponent.pushEntry(0, messageSupplier, timer, null,
+                null, 0);
+        complete(traceEntryComponent, entry);
+        Transaction transaction = newTransaction(traceEntryComponent, true);
+        traceEntryPool.onTransactionStart(transaction, 100);
+
+        // when
+        traceEntryPool.onTransactionStart(mock(Transaction.class), 100);
+
+        // then
+        assertThat(traceEntryPool.poll()).isNull();
+        assertThat(entry.getNextTraceEntry()).isNull();
+    }
+
+    @Test
+    public void shouldNotRecycleEntriesReturnedToPluginsAfterReuse() {
+        // given
+        TraceEntryPool traceEntryPool = new TraceEntryPool();
+        MessageSupplier messageSupplier = newMessageSupplier();
+        TimerImpl timer = mock(TimerImpl.class);
+        TraceEntryComponent traceEntryComponent =
+                new TraceEntryComponent(mock(ThreadContextImpl.class), messageSupplier, timer, 0,
+                        traceEntryPool, 0);
+        TraceEntryImpl errorEntry = traceEntryComponent.addErrorEntry(0, 1, messageSupplier,
+                null, ErrorMessage.create("abc", null, new AtomicInteger()));
+        traceEntryPool.onTransactionStart(newTransaction(traceEntryComponent, true), 100);
+        TraceEntryComponent nextTraceEntryComponent =
+                new TraceEntryComponent(mock(ThreadContextImpl.class), messageSupplier, timer, 0,
+                        traceEntryPool, 0);
+        traceEntryPool.onTransactionStart(newTransaction(nextTraceEntryComponent, true), 100);
+        TraceEntryImpl recycledEntry = nextTraceEntryComponent.pushEntry(0, messageSupplier,
+                timer, null, null, 0);
+        complete(nextTraceEntryComponent, recycledEntry);
+
+        // when
+        traceEntryPool.onTransactionStart(mock(Transaction.class), 100);
+
+        // then
+        assertThat(recycledEntry).isSameAs(errorEntry);
+        assertThat(traceEntryPool.poll()).isNull();
+    }
+
+    @Test
+    public void shouldNotRecycleActiveEntries() {
+        // given
+        TraceEntryPool traceEntryPool = new TraceEntryPool();
+        MessageSupplier messageSupplier = newMessageSupplier();
+        TimerImpl timer = mock(TimerImpl.class);
+        TraceEntryComponent traceEntryComponent =
+                new TraceEntryComponent(mock(ThreadContextImpl.class), messageSupplier, timer, 0,
+                        traceEntryPool, 0);
+        traceEntryComponent.pushEntry(0, messageSupplier, timer, null, null, 0);
+        Transaction transaction = newTransaction(traceEntryComponent, true);
+        traceEntryPool.onTransactionStart(transaction, 100);
+
+        // when
+        traceEntryPool.onTransactionStart(mock(Transaction.class), 100);
+
+        // then
+        assertThat(traceEntryPool.poll()).isNull();
+    }
+
+    private static void complete(TraceEntryComponent traceEntryComponent, TraceEntryImpl entry) {
+        entry.markCompleted(null, 1);
+        traceEntryComponent.popEntry(entry, 1);
+    }
+
+    @Test
+    public void shouldNotRecycleEntriesOfRetainedTransaction() {
+        // given
+        TraceEntryPool traceEntryPool = new TraceEntryPool();
+        MessageSupplier messageSupplier = newMessageSupplier();
+        TimerImpl timer = mock(TimerImpl.class);
+        TraceEntryComponent traceEntryComponent =
+                new TraceEntryComponent(mock(ThreadContextImpl.class), messageSupplier, timer, 0,
+                        traceEntryPool, 0);
+        TraceEntryImpl entry = traceEntryComponent.pushEntry(0, messageSupplier, timer, null,
+                null, 0);
+        Transaction transaction = newTransaction(traceEntryComponent, false);
+        traceEntryPool.onTransactionStart(transaction, 100);
+
+        // when
+        traceEntryPool.onTransactionStart(mock(Transaction.class), 100);
+
+        // then
+        assertThat(traceEntryPool.poll()).isNull();
+        assertThat(entry.getParentTraceEntry()).isSameAs(traceEntryComponent.getRootEntry());
+    }
+
+    private static MessageSupplier newMessageSupplier() {
+        MessageSupplier messageSupplier = mock(MessageSupplier.class);
+        when(messageSupplier.get()).thenReturn(Message.create("abc"));
+        return messageSupplier;
+    }
+
+    private static Transaction newTransaction(TraceEntryComponent traceEntryComponent,
+            boolean recyclable) {
+        ThreadContextImpl threadContext = mock(ThreadContextImpl.class);
+        when(threadContext.getRootEntry()).thenReturn(traceEntryComponent.getRootEntry());
+        Transaction transaction = mock(Transaction.class);
+        when(transaction.getMainThreadContext()).thenReturn(threadContext);
+        when(transaction.isTraceEntriesRecyclable()).thenReturn(recyclable);
+        when(transaction.isTraceEntriesRetained()).thenReturn(!recyclable);
+        return transaction;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.impl;
+
+import java.util.List;
+import java.util.Random;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.glowroot.agent.impl.TraceSampler.HeldTrace;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TraceSamplerTest {
+
+    private Ticker ticker;
+
+    @BeforeEach
+    public void beforeEach() {
+        ticker = mock(Ticker.class);
+    }
+
+    @Test
+    public void shouldStoreRightAwayUntilTokensRunOut() {
+        // given
+        TraceSampler traceSampler = new TraceSampler(3, 0, 0, ticker, new Random(0));
+
+        // when
+        List<Boolean> results = Lists.newArrayList();
+        for (int i = 0; i < 4; i++) {
+            results.add(traceSampler.sample(newTransaction("a", 1000), true));
+        }
+        when(ticker.read()).thenReturn(SECONDS.toNanos(20));
+        results.add(traceSampler.sample(newTransaction("a", 1000), true));
+        results.add(traceSampler.sample(newTransaction("a", 1000), true));
+
+        // then
+        assertThat(results).containsExactly(true, true, true, false, true, false);
+    }
+
+    @Test
+    public void shouldTrackTokensPerTransactionName() {
+        // given
+        TraceSampler traceSampler = new TraceSampler(1, 0, 0, ticker, new Random(0));
+
+        // when
+        boolean first = traceSampler.sample(newTransaction("a", 1000), true);
+        boolean second = traceSampler.sample(newTransaction("b", 1000), true);
+        boolean third = traceSampler.sample(newTransaction("a", 1000), true);
+
+        // then
+        assertThat(first).isTrue();
+        assertThat(second).isTrue();
+        assertThat(third).isFalse();
+    }
+
+    @Test
+    public void shouldHoldSlowestAndSampleOfRemaining() {
+        // given
+        TraceSampler traceSampler = new TraceSampler(1, 2, 3, ticker, new Random(0));
+        traceSampler.sample(newTransaction("a", 1), true);
+        List<Transaction> transactions = Lists.newArrayList();
+        for (int i = 0; i < 100; i++) {
+            Transaction transaction = newTransaction("a", i == 50 ? 5000 : 10 + i);
+            transactions.add(transaction);
+            traceSampler.sample(transaction, true);
+        }
+
+        // when
+        List<HeldTrace> beforeEndOfInterval = traceSampler.flushIfIntervalEnded();
+        when(ticker.read()).thenReturn(SECONDS.toNanos(60));
+        List<HeldTrace> heldTraces = traceSampler.flushIfIntervalEnded();
+
+        // then
+        assertThat(beforeEndOfInterval).isEmpty();
+        assertThat(heldTraces).hasSize(5);
+        List<Transaction> heldTransactions = Lists.newArrayList();
+        for (HeldTrace heldTrace : heldTraces) {
+            heldTransactions.add(heldTrace.transaction());
+        }
+        assertThat(heldTransactions).contains(transactions.get(50), transactions.get(99));
+        for (Transaction transaction : transactions) {
+            if (heldTransactions.contains(transaction)) {
+                verify(transaction, never()).releaseTraceEntries();
+            } else {
+                verify(transaction, times(1)).releaseTraceEntries();
+            }
+        }
+        assertThat(traceSampler.getHeldTransactions()).isEmpty();
+    }
+
+    @Test
+    public void shouldHoldSlowestAcrossTransactionNames() {
+        // given
+        TraceSampler traceSampler = new TraceSampler(1, 2, 0, ticker, new Random(0));
+        for (int i = 0; i < 10; i++) {
+            traceSampler.sample(newTransaction("name" + i, 1), true);
+        }
+        List<Transaction> transactions = Lists.newArrayList();
+        for (int i = 0; i < 10; i++) {
+            Transaction transaction = newTransaction("name" + i, 10 + i);
+            transactions.add(transaction);
+            traceSampler.sample(transaction, true);
+        }
+
+        // when
+        when(ticker.read()).thenReturn(SECONDS.toNanos(60));
+        List<HeldTrace> heldTraces = traceSampler.flushIfIntervalEnded();
+
+        // then
+        List<Transaction> heldTransactions = Lists.newArrayList();
+        for (HeldTrace heldTrace : heldTraces) {
+            heldTransactions.add(heldTrace.transaction());
+        }
+        assertThat(heldTransactions).containsExactly(transactions.get(9), transactions.get(8));
+    }
+
+    @Test
+    public void shouldExposeHeldTransactions() {
+        // given
+        TraceSampler traceSampler = new TraceSampler(1, 1, 0, ticker, new Random(0));
+        traceSampler.sample(newTransaction("a", 1000), true);
+        Transaction transaction = newTransaction("a", 1000);
+
+        // when
+        traceSampler.sample(transaction, false);
+
+        // then
+        assertThat(traceSampler.getHeldTransactions()).containsExactly(transaction);
+    }
+
+    private static Transaction newTransaction(String transactionName, long durationMillis) {
+        Transaction transaction = mock(Transaction.class);
+        when(transaction.getTransactionType()).thenReturn("Web");
+        when(transaction.getTransactionName()).thenReturn(transactionName);
+        when(transaction.getDurationNanos()).thenReturn(MILLISECONDS.toNanos(durationMillis));
+        return transaction;
+    }
+}
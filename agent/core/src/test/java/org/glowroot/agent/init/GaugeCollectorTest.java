@@ -17,14 +17,18 @@ package org.glowroot.agent.init;
 
 import java.util.List;
 
+import javax.management.Attribute;
+import javax.management.AttributeList;
 import javax.management.AttributeNotFoundException;
 import javax.management.InstanceNotFoundException;
 import javax.management.MBeanServer;
 import javax.management.MalformedObjectNameException;
 import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
 
 import com.google.common.base.Ticker;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -45,6 +49,7 @@ import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
@@ -71,8 +76,11 @@ public class GaugeCollectorTest {
         ticker = mock(Ticker.class);
         logger = mock(Logger.class);
         gaugeCollector = new GaugeCollector(configService, collector, lazyPlatformMBeanServer,
-                null, clock, ticker);
+                null, null, clock, ticker);
         gaugeCollector.setLoggerForTesting(logger);
+        // attributes missing from the bulk read are read individually
+        when(lazyPlatformMBeanServer.getAttributes(any(ObjectName.class), any(String[].class),
+                anyMBeanServerList())).thenReturn(new AttributeList());
     }
 
     @AfterEach
@@ -130,7 +138,8 @@ public class GaugeCollectorTest {
                 .build();
         when(lazyPlatformMBeanServer.getAttribute(any(ObjectName.class), anyString(),
                 anyMBeanServerList())).thenReturn(555, 565);
-        when(ticker.read()).thenReturn(SECONDS.toNanos(1), SECONDS.toNanos(3));
+        // the first two ticks are read by run() to measure the collection time
+        when(ticker.read()).thenReturn(0L, 0L, SECONDS.toNanos(1), SECONDS.toNanos(3));
 
         // need to execute run() once in order to initialize internal priorRawCounterValues map
         gaugeCollector.run();
@@ -146,6 +155,58 @@ public class GaugeCollectorTest {
         assertThat(gaugeValues.get(0).getWeight()).isEqualTo(SECONDS.toNanos(2));
     }
 
+    @Test
+    public void shouldReadAttributesInBulk() throws Exception {
+        // given
+        GaugeConfig gaugeConfig = ImmutableGaugeConfig.builder()
+                .mbeanObjectName("test:aaa=bbb")
+                .addMbeanAttributes(ImmutableMBeanAttribute.of("ccc", false))
+                .addMbeanAttributes(ImmutableMBeanAttribute.of("ddd.eee", false))
+                .build();
+        CompositeData compositeData = mock(CompositeData.class);
+        when(compositeData.get("eee")).thenReturn(777);
+        when(lazyPlatformMBeanServer.getAttributes(any(ObjectName.class), any(String[].class),
+                anyMBeanServerList())).thenReturn(new AttributeList(ImmutableList.of(
+                        new Attribute("ccc", 555), new Attribute("ddd", compositeData))));
+
+        // when
+        List<GaugeValue> gaugeValues = collectGaugeValues(gaugeConfig);
+
+        // then
+        assertThat(gaugeValues).hasSize(2);
+        assertThat(gaugeValues.get(0).getGaugeName()).isEqualTo("test:aaa=bbb:ccc");
+        assertThat(gaugeValues.get(0).getValue()).isEqualTo(555);
+        assertThat(gaugeValues.get(1).getGaugeName()).isEqualTo("test:aaa=bbb:ddd.eee");
+        assertThat(gaugeValues.get(1).getValue()).isEqualTo(777);
+        verify(lazyPlatformMBeanServer, never()).getAttribute(any(ObjectName.class), anyString(),
+                anyMBeanServerList());
+    }
+
+    @Test
+    public void shouldNotRequeryPatternOnEachCollection() throws Exception {
+        // given
+        GaugeConfig gaugeConfig = ImmutableGaugeConfig.builder()
+                .mbeanObjectName("test:aaa=*")
+                .addMbeanAttributes(ImmutableMBeanAttribute.of("ccc", false))
+                .build();
+        when(lazyPlatformMBeanServer.queryNames(any(ObjectName.class), isNull(),
+                anyMBeanServerList()))
+                        .thenReturn(ImmutableSet.of(ObjectName.getInstance("test:aaa=bbb")));
+        when(lazyPlatformMBeanServer.getAttributes(any(ObjectName.class), any(String[].class),
+                anyMBeanServerList()))
+                        .thenReturn(new AttributeList(ImmutableList.of(new Attribute("ccc", 5))));
+
+        // when
+        collectGaugeValues(gaugeConfig);
+        List<GaugeValue> gaugeValues = collectGaugeValues(gaugeConfig);
+
+        // then
+        assertThat(gaugeValues).hasSize(1);
+        assertThat(gaugeValues.get(0).getGaugeName()).isEqualTo("test:aaa=bbb:ccc");
+        verify(lazyPlatformMBeanServer).queryNames(any(ObjectName.class), isNull(),
+                anyMBeanServerList());
+    }
+
     @Test
     public void shouldHandleInvalidMBeanObjectName() throws Exception {
         // given
@@ -103,6 +103,18 @@ public class ClasspathCacheTest {
         }
     }
 
+    @Test
+    public void shouldReadClassNamesForClassLoader() throws Exception {
+        // given
+        URL location = ImmutableList.class.getProtectionDomain().getCodeSource().getLocation();
+        ClassLoader loader = new URLClassLoader(new URL[] {location}, null);
+        // when
+        List<String> classNames = classpathCache.getClassNames(loader);
+        // then
+        assertThat(classNames).contains("com.google.common.collect.ImmutableList");
+        assertThat(classNames).doesNotContain(ClasspathCacheTest.class.getName());
+    }
+
     @Test
     public void shouldAnalyzedMethods() {
         List<UiAnalyzedMethod> methods = classpathCache.getAnalyzedMethods(A.class.getName());
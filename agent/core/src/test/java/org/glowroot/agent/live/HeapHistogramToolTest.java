@@ -0,0 +1,136 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.live;
+
+import java.io.IOException;
+
+import org.junit.jupiter.api.Test;
+
+import org.glowroot.wire.api.model.DownstreamServiceOuterClass.HeapHistogram;
+import org.glowroot.wire.api.model.DownstreamServiceOuterClass.HeapHistogram.ClassInfo;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class HeapHistogramToolTest {
+
+    private static final String HISTOGRAM = "\n"
+            + " num     #instances         #bytes  class name (module)\n"
+            + "-------------------------------------------------------\n"
+            + "   1:         10000        4000000  [B (java.base@11.0.2)\n"
+            + "   2:          5000         120000  java.lang.String (java.base@11.0.2)\n"
+            + "   3:          1000          32000  com.example.Widget\n"
+            + "   4:           100           3200  com.example.Widget\n"
+            + "   5:            10            160  [Ljava.lang.Object; (java.base@11.0.2)\n"
+            + "Total         16110        4155360\n";
+
+    @Test
+    public void shouldParse() throws Exception {
+        // when
+        HeapHistogram heapHistogram = HeapHistogramTool.parse(HISTOGRAM, false, 0).toProto();
+
+        // then
+        assertThat(heapHistogram.getClassInfoCount()).isEqualTo(4);
+        ClassInfo classInfo = heapHistogram.getClassInfo(0);
+        assertThat(classInfo.getClassName()).isEqualTo("byte[]");
+        assertThat(classInfo.getBytes()).isEqualTo(4000000);
+        assertThat(classInfo.getCount()).isEqualTo(10000);
+        assertThat(classInfo.getModule()).isEqualTo("java.base@11.0.2");
+        classInfo = heapHistogram.getClassInfo(2);
+        assertThat(classInfo.getClassName()).isEqualTo("com.example.Widget");
+        assertThat(classInfo.getBytes()).isEqualTo(35200);
+        assertThat(classInfo.getCount()).isEqualTo(1100);
+        assertThat(classInfo.getModule()).isEmpty();
+        assertThat(classInfo.getLoaderCount()).isEqualTo(2);
+        assertThat(heapHistogram.getClassInfo(3).getClassName())
+                .isEqualTo("java.lang.Object[]");
+        assertThat(heapHistogram.getTotalBytes()).isEqualTo(4155360);
+        assertThat(heapHistogram.getTotalCount()).isEqualTo(16110);
+    }
+
+    @Test
+    public void shouldOnlyRetainMaxClasses() throws Exception {
+        // when
+        HeapHistogram heapHistogram = HeapHistogramTool.parse(HISTOGRAM, false, 2).toProto();
+
+        // then
+        assertThat(heapHistogram.getClassInfoCount()).isEqualTo(2);
+        assertThat(heapHistogram.getClassInfo(0).getClassName()).isEqualTo("byte[]");
+        assertThat(heapHistogram.getClassInfo(1).getClassName()).isEqualTo("java.lang.String");
+        assertThat(heapHistogram.getTotalBytes()).isEqualTo(4155360);
+        assertThat(heapHistogram.getTotalCount()).isEqualTo(16110);
+    }
+
+    @Test
+    public void shouldParseJava8Format() throws Exception {
+        // given
+        String text = "\n"
+                + " num     #instances         #bytes  class name\n"
+                + "----------------------------------------------\n"
+                + "   1:           200          12800  [C\r\n"
+                + "   2:           100           2400  java.lang.String\r\n"
+                + "Total           300          15200\r\n";
+
+        // when
+        HeapHistogram heapHistogram = HeapHistogramTool.parse(text, false, 0).toProto();
+
+        // then
+        assertThat(heapHistogram.getClassInfoCount()).isEqualTo(2);
+        assertThat(heapHistogram.getClassInfo(0).getClassName()).isEqualTo("char[]");
+        assertThat(heapHistogram.getClassInfo(1).getClassName()).isEqualTo("java.lang.String");
+        assertThat(heapHistogram.getClassInfo(1).getModule()).isEmpty();
+    }
+
+    @Test
+    public void shouldCompare() throws Exception {
+        // given
+        String secondText = "\n"
+                + " num     #instances         #bytes  class name (module)\n"
+                + "-------------------------------------------------------\n"
+                + "   1:         10000        4000000  [B (java.base@11.0.2)\n"
+                + "   2:          5000         200000  com.example.Widget\n"
+                + "   3:          6000         144000  java.lang.String (java.base@11.0.2)\n"
+                + "   4:             1             16  com.example.Gadget\n"
+                + "Total         21001        4344016\n";
+
+        // when
+        HeapHistogram heapHistogram = HeapHistogramTool.diff(
+                HeapHistogramTool.parse(HISTOGRAM, false, 0),
+                HeapHistogramTool.parse(secondText, false, 0), 3, 10);
+
+        // then
+        assertThat(heapHistogram.getCompareIntervalSeconds()).isEqualTo(10);
+        assertThat(heapHistogram.getClassInfoCount()).isEqualTo(3);
+        ClassInfo classInfo = heapHistogram.getClassInfo(0);
+        assertThat(classInfo.getClassName()).isEqualTo("com.example.Widget");
+        assertThat(classInfo.getBytes()).isEqualTo(200000);
+        assertThat(classInfo.getBytesDelta()).isEqualTo(164800);
+        assertThat(classInfo.getCountDelta()).isEqualTo(3900);
+        classInfo = heapHistogram.getClassInfo(1);
+        assertThat(classInfo.getClassName()).isEqualTo("java.lang.String");
+        assertThat(classInfo.getBytesDelta()).isEqualTo(24000);
+        classInfo = heapHistogram.getClassInfo(2);
+        assertThat(classInfo.getClassName()).isEqualTo("com.example.Gadget");
+        assertThat(classInfo.getBytesDelta()).isEqualTo(16);
+        assertThat(heapHistogram.getTotalBytes()).isEqualTo(4344016);
+    }
+
+    @Test
+    public void shouldFailOnUnexpectedOutput() {
+        assertThatThrownBy(() -> HeapHistogramTool.parse("unexpected", false, 0))
+                .isInstanceOf(IOException.class);
+    }
+}
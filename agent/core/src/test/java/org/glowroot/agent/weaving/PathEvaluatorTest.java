@@ -15,6 +15,7 @@
  */
 package org.glowroot.agent.weaving;
 
+import java.lang.reflect.InvocationTargetException;
 import java.util.Collections;
 import java.util.List;
 
@@ -27,6 +28,7 @@ import org.glowroot.agent.weaving.MessageTemplateImpl.ValuePathPart;
 
 import static com.google.common.base.Charsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 public class PathEvaluatorTest {
 
@@ -124,6 +126,45 @@ public class PathEvaluatorTest {
         assertThat(value).isEqualTo("eeeeee");
     }
 
+    @Test
+    public void shouldCallStaticMethod() throws Exception {
+        // given
+        PathEvaluator pathEvaluator = PathEvaluator.create(SomeObject.class, "five");
+        // when
+        String value = (String) pathEvaluator.evaluateOnBase(new SomeObject());
+        // then
+        assertThat(value).isEqualTo("5");
+    }
+
+    @Test
+    public void shouldWrapExceptionThrownByGetter() throws Exception {
+        // given
+        PathEvaluator pathEvaluator = PathEvaluator.create(SomeObject.class, "broken");
+        // when, then
+        assertThatThrownBy(() -> pathEvaluator.evaluateOnBase(new SomeObject()))
+                .isInstanceOf(InvocationTargetException.class)
+                .hasCauseInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void shouldWrapClassCastExceptionThrownByGetter() throws Exception {
+        // given
+        PathEvaluator pathEvaluator = PathEvaluator.create(SomeObject.class, "badCast");
+        // when, then
+        assertThatThrownBy(() -> pathEvaluator.evaluateOnBase(new SomeObject()))
+                .isInstanceOf(InvocationTargetException.class)
+                .hasCauseInstanceOf(ClassCastException.class);
+    }
+
+    @Test
+    public void shouldNotWrapWrongReceiver() throws Exception {
+        // given
+        PathEvaluator pathEvaluator = PathEvaluator.create(SomeObject.class, "three");
+        // when, then
+        assertThatThrownBy(() -> pathEvaluator.evaluateOnBase(new A()))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
     @Test
     public void shouldFormatByteArrayAsHex() throws Exception {
         // given
@@ -192,6 +233,19 @@ public class PathEvaluatorTest {
         public byte[] bytes() {
             return "xyz".getBytes(UTF_8);
         }
+
+        public static String getFive() {
+            return "5";
+        }
+
+        public String getBroken() {
+            throw new IllegalStateException();
+        }
+
+        public String getBadCast() {
+            Object value = 5;
+            return (String) value;
+        }
     }
 
     @SuppressWarnings("unused")
@@ -1023,7 +1023,7 @@ public class WeaverTest {
         when(transactionRegistry.getCurrentThreadContextHolder())
                 .thenReturn(new ThreadContextThreadLocal().getHolder());
         Weaver weaver = new Weaver(advisorsSupplier, ImmutableList.<ShimType>of(),
-                ImmutableList.<MixinType>of(), analyzedWorld, transactionRegistry,
+                ImmutableList.<MixinType>of(), analyzedWorld, null, null, transactionRegistry,
                 Ticker.systemTicker(), new TimerNameCache(), mock(ConfigService.class));
         isolatedWeavingClassLoader.setWeaver(weaver);
         Misc test = isolatedWeavingClassLoader.newInstance(BasicMisc.class, Misc.class);
@@ -1847,8 +1847,8 @@ public class WeaverTest {
         TransactionRegistry transactionRegistry = mock(TransactionRegistry.class);
         when(transactionRegistry.getCurrentThreadContextHolder())
                 .thenReturn(new ThreadContextThreadLocal().getHolder());
-        Weaver weaver = new Weaver(advisorsSupplier, shimTypes, mixinTypes, analyzedWorld,
-                transactionRegistry, Ticker.systemTicker(), new TimerNameCache(),
+        Weaver weaver = new Weaver(advisorsSupplier, shimTypes, mixinTypes, analyzedWorld, null,
+                null, transactionRegistry, Ticker.systemTicker(), new TimerNameCache(),
                 mock(ConfigService.class));
         isolatedWeavingClassLoader.setWeaver(weaver);
         return isolatedWeavingClassLoader.newInstance(implClass, bridgeClass);
@@ -1887,8 +1887,8 @@ public class WeaverTest {
         TransactionRegistry transactionRegistry = mock(TransactionRegistry.class);
         when(transactionRegistry.getCurrentThreadContextHolder())
                 .thenReturn(new ThreadContextThreadLocal().getHolder());
-        Weaver weaver = new Weaver(advisorsSupplier, shimTypes, mixinTypes, analyzedWorld,
-                transactionRegistry, Ticker.systemTicker(), new TimerNameCache(),
+        Weaver weaver = new Weaver(advisorsSupplier, shimTypes, mixinTypes, analyzedWorld, null,
+                null, transactionRegistry, Ticker.systemTicker(), new TimerNameCache(),
                 mock(ConfigService.class));
         isolatedWeavingClassLoader.setWeaver(weaver);
 
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.weaving;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.glowroot.agent.bytecode.api.ThreadContextThreadLocal;
+import org.glowroot.agent.config.ConfigService;
+import org.glowroot.agent.impl.TimerNameCache;
+import org.glowroot.agent.impl.TransactionRegistry;
+import org.glowroot.agent.weaving.SomeAspect.BasicAdvice;
+import org.glowroot.agent.weaving.SomeAspect.SuperBasicAdvice;
+import org.glowroot.agent.weaving.SomeAspectThreadLocals.IntegerThreadLocal;
+import org.glowroot.agent.weaving.targets.BasicMisc;
+import org.glowroot.agent.weaving.targets.Misc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class WeavingCacheTest {
+
+    private File file;
+
+    @BeforeEach
+    public void beforeEach() throws Exception {
+        SomeAspectThreadLocals.resetThreadLocals();
+        file = File.createTempFile("glowroot-unit-test-", "");
+        file.delete();
+    }
+
+    @AfterEach
+    public void afterEach() {
+        file.delete();
+    }
+
+    @Test
+    public void shouldWeaveFromCacheOnSecondStart() throws Exception {
+        // given
+        Supplier<List<Advice>> advisorsSupplier =
+                Suppliers.<List<Advice>>ofInstance(ImmutableList.of(newAdvice(BasicAdvice.class)));
+        WeavingCache weavingCache = new WeavingCache(file, 100, advisorsSupplier,
+                ImmutableList.<ShimType>of(), ImmutableList.<MixinType>of());
+        newWovenObject(advisorsSupplier, weavingCache).execute1();
+        assertThat(weavingCache.getHitCount()).isZero();
+        assertThat(weavingCache.getMissCount()).isPositive();
+        weavingCache.writeToFile();
+        SomeAspectThreadLocals.resetThreadLocals();
+
+        // when
+        advisorsSupplier =
+                Suppliers.<List<Advice>>ofInstance(ImmutableList.of(newAdvice(BasicAdvice.class)));
+        weavingCache = new WeavingCache(file, 100, advisorsSupplier, ImmutableList.<ShimType>of(),
+                ImmutableList.<MixinType>of());
+        newWovenObject(advisorsSupplier, weavingCache).execute1();
+
+        // then
+        assertThat(weavingCache.getHitCount()).isPositive();
+        assertThat(weavingCache.getMissCount()).isZero();
+        assertThat(SomeAspectThreadLocals.onBeforeCount.get()).isEqualTo(1);
+        assertThat(SomeAspectThreadLocals.onReturnCount.get()).isEqualTo(1);
+        assertThat(SomeAspectThreadLocals.onAfterCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotUseCacheWhenAdvisorsHaveChanged() throws Exception {
+        // given
+        Supplier<List<Advice>> advisorsSupplier =
+                Suppliers.<List<Advice>>ofInstance(ImmutableList.of(newAdvice(BasicAdvice.class)));
+        WeavingCache weavingCache = new WeavingCache(file, 100, advisorsSupplier,
+                ImmutableList.<ShimType>of(), ImmutableList.<MixinType>of());
+        newWovenObject(advisorsSupplier, weavingCache).execute1();
+        weavingCache.writeToFile();
+        SomeAspectThreadLocals.resetThreadLocals();
+
+        // when
+        advisorsSupplier = Suppliers.<List<Advice>>ofInstance(
+                ImmutableList.of(newAdvice(BasicAdvice.class), newAdvice(SuperBasicAdvice.class)));
+        weavingCache = new WeavingCache(file, 100, advisorsSupplier, ImmutableList.<ShimType>of(),
+                ImmutableList.<MixinType>of());
+        newWovenObject(advisorsSupplier, weavingCache).execute1();
+
+        // then
+        assertThat(weavingCache.getHitCount()).isZero();
+        assertThat(weavingCache.getMissCount()).isPositive();
+        assertThat(SomeAspectThreadLocals.onBeforeCount.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldDiscardCacheWithInvalidEntryLength() throws Exception {
+        // given
+        Supplier<List<Advice>> advisorsSupplier =
+                Suppliers.<List<Advice>>ofInstance(ImmutableList.of(newAdvice(BasicAdvice.class)));
+        WeavingCache weavingCache = new WeavingCache(file, 100, advisorsSupplier,
+                ImmutableList.<ShimType>of(), ImmutableList.<MixinType>of());
+        newWovenObject(advisorsSupplier, weavingCache).execute1();
+        weavingCache.writeToFile();
+        SomeAspectThreadLocals.resetThreadLocals();
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file, true));
+        try {
+            out.writeUTF("corrupt");
+            out.writeInt(Integer.MAX_VALUE);
+        } finally {
+            out.close();
+        }
+
+        // when
+        weavingCache = new WeavingCache(file, 100, advisorsSupplier, ImmutableList.<ShimType>of(),
+                ImmutableList.<MixinType>of());
+        newWovenObject(advisorsSupplier, weavingCache).execute1();
+
+        // then
+        assertThat(weavingCache.getHitCount()).isZero();
+        assertThat(weavingCache.getMissCount()).isPositive();
+        assertThat(SomeAspectThreadLocals.onBeforeCount.get()).isEqualTo(1);
+    }
+
+    private static Misc newWovenObject(Supplier<List<Advice>> advisorsSupplier,
+            WeavingCache weavingCache) throws Exception {
+        IsolatedWeavingClassLoader isolatedWeavingClassLoader = new IsolatedWeavingClassLoader(
+                Misc.class, SomeAspectThreadLocals.class, IntegerThreadLocal.class);
+        AnalyzedWorld analyzedWorld = new AnalyzedWorld(advisorsSupplier,
+                ImmutableList.<ShimType>of(), ImmutableList.<MixinType>of(), null);
+        TransactionRegistry transactionRegistry = mock(TransactionRegistry.class);
+        when(transactionRegistry.getCurrentThreadContextHolder())
+                .thenReturn(new ThreadContextThreadLocal().getHolder());
+        Weaver weaver = new Weaver(advisorsSupplier, ImmutableList.<ShimType>of(),
+                ImmutableList.<MixinType>of(), analyzedWorld, weavingCache, null,
+                transactionRegistry, Ticker.systemTicker(), new TimerNameCache(),
+                mock(ConfigService.class));
+        isolatedWeavingClassLoader.setWeaver(weaver);
+        return isolatedWeavingClassLoader.newInstance(BasicMisc.class, Misc.class);
+    }
+
+    private static Advice newAdvice(Class<?> clazz) throws Exception {
+        return new AdviceBuilder(PluginDetailBuilder.buildAdviceClass(clazz)).build();
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.weaving;
+
+import java.util.List;
+
+import com.google.common.base.Suppliers;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Resources;
+import org.junit.jupiter.api.Test;
+
+import org.glowroot.agent.weaving.SomeAspect.BasicAdvice;
+import org.glowroot.agent.weaving.SomeAspect.SuperTypeRestrictionAdvice;
+import org.glowroot.agent.weaving.targets.BasicMisc;
+import org.glowroot.agent.weaving.targets.Misc;
+import org.glowroot.agent.weaving.targets.SuperBasic;
+import org.glowroot.agent.weaving.targets.SuperBasicMisc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class WeavingFilterTest {
+
+    @Test
+    public void shouldSkipClassesWithNoMatchingHierarchy() throws Exception {
+        // given
+        WeavingFilter weavingFilter = newWeavingFilter(BasicAdvice.class);
+        ClassLoader loader = WeavingFilterTest.class.getClassLoader();
+
+        // then
+        assertThat(isSkippable(weavingFilter, SuperBasic.class, loader)).isTrue();
+        // super type SuperBasic is now known to be clean
+        assertThat(isSkippable(weavingFilter, SuperBasicMisc.class, loader)).isTrue();
+    }
+
+    @Test
+    public void shouldNotSkipMatchingClasses() throws Exception {
+        // given
+        WeavingFilter weavingFilter = newWeavingFilter(BasicAdvice.class);
+        ClassLoader loader = WeavingFilterTest.class.getClassLoader();
+        isSkippable(weavingFilter, SuperBasic.class, loader);
+        isSkippable(weavingFilter, SuperBasicMisc.class, loader);
+
+        // then
+        assertThat(isSkippable(weavingFilter, Misc.class, loader)).isFalse();
+        assertThat(isSkippable(weavingFilter, BasicMisc.class, loader)).isFalse();
+    }
+
+    @Test
+    public void shouldNotSkipClassesWithUnknownSuperTypes() throws Exception {
+        // given
+        WeavingFilter weavingFilter = newWeavingFilter(BasicAdvice.class);
+        ClassLoader loader = WeavingFilterTest.class.getClassLoader();
+
+        // then
+        assertThat(isSkippable(weavingFilter, SuperBasicMisc.class, loader)).isFalse();
+        // clean types are tracked per class loader
+        isSkippable(weavingFilter, SuperBasic.class, loader);
+        assertThat(isSkippable(weavingFilter, SuperBasicMisc.class, null)).isFalse();
+    }
+
+    @Test
+    public void shouldNotSkipWhenClassNameCannotBeReduced() throws Exception {
+        // given
+        WeavingFilter weavingFilter = newWeavingFilter(SuperTypeRestrictionAdvice.class);
+        ClassLoader loader = WeavingFilterTest.class.getClassLoader();
+
+        // then
+        assertThat(isSkippable(weavingFilter, SuperBasic.class, loader)).isFalse();
+    }
+
+    private static WeavingFilter newWeavingFilter(Class<?> adviceClass) throws Exception {
+        Advice advice =
+                new AdviceBuilder(PluginDetailBuilder.buildAdviceClass(adviceClass)).build();
+        return new WeavingFilter(Suppliers.<List<Advice>>ofInstance(ImmutableList.of(advice)),
+                ImmutableList.<ShimType>of(), ImmutableList.<MixinType>of());
+    }
+
+    private static boolean isSkippable(WeavingFilter weavingFilter, Class<?> clazz,
+            ClassLoader loader) throws Exception {
+        String className = ClassNames.toInternalName(clazz.getName());
+        byte[] classBytes = Resources.toByteArray(Resources.getResource(className + ".class"));
+        return weavingFilter.isSkippable(classBytes, className, loader);
+    }
+}
@@ -54,6 +54,7 @@ import org.glowroot.agent.init.PreCheckLoadedClasses.PreCheckClassFileTransforme
 import org.glowroot.agent.util.LazyPlatformMBeanServer;
 import org.glowroot.agent.util.ThreadFactories;
 import org.glowroot.common.live.LiveAggregateRepository.LiveAggregateRepositoryNop;
+import org.glowroot.common.live.LiveMetricsRepository.LiveMetricsRepositoryNop;
 import org.glowroot.common.live.LiveTraceRepository.LiveTraceRepositoryNop;
 import org.glowroot.common.util.Clock;
 import org.glowroot.common.util.OnlyUsedByTests;
@@ -257,6 +258,7 @@ class EmbeddedAgentModule {
                     .rollupLevelService(simpleRepoModule.getRollupLevelService())
                     .liveTraceRepository(agentModule.getLiveTraceRepository())
                     .liveAggregateRepository(agentModule.getLiveAggregateRepository())
+                    .liveMetricsRepository(agentModule.getLiveMetricsRepository())
                     .liveWeavingService(agentModule.getLiveWeavingService())
                     .sessionMapFactory(new SessionMapFactory() {
                         @Override
@@ -298,6 +300,7 @@ class EmbeddedAgentModule {
                     .rollupLevelService(simpleRepoModule.getRollupLevelService())
                     .liveTraceRepository(new LiveTraceRepositoryNop())
                     .liveAggregateRepository(new LiveAggregateRepositoryNop())
+                    .liveMetricsRepository(new LiveMetricsRepositoryNop())
                     .liveWeavingService(null)
                     .sessionMapFactory(new SessionMapFactory() {
                         @Override
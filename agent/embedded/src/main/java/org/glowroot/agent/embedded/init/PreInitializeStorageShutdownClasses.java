@@ -80,6 +80,7 @@ class PreInitializeStorageShutdownClasses {
         types.add("org.glowroot.agent.embedded.util.CappedDatabaseOutputStream");
         types.add("org.glowroot.agent.embedded.util.CappedDatabaseOutputStream$FsyncRunnable");
         types.add("org.glowroot.agent.embedded.util.DataSource");
+        types.add("org.glowroot.agent.embedded.util.DataSource$ReadConnection");
         types.add("org.glowroot.agent.embedded.util.DataSource$ShutdownHookThread");
         types.add("org.glowroot.agent.util.JavaVersion");
         types.add("org.glowroot.common.util.Cancellable");
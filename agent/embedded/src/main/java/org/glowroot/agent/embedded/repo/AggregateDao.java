@@ -20,11 +20,15 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.Map;
+import java.util.NavigableMap;
+
+import javax.annotation.concurrent.GuardedBy;
 
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.google.protobuf.Parser;
 import org.checkerframework.checker.nullness.qual.Nullable;
@@ -81,6 +85,16 @@ public class AggregateDao implements AggregateRepository {
 
     private static final String AGENT_ID = "";
 
+    // 0 disables the in-memory transaction name summary index
+    private static final int SUMMARY_INDEX_MAX_ENTRIES =
+            Integer.getInteger("glowroot.internal.transactionNameSummaryIndex.maxEntries", 250000);
+
+    // bounds the number of aggregates (overall and per transaction name) that are held in memory
+    // per rollup level, past this the rollup level falls back to reading its pending data back
+    // from the finer rollup levels when its rollup interval closes
+    private static final int MAX_PENDING_ROLLUP_AGGREGATES =
+            Integer.getInteger("glowroot.internal.maxPendingRollupAggregates", 10000);
+
     private static final ImmutableList<Column> overallAggregatePointColumns =
             ImmutableList.<Column>of(
                     ImmutableColumn.of("transaction_type", ColumnType.VARCHAR),
@@ -156,10 +170,21 @@ public class AggregateDao implements AggregateRepository {
     private final TransactionTypeDao transactionTypeDao;
     private final FullQueryTextDao fullQueryTextDao;
 
-    private final AtomicLongArray lastRollupTimes;
-
+    // rollups are merged in memory as each interval is stored and are only written once the
+    // rollup interval closes, so the aggregate flushing thread normally never re-reads its own data
+    //
+    // store() is never called concurrently, the lock is needed for deleting all data
     private final Object rollupLock = new Object();
 
+    @GuardedBy("rollupLock")
+    private RollupState rollupState;
+
+    // set when deleting all data so that the next store() re-loads the rollup state
+    @GuardedBy("rollupLock")
+    private boolean rollupStateStale;
+
+    private final @Nullable TransactionNameSummaryIndex transactionNameSummaryIndex;
+
     AggregateDao(DataSource dataSource, List<CappedDatabase> rollupCappedDatabases,
             ConfigRepositoryImpl configRepository, TransactionTypeDao transactionTypeDao,
             FullQueryTextDao fullQueryTextDao) throws Exception {
@@ -181,25 +206,41 @@ public class AggregateDao implements AggregateRepository {
                     .of(transactionTableName + "_idx", transactionAggregateIndexColumns)));
         }
 
-        // don't need last_rollup_times table like in GaugeValueDao since there is already index
-        // on capture_time so these queries are relatively fast
-        long[] lastRollupTimes = new long[rollupConfigs.size()];
-        lastRollupTimes[0] = 0;
-        for (int i = 1; i < lastRollupTimes.length; i++) {
-            lastRollupTimes[i] = dataSource.queryForLong("select ifnull(max(capture_time), 0)"
-                    + " from aggregate_tt_rollup_" + castUntainted(i));
+        rollupState = loadRollupState();
+        if (SUMMARY_INDEX_MAX_ENTRIES > 0) {
+            transactionNameSummaryIndex = new TransactionNameSummaryIndex(
+                    readLastTransactionCaptureTimes(), SUMMARY_INDEX_MAX_ENTRIES);
+        } else {
+            transactionNameSummaryIndex = null;
         }
-        this.lastRollupTimes = new AtomicLongArray(lastRollupTimes);
 
         // TODO initial rollup in case store is not called in a reasonable time
     }
 
     public void store(AggregateReader aggregateReader) throws Exception {
+        synchronized (rollupLock) {
+            storeInternal(aggregateReader);
+        }
+    }
+
+    @GuardedBy("rollupLock")
+    private void storeInternal(AggregateReader aggregateReader) throws Exception {
         final long captureTime = aggregateReader.captureTime();
+        if (rollupStateStale) {
+            rollupStateStale = false;
+            rollupState = loadRollupState();
+        }
+        final RollupState rollupState = this.rollupState;
+        List<RollupConfig> rollupConfigs = configRepository.getRollupConfigs();
+        final List<PendingRollup> pendingRollups = rollupState.getPendingRollups(captureTime,
+                rollupConfigs, getMaxQueryAggregates(), getMaxServiceCallAggregates());
         // intentionally not using batch update as that could cause memory spike while preparing a
         // large batch
         final CappedDatabase cappedDatabase = rollupCappedDatabases.get(0);
         final List<TruncatedQueryText> truncatedQueryTexts = Lists.newArrayList();
+        final TransactionNameSummaryIndex.BucketBuilder summaryBucketBuilder =
+                transactionNameSummaryIndex == null ? null
+                        : transactionNameSummaryIndex.newBucketBuilder(0, captureTime);
         aggregateReader.accept(new AggregateVisitor() {
             @Override
             public void visitOverallAggregate(String transactionType, List<String> sharedQueryTexts,
@@ -208,14 +249,27 @@ public class AggregateDao implements AggregateRepository {
                 dataSource.update(new AggregateInsert(transactionType, null, captureTime,
                         overallAggregate, truncatedQueryTexts, 0, cappedDatabase));
                 transactionTypeDao.updateLastCaptureTime(transactionType, captureTime);
+                for (PendingRollup pendingRollup : pendingRollups) {
+                    merge(pendingRollup.getOverallAggregate(transactionType), overallAggregate,
+                            truncatedQueryTexts);
+                }
             }
             @Override
             public void visitTransactionAggregate(String transactionType, String transactionName,
                     List<String> sharedQueryTexts, Aggregate transactionAggregate)
                     throws Exception {
                 addToTruncatedQueryTexts(sharedQueryTexts);
-                dataSource.update(new AggregateInsert(transactionType, transactionName, captureTime,
-                        transactionAggregate, truncatedQueryTexts, 0, cappedDatabase));
+                AggregateInsert aggregateInsert = new AggregateInsert(transactionType,
+                        transactionName, captureTime, transactionAggregate, truncatedQueryTexts, 0,
+                        cappedDatabase);
+                dataSource.update(aggregateInsert);
+                if (summaryBucketBuilder != null) {
+                    summaryBucketBuilder.add(aggregateInsert);
+                }
+                for (PendingRollup pendingRollup : pendingRollups) {
+                    merge(pendingRollup.getTransactionAggregate(transactionType, transactionName),
+                            transactionAggregate, truncatedQueryTexts);
+                }
             }
             private void addToTruncatedQueryTexts(List<String> sharedQueryTexts)
                     throws SQLException {
@@ -236,18 +290,28 @@ public class AggregateDao implements AggregateRepository {
                 }
             }
         });
-        synchronized (rollupLock) {
-            List<RollupConfig> rollupConfigs = configRepository.getRollupConfigs();
-            for (int i = 1; i < rollupConfigs.size(); i++) {
-                RollupConfig rollupConfig = rollupConfigs.get(i);
-                long safeRollupTime = RollupLevelService.getSafeRollupTime(captureTime,
-                        rollupConfig.intervalMillis());
-                long lastRollupTime = lastRollupTimes.get(i);
-                if (safeRollupTime > lastRollupTime) {
-                    rollup(lastRollupTime, safeRollupTime, rollupConfig.intervalMillis(), i, i - 1);
-                    lastRollupTimes.set(i, safeRollupTime);
+        if (summaryBucketBuilder != null) {
+            checkNotNull(transactionNameSummaryIndex).add(summaryBucketBuilder);
+        }
+        for (int i = 1; i < rollupConfigs.size(); i++) {
+            long safeRollupTime = RollupLevelService.getSafeRollupTime(captureTime,
+                    rollupConfigs.get(i).intervalMillis());
+            if (safeRollupTime > rollupState.lastRollupTimes[i]) {
+                if (rollupState.overflowed[i]) {
+                    // the finer rollup levels have already been rolled up above
+                    rollupState.pendingRollups.set(i, loadPendingRollups(i,
+                            rollupState.lastRollupTimes, rollupConfigs));
+                    rollupState.overflowed[i] = false;
+                }
+                NavigableMap<Long, PendingRollup> closedRollups =
+                        rollupState.pendingRollups.get(i).headMap(safeRollupTime, true);
+                for (Map.Entry<Long, PendingRollup> entry : closedRollups.entrySet()) {
+                    storeRollup(entry.getValue(), entry.getKey(), i);
                 }
+                closedRollups.clear();
+                rollupState.lastRollupTimes[i] = safeRollupTime;
             }
+            rollupState.checkOverflow(i);
         }
     }
 
@@ -265,6 +329,10 @@ public class AggregateDao implements AggregateRepository {
     public void mergeTransactionNameSummariesInto(String agentRollupId, SummaryQuery query,
             SummarySortOrder sortOrder, int limit, TransactionNameSummaryCollector collector)
             throws Exception {
+        if (transactionNameSummaryIndex != null && transactionNameSummaryIndex
+                .mergeTransactionNameSummariesInto(query, sortOrder, limit, collector)) {
+            return;
+        }
         dataSource.query(new TransactionNameSummaryQuery(query, sortOrder, limit, collector));
     }
 
@@ -281,6 +349,10 @@ public class AggregateDao implements AggregateRepository {
             ErrorSummarySortOrder sortOrder, int limit,
             TransactionNameErrorSummaryCollector collector)
             throws Exception {
+        if (transactionNameSummaryIndex != null && transactionNameSummaryIndex
+                .mergeTransactionNameErrorSummariesInto(query, sortOrder, limit, collector)) {
+            return;
+        }
         dataSource.query(new TransactionNameErrorSummaryQuery(query, sortOrder, limit,
                 collector));
     }
@@ -429,17 +501,118 @@ public class AggregateDao implements AggregateRepository {
     void deleteBefore(long captureTime, int rollupLevel) throws SQLException {
         dataSource.deleteBefore("aggregate_tt_rollup_" + castUntainted(rollupLevel), captureTime);
         dataSource.deleteBefore("aggregate_tn_rollup_" + castUntainted(rollupLevel), captureTime);
+        if (transactionNameSummaryIndex != null) {
+            transactionNameSummaryIndex.deleteBefore(captureTime, rollupLevel);
+        }
+    }
+
+    // called before deleting all data, so that a store() that is in progress completes first and a
+    // later store() does not roll up pending data from before the delete
+    void invalidateBeforeDeletingDatabase() {
+        synchronized (rollupLock) {
+            rollupStateStale = true;
+        }
+    }
+
+    void reinitAfterDeletingDatabase() throws Exception {
+        synchronized (rollupLock) {
+            rollupStateStale = true;
+        }
+        if (transactionNameSummaryIndex != null) {
+            transactionNameSummaryIndex.reset(readLastTransactionCaptureTimes());
+        }
+    }
+
+    private long[] readLastRollupTimes() throws SQLException {
+        // don't need last_rollup_times table like in GaugeValueDao since there is already index
+        // on capture_time so these queries are relatively fast
+        long[] lastRollupTimes = new long[configRepository.getRollupConfigs().size()];
+        lastRollupTimes[0] = 0;
+        for (int i = 1; i < lastRollupTimes.length; i++) {
+            lastRollupTimes[i] = dataSource.queryForLong("select ifnull(max(capture_time), 0)"
+                    + " from aggregate_tt_rollup_" + castUntainted(i));
+        }
+        return lastRollupTimes;
+    }
+
+    // the transaction name summary index only covers data stored after these capture times
+    private long[] readLastTransactionCaptureTimes() throws SQLException {
+        long[] lastCaptureTimes = new long[configRepository.getRollupConfigs().size()];
+        for (int i = 0; i < lastCaptureTimes.length; i++) {
+            lastCaptureTimes[i] = dataSource.queryForLong("select ifnull(max(capture_time), 0)"
+                    + " from aggregate_tn_rollup_" + castUntainted(i));
+        }
+        return lastCaptureTimes;
+    }
+
+    private RollupState loadRollupState() throws Exception {
+        List<RollupConfig> rollupConfigs = configRepository.getRollupConfigs();
+        long[] lastRollupTimes = readLastRollupTimes();
+        List<NavigableMap<Long, PendingRollup>> pendingRollups = Lists.newArrayList();
+        for (int i = 0; i < rollupConfigs.size(); i++) {
+            if (i == 0) {
+                pendingRollups.add(Maps.<Long, PendingRollup>newTreeMap());
+            } else {
+                pendingRollups.add(loadPendingRollups(i, lastRollupTimes, rollupConfigs));
+            }
+        }
+        RollupState rollupState = new RollupState(lastRollupTimes, pendingRollups);
+        for (int i = 1; i < rollupConfigs.size(); i++) {
+            rollupState.checkOverflow(i);
+        }
+        return rollupState;
+    }
+
+    private NavigableMap<Long, PendingRollup> loadPendingRollups(int rollupLevel,
+            long[] lastRollupTimes, List<RollupConfig> rollupConfigs) throws Exception {
+        int maxQueryAggregates = getMaxQueryAggregates();
+        int maxServiceCallAggregates = getMaxServiceCallAggregates();
+        NavigableMap<Long, PendingRollup> pendingRollups = Maps.newTreeMap();
+        // data that has not been rolled up to this level yet is spread across the finer rollup
+        // levels, e.g. the data that has not been rolled up to level 2 yet is in level 1 (up to the
+        // last level 1 rollup) and then in level 0
+        long intervalMillis = rollupConfigs.get(rollupLevel).intervalMillis();
+        for (int j = rollupLevel - 1; j >= 0; j--) {
+            long from = Math.max(lastRollupTimes[rollupLevel], lastRollupTimes[j + 1]);
+            long to = j == 0 ? Long.MAX_VALUE : lastRollupTimes[j];
+            if (from < to) {
+                dataSource.query(new LoadPendingOverallRollups(j, from, to, intervalMillis,
+                        pendingRollups, maxQueryAggregates, maxServiceCallAggregates));
+                dataSource.query(new LoadPendingTransactionRollups(j, from, to, intervalMillis,
+                        pendingRollups, maxQueryAggregates, maxServiceCallAggregates));
+            }
+        }
+        return pendingRollups;
     }
 
-    private void rollup(long lastRollupTime, long curentRollupTime, long fixedIntervalMillis,
-            int toRollupLevel, int fromRollupLevel) throws Exception {
-        List<Long> rollupTimes = dataSource.query(new RollupTimeRowMapper(fromRollupLevel,
-                fixedIntervalMillis, lastRollupTime, curentRollupTime));
-        for (Long rollupTime : rollupTimes) {
-            dataSource.query(new RollupOverallAggregates(rollupTime, fixedIntervalMillis,
-                    fromRollupLevel, toRollupLevel));
-            dataSource.query(new RollupTransactionAggregates(rollupTime, fixedIntervalMillis,
-                    fromRollupLevel, toRollupLevel));
+    private void storeRollup(PendingRollup pendingRollup, long rollupCaptureTime,
+            int rollupLevel) throws Exception {
+        CappedDatabase cappedDatabase = rollupCappedDatabases.get(rollupLevel);
+        ScratchBuffer scratchBuffer = new ScratchBuffer();
+        for (Map.Entry<String, MutableAggregate> entry : pendingRollup.overallAggregates
+                .entrySet()) {
+            dataSource.update(new AggregateInsert(entry.getKey(), null, rollupCaptureTime,
+                    entry.getValue(), rollupLevel, cappedDatabase, scratchBuffer));
+        }
+        TransactionNameSummaryIndex.BucketBuilder summaryBucketBuilder =
+                transactionNameSummaryIndex == null ? null
+                        : transactionNameSummaryIndex.newBucketBuilder(rollupLevel,
+                                rollupCaptureTime);
+        for (Map.Entry<String, Map<String, MutableAggregate>> outerEntry : pendingRollup
+                .transactionAggregates.entrySet()) {
+            String transactionType = outerEntry.getKey();
+            for (Map.Entry<String, MutableAggregate> entry : outerEntry.getValue().entrySet()) {
+                AggregateInsert aggregateInsert = new AggregateInsert(transactionType,
+                        entry.getKey(), rollupCaptureTime, entry.getValue(), rollupLevel,
+                        cappedDatabase, scratchBuffer);
+                dataSource.update(aggregateInsert);
+                if (summaryBucketBuilder != null) {
+                    summaryBucketBuilder.add(aggregateInsert);
+                }
+            }
+        }
+        if (summaryBucketBuilder != null) {
+            checkNotNull(transactionNameSummaryIndex).add(summaryBucketBuilder);
         }
     }
 
@@ -461,6 +634,40 @@ public class AggregateDao implements AggregateRepository {
         }
     }
 
+    private static void merge(MutableAggregate mergedAggregate, Aggregate aggregate,
+            List<TruncatedQueryText> truncatedQueryTexts) {
+        mergedAggregate.addTotalDurationNanos(aggregate.getTotalDurationNanos());
+        mergedAggregate.addTransactionCount(aggregate.getTransactionCount());
+        mergedAggregate.addErrorCount(aggregate.getErrorCount());
+        mergedAggregate.addAsyncTransactions(aggregate.getAsyncTransactions());
+        mergedAggregate.mergeMainThreadRootTimers(aggregate.getMainThreadRootTimerList());
+        mergedAggregate.mergeMainThreadStats(aggregate.getMainThreadStats());
+        if (aggregate.hasAuxThreadRootTimer()) {
+            mergedAggregate.mergeAuxThreadRootTimer(aggregate.getAuxThreadRootTimer());
+            mergedAggregate.mergeAuxThreadStats(aggregate.getAuxThreadStats());
+        }
+        mergedAggregate.mergeAsyncTimers(aggregate.getAsyncTimerList());
+        mergedAggregate.mergeDurationNanosHistogram(aggregate.getDurationNanosHistogram());
+        for (Aggregate.Query query : aggregate.getQueryList()) {
+            TruncatedQueryText truncatedQueryText =
+                    truncatedQueryTexts.get(query.getSharedQueryTextIndex());
+            mergedAggregate.mergeQuery(query.getType(), truncatedQueryText.truncatedText(),
+                    truncatedQueryText.fullTextSha1(), query.getTotalDurationNanos(),
+                    query.getExecutionCount(), query.hasTotalRows(),
+                    query.getTotalRows().getValue());
+        }
+        for (Aggregate.ServiceCall serviceCall : aggregate.getServiceCallList()) {
+            mergedAggregate.mergeServiceCall(serviceCall.getType(), serviceCall.getText(),
+                    serviceCall.getTotalDurationNanos(), serviceCall.getExecutionCount());
+        }
+        if (aggregate.hasMainThreadProfile()) {
+            mergedAggregate.mergeMainThreadProfile(aggregate.getMainThreadProfile());
+        }
+        if (aggregate.hasAuxThreadProfile()) {
+            mergedAggregate.mergeAuxThreadProfile(aggregate.getAuxThreadProfile());
+        }
+    }
+
     private void merge(MutableAggregate mergedAggregate, ResultSet resultSet, int startColumnIndex,
             int fromRollupLevel) throws Exception {
         int i = startColumnIndex;
@@ -1041,66 +1248,59 @@ public class AggregateDao implements AggregateRepository {
         }
     }
 
-    private class RollupOverallAggregates implements JdbcQuery</*@Nullable*/ Void> {
+    private class LoadPendingOverallRollups implements JdbcQuery</*@Nullable*/ Void> {
 
-        private final long rollupCaptureTime;
-        private final long fixedIntervalMillis;
         private final int fromRollupLevel;
-        private final int toRollupLevel;
-        private final ScratchBuffer scratchBuffer = new ScratchBuffer();
-
-        private RollupOverallAggregates(long rollupCaptureTime, long fixedIntervalMillis,
-                int fromRollupLevel, int toRollupLevel) {
-            this.rollupCaptureTime = rollupCaptureTime;
-            this.fixedIntervalMillis = fixedIntervalMillis;
+        private final long from;
+        private final long to;
+        private final long intervalMillis;
+        private final NavigableMap<Long, PendingRollup> pendingRollups;
+        private final int maxQueryAggregates;
+        private final int maxServiceCallAggregates;
+
+        private LoadPendingOverallRollups(int fromRollupLevel, long from, long to,
+                long intervalMillis, NavigableMap<Long, PendingRollup> pendingRollups,
+                int maxQueryAggregates, int maxServiceCallAggregates) {
             this.fromRollupLevel = fromRollupLevel;
-            this.toRollupLevel = toRollupLevel;
+            this.from = from;
+            this.to = to;
+            this.intervalMillis = intervalMillis;
+            this.pendingRollups = pendingRollups;
+            this.maxQueryAggregates = maxQueryAggregates;
+            this.maxServiceCallAggregates = maxServiceCallAggregates;
         }
 
         @Override
         public @Untainted String getSql() {
-            return "select transaction_type, total_duration_nanos, transaction_count, error_count,"
-                    + " async_transactions, queries_capped_id, service_calls_capped_id,"
-                    + " main_thread_profile_capped_id, aux_thread_profile_capped_id,"
-                    + " main_thread_root_timers, main_thread_total_cpu_nanos,"
-                    + " main_thread_total_blocked_nanos, main_thread_total_waited_nanos,"
-                    + " main_thread_total_allocated_bytes, aux_thread_root_timer,"
-                    + " aux_thread_total_cpu_nanos, aux_thread_total_blocked_nanos,"
-                    + " aux_thread_total_waited_nanos, aux_thread_total_allocated_bytes,"
-                    + " async_timers, duration_nanos_histogram from aggregate_tt_rollup_"
-                    + castUntainted(fromRollupLevel) + " where capture_time > ?"
-                    + " and capture_time <= ? order by transaction_type";
+            return "select capture_time, transaction_type, total_duration_nanos,"
+                    + " transaction_count, error_count, async_transactions, queries_capped_id,"
+                    + " service_calls_capped_id, main_thread_profile_capped_id,"
+                    + " aux_thread_profile_capped_id, main_thread_root_timers,"
+                    + " main_thread_total_cpu_nanos, main_thread_total_blocked_nanos,"
+                    + " main_thread_total_waited_nanos, main_thread_total_allocated_bytes,"
+                    + " aux_thread_root_timer, aux_thread_total_cpu_nanos,"
+                    + " aux_thread_total_blocked_nanos, aux_thread_total_waited_nanos,"
+                    + " aux_thread_total_allocated_bytes, async_timers, duration_nanos_histogram"
+                    + " from aggregate_tt_rollup_" + castUntainted(fromRollupLevel)
+                    + " where capture_time > ? and capture_time <= ?";
         }
 
         @Override
         public void bind(PreparedStatement preparedStatement) throws Exception {
-            preparedStatement.setLong(1, rollupCaptureTime - fixedIntervalMillis);
-            preparedStatement.setLong(2, rollupCaptureTime);
+            preparedStatement.setLong(1, from);
+            preparedStatement.setLong(2, to);
         }
 
         @Override
         public @Nullable Void processResultSet(ResultSet resultSet) throws Exception {
-            int maxQueryAggregates = getMaxQueryAggregates();
-            int maxServiceCallAggregates = getMaxServiceCallAggregates();
-            CappedDatabase cappedDatabase = rollupCappedDatabases.get(toRollupLevel);
-            MutableOverallAggregate curr = null;
             while (resultSet.next()) {
-                String transactionType = checkNotNull(resultSet.getString(1));
-                if (curr == null || !transactionType.equals(curr.transactionType())) {
-                    if (curr != null) {
-                        dataSource.update(new AggregateInsert(curr.transactionType(), null,
-                                rollupCaptureTime, curr.aggregate(), toRollupLevel,
-                                cappedDatabase, scratchBuffer));
-                    }
-                    curr = ImmutableMutableOverallAggregate.of(transactionType,
-                            new MutableAggregate(maxQueryAggregates, maxServiceCallAggregates));
-                }
-                merge(curr.aggregate(), resultSet, 2, fromRollupLevel);
-            }
-            if (curr != null) {
-                dataSource.update(new AggregateInsert(curr.transactionType(), null,
-                        rollupCaptureTime, curr.aggregate(), toRollupLevel, cappedDatabase,
-                        scratchBuffer));
+                long captureTime = resultSet.getLong(1);
+                String transactionType = checkNotNull(resultSet.getString(2));
+                PendingRollup pendingRollup = getPendingRollup(pendingRollups,
+                        RollupLevelService.getCeilRollupTime(captureTime, intervalMillis),
+                        maxQueryAggregates, maxServiceCallAggregates);
+                merge(pendingRollup.getOverallAggregate(transactionType), resultSet, 3,
+                        fromRollupLevel);
             }
             return null;
         }
@@ -1111,70 +1311,61 @@ public class AggregateDao implements AggregateRepository {
         }
     }
 
-    private class RollupTransactionAggregates implements JdbcQuery</*@Nullable*/ Void> {
+    private class LoadPendingTransactionRollups implements JdbcQuery</*@Nullable*/ Void> {
 
-        private final long rollupCaptureTime;
-        private final long fixedIntervalMillis;
         private final int fromRollupLevel;
-        private final int toRollupLevel;
-
-        private RollupTransactionAggregates(long rollupCaptureTime, long fixedIntervalMillis,
-                int fromRollupLevel, int toRollupLevel) {
-            this.rollupCaptureTime = rollupCaptureTime;
-            this.fixedIntervalMillis = fixedIntervalMillis;
+        private final long from;
+        private final long to;
+        private final long intervalMillis;
+        private final NavigableMap<Long, PendingRollup> pendingRollups;
+        private final int maxQueryAggregates;
+        private final int maxServiceCallAggregates;
+
+        private LoadPendingTransactionRollups(int fromRollupLevel, long from, long to,
+                long intervalMillis, NavigableMap<Long, PendingRollup> pendingRollups,
+                int maxQueryAggregates, int maxServiceCallAggregates) {
             this.fromRollupLevel = fromRollupLevel;
-            this.toRollupLevel = toRollupLevel;
+            this.from = from;
+            this.to = to;
+            this.intervalMillis = intervalMillis;
+            this.pendingRollups = pendingRollups;
+            this.maxQueryAggregates = maxQueryAggregates;
+            this.maxServiceCallAggregates = maxServiceCallAggregates;
         }
 
         @Override
         public @Untainted String getSql() {
-            return "select transaction_type, transaction_name, total_duration_nanos,"
-                    + " transaction_count, error_count, async_transactions, queries_capped_id,"
-                    + " service_calls_capped_id, main_thread_profile_capped_id,"
-                    + " aux_thread_profile_capped_id, main_thread_root_timers,"
-                    + " main_thread_total_cpu_nanos, main_thread_total_blocked_nanos,"
-                    + " main_thread_total_waited_nanos, main_thread_total_allocated_bytes,"
-                    + " aux_thread_root_timer, aux_thread_total_cpu_nanos,"
-                    + " aux_thread_total_blocked_nanos, aux_thread_total_waited_nanos,"
-                    + " aux_thread_total_allocated_bytes, async_timers, duration_nanos_histogram"
-                    + " from aggregate_tn_rollup_" + castUntainted(fromRollupLevel)
-                    + " where capture_time > ? and capture_time <= ? order by transaction_type,"
-                    + " transaction_name";
+            return "select capture_time, transaction_type, transaction_name,"
+                    + " total_duration_nanos, transaction_count, error_count, async_transactions,"
+                    + " queries_capped_id, service_calls_capped_id,"
+                    + " main_thread_profile_capped_id, aux_thread_profile_capped_id,"
+                    + " main_thread_root_timers, main_thread_total_cpu_nanos,"
+                    + " main_thread_total_blocked_nanos, main_thread_total_waited_nanos,"
+                    + " main_thread_total_allocated_bytes, aux_thread_root_timer,"
+                    + " aux_thread_total_cpu_nanos, aux_thread_total_blocked_nanos,"
+                    + " aux_thread_total_waited_nanos, aux_thread_total_allocated_bytes,"
+                    + " async_timers, duration_nanos_histogram from aggregate_tn_rollup_"
+                    + castUntainted(fromRollupLevel) + " where capture_time > ?"
+                    + " and capture_time <= ?";
         }
 
         @Override
         public void bind(PreparedStatement preparedStatement) throws Exception {
-            preparedStatement.setLong(1, rollupCaptureTime - fixedIntervalMillis);
-            preparedStatement.setLong(2, rollupCaptureTime);
+            preparedStatement.setLong(1, from);
+            preparedStatement.setLong(2, to);
         }
 
         @Override
         public @Nullable Void processResultSet(ResultSet resultSet) throws Exception {
-            int maxQueryAggregates = getMaxQueryAggregates();
-            int maxServiceCallAggregates = getMaxServiceCallAggregates();
-            CappedDatabase cappedDatabase = rollupCappedDatabases.get(toRollupLevel);
-            ScratchBuffer scratchBuffer = new ScratchBuffer();
-            MutableTransactionAggregate curr = null;
             while (resultSet.next()) {
-                int i = 1;
-                String transactionType = checkNotNull(resultSet.getString(i++));
-                String transactionName = checkNotNull(resultSet.getString(i++));
-                if (curr == null || !transactionType.equals(curr.transactionType())
-                        || !transactionName.equals(curr.transactionName())) {
-                    if (curr != null) {
-                        dataSource.update(new AggregateInsert(curr.transactionType(),
-                                curr.transactionName(), rollupCaptureTime, curr.aggregate(),
-                                toRollupLevel, cappedDatabase, scratchBuffer));
-                    }
-                    curr = ImmutableMutableTransactionAggregate.of(transactionType, transactionName,
-                            new MutableAggregate(maxQueryAggregates, maxServiceCallAggregates));
-                }
-                merge(curr.aggregate(), resultSet, i++, fromRollupLevel);
-            }
-            if (curr != null) {
-                dataSource.update(new AggregateInsert(curr.transactionType(),
-                        curr.transactionName(), rollupCaptureTime, curr.aggregate(), toRollupLevel,
-                        cappedDatabase, scratchBuffer));
+                long captureTime = resultSet.getLong(1);
+                String transactionType = checkNotNull(resultSet.getString(2));
+                String transactionName = checkNotNull(resultSet.getString(3));
+                PendingRollup pendingRollup = getPendingRollup(pendingRollups,
+                        RollupLevelService.getCeilRollupTime(captureTime, intervalMillis),
+                        maxQueryAggregates, maxServiceCallAggregates);
+                merge(pendingRollup.getTransactionAggregate(transactionType, transactionName),
+                        resultSet, 4, fromRollupLevel);
             }
             return null;
         }
@@ -1272,39 +1463,105 @@ public class AggregateDao implements AggregateRepository {
         }
     }
 
-    private static class RollupTimeRowMapper implements JdbcRowQuery<Long> {
+    private static PendingRollup getPendingRollup(
+            NavigableMap<Long, PendingRollup> pendingRollups, long rollupCaptureTime,
+            int maxQueryAggregates, int maxServiceCallAggregates) {
+        PendingRollup pendingRollup = pendingRollups.get(rollupCaptureTime);
+        if (pendingRollup == null) {
+            pendingRollup = new PendingRollup(maxQueryAggregates, maxServiceCallAggregates);
+            pendingRollups.put(rollupCaptureTime, pendingRollup);
+        }
+        return pendingRollup;
+    }
 
-        private final int rollupLevel;
-        private final long fixedIntervalMillis;
-        private final long lastRollupTime;
-        private final long curentRollupTime;
+    private static class RollupState {
 
-        private RollupTimeRowMapper(int rollupLevel, long fixedIntervalMillis, long lastRollupTime,
-                long curentRollupTime) {
-            this.rollupLevel = rollupLevel;
-            this.fixedIntervalMillis = fixedIntervalMillis;
-            this.lastRollupTime = lastRollupTime;
-            this.curentRollupTime = curentRollupTime;
+        // index is rollup level, level 0 is unused
+        private final long[] lastRollupTimes;
+        private final List<NavigableMap<Long, PendingRollup>> pendingRollups;
+        // rollup levels whose pending rollups exceeded MAX_PENDING_ROLLUP_AGGREGATES, these are
+        // not merged in memory, and are instead re-loaded when their rollup interval closes
+        private final boolean[] overflowed;
+
+        private RollupState(long[] lastRollupTimes,
+                List<NavigableMap<Long, PendingRollup>> pendingRollups) {
+            this.lastRollupTimes = lastRollupTimes;
+            this.pendingRollups = pendingRollups;
+            overflowed = new boolean[lastRollupTimes.length];
         }
 
-        @Override
-        public @Untainted String getSql() {
-            // need ".0" to force double result
-            String captureTimeSql = castUntainted(
-                    "ceil(capture_time / " + fixedIntervalMillis + ".0) * " + fixedIntervalMillis);
-            return "select distinct " + captureTimeSql + " from aggregate_tt_rollup_"
-                    + castUntainted(rollupLevel) + " where capture_time > ? and capture_time <= ?";
+        private void checkOverflow(int rollupLevel) {
+            if (overflowed[rollupLevel]) {
+                return;
+            }
+            NavigableMap<Long, PendingRollup> pendingRollupsForLevel =
+                    pendingRollups.get(rollupLevel);
+            int aggregateCount = 0;
+            for (PendingRollup pendingRollup : pendingRollupsForLevel.values()) {
+                aggregateCount += pendingRollup.aggregateCount;
+            }
+            if (aggregateCount > MAX_PENDING_ROLLUP_AGGREGATES) {
+                pendingRollupsForLevel.clear();
+                overflowed[rollupLevel] = true;
+            }
         }
 
-        @Override
-        public void bind(PreparedStatement preparedStatement) throws SQLException {
-            preparedStatement.setLong(1, lastRollupTime);
-            preparedStatement.setLong(2, curentRollupTime);
+        private List<PendingRollup> getPendingRollups(long captureTime,
+                List<RollupConfig> rollupConfigs, int maxQueryAggregates,
+                int maxServiceCallAggregates) {
+            List<PendingRollup> pendingRollups = Lists.newArrayList();
+            for (int i = 1; i < rollupConfigs.size(); i++) {
+                long rollupCaptureTime = RollupLevelService.getCeilRollupTime(captureTime,
+                        rollupConfigs.get(i).intervalMillis());
+                if (rollupCaptureTime > lastRollupTimes[i] && !overflowed[i]) {
+                    pendingRollups.add(getPendingRollup(this.pendingRollups.get(i),
+                            rollupCaptureTime, maxQueryAggregates, maxServiceCallAggregates));
+                }
+            }
+            return pendingRollups;
         }
+    }
 
-        @Override
-        public Long mapRow(ResultSet resultSet) throws SQLException {
-            return resultSet.getLong(1);
+    private static class PendingRollup {
+
+        private final int maxQueryAggregates;
+        private final int maxServiceCallAggregates;
+
+        private final Map<String, MutableAggregate> overallAggregates = Maps.newTreeMap();
+        private final Map<String, Map<String, MutableAggregate>> transactionAggregates =
+                Maps.newTreeMap();
+
+        private int aggregateCount;
+
+        private PendingRollup(int maxQueryAggregates, int maxServiceCallAggregates) {
+            this.maxQueryAggregates = maxQueryAggregates;
+            this.maxServiceCallAggregates = maxServiceCallAggregates;
+        }
+
+        private MutableAggregate getOverallAggregate(String transactionType) {
+            MutableAggregate aggregate = overallAggregates.get(transactionType);
+            if (aggregate == null) {
+                aggregate = new MutableAggregate(maxQueryAggregates, maxServiceCallAggregates);
+                overallAggregates.put(transactionType, aggregate);
+                aggregateCount++;
+            }
+            return aggregate;
+        }
+
+        private MutableAggregate getTransactionAggregate(String transactionType,
+                String transactionName) {
+            Map<String, MutableAggregate> aggregates = transactionAggregates.get(transactionType);
+            if (aggregates == null) {
+                aggregates = Maps.newTreeMap();
+                transactionAggregates.put(transactionType, aggregates);
+            }
+            MutableAggregate aggregate = aggregates.get(transactionName);
+            if (aggregate == null) {
+                aggregate = new MutableAggregate(maxQueryAggregates, maxServiceCallAggregates);
+                aggregates.put(transactionName, aggregate);
+                aggregateCount++;
+            }
+            return aggregate;
         }
     }
 
@@ -1315,21 +1572,6 @@ public class AggregateDao implements AggregateRepository {
         long cappedId();
     }
 
-    @Value.Immutable
-    @Styles.AllParameters
-    interface MutableOverallAggregate {
-        String transactionType();
-        MutableAggregate aggregate();
-    }
-
-    @Value.Immutable
-    @Styles.AllParameters
-    interface MutableTransactionAggregate {
-        String transactionType();
-        String transactionName();
-        MutableAggregate aggregate();
-    }
-
     @Value.Immutable
     @Styles.AllParameters
     interface TruncatedQueryText {
@@ -177,6 +177,37 @@ class AggregateInsert implements JdbcUpdate {
                 aggregate.getDurationNanosHistogram().toProto(scratchBuffer).toByteArray();
     }
 
+    String getTransactionType() {
+        return transactionType;
+    }
+
+    @Nullable
+    String getTransactionName() {
+        return transactionName;
+    }
+
+    double getTotalDurationNanos() {
+        return totalDurationNanos;
+    }
+
+    // main thread + aux thread
+    double getTotalCpuNanos() {
+        return mainThreadTotalCpuNanos + auxThreadTotalCpuNanos;
+    }
+
+    // main thread + aux thread
+    double getTotalAllocatedBytes() {
+        return mainThreadTotalAllocatedBytes + auxThreadTotalAllocatedBytes;
+    }
+
+    long getTransactionCount() {
+        return transactionCount;
+    }
+
+    long getErrorCount() {
+        return errorCount;
+    }
+
     @Override
     public @Untainted String getSql() {
         StringBuilder sb = new StringBuilder();
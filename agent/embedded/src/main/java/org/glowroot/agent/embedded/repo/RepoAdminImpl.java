@@ -47,6 +47,7 @@ class RepoAdminImpl implements RepoAdmin {
     private final ConfigRepositoryImpl configRepository;
     private final AlertingDisabledDao alertingDisabledDao;
     private final EnvironmentDao environmentDao;
+    private final AggregateDao aggregateDao;
     private final GaugeIdDao gaugeIdDao;
     private final GaugeNameDao gaugeNameDao;
     private final GaugeValueDao gaugeValueDao;
@@ -58,15 +59,17 @@ class RepoAdminImpl implements RepoAdmin {
     RepoAdminImpl(DataSource dataSource, List<CappedDatabase> rollupCappedDatabases,
             CappedDatabase traceCappedDatabase, ConfigRepositoryImpl configRepository,
             AlertingDisabledDao alertingDisabledDao, EnvironmentDao environmentDao,
-            GaugeIdDao gaugeIdDao, GaugeNameDao gaugeNameDao, GaugeValueDao gaugeValueDao,
-            TransactionTypeDao transactionTypeDao, FullQueryTextDao fullQueryTextDao,
-            TraceAttributeNameDao traceAttributeNameDao, Clock clock) {
+            AggregateDao aggregateDao, GaugeIdDao gaugeIdDao, GaugeNameDao gaugeNameDao,
+            GaugeValueDao gaugeValueDao, TransactionTypeDao transactionTypeDao,
+            FullQueryTextDao fullQueryTextDao, TraceAttributeNameDao traceAttributeNameDao,
+            Clock clock) {
         this.dataSource = dataSource;
         this.rollupCappedDatabases = rollupCappedDatabases;
         this.traceCappedDatabase = traceCappedDatabase;
         this.configRepository = configRepository;
         this.alertingDisabledDao = alertingDisabledDao;
         this.environmentDao = environmentDao;
+        this.aggregateDao = aggregateDao;
         this.gaugeIdDao = gaugeIdDao;
         this.gaugeNameDao = gaugeNameDao;
         this.gaugeValueDao = gaugeValueDao;
@@ -86,9 +89,11 @@ class RepoAdminImpl implements RepoAdmin {
     @Override
     public void deleteAllData() throws Exception {
         Environment environment = environmentDao.read("");
+        aggregateDao.invalidateBeforeDeletingDatabase();
         dataSource.deleteAll();
         alertingDisabledDao.reinitAfterDeletingDatabase();
         environmentDao.reinitAfterDeletingDatabase();
+        aggregateDao.reinitAfterDeletingDatabase();
         gaugeIdDao.invalidateCache();
         gaugeNameDao.invalidateCache();
         gaugeValueDao.reinitAfterDeletingDatabase();
@@ -120,8 +120,9 @@ public class SimpleRepoModule {
         }
 
         repoAdmin = new RepoAdminImpl(dataSource, rollupCappedDatabases, traceCappedDatabase,
-                configRepository, alertingDisabledDao, environmentDao, gaugeIdDao, gaugeNameDao,
-                gaugeValueDao, transactionTypeDao, fullQueryTextDao, traceAttributeNameDao, clock);
+                configRepository, alertingDisabledDao, environmentDao, aggregateDao, gaugeIdDao,
+                gaugeNameDao, gaugeValueDao, transactionTypeDao, fullQueryTextDao,
+                traceAttributeNameDao, clock);
 
         httpClient = new HttpClient(configRepository);
 
@@ -25,6 +25,7 @@ import java.util.Locale;
 import java.util.concurrent.CompletableFuture;
 import java.util.regex.Pattern;
 
+import com.google.common.base.Splitter;
 import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
@@ -94,10 +95,13 @@ public class TraceDao implements TraceRepository {
             ImmutableColumn.of("error_message", ColumnType.VARCHAR),
             ImmutableColumn.of("header", ColumnType.VARBINARY), // protobuf
             ImmutableColumn.of("entries_capped_id", ColumnType.BIGINT),
+            // comma-separated, see TraceMerge
+            ImmutableColumn.of("entry_updates_capped_ids", ColumnType.VARCHAR),
             ImmutableColumn.of("queries_capped_id", ColumnType.BIGINT),
             ImmutableColumn.of("shared_query_texts_capped_id", ColumnType.BIGINT),
             ImmutableColumn.of("main_thread_profile_capped_id", ColumnType.BIGINT),
-            ImmutableColumn.of("aux_thread_profile_capped_id", ColumnType.BIGINT));
+            ImmutableColumn.of("aux_thread_profile_capped_id", ColumnType.BIGINT),
+            ImmutableColumn.of("allocation_profile_capped_id", ColumnType.BIGINT));
 
     // capture_time column is used for expiring records without using FK with on delete cascade
     private static final ImmutableList<Column> traceAttributeColumns =
@@ -165,6 +169,22 @@ public class TraceDao implements TraceRepository {
             dataSource.execute("alter table trace add column queries_capped_id bigint");
             startupLogger.info("glowroot schema upgrade complete");
         }
+        if (dataSource.tableExists("trace")
+                && !dataSource.columnExists("trace", "allocation_profile_capped_id")) {
+            // upgrade to 0.14.0
+            startupLogger.info("upgrading glowroot schema, this may delay glowroot startup for a"
+                    + " few minutes (depending on data size)...");
+            dataSource.execute("alter table trace add column allocation_profile_capped_id bigint");
+            startupLogger.info("glowroot schema upgrade complete");
+        }
+        if (dataSource.tableExists("trace")
+                && !dataSource.columnExists("trace", "entry_updates_capped_ids")) {
+            // upgrade to 0.14.0
+            startupLogger.info("upgrading glowroot schema, this may delay glowroot startup for a"
+                    + " few minutes (depending on data size)...");
+            dataSource.execute("alter table trace add column entry_updates_capped_ids varchar");
+            startupLogger.info("glowroot schema upgrade complete");
+        }
         dataSource.syncTable("trace", traceColumns);
         dataSource.syncIndexes("trace", traceIndexes);
         dataSource.syncTable("trace_attribute", traceAttributeColumns);
@@ -175,14 +195,20 @@ public class TraceDao implements TraceRepository {
         final long captureTime = traceReader.captureTime();
         final Trace.Builder builder = Trace.newBuilder()
                 .setId(traceReader.traceId())
-                .setUpdate(traceReader.update());
+                .setUpdate(traceReader.update())
+                .setIncrementalEntries(traceReader.incrementalEntries());
 
         TraceVisitorImpl traceVisitor = new TraceVisitorImpl(captureTime, builder);
         traceReader.accept(traceVisitor);
         Trace trace = builder.build();
         Trace.Header header = trace.getHeader();
 
-        dataSource.update(new TraceMerge(trace));
+        EntriesCappedIds priorEntriesCappedIds = null;
+        if (trace.getIncrementalEntries()) {
+            priorEntriesCappedIds =
+                    dataSource.queryAtMostOne(new EntriesCappedIdsQuery(trace.getId()));
+        }
+        dataSource.update(new TraceMerge(trace, priorEntriesCappedIds));
         if (header.getAttributeCount() > 0) {
             if (trace.getUpdate()) {
                 dataSource.update("delete from trace_attribute where trace_id = ?", trace.getId());
@@ -321,6 +347,18 @@ public class TraceDao implements TraceRepository {
         return traceCappedDatabase.readMessage(cappedId, Profile.parser());
     }
 
+    @Override
+    public @Nullable Profile readAllocationProfile(String agentId, String traceId)
+            throws Exception {
+        Long cappedId = dataSource.queryForOptionalLong(
+                "select allocation_profile_capped_id from trace where id = ?", traceId);
+        if (cappedId == null) {
+            // trace must have just expired while user was viewing it, or data source is closing
+            return null;
+        }
+        return traceCappedDatabase.readMessage(cappedId, Profile.parser());
+    }
+
     void deleteBefore(long captureTime) throws SQLException {
         traceAttributeNameDao.deleteBefore(captureTime);
         dataSource.deleteBefore("trace", captureTime);
@@ -336,6 +374,37 @@ public class TraceDao implements TraceRepository {
         return Result.create(points, limit);
     }
 
+    private List<Trace.Entry> readEntries(long entriesCappedId,
+            @Nullable String entryUpdatesCappedIds) throws IOException {
+        List<Trace.Entry> entries =
+                traceCappedDatabase.readMessages(entriesCappedId, Trace.Entry.parser());
+        if (entryUpdatesCappedIds == null || entries.isEmpty()) {
+            return entries;
+        }
+        entries = Lists.newArrayList(entries);
+        for (String entryUpdateCappedId : Splitter.on(',').split(entryUpdatesCappedIds)) {
+            Trace entryUpdate = traceCappedDatabase
+                    .readMessage(Long.parseLong(entryUpdateCappedId), Trace.parser());
+            if (entryUpdate == null) {
+                // the remaining updates cannot be applied in order once an update has expired
+                break;
+            }
+            for (int i = 0; i < entryUpdate.getEntryCount(); i++) {
+                int index = entryUpdate.getEntryIndex(i);
+                if (index < entries.size()) {
+                    entries.set(index, entryUpdate.getEntry(i));
+                } else if (index == entries.size()) {
+                    entries.add(entryUpdate.getEntry(i));
+                } else {
+                    // a prior partial trace store was lost, so there is a gap which will only be
+                    // filled in when the completed trace is stored
+                    break;
+                }
+            }
+        }
+        return entries;
+    }
+
     private List<Trace.SharedQueryText> getSharedQueryTextsForExport(
             List<Trace.SharedQueryText> sharedQueryTexts) throws SQLException {
         List<Trace.SharedQueryText> sharedQueryTextsForExport = Lists.newArrayList();
@@ -419,6 +488,12 @@ public class TraceDao implements TraceRepository {
             builder.addEntry(entry);
         }
 
+        @Override
+        public void visitIncrementalEntry(int index, Trace.Entry entry) {
+            builder.addEntry(entry);
+            builder.addEntryIndex(index);
+        }
+
         @Override
         public void visitQueries(List<Aggregate.Query> queries) {
             builder.addAllQuery(queries);
@@ -456,32 +531,107 @@ public class TraceDao implements TraceRepository {
             builder.setAuxThreadProfile(profile);
         }
 
+        @Override
+        public void visitAllocationProfile(Profile profile) {
+            builder.setAllocationProfile(profile);
+        }
+
         @Override
         public void visitHeader(Trace.Header header) {
             builder.setHeader(header);
         }
     }
 
+    private static class EntriesCappedIdsQuery implements JdbcRowQuery<EntriesCappedIds> {
+
+        private final String traceId;
+
+        private EntriesCappedIdsQuery(String traceId) {
+            this.traceId = traceId;
+        }
+
+        @Override
+        public @Untainted String getSql() {
+            return "select entries_capped_id, entry_updates_capped_ids from trace where id = ?";
+        }
+
+        @Override
+        public void bind(PreparedStatement preparedStatement) throws SQLException {
+            preparedStatement.setString(1, traceId);
+        }
+
+        @Override
+        public EntriesCappedIds mapRow(ResultSet resultSet) throws SQLException {
+            int i = 1;
+            return new EntriesCappedIds(RowMappers.getLong(resultSet, i++),
+                    resultSet.getString(i++));
+        }
+    }
+
+    private static class EntriesCappedIds {
+
+        private final @Nullable Long entriesCappedId;
+        private final @Nullable String entryUpdatesCappedIds;
+
+        private EntriesCappedIds(@Nullable Long entriesCappedId,
+                @Nullable String entryUpdatesCappedIds) {
+            this.entriesCappedId = entriesCappedId;
+            this.entryUpdatesCappedIds = entryUpdatesCappedIds;
+        }
+    }
+
+    // incremental entries (see Trace.incremental_entries) are written to the capped database as a
+    // separate update, and its capped id is appended to entry_updates_capped_ids, so that the trace
+    // entries that were already written are not re-written on each partial trace store, the updates
+    // are then applied in order when reading the trace entries (see readEntries())
     private class TraceMerge implements JdbcUpdate {
 
         private final String traceId;
         private final Trace.Header header;
         private final @Nullable Long entriesCappedId;
+        private final @Nullable String entryUpdatesCappedIds;
         private final @Nullable Long queriesCappedId;
         private final @Nullable Long sharedQueryTextsCappedId;
         private final @Nullable Long mainThreadProfileId;
         private final @Nullable Long auxThreadProfileId;
+        private final @Nullable Long allocationProfileId;
 
-        private TraceMerge(Trace trace) throws IOException {
+        private TraceMerge(Trace trace, @Nullable EntriesCappedIds priorEntriesCappedIds)
+                throws IOException {
             this.traceId = trace.getId();
             this.header = trace.getHeader();
 
             List<Trace.Entry> entries = trace.getEntryList();
-            if (entries.isEmpty()) {
-                entriesCappedId = null;
+            Long priorEntriesCappedId =
+                    priorEntriesCappedIds == null ? null : priorEntriesCappedIds.entriesCappedId;
+            if (priorEntriesCappedId == null || !trace.getIncrementalEntries()) {
+                if (entries.isEmpty() || !isStartOfEntries(trace)) {
+                    // if a prior partial trace store was lost, the gap will only be filled in when
+                    // the completed trace is stored
+                    entriesCappedId = null;
+                } else {
+                    entriesCappedId = traceCappedDatabase.writeMessages(entries,
+                            TraceCappedDatabaseStats.TRACE_ENTRIES);
+                }
+                entryUpdatesCappedIds = null;
             } else {
-                entriesCappedId = traceCappedDatabase.writeMessages(entries,
-                        TraceCappedDatabaseStats.TRACE_ENTRIES);
+                entriesCappedId = priorEntriesCappedId;
+                String priorEntryUpdatesCappedIds = checkNotNull(priorEntriesCappedIds)
+                        .entryUpdatesCappedIds;
+                if (entries.isEmpty()) {
+                    entryUpdatesCappedIds = priorEntryUpdatesCappedIds;
+                } else {
+                    long entryUpdateCappedId = traceCappedDatabase.writeMessage(Trace.newBuilder()
+                            .addAllEntry(entries)
+                            .addAllEntryIndex(trace.getEntryIndexList())
+                            .build(), TraceCappedDatabaseStats.TRACE_ENTRIES);
+                    if (priorEntryUpdatesCappedIds == null) {
+                        entryUpdatesCappedIds = Long.toString(entryUpdateCappedId);
+                    } else {
+                        entryUpdatesCappedIds =
+                                priorEntryUpdatesCappedIds + "," + entryUpdateCappedId;
+                    }
+                }
             }
             List<Aggregate.Query> queries = trace.getQueryList();
             if (queries.isEmpty()) {
@@ -509,16 +659,35 @@ public class TraceDao implements TraceRepository {
             } else {
                 auxThreadProfileId = null;
             }
+            if (trace.hasAllocationProfile()) {
+                allocationProfileId = traceCappedDatabase.writeMessage(
+                        trace.getAllocationProfile(), TraceCappedDatabaseStats.TRACE_PROFILES);
+            } else {
+                allocationProfileId = null;
+            }
+        }
+
+        private boolean isStartOfEntries(Trace trace) {
+            if (!trace.getIncrementalEntries()) {
+                return true;
+            }
+            for (int i = 0; i < trace.getEntryIndexCount(); i++) {
+                if (trace.getEntryIndex(i) != i) {
+                    return false;
+                }
+            }
+            return true;
         }
 
         @Override
         public @Untainted String getSql() {
             return "merge into trace (id, partial, slow, error, start_time, capture_time,"
                     + " duration_nanos, transaction_type, transaction_name, headline, user,"
-                    + " error_message, header, entries_capped_id, queries_capped_id,"
-                    + " shared_query_texts_capped_id, main_thread_profile_capped_id,"
-                    + " aux_thread_profile_capped_id) key (id) values (?, ?, ?, ?, ?, ?, ?, ?, ?,"
-                    + " ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+                    + " error_message, header, entries_capped_id, entry_updates_capped_ids,"
+                    + " queries_capped_id, shared_query_texts_capped_id,"
+                    + " main_thread_profile_capped_id, aux_thread_profile_capped_id,"
+                    + " allocation_profile_capped_id) key (id) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?,"
+                    + " ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
         }
 
         // minimal work inside this method as it is called with active connection
@@ -551,10 +720,12 @@ public class TraceDao implements TraceRepository {
                     .build()
                     .toByteArray());
             RowMappers.setLong(preparedStatement, i++, entriesCappedId);
+            preparedStatement.setString(i++, entryUpdatesCappedIds);
             RowMappers.setLong(preparedStatement, i++, queriesCappedId);
             RowMappers.setLong(preparedStatement, i++, sharedQueryTextsCappedId);
             RowMappers.setLong(preparedStatement, i++, mainThreadProfileId);
             RowMappers.setLong(preparedStatement, i++, auxThreadProfileId);
+            RowMappers.setLong(preparedStatement, i++, allocationProfileId);
         }
     }
 
@@ -692,7 +863,8 @@ public class TraceDao implements TraceRepository {
 
         @Override
         public @Untainted String getSql() {
-            return "select entries_capped_id, shared_query_texts_capped_id from trace where id = ?";
+            return "select entries_capped_id, entry_updates_capped_ids,"
+                    + " shared_query_texts_capped_id from trace where id = ?";
         }
 
         @Override
@@ -707,12 +879,12 @@ public class TraceDao implements TraceRepository {
             }
             int i = 1;
             Long entriesCappedId = RowMappers.getLong(resultSet, i++);
+            String entryUpdatesCappedIds = resultSet.getString(i++);
             Long sharedQueryTextsCappedId = RowMappers.getLong(resultSet, i++);
             if (entriesCappedId == null) {
                 return null;
             }
-            List<Trace.Entry> entries =
-                    traceCappedDatabase.readMessages(entriesCappedId, Trace.Entry.parser());
+            List<Trace.Entry> entries = readEntries(entriesCappedId, entryUpdatesCappedIds);
             if (entries.isEmpty()) {
                 return null;
             }
@@ -790,8 +962,8 @@ public class TraceDao implements TraceRepository {
 
         @Override
         public @Untainted String getSql() {
-            return "select entries_capped_id, queries_capped_id, shared_query_texts_capped_id from"
-                    + " trace where id = ?";
+            return "select entries_capped_id, entry_updates_capped_ids, queries_capped_id,"
+                    + " shared_query_texts_capped_id from trace where id = ?";
         }
 
         @Override
@@ -806,11 +978,12 @@ public class TraceDao implements TraceRepository {
             }
             int i = 1;
             Long entriesCappedId = RowMappers.getLong(resultSet, i++);
+            String entryUpdatesCappedIds = resultSet.getString(i++);
             Long queriesCappedId = RowMappers.getLong(resultSet, i++);
             Long sharedQueryTextsCappedId = RowMappers.getLong(resultSet, i++);
             List<Trace.Entry> entries = ImmutableList.of();
             if (entriesCappedId != null) {
-                entries = traceCappedDatabase.readMessages(entriesCappedId, Trace.Entry.parser());
+                entries = readEntries(entriesCappedId, entryUpdatesCappedIds);
             }
             List<Aggregate.Query> queries = ImmutableList.of();
             if (queriesCappedId != null) {
@@ -0,0 +1,448 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.embedded.repo;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.TreeMap;
+
+import javax.annotation.concurrent.GuardedBy;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Doubles;
+import com.google.common.primitives.Longs;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import org.glowroot.common.live.LiveAggregateRepository.SummaryQuery;
+import org.glowroot.common.model.TransactionNameErrorSummaryCollector;
+import org.glowroot.common.model.TransactionNameErrorSummaryCollector.ErrorSummarySortOrder;
+import org.glowroot.common.model.TransactionNameSummaryCollector;
+import org.glowroot.common.model.TransactionNameSummaryCollector.SummarySortOrder;
+
+// in-memory columnar copy of the transaction name summary columns of the aggregate_tn_rollup_*
+// tables, so that the transaction name summaries (e.g. the sidebar in the UI) can be merged from
+// a few arrays per capture time instead of running a group by over the rollup tables on every
+// refresh
+//
+// the index only covers capture times after it was created (or after the oldest evicted capture
+// time in order to stay under maxEntries), queries that reach further back fall back to sql
+class TransactionNameSummaryIndex {
+
+    private final int maxEntries;
+
+    private final Interner<String> transactionNameInterner = Interners.newWeakInterner();
+
+    // key is rollup level and transaction type
+    @GuardedBy("this")
+    private final Map<BucketKey, NavigableMap<Long, Bucket>> buckets = Maps.newHashMap();
+
+    // index is rollup level, buckets are complete for capture times greater than this value
+    @GuardedBy("this")
+    private final long[] coveredAfter;
+
+    @GuardedBy("this")
+    private int entryCount;
+
+    TransactionNameSummaryIndex(long[] coveredAfter, int maxEntries) {
+        this.coveredAfter = coveredAfter.clone();
+        this.maxEntries = maxEntries;
+    }
+
+    BucketBuilder newBucketBuilder(int rollupLevel, long captureTime) {
+        return new BucketBuilder(rollupLevel, captureTime);
+    }
+
+    synchronized void add(BucketBuilder bucketBuilder) {
+        for (Map.Entry<String, BucketColumnsBuilder> entry : bucketBuilder.columnsBuilders
+                .entrySet()) {
+            BucketKey key = new BucketKey(bucketBuilder.rollupLevel, entry.getKey());
+            NavigableMap<Long, Bucket> bucketsForKey = buckets.get(key);
+            if (bucketsForKey == null) {
+                bucketsForKey = new TreeMap<Long, Bucket>();
+                buckets.put(key, bucketsForKey);
+            }
+            BucketColumnsBuilder columnsBuilder = entry.getValue();
+            Bucket existing = bucketsForKey.get(bucketBuilder.captureTime);
+            if (existing != null) {
+                // this is not expected, but matches the "merge into" semantics of the rollup
+                // tables, where the latest row for a given transaction name wins
+                columnsBuilder.addMissing(existing);
+                entryCount -= existing.size();
+            }
+            Bucket bucket = columnsBuilder.build();
+            bucketsForKey.put(bucketBuilder.captureTime, bucket);
+            entryCount += bucket.size();
+        }
+        while (entryCount > maxEntries) {
+            evictOldestBucket();
+        }
+    }
+
+    // returns false if the query is not fully covered by this index
+    synchronized boolean mergeTransactionNameSummariesInto(SummaryQuery query,
+            SummarySortOrder sortOrder, int limit, TransactionNameSummaryCollector collector) {
+        List<MergedSummary> summaries = merge(query);
+        if (summaries == null) {
+            return false;
+        }
+        // the sortOrder is only used so that the limit includes the most-likely candidates
+        // the final sorting is performed by the caller
+        Collections.sort(summaries, new SummaryOrdering(sortOrder));
+        // limit + 100 since this result still needs to be merged with other results
+        int size = Math.min(summaries.size(), limit + 100);
+        for (int i = 0; i < size; i++) {
+            MergedSummary summary = summaries.get(i);
+            collector.collect(summary.transactionName, summary.totalDurationNanos,
+                    summary.totalCpuNanos, summary.totalAllocatedBytes, summary.transactionCount,
+                    summary.maxCaptureTime);
+        }
+        return true;
+    }
+
+    // returns false if the query is not fully covered by this index
+    synchronized boolean mergeTransactionNameErrorSummariesInto(SummaryQuery query,
+            ErrorSummarySortOrder sortOrder, int limit,
+            TransactionNameErrorSummaryCollector collector) {
+        List<MergedSummary> summaries = merge(query);
+        if (summaries == null) {
+            return false;
+        }
+        List<MergedSummary> errorSummaries = Lists.newArrayList();
+        for (MergedSummary summary : summaries) {
+            if (summary.errorCount > 0) {
+                errorSummaries.add(summary);
+            }
+        }
+        Collections.sort(errorSummaries, new ErrorSummaryOrdering(sortOrder));
+        // limit + 100 since this result still needs to be merged with other results
+        int size = Math.min(errorSummaries.size(), limit + 100);
+        for (int i = 0; i < size; i++) {
+            MergedSummary summary = errorSummaries.get(i);
+            collector.collect(summary.transactionName, summary.errorCount,
+                    summary.transactionCount, summary.maxCaptureTime);
+        }
+        return true;
+    }
+
+    synchronized void deleteBefore(long captureTime, int rollupLevel) {
+        for (Map.Entry<BucketKey, NavigableMap<Long, Bucket>> entry : buckets.entrySet()) {
+            if (entry.getKey().rollupLevel != rollupLevel) {
+                continue;
+            }
+            Iterator<Bucket> i = entry.getValue().headMap(captureTime, false).values().iterator();
+            while (i.hasNext()) {
+                entryCount -= i.next().size();
+                i.remove();
+            }
+        }
+    }
+
+    synchronized void reset(long[] coveredAfter) {
+        buckets.clear();
+        System.arraycopy(coveredAfter, 0, this.coveredAfter, 0, this.coveredAfter.length);
+        entryCount = 0;
+    }
+
+    @GuardedBy("this")
+    private @Nullable List<MergedSummary> merge(SummaryQuery query) {
+        int rollupLevel = query.rollupLevel();
+        // query.from() is non-inclusive
+        if (rollupLevel >= coveredAfter.length || query.from() < coveredAfter[rollupLevel]) {
+            return null;
+        }
+        Map<String, MergedSummary> summaries = Maps.newHashMap();
+        NavigableMap<Long, Bucket> bucketsForKey =
+                buckets.get(new BucketKey(rollupLevel, query.transactionType()));
+        if (bucketsForKey != null) {
+            for (Map.Entry<Long, Bucket> entry : bucketsForKey
+                    .subMap(query.from(), false, query.to(), true).entrySet()) {
+                long captureTime = entry.getKey();
+                Bucket bucket = entry.getValue();
+                for (int i = 0; i < bucket.transactionNames.length; i++) {
+                    String transactionName = bucket.transactionNames[i];
+                    MergedSummary summary = summaries.get(transactionName);
+                    if (summary == null) {
+                        summary = new MergedSummary(transactionName);
+                        summaries.put(transactionName, summary);
+                    }
+                    summary.totalDurationNanos += bucket.totalDurationNanos[i];
+                    summary.totalCpuNanos += bucket.totalCpuNanos[i];
+                    summary.totalAllocatedBytes += bucket.totalAllocatedBytes[i];
+                    summary.transactionCount += bucket.transactionCounts[i];
+                    summary.errorCount += bucket.errorCounts[i];
+                    summary.maxCaptureTime = Math.max(summary.maxCaptureTime, captureTime);
+                }
+            }
+        }
+        return Lists.newArrayList(summaries.values());
+    }
+
+    @GuardedBy("this")
+    private void evictOldestBucket() {
+        NavigableMap<Long, Bucket> oldestBucketsForKey = null;
+        int oldestRollupLevel = 0;
+        long oldestCaptureTime = Long.MAX_VALUE;
+        for (Map.Entry<BucketKey, NavigableMap<Long, Bucket>> entry : buckets.entrySet()) {
+            NavigableMap<Long, Bucket> bucketsForKey = entry.getValue();
+            if (bucketsForKey.isEmpty()) {
+                continue;
+            }
+            long captureTime = bucketsForKey.firstKey();
+            if (captureTime < oldestCaptureTime) {
+                oldestBucketsForKey = bucketsForKey;
+                oldestRollupLevel = entry.getKey().rollupLevel;
+                oldestCaptureTime = captureTime;
+            }
+        }
+        if (oldestBucketsForKey == null) {
+            // not possible since entryCount > 0
+            entryCount = 0;
+            return;
+        }
+        entryCount -= oldestBucketsForKey.pollFirstEntry().getValue().size();
+        coveredAfter[oldestRollupLevel] =
+                Math.max(coveredAfter[oldestRollupLevel], oldestCaptureTime);
+    }
+
+    // collects the rows of a single capture time, which are then added to the index all at once
+    class BucketBuilder {
+
+        private final int rollupLevel;
+        private final long captureTime;
+
+        // key is transaction type
+        private final Map<String, BucketColumnsBuilder> columnsBuilders = Maps.newHashMap();
+
+        private BucketBuilder(int rollupLevel, long captureTime) {
+            this.rollupLevel = rollupLevel;
+            this.captureTime = captureTime;
+        }
+
+        void add(AggregateInsert aggregateInsert) {
+            String transactionName = aggregateInsert.getTransactionName();
+            if (transactionName == null) {
+                // overall aggregate
+                return;
+            }
+            add(aggregateInsert.getTransactionType(), transactionName,
+                    aggregateInsert.getTotalDurationNanos(), aggregateInsert.getTotalCpuNanos(),
+                    aggregateInsert.getTotalAllocatedBytes(),
+                    aggregateInsert.getTransactionCount(), aggregateInsert.getErrorCount());
+        }
+
+        @VisibleForTesting
+        void add(String transactionType, String transactionName, double totalDurationNanos,
+                double totalCpuNanos, double totalAllocatedBytes, long transactionCount,
+                long errorCount) {
+            BucketColumnsBuilder columnsBuilder = columnsBuilders.get(transactionType);
+            if (columnsBuilder == null) {
+                columnsBuilder = new BucketColumnsBuilder();
+                columnsBuilders.put(transactionType, columnsBuilder);
+            }
+            columnsBuilder.add(transactionNameInterner.intern(transactionName), totalDurationNanos,
+                    totalCpuNanos, totalAllocatedBytes, transactionCount, errorCount);
+        }
+    }
+
+    private static class BucketColumnsBuilder {
+
+        private final List<String> transactionNames = Lists.newArrayList();
+        private final List<Double> totalDurationNanos = Lists.newArrayList();
+        private final List<Double> totalCpuNanos = Lists.newArrayList();
+        private final List<Double> totalAllocatedBytes = Lists.newArrayList();
+        private final List<Long> transactionCounts = Lists.newArrayList();
+        private final List<Long> errorCounts = Lists.newArrayList();
+
+        private void add(String transactionName, double totalDurationNanos, double totalCpuNanos,
+                double totalAllocatedBytes, long transactionCount, long errorCount) {
+            transactionNames.add(transactionName);
+            this.totalDurationNanos.add(totalDurationNanos);
+            this.totalCpuNanos.add(totalCpuNanos);
+            this.totalAllocatedBytes.add(totalAllocatedBytes);
+            transactionCounts.add(transactionCount);
+            errorCounts.add(errorCount);
+        }
+
+        private void addMissing(Bucket bucket) {
+            Set<String> transactionNames = Sets.newHashSet(this.transactionNames);
+            for (int i = 0; i < bucket.transactionNames.length; i++) {
+                String transactionName = bucket.transactionNames[i];
+                if (!transactionNames.contains(transactionName)) {
+                    add(transactionName, bucket.totalDurationNanos[i], bucket.totalCpuNanos[i],
+                            bucket.totalAllocatedBytes[i], bucket.transactionCounts[i],
+                            bucket.errorCounts[i]);
+                }
+            }
+        }
+
+        private Bucket build() {
+            return new Bucket(transactionNames.toArray(new String[transactionNames.size()]),
+                    Doubles.toArray(totalDurationNanos), Doubles.toArray(totalCpuNanos),
+                    Doubles.toArray(totalAllocatedBytes), Longs.toArray(transactionCounts),
+                    Longs.toArray(errorCounts));
+        }
+    }
+
+    // columnar storage of all transaction names for a single rollup level, transaction type and
+    // capture time
+    private static class Bucket {
+
+        private final String[] transactionNames;
+        private final double[] totalDurationNanos;
+        // main thread + aux thread
+        private final double[] totalCpuNanos;
+        // main thread + aux thread
+        private final double[] totalAllocatedBytes;
+        private final long[] transactionCounts;
+        private final long[] errorCounts;
+
+        private Bucket(String[] transactionNames, double[] totalDurationNanos,
+                double[] totalCpuNanos, double[] totalAllocatedBytes, long[] transactionCounts,
+                long[] errorCounts) {
+            this.transactionNames = transactionNames;
+            this.totalDurationNanos = totalDurationNanos;
+            this.totalCpuNanos = totalCpuNanos;
+            this.totalAllocatedBytes = totalAllocatedBytes;
+            this.transactionCounts = transactionCounts;
+            this.errorCounts = errorCounts;
+        }
+
+        private int size() {
+            return transactionNames.length;
+        }
+    }
+
+    private static class BucketKey {
+
+        private final int rollupLevel;
+        private final String transactionType;
+
+        private BucketKey(int rollupLevel, String transactionType) {
+            this.rollupLevel = rollupLevel;
+            this.transactionType = transactionType;
+        }
+
+        @Override
+        public boolean equals(@Nullable Object obj) {
+            if (!(obj instanceof BucketKey)) {
+                return false;
+            }
+            BucketKey that = (BucketKey) obj;
+            return rollupLevel == that.rollupLevel && transactionType.equals(that.transactionType);
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new Object[] {rollupLevel, transactionType});
+        }
+    }
+
+    private static class MergedSummary {
+
+        private final String transactionName;
+        private double totalDurationNanos;
+        private double totalCpuNanos;
+        private double totalAllocatedBytes;
+        private long transactionCount;
+        private long errorCount;
+        private long maxCaptureTime;
+
+        private MergedSummary(String transactionName) {
+            this.transactionName = transactionName;
+        }
+    }
+
+    // same ordering as the order by clause in AggregateDao.TransactionNameSummaryQuery
+    private static class SummaryOrdering implements Comparator<MergedSummary> {
+
+        private final SummarySortOrder sortOrder;
+
+        private SummaryOrdering(SummarySortOrder sortOrder) {
+            this.sortOrder = sortOrder;
+        }
+
+        @Override
+        public int compare(MergedSummary left, MergedSummary right) {
+            int result = Double.compare(getSortValue(right), getSortValue(left));
+            if (result != 0) {
+                return result;
+            }
+            return left.transactionName.compareTo(right.transactionName);
+        }
+
+        private double getSortValue(MergedSummary summary) {
+            switch (sortOrder) {
+                case TOTAL_TIME:
+                    return summary.totalDurationNanos;
+                case AVERAGE_TIME:
+                    return summary.totalDurationNanos / summary.transactionCount;
+                case THROUGHPUT:
+                    return summary.transactionCount;
+                case TOTAL_CPU_TIME:
+                    return summary.totalCpuNanos;
+                case AVERAGE_CPU_TIME:
+                    return summary.totalCpuNanos / summary.transactionCount;
+                case TOTAL_ALLOCATED_MEMORY:
+                    return summary.totalAllocatedBytes;
+                case AVERAGE_ALLOCATED_MEMORY:
+                    return summary.totalAllocatedBytes / summary.transactionCount;
+                default:
+                    throw new AssertionError("Unexpected sort order: " + sortOrder);
+            }
+        }
+    }
+
+    // same ordering as the order by clause in AggregateDao.TransactionNameErrorSummaryQuery
+    private static class ErrorSummaryOrdering implements Comparator<MergedSummary> {
+
+        private final ErrorSummarySortOrder sortOrder;
+
+        private ErrorSummaryOrdering(ErrorSummarySortOrder sortOrder) {
+            this.sortOrder = sortOrder;
+        }
+
+        @Override
+        public int compare(MergedSummary left, MergedSummary right) {
+            int result = Double.compare(getSortValue(right), getSortValue(left));
+            if (result != 0) {
+                return result;
+            }
+            return left.transactionName.compareTo(right.transactionName);
+        }
+
+        private double getSortValue(MergedSummary summary) {
+            switch (sortOrder) {
+                case ERROR_COUNT:
+                    return summary.errorCount;
+                case ERROR_RATE:
+                    return summary.errorCount / (double) summary.transactionCount;
+                default:
+                    throw new AssertionError("Unexpected sort order: " + sortOrder);
+            }
+        }
+    }
+}
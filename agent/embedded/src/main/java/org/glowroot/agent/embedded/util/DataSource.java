@@ -23,8 +23,12 @@ import java.sql.Statement;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.annotation.concurrent.GuardedBy;
 
@@ -64,6 +68,9 @@ public class DataSource {
     private static final int QUERY_TIMEOUT_SECONDS =
             Integer.getInteger("glowroot.internal.h2.queryTimeout", 60);
 
+    private static final int READ_CONNECTIONS =
+            Integer.getInteger("glowroot.internal.h2.readConnections", 2);
+
     // null means use memDb
     private final @Nullable File dbFile;
     private final Thread shutdownHookThread;
@@ -72,6 +79,29 @@ public class DataSource {
     private JdbcConnection connection;
     private volatile boolean closed;
 
+    // queries are executed on a small pool of separate connections so that they do not hold the
+    // lock on the single writer connection (which is needed by aggregate and trace inserts) while
+    // processing large result sets, e.g. when viewing a long time range in the UI
+    //
+    // null means queries are executed on the writer connection (always the case for memDb since
+    // each connection to an unnamed in-memory database gets its own separate database)
+    private final @Nullable BlockingQueue<ReadConnection> readConnections;
+    // read lock is held while using a read connection, write lock is held while closing the read
+    // connections, e.g. during defrag
+    //
+    // write lock must be acquired before the lock above, since queries on read connections can
+    // perform updates while processing their result set (e.g. aggregate rollups)
+    private final ReadWriteLock readConnectionsLock = new ReentrantReadWriteLock();
+    // nested queries are executed on the writer connection, instead of waiting on another read
+    // connection while holding one
+    @SuppressWarnings("nullness:type.argument.type.incompatible")
+    private final ThreadLocal<Boolean> holdingReadConnection = new ThreadLocal<Boolean>() {
+        @Override
+        protected Boolean initialValue() {
+            return false;
+        }
+    };
+
     @SuppressWarnings("nullness:type.argument.type.incompatible")
     private final ThreadLocal<Boolean> suppressQueryTimeout = new ThreadLocal<Boolean>() {
         @Override
@@ -99,6 +129,7 @@ public class DataSource {
     public DataSource() throws SQLException {
         dbFile = null;
         connection = createConnection(null);
+        readConnections = null;
         shutdownHookThread = new ShutdownHookThread();
         Runtime.getRuntime().addShutdownHook(shutdownHookThread);
     }
@@ -106,6 +137,14 @@ public class DataSource {
     public DataSource(File dbFile) throws SQLException {
         this.dbFile = dbFile;
         connection = createConnection(dbFile);
+        if (READ_CONNECTIONS > 0) {
+            readConnections = new ArrayBlockingQueue<ReadConnection>(READ_CONNECTIONS);
+            for (int i = 0; i < READ_CONNECTIONS; i++) {
+                readConnections.add(new ReadConnection());
+            }
+        } else {
+            readConnections = null;
+        }
         shutdownHookThread = new ShutdownHookThread();
         Runtime.getRuntime().addShutdownHook(shutdownHookThread);
     }
@@ -114,14 +153,20 @@ public class DataSource {
         if (dbFile == null) {
             return;
         }
-        synchronized (lock) {
-            if (closed) {
-                return;
+        readConnectionsLock.writeLock().lock();
+        try {
+            synchronized (lock) {
+                if (closed) {
+                    return;
+                }
+                checkConnectionUnderLock();
+                closeReadConnections();
+                execute("shutdown defrag");
+                connection = createConnection(dbFile);
+                preparedStatementCache.invalidateAll();
             }
-            checkConnectionUnderLock();
-            execute("shutdown defrag");
-            connection = createConnection(dbFile);
-            preparedStatementCache.invalidateAll();
+        } finally {
+            readConnectionsLock.writeLock().unlock();
         }
     }
 
@@ -129,14 +174,20 @@ public class DataSource {
         if (dbFile == null) {
             return;
         }
-        synchronized (lock) {
-            if (closed) {
-                return;
+        readConnectionsLock.writeLock().lock();
+        try {
+            synchronized (lock) {
+                if (closed) {
+                    return;
+                }
+                checkConnectionUnderLock();
+                closeReadConnections();
+                execute("shutdown compact");
+                connection = createConnection(dbFile);
+                preparedStatementCache.invalidateAll();
             }
-            checkConnectionUnderLock();
-            execute("shutdown compact");
-            connection = createConnection(dbFile);
-            preparedStatementCache.invalidateAll();
+        } finally {
+            readConnectionsLock.writeLock().unlock();
         }
     }
 
@@ -157,30 +208,38 @@ public class DataSource {
         if (dbFile == null) {
             return;
         }
-        synchronized (lock) {
-            if (closed) {
-                return;
-            }
-            checkConnectionUnderLock();
-            List<String> schemaVersionRows =
-                    queryForStringList("select schema_version from schema_version");
-            connection.close();
-            if (!dbFile.delete()) {
-                throw new SQLException("Could not delete file: " + dbFile.getAbsolutePath());
-            }
-            connection = createConnection(dbFile);
-            preparedStatementCache.invalidateAll();
-            for (Map.Entry</*@Untainted*/ String, ImmutableList<Column>> entry : tables
-                    .entrySet()) {
-                syncTable(entry.getKey(), entry.getValue());
-            }
-            for (Map.Entry</*@Untainted*/ String, ImmutableList<Index>> entry : indexes
-                    .entrySet()) {
-                syncIndexes(entry.getKey(), entry.getValue());
-            }
-            for (String schemaVersionRow : schemaVersionRows) {
-                update("insert into schema_version (schema_version) values (?)", schemaVersionRow);
+        readConnectionsLock.writeLock().lock();
+        try {
+            synchronized (lock) {
+                if (closed) {
+                    return;
+                }
+                checkConnectionUnderLock();
+                List<String> schemaVersionRows =
+                        queryForStringList("select schema_version from schema_version");
+                // read connections need to be closed first, otherwise the database stays open
+                closeReadConnections();
+                connection.close();
+                if (!dbFile.delete()) {
+                    throw new SQLException("Could not delete file: " + dbFile.getAbsolutePath());
+                }
+                connection = createConnection(dbFile);
+                preparedStatementCache.invalidateAll();
+                for (Map.Entry</*@Untainted*/ String, ImmutableList<Column>> entry : tables
+                        .entrySet()) {
+                    syncTable(entry.getKey(), entry.getValue());
+                }
+                for (Map.Entry</*@Untainted*/ String, ImmutableList<Index>> entry : indexes
+                        .entrySet()) {
+                    syncIndexes(entry.getKey(), entry.getValue());
+                }
+                for (String schemaVersionRow : schemaVersionRows) {
+                    update("insert into schema_version (schema_version) values (?)",
+                            schemaVersionRow);
+                }
             }
+        } finally {
+            readConnectionsLock.writeLock().unlock();
         }
     }
 
@@ -208,52 +267,80 @@ public class DataSource {
     // warning: this method returns 0 when data source is closed
     public long queryForLong(final @Untainted String sql, Object... args) throws SQLException {
         debug(sql, args);
+        ResultSetExtractor<Long> rse = new ResultSetExtractor<Long>() {
+            @Override
+            public Long extractData(ResultSet resultSet) throws SQLException {
+                if (!resultSet.next()) {
+                    return 0L;
+                }
+                long val = resultSet.getLong(1);
+                if (resultSet.wasNull()) {
+                    logger.warn("no rows returned: {}", sql);
+                }
+                if (resultSet.next()) {
+                    logger.warn("more than one row returned: {}", sql);
+                }
+                return val;
+            }
+        };
+        ReadConnection readConnection = acquireReadConnection();
+        if (readConnection != null) {
+            try {
+                if (closed) {
+                    return 0;
+                }
+                return query(readConnection.prepareStatement(sql, QUERY_TIMEOUT_SECONDS), args,
+                        rse);
+            } finally {
+                releaseReadConnection(readConnection);
+            }
+        }
         synchronized (lock) {
             if (closed) {
                 return 0;
             }
             checkConnectionUnderLock();
-            return queryUnderLock(sql, args, new ResultSetExtractor<Long>() {
-                @Override
-                public Long extractData(ResultSet resultSet) throws SQLException {
-                    if (!resultSet.next()) {
-                        return 0L;
-                    }
-                    long val = resultSet.getLong(1);
-                    if (resultSet.wasNull()) {
-                        logger.warn("no rows returned: {}", sql);
-                    }
-                    if (resultSet.next()) {
-                        logger.warn("more than one row returned: {}", sql);
-                    }
-                    return val;
-                }
-            });
+            return query(prepareStatementUnderLock(sql, QUERY_TIMEOUT_SECONDS), args, rse);
+            // don't need to close statement since they are all cached and used under lock
         }
     }
 
     public @Nullable Long queryForOptionalLong(final @Untainted String sql, Object... args)
             throws SQLException {
         debug(sql, args);
+        ResultSetExtractor</*@Nullable*/ Long> rse = new ResultSetExtractor</*@Nullable*/ Long>() {
+            @Override
+            public @Nullable Long extractData(ResultSet resultSet) throws SQLException {
+                if (!resultSet.next()) {
+                    return null;
+                }
+                long val = resultSet.getLong(1);
+                Long value = resultSet.wasNull() ? null : val;
+                if (resultSet.next()) {
+                    logger.warn("more than one row returned: {}", sql);
+                }
+                return value;
+            }
+        };
+        ReadConnection readConnection = acquireReadConnection();
+        if (readConnection != null) {
+            try {
+                if (closed) {
+                    return null;
+                }
+                return query(readConnection.prepareStatement(sql, QUERY_TIMEOUT_SECONDS), args,
+                        rse);
+            } finally {
+                releaseReadConnection(readConnection);
+            }
+        }
         synchronized (lock) {
             if (closed) {
                 return null;
             }
             checkConnectionUnderLock();
-            return queryUnderLock(sql, args, new ResultSetExtractor</*@Nullable*/ Long>() {
-                @Override
-                public @Nullable Long extractData(ResultSet resultSet) throws SQLException {
-                    if (!resultSet.next()) {
-                        return null;
-                    }
-                    long val = resultSet.getLong(1);
-                    Long value = resultSet.wasNull() ? null : val;
-                    if (resultSet.next()) {
-                        logger.warn("more than one row returned: {}", sql);
-                    }
-                    return value;
-                }
-            });
+            return query(prepareStatementUnderLock(sql, QUERY_TIMEOUT_SECONDS), args, rse);
+            // don't need to close statement since they are all cached and used under lock
         }
     }
 
@@ -273,23 +360,25 @@ public class DataSource {
     }
 
     public <T> T query(JdbcQuery<T> jdbcQuery) throws Exception {
+        ReadConnection readConnection = acquireReadConnection();
+        if (readConnection != null) {
+            try {
+                if (closed) {
+                    return jdbcQuery.valueIfDataSourceClosed();
+                }
+                return query(readConnection.prepareStatement(jdbcQuery.getSql(),
+                        QUERY_TIMEOUT_SECONDS), jdbcQuery);
+            } finally {
+                releaseReadConnection(readConnection);
+            }
+        }
         synchronized (lock) {
             if (closed) {
                 return jdbcQuery.valueIfDataSourceClosed();
             }
             checkConnectionUnderLock();
-            PreparedStatement preparedStatement =
-                    prepareStatementUnderLock(jdbcQuery.getSql(), QUERY_TIMEOUT_SECONDS);
-            jdbcQuery.bind(preparedStatement);
-            ResultSet resultSet = preparedStatement.executeQuery();
-            ResultSetCloser closer = new ResultSetCloser(resultSet);
-            try {
-                return jdbcQuery.processResultSet(resultSet);
-            } catch (Throwable t) {
-                throw closer.rethrow(t);
-            } finally {
-                closer.close();
-            }
+            return query(prepareStatementUnderLock(jdbcQuery.getSql(), QUERY_TIMEOUT_SECONDS),
+                    jdbcQuery);
             // don't need to close statement since they are all cached and used under lock
         }
     }
@@ -308,27 +397,25 @@ public class DataSource {
 
     public <T extends /*@NonNull*/ Object> List<T> query(JdbcRowQuery<T> jdbcQuery)
             throws SQLException {
+        ReadConnection readConnection = acquireReadConnection();
+        if (readConnection != null) {
+            try {
+                if (closed) {
+                    return ImmutableList.of();
+                }
+                return query(readConnection.prepareStatement(jdbcQuery.getSql(),
+                        QUERY_TIMEOUT_SECONDS), jdbcQuery);
+            } finally {
+                releaseReadConnection(readConnection);
+            }
+        }
         synchronized (lock) {
             if (closed) {
                 return ImmutableList.of();
             }
             checkConnectionUnderLock();
-            PreparedStatement preparedStatement =
-                    prepareStatementUnderLock(jdbcQuery.getSql(), QUERY_TIMEOUT_SECONDS);
-            jdbcQuery.bind(preparedStatement);
-            ResultSet resultSet = preparedStatement.executeQuery();
-            ResultSetCloser closer = new ResultSetCloser(resultSet);
-            try {
-                List<T> mappedRows = Lists.newArrayList();
-                while (resultSet.next()) {
-                    mappedRows.add(jdbcQuery.mapRow(resultSet));
-                }
-                return ImmutableList.copyOf(mappedRows);
-            } catch (Throwable t) {
-                throw closer.rethrow(t);
-            } finally {
-                closer.close();
-            }
+            return query(prepareStatementUnderLock(jdbcQuery.getSql(), QUERY_TIMEOUT_SECONDS),
+                    jdbcQuery);
             // don't need to close statement since they are all cached and used under lock
         }
     }
@@ -507,12 +594,18 @@ public class DataSource {
 
     @OnlyUsedByTests
     public void close() throws SQLException {
-        synchronized (lock) {
-            if (closed) {
-                return;
+        readConnectionsLock.writeLock().lock();
+        try {
+            synchronized (lock) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                closeReadConnections();
+                connection.close();
             }
-            closed = true;
-            connection.close();
+        } finally {
+            readConnectionsLock.writeLock().unlock();
         }
         Runtime.getRuntime().removeShutdownHook(shutdownHookThread);
     }
@@ -526,9 +619,51 @@ public class DataSource {
         }
     }
 
+    // returns null if the query should be executed on the writer connection, which is also the case
+    // when already holding the lock, e.g. inside of deleteAll()
+    private @Nullable ReadConnection acquireReadConnection() throws SQLException {
+        if (readConnections == null || Thread.holdsLock(lock) || holdingReadConnection.get()) {
+            return null;
+        }
+        readConnectionsLock.readLock().lock();
+        ReadConnection readConnection;
+        try {
+            readConnection = readConnections.take();
+        } catch (InterruptedException e) {
+            readConnectionsLock.readLock().unlock();
+            Thread.currentThread().interrupt();
+            throw new SQLException(e);
+        }
+        holdingReadConnection.set(true);
+        return readConnection;
+    }
+
+    private void releaseReadConnection(ReadConnection readConnection) {
+        holdingReadConnection.set(false);
+        checkNotNull(readConnections).add(readConnection);
+        readConnectionsLock.readLock().unlock();
+    }
+
+    // must be called under the read connections write lock
+    private void closeReadConnections() throws SQLException {
+        if (readConnections == null) {
+            return;
+        }
+        // all read connections are in the queue since no read locks are held
+        for (ReadConnection readConnection : readConnections) {
+            readConnection.close();
+        }
+    }
+
     @GuardedBy("lock")
     private PreparedStatement prepareStatementUnderLock(@Untainted String sql,
             int queryTimeoutSeconds) throws SQLException {
+        return prepareStatement(preparedStatementCache, sql, queryTimeoutSeconds);
+    }
+
+    private PreparedStatement prepareStatement(
+            LoadingCache</*@Untainted*/ String, PreparedStatement> preparedStatementCache,
+            @Untainted String sql, int queryTimeoutSeconds) throws SQLException {
         try {
             PreparedStatement preparedStatement = preparedStatementCache.get(sql);
             // setQueryTimeout() affects all statements of this connection (at least with h2)
@@ -548,16 +683,45 @@ public class DataSource {
         }
     }
 
-    @GuardedBy("lock")
-    private <T extends /*@Nullable*/ Object> T queryUnderLock(@Untainted String sql, Object[] args,
-            ResultSetExtractor<T> rse) throws SQLException {
-        PreparedStatement preparedStatement = prepareStatementUnderLock(sql, QUERY_TIMEOUT_SECONDS);
+    private static <T extends /*@Nullable*/ Object> T query(PreparedStatement preparedStatement,
+            Object[] args, ResultSetExtractor<T> rse) throws SQLException {
         for (int i = 0; i < args.length; i++) {
             preparedStatement.setObject(i + 1, args[i]);
         }
         ResultSet resultSet = preparedStatement.executeQuery();
         return extractAndClose(resultSet, rse);
-        // don't need to close statement since they are all cached and used under lock
+    }
+
+    private static <T> T query(PreparedStatement preparedStatement, JdbcQuery<T> jdbcQuery)
+            throws Exception {
+        jdbcQuery.bind(preparedStatement);
+        ResultSet resultSet = preparedStatement.executeQuery();
+        ResultSetCloser closer = new ResultSetCloser(resultSet);
+        try {
+            return jdbcQuery.processResultSet(resultSet);
+        } catch (Throwable t) {
+            throw closer.rethrow(t);
+        } finally {
+            closer.close();
+        }
+    }
+
+    private static <T extends /*@NonNull*/ Object> List<T> query(
+            PreparedStatement preparedStatement, JdbcRowQuery<T> jdbcQuery) throws SQLException {
+        jdbcQuery.bind(preparedStatement);
+        ResultSet resultSet = preparedStatement.executeQuery();
+        ResultSetCloser closer = new ResultSetCloser(resultSet);
+        try {
+            List<T> mappedRows = Lists.newArrayList();
+            while (resultSet.next()) {
+                mappedRows.add(jdbcQuery.mapRow(resultSet));
+            }
+            return ImmutableList.copyOf(mappedRows);
+        } catch (Throwable t) {
+            throw closer.rethrow(t);
+        } finally {
+            closer.close();
+        }
     }
 
     private List<H2Table> analyzeH2DiskSpaceUnderSuppressQueryTimeout() throws Exception {
@@ -690,6 +854,44 @@ public class DataSource {
         T extractData(ResultSet resultSet) throws Exception;
     }
 
+    // only used for queries, and only by one thread at a time (handed off via the readConnections
+    // queue, which provides the memory barrier), or under the read connections write lock
+    private class ReadConnection {
+
+        // null until first used, and after being closed, e.g. during defrag
+        private @Nullable JdbcConnection connection;
+
+        private final LoadingCache</*@Untainted*/ String, PreparedStatement> preparedStatementCache =
+                CacheBuilder.newBuilder().weakValues()
+                        .build(new CacheLoader</*@Untainted*/ String, PreparedStatement>() {
+                            @Override
+                            public PreparedStatement load(@Untainted String sql)
+                                    throws SQLException {
+                                return checkNotNull(connection).prepareStatement(sql);
+                            }
+                        });
+
+        private PreparedStatement prepareStatement(@Untainted String sql, int queryTimeoutSeconds)
+                throws SQLException {
+            if (connection == null || connection.getPowerOffCount() == -1) {
+                // power off count -1 means connection was closed internally due to
+                // OutOfMemoryError
+                connection = createConnection(dbFile);
+                preparedStatementCache.invalidateAll();
+            }
+            return DataSource.this.prepareStatement(preparedStatementCache, sql,
+                    queryTimeoutSeconds);
+        }
+
+        private void close() throws SQLException {
+            // prepared statement cache is invalidated when the connection is re-created
+            if (connection != null) {
+                connection.close();
+                connection = null;
+            }
+        }
+    }
+
     // this replaces H2's default shutdown hook (see jdbc connection db_close_on_exit=false above)
     // in order to prevent exceptions from occurring (and getting logged) during shutdown in the
     // case that there are still traces being written
@@ -701,8 +903,14 @@ public class DataSource {
                 // waiting on the lock (once the flag is set, any threads in the backlog that
                 // haven't acquired the lock will abort quickly once they do obtain the lock)
                 closed = true;
-                synchronized (lock) {
-                    connection.close();
+                readConnectionsLock.writeLock().lock();
+                try {
+                    synchronized (lock) {
+                        closeReadConnections();
+                        connection.close();
+                    }
+                } finally {
+                    readConnectionsLock.writeLock().unlock();
                 }
             } catch (SQLException e) {
                 logger.warn(e.getMessage(), e);
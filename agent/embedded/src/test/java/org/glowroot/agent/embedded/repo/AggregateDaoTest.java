@@ -62,6 +62,7 @@ public class AggregateDaoTest {
     private File cappedFile;
     private ScheduledExecutorService scheduledExecutor;
     private CappedDatabase cappedDatabase;
+    private ConfigRepositoryImpl configRepository;
     private AggregateDao aggregateDao;
 
     @BeforeEach
@@ -77,17 +78,14 @@ public class AggregateDaoTest {
         scheduledExecutor = Executors.newSingleThreadScheduledExecutor();
         cappedDatabase =
                 new CappedDatabase(cappedFile, 1000000, scheduledExecutor, Ticker.systemTicker());
-        ConfigRepositoryImpl configRepository = mock(ConfigRepositoryImpl.class);
+        configRepository = mock(ConfigRepositoryImpl.class);
         when(configRepository.getAdvancedConfig(AGENT_ID))
                 .thenReturn(AdvancedConfig.getDefaultInstance());
         ImmutableList<RollupConfig> rollupConfigs = ImmutableList.<RollupConfig>of(
                 ImmutableRollupConfig.of(1000, 0), ImmutableRollupConfig.of(15000, 3600000),
                 ImmutableRollupConfig.of(900000000, 8 * 3600000));
         when(configRepository.getRollupConfigs()).thenReturn(rollupConfigs);
-        aggregateDao = new AggregateDao(
-                dataSource, ImmutableList.<CappedDatabase>of(cappedDatabase, cappedDatabase,
-                        cappedDatabase, cappedDatabase),
-                configRepository, mock(TransactionTypeDao.class), mock(FullQueryTextDao.class));
+        aggregateDao = newAggregateDao();
     }
 
     @AfterEach
@@ -138,6 +136,81 @@ public class AggregateDaoTest {
         assertThat(queryResult.records().get(2).transactionCount()).isEqualTo(2);
     }
 
+    @Test
+    public void shouldRollupTransactions() throws Exception {
+        // given
+        populateAggregates();
+
+        // when
+        List<OverviewAggregate> overallAggregates =
+                aggregateDao.readOverviewAggregates(AGENT_ID, rollupQuery());
+        TransactionNameSummaryCollector collector = new TransactionNameSummaryCollector();
+        aggregateDao.mergeTransactionNameSummariesInto(AGENT_ID, rollupSummaryQuery(),
+                SummarySortOrder.TOTAL_TIME, 10, collector);
+
+        // then
+        // the second interval is still pending in the rollup that closes at 30000
+        assertThat(overallAggregates).hasSize(1);
+        assertThat(overallAggregates.get(0).captureTime()).isEqualTo(15000);
+        assertThat(overallAggregates.get(0).transactionCount()).isEqualTo(10);
+        assertThat(overallAggregates.get(0).totalDurationNanos()).isEqualTo(1000000);
+        Result<TransactionNameSummary> queryResult =
+                collector.getResult(SummarySortOrder.TOTAL_TIME, 10);
+        assertThat(queryResult.records()).hasSize(3);
+        assertThat(queryResult.records().get(0).transactionName()).isEqualTo("seven");
+        assertThat(queryResult.records().get(0).transactionCount()).isEqualTo(7);
+    }
+
+    @Test
+    public void shouldRollupTransactionsStoredBeforeRestart() throws Exception {
+        // given
+        store(aggregateDao, 1000, 1);
+        store(aggregateDao, 2000, 2);
+        aggregateDao = newAggregateDao();
+
+        // when
+        store(aggregateDao, 16000, 4);
+
+        // then
+        List<OverviewAggregate> overallAggregates =
+                aggregateDao.readOverviewAggregates(AGENT_ID, rollupQuery());
+        assertThat(overallAggregates).hasSize(1);
+        assertThat(overallAggregates.get(0).captureTime()).isEqualTo(15000);
+        assertThat(overallAggregates.get(0).transactionCount()).isEqualTo(3);
+        TransactionNameSummaryCollector collector = new TransactionNameSummaryCollector();
+        aggregateDao.mergeTransactionNameSummariesInto(AGENT_ID, rollupSummaryQuery(),
+                SummarySortOrder.TOTAL_TIME, 10, collector);
+        Result<TransactionNameSummary> queryResult =
+                collector.getResult(SummarySortOrder.TOTAL_TIME, 10);
+        assertThat(queryResult.records()).hasSize(1);
+        assertThat(queryResult.records().get(0).transactionCount()).isEqualTo(3);
+    }
+
+    @Test
+    public void shouldNotRollupTransactionsStoredBeforeDeletingAllData() throws Exception {
+        // given
+        store(aggregateDao, 1000, 1);
+        store(aggregateDao, 2000, 2);
+        aggregateDao.invalidateBeforeDeletingDatabase();
+        // DataSource.deleteAll() is a no-op for the in-memory database used by this test
+        for (int i = 0; i < 3; i++) {
+            dataSource.execute("delete from aggregate_tt_rollup_" + i);
+            dataSource.execute("delete from aggregate_tn_rollup_" + i);
+        }
+        aggregateDao.reinitAfterDeletingDatabase();
+
+        // when
+        store(aggregateDao, 3000, 4);
+        store(aggregateDao, 16000, 8);
+
+        // then
+        List<OverviewAggregate> overallAggregates =
+                aggregateDao.readOverviewAggregates(AGENT_ID, rollupQuery());
+        assertThat(overallAggregates).hasSize(1);
+        assertThat(overallAggregates.get(0).captureTime()).isEqualTo(15000);
+        assertThat(overallAggregates.get(0).transactionCount()).isEqualTo(4);
+    }
+
     // also used by TransactionCommonServiceTest
     public void populateAggregates() throws Exception {
         aggregateDao.store(new AggregateReader() {
@@ -242,6 +315,54 @@ public class AggregateDaoTest {
         return aggregateDao;
     }
 
+    private AggregateDao newAggregateDao() throws Exception {
+        return new AggregateDao(
+                dataSource, ImmutableList.<CappedDatabase>of(cappedDatabase, cappedDatabase,
+                        cappedDatabase, cappedDatabase),
+                configRepository, mock(TransactionTypeDao.class), mock(FullQueryTextDao.class));
+    }
+
+    private static void store(AggregateDao aggregateDao, final long captureTime,
+            final long transactionCount) throws Exception {
+        aggregateDao.store(new AggregateReader() {
+            @Override
+            public long captureTime() {
+                return captureTime;
+            }
+            @Override
+            public void accept(AggregateVisitor aggregateVisitor) throws Exception {
+                Aggregate aggregate = Aggregate.newBuilder()
+                        .setTotalDurationNanos(100000 * transactionCount)
+                        .setTransactionCount(transactionCount)
+                        .addMainThreadRootTimer(getFakeRootTimer())
+                        .setDurationNanosHistogram(getFakeHistogram())
+                        .build();
+                aggregateVisitor.visitOverallAggregate("a type", new ArrayList<String>(),
+                        aggregate);
+                aggregateVisitor.visitTransactionAggregate("a type", "one",
+                        new ArrayList<String>(), aggregate);
+            }
+        });
+    }
+
+    private static AggregateQuery rollupQuery() {
+        return ImmutableAggregateQuery.builder()
+                .transactionType("a type")
+                .from(0)
+                .to(100000)
+                .rollupLevel(1)
+                .build();
+    }
+
+    private static SummaryQuery rollupSummaryQuery() {
+        return ImmutableSummaryQuery.builder()
+                .transactionType("a type")
+                .from(0)
+                .to(100000)
+                .rollupLevel(1)
+                .build();
+    }
+
     private static Aggregate.Timer getFakeRootTimer() {
         return Aggregate.Timer.newBuilder()
                 .setName("top")
@@ -20,6 +20,7 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
 import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.BeforeAll;
@@ -29,6 +30,7 @@ import org.glowroot.agent.collector.Collector.TraceReader;
 import org.glowroot.agent.embedded.util.CappedDatabase;
 import org.glowroot.agent.embedded.util.DataSource;
 import org.glowroot.common.live.ImmutableTracePointFilter;
+import org.glowroot.common.live.LiveTraceRepository.Entries;
 import org.glowroot.common.live.LiveTraceRepository.TracePoint;
 import org.glowroot.common.live.LiveTraceRepository.TracePointFilter;
 import org.glowroot.common.live.StringComparator;
@@ -358,6 +360,66 @@ public class TraceDaoTest {
         assertThat(count).isEqualTo(1);
     }
 
+    @Test
+    public void shouldReadIncrementalTraceEntries() throws Exception {
+        // given
+        String traceId = "abc";
+        Trace.Header header = TraceTestData.createTraceHeader().toBuilder()
+                .setPartial(true)
+                .build();
+        traceDao.store(TraceTestData.createTraceReader(traceId, header, false,
+                ImmutableList.of(TraceTestData.createTraceEntry("one"),
+                        TraceTestData.createTraceEntry("two")),
+                null));
+        traceDao.store(TraceTestData.createTraceReader(traceId, header, true,
+                ImmutableList.of(TraceTestData.createTraceEntry("two*"),
+                        TraceTestData.createTraceEntry("three")),
+                ImmutableList.of(1, 2)));
+        traceDao.store(TraceTestData.createTraceReader(traceId, header, true,
+                ImmutableList.of(TraceTestData.createTraceEntry("four")),
+                ImmutableList.of(3)));
+
+        // when
+        Entries entries = traceDao.readEntries(AGENT_ID, traceId);
+
+        // then
+        assertThat(entries).isNotNull();
+        assertThat(entries.entries()).hasSize(4);
+        assertThat(entries.entries().get(0).getMessage()).isEqualTo("one");
+        assertThat(entries.entries().get(1).getMessage()).isEqualTo("two*");
+        assertThat(entries.entries().get(2).getMessage()).isEqualTo("three");
+        assertThat(entries.entries().get(3).getMessage()).isEqualTo("four");
+    }
+
+    @Test
+    public void shouldReplaceIncrementalTraceEntriesOnFullStore() throws Exception {
+        // given
+        String traceId = "abc";
+        Trace.Header header = TraceTestData.createTraceHeader().toBuilder()
+                .setPartial(true)
+                .build();
+        traceDao.store(TraceTestData.createTraceReader(traceId, header, false,
+                ImmutableList.of(TraceTestData.createTraceEntry("one")), null));
+        traceDao.store(TraceTestData.createTraceReader(traceId, header, true,
+                ImmutableList.of(TraceTestData.createTraceEntry("two")), ImmutableList.of(1)));
+        traceDao.store(TraceTestData.createTraceReader(traceId,
+                TraceTestData.createTraceHeader(), true,
+                ImmutableList.of(TraceTestData.createTraceEntry("uno"),
+                        TraceTestData.createTraceEntry("dos"),
+                        TraceTestData.createTraceEntry("tres")),
+                null));
+
+        // when
+        Entries entries = traceDao.readEntries(AGENT_ID, traceId);
+
+        // then
+        assertThat(entries).isNotNull();
+        assertThat(entries.entries()).hasSize(3);
+        assertThat(entries.entries().get(0).getMessage()).isEqualTo("uno");
+        assertThat(entries.entries().get(1).getMessage()).isEqualTo("dos");
+        assertThat(entries.entries().get(2).getMessage()).isEqualTo("tres");
+    }
+
     @Test
     public void shouldDeletedTrace() throws Exception {
         // given
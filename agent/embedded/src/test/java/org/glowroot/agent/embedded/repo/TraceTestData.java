@@ -15,8 +15,12 @@
  */
 package org.glowroot.agent.embedded.repo;
 
+import java.util.List;
 import java.util.UUID;
 
+import com.google.common.collect.ImmutableList;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
 import org.glowroot.agent.collector.Collector.TraceReader;
 import org.glowroot.agent.collector.Collector.TraceVisitor;
 import org.glowroot.common.util.Styles;
@@ -35,6 +39,19 @@ class TraceTestData {
         return new TraceReaderImpl(header);
     }
 
+    // entryIndexes is null for a full (non-incremental) trace store
+    static TraceReader createTraceReader(String traceId, Trace.Header header, boolean update,
+            List<Trace.Entry> entries, @Nullable List<Integer> entryIndexes) {
+        return new TraceReaderImpl(traceId, header, update, entries, entryIndexes);
+    }
+
+    static Trace.Entry createTraceEntry(String message) {
+        return Trace.Entry.newBuilder()
+                .setDurationNanos(MILLISECONDS.toNanos(1))
+                .setMessage(message)
+                .build();
+    }
+
     static Trace.Header createTraceHeader() {
         return Trace.Header.newBuilder()
                 .setSlow(true)
@@ -69,10 +86,22 @@ class TraceTestData {
 
         private final String traceId;
         private final Trace.Header header;
+        private final boolean update;
+        private final List<Trace.Entry> entries;
+        private final @Nullable List<Integer> entryIndexes;
 
         private TraceReaderImpl(Trace.Header header) {
+            this(UUID.randomUUID().toString(), header, false, ImmutableList.<Trace.Entry>of(),
+                    null);
+        }
+
+        private TraceReaderImpl(String traceId, Trace.Header header, boolean update,
+                List<Trace.Entry> entries, @Nullable List<Integer> entryIndexes) {
+            this.traceId = traceId;
             this.header = header;
-            traceId = UUID.randomUUID().toString();
+            this.update = update;
+            this.entries = entries;
+            this.entryIndexes = entryIndexes;
         }
 
         @Override
@@ -87,16 +116,28 @@ class TraceTestData {
 
         @Override
         public boolean partial() {
-            return false;
+            return header.getPartial();
         }
 
         @Override
         public boolean update() {
-            return false;
+            return update;
+        }
+
+        @Override
+        public boolean incrementalEntries() {
+            return entryIndexes != null;
         }
 
         @Override
         public void accept(TraceVisitor traceVisitor) {
+            for (int i = 0; i < entries.size(); i++) {
+                if (entryIndexes == null) {
+                    traceVisitor.visitEntry(entries.get(i));
+                } else {
+                    traceVisitor.visitIncrementalEntry(entryIndexes.get(i), entries.get(i));
+                }
+            }
             traceVisitor.visitHeader(header);
         }
 
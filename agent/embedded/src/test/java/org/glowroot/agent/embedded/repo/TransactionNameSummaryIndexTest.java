@@ -0,0 +1,146 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.embedded.repo;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import org.glowroot.common.live.ImmutableSummaryQuery;
+import org.glowroot.common.live.LiveAggregateRepository.SummaryQuery;
+import org.glowroot.common.model.TransactionNameErrorSummaryCollector;
+import org.glowroot.common.model.TransactionNameErrorSummaryCollector.ErrorSummarySortOrder;
+import org.glowroot.common.model.TransactionNameErrorSummaryCollector.TransactionNameErrorSummary;
+import org.glowroot.common.model.TransactionNameSummaryCollector;
+import org.glowroot.common.model.TransactionNameSummaryCollector.SummarySortOrder;
+import org.glowroot.common.model.TransactionNameSummaryCollector.TransactionNameSummary;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TransactionNameSummaryIndexTest {
+
+    @Test
+    public void shouldMergeBucketsInRange() {
+        // given
+        TransactionNameSummaryIndex index = new TransactionNameSummaryIndex(new long[1], 100);
+        addBucket(index, 1000, "one", 10, 1, 0);
+        addBucket(index, 2000, "one", 20, 2, 1);
+        addBucket(index, 2000, "two", 100, 4, 0);
+        addBucket(index, 3000, "two", 1000, 8, 0);
+        TransactionNameSummaryCollector collector = new TransactionNameSummaryCollector();
+
+        // when
+        boolean covered = index.mergeTransactionNameSummariesInto(query(1000, 2000),
+                SummarySortOrder.TOTAL_TIME, 10, collector);
+
+        // then
+        assertThat(covered).isTrue();
+        List<TransactionNameSummary> records =
+                collector.getResult(SummarySortOrder.TOTAL_TIME, 10).records();
+        assertThat(records).hasSize(2);
+        assertThat(records.get(0).transactionName()).isEqualTo("two");
+        assertThat(records.get(0).totalDurationNanos()).isEqualTo(100);
+        assertThat(records.get(0).transactionCount()).isEqualTo(4);
+        assertThat(records.get(1).transactionName()).isEqualTo("one");
+        assertThat(records.get(1).totalDurationNanos()).isEqualTo(20);
+        assertThat(records.get(1).transactionCount()).isEqualTo(2);
+        assertThat(collector.getLastCaptureTime()).isEqualTo(2000);
+    }
+
+    @Test
+    public void shouldMergeOnlyTransactionNamesWithErrors() {
+        // given
+        TransactionNameSummaryIndex index = new TransactionNameSummaryIndex(new long[1], 100);
+        addBucket(index, 1000, "one", 10, 4, 1);
+        addBucket(index, 1000, "two", 10, 4, 0);
+        addBucket(index, 2000, "one", 10, 4, 2);
+        TransactionNameErrorSummaryCollector collector = new TransactionNameErrorSummaryCollector();
+
+        // when
+        boolean covered = index.mergeTransactionNameErrorSummariesInto(query(0, 2000),
+                ErrorSummarySortOrder.ERROR_COUNT, 10, collector);
+
+        // then
+        assertThat(covered).isTrue();
+        List<TransactionNameErrorSummary> records =
+                collector.getResult(ErrorSummarySortOrder.ERROR_COUNT, 10).records();
+        assertThat(records).hasSize(1);
+        assertThat(records.get(0).transactionName()).isEqualTo("one");
+        assertThat(records.get(0).errorCount()).isEqualTo(3);
+        assertThat(records.get(0).transactionCount()).isEqualTo(8);
+    }
+
+    @Test
+    public void shouldNotCoverDataStoredBeforeIndexWasCreated() {
+        // given
+        TransactionNameSummaryIndex index =
+                new TransactionNameSummaryIndex(new long[] {1000}, 100);
+        addBucket(index, 2000, "one", 10, 1, 0);
+
+        // when
+        boolean covered = index.mergeTransactionNameSummariesInto(query(0, 2000),
+                SummarySortOrder.TOTAL_TIME, 10, new TransactionNameSummaryCollector());
+        boolean coveredAfter = index.mergeTransactionNameSummariesInto(query(1000, 2000),
+                SummarySortOrder.TOTAL_TIME, 10, new TransactionNameSummaryCollector());
+
+        // then
+        assertThat(covered).isFalse();
+        assertThat(coveredAfter).isTrue();
+    }
+
+    @Test
+    public void shouldEvictOldestBucketsWhenOverMaxEntries() {
+        // given
+        TransactionNameSummaryIndex index = new TransactionNameSummaryIndex(new long[1], 2);
+        addBucket(index, 1000, "one", 10, 1, 0);
+        addBucket(index, 2000, "one", 10, 1, 0);
+        addBucket(index, 3000, "one", 10, 1, 0);
+        TransactionNameSummaryCollector collector = new TransactionNameSummaryCollector();
+
+        // when
+        boolean covered = index.mergeTransactionNameSummariesInto(query(0, 3000),
+                SummarySortOrder.TOTAL_TIME, 10, new TransactionNameSummaryCollector());
+        boolean coveredAfter = index.mergeTransactionNameSummariesInto(query(1000, 3000),
+                SummarySortOrder.TOTAL_TIME, 10, collector);
+
+        // then
+        assertThat(covered).isFalse();
+        assertThat(coveredAfter).isTrue();
+        List<TransactionNameSummary> records =
+                collector.getResult(SummarySortOrder.TOTAL_TIME, 10).records();
+        assertThat(records).hasSize(1);
+        assertThat(records.get(0).transactionCount()).isEqualTo(2);
+    }
+
+    private static void addBucket(TransactionNameSummaryIndex index, long captureTime,
+            String transactionName, double totalDurationNanos, long transactionCount,
+            long errorCount) {
+        TransactionNameSummaryIndex.BucketBuilder bucketBuilder =
+                index.newBucketBuilder(0, captureTime);
+        bucketBuilder.add("a type", transactionName, totalDurationNanos, 0, 0, transactionCount,
+                errorCount);
+        index.add(bucketBuilder);
+    }
+
+    private static SummaryQuery query(long from, long to) {
+        return ImmutableSummaryQuery.builder()
+                .transactionType("a type")
+                .from(from)
+                .to(to)
+                .rollupLevel(0)
+                .build();
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.embedded.util;
+
+import java.io.File;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.checkerframework.checker.tainting.qual.Untainted;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.glowroot.agent.embedded.util.DataSource.JdbcRowQuery;
+import org.glowroot.agent.embedded.util.DataSource.JdbcUpdate;
+import org.glowroot.agent.embedded.util.Schemas.ColumnType;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+// measures insert latency on a large pre-populated database while the UI is reading a long time
+// range, run with -Dglowroot.internal.h2.readConnections=0 to compare against a single connection
+public class DataSourceConcurrencyMain {
+
+    private static final Logger logger = LoggerFactory.getLogger(DataSourceConcurrencyMain.class);
+
+    private static final int ROWS = 1000000;
+    private static final int READER_THREADS = 2;
+    private static final int WRITES = 500;
+
+    private DataSourceConcurrencyMain() {}
+
+    public static void main(String[] args) throws Exception {
+        DataSource dataSource = new DataSource(new File("glowroot-concurrency.h2.db"));
+        dataSource.syncTable("aggregate", ImmutableList.of(
+                ImmutableColumn.of("capture_time", ColumnType.BIGINT),
+                ImmutableColumn.of("transaction_name", ColumnType.VARCHAR),
+                ImmutableColumn.of("total_duration_nanos", ColumnType.DOUBLE)));
+        dataSource.syncIndexes("aggregate", ImmutableList.<Schemas.Index>of(
+                ImmutableIndex.of("aggregate_idx", ImmutableList.of("capture_time"))));
+        if (dataSource.queryForLong("select count(*) from aggregate") == 0) {
+            populate(dataSource);
+        }
+        final DataSource finalDataSource = dataSource;
+        final AtomicBoolean done = new AtomicBoolean();
+        final AtomicInteger readCount = new AtomicInteger();
+        List<Thread> readers = Lists.newArrayList();
+        for (int i = 0; i < READER_THREADS; i++) {
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        while (!done.get()) {
+                            finalDataSource.query(new RangeQuery());
+                            readCount.incrementAndGet();
+                        }
+                    } catch (SQLException e) {
+                        logger.error(e.getMessage(), e);
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+        long[] latencies = new long[WRITES];
+        for (int i = 0; i < WRITES; i++) {
+            long startTime = System.nanoTime();
+            dataSource.update("insert into aggregate (capture_time, transaction_name,"
+                    + " total_duration_nanos) values (?, ?, ?)", ROWS + i, "new", 1.0);
+            latencies[i] = System.nanoTime() - startTime;
+            MILLISECONDS.sleep(10);
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        dataSource.update("delete from aggregate where capture_time >= ?", ROWS);
+        Arrays.sort(latencies);
+        logger.info("insert latency p50: {} ms, p99: {} ms, max: {} ms, reads: {}",
+                latencies[WRITES / 2] / 1000000.0, latencies[WRITES * 99 / 100] / 1000000.0,
+                latencies[WRITES - 1] / 1000000.0, readCount.get());
+        dataSource.close();
+    }
+
+    private static void populate(DataSource dataSource) throws Exception {
+        for (int i = 0; i < ROWS; i += 1000) {
+            final int batchStart = i;
+            dataSource.batchUpdate(new JdbcUpdate() {
+                @Override
+                public @Untainted String getSql() {
+                    return "insert into aggregate (capture_time, transaction_name,"
+                            + " total_duration_nanos) values (?, ?, ?)";
+                }
+                @Override
+                public void bind(PreparedStatement preparedStatement) throws SQLException {
+                    for (int j = batchStart; j < batchStart + 1000; j++) {
+                        preparedStatement.setLong(1, j);
+                        preparedStatement.setString(2, "transaction " + j % 500);
+                        preparedStatement.setDouble(3, j);
+                        preparedStatement.addBatch();
+                    }
+                }
+            });
+        }
+    }
+
+    private static class RangeQuery implements JdbcRowQuery<String> {
+
+        @Override
+        public @Untainted String getSql() {
+            return "select transaction_name, total_duration_nanos from aggregate where"
+                    + " capture_time > ? and capture_time <= ?";
+        }
+
+        @Override
+        public void bind(PreparedStatement preparedStatement) throws SQLException {
+            preparedStatement.setLong(1, ROWS / 2);
+            preparedStatement.setLong(2, ROWS / 2 + 20000);
+        }
+
+        @Override
+        public String mapRow(ResultSet resultSet) throws Exception {
+            // simulate the per row cost of merging aggregates (e.g. parsing histograms)
+            String transactionName = resultSet.getString(1);
+            long hash = 0;
+            for (int i = 0; i < 2000; i++) {
+                hash = 31 * hash + transactionName.hashCode() + i;
+            }
+            return transactionName + hash;
+        }
+    }
+}
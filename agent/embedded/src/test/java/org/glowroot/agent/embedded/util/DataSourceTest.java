@@ -15,11 +15,17 @@
  */
 package org.glowroot.agent.embedded.util;
 
+import java.io.File;
 import java.sql.SQLException;
 
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 
+import org.glowroot.agent.embedded.util.Schemas.ColumnType;
+
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -28,6 +34,36 @@ import static org.mockito.Mockito.when;
 
 public class DataSourceTest {
 
+    @Test
+    public void shouldQueryFileDatabase() throws Exception {
+        // given
+        File dataDir = Files.createTempDir();
+        DataSource dataSource = new DataSource(new File(dataDir, "data.h2.db"));
+        dataSource.syncTable("schema_version",
+                ImmutableList.of(ImmutableColumn.of("schema_version", ColumnType.BIGINT)));
+        dataSource.syncTable("tab",
+                ImmutableList.of(ImmutableColumn.of("a", ColumnType.VARCHAR),
+                        ImmutableColumn.of("b", ColumnType.BIGINT)));
+        dataSource.update("insert into tab (a, b) values (?, ?)", "x", 1);
+        // when
+        long count = dataSource.queryForLong("select count(*) from tab");
+        dataSource.update("insert into tab (a, b) values (?, ?)", "y", 2);
+        dataSource.defrag();
+        long sum = dataSource.queryForLong("select sum(b) from tab");
+        dataSource.deleteAll();
+        long countAfterDeleteAll = dataSource.queryForLong("select count(*) from tab");
+        // then
+        assertThat(count).isEqualTo(1);
+        assertThat(sum).isEqualTo(3);
+        assertThat(countAfterDeleteAll).isEqualTo(0);
+        // cleanup
+        dataSource.close();
+        for (File file : dataDir.listFiles()) {
+            file.delete();
+        }
+        dataDir.delete();
+    }
+
     @Test
     public void testDebugNoArgs() throws SQLException {
         // given
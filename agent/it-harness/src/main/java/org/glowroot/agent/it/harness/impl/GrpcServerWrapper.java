@@ -239,6 +239,9 @@ class GrpcServerWrapper {
                         case ENTRY:
                             entries.add(value.getEntry());
                             break;
+                        case ENTRIES:
+                            entries.addAll(value.getEntries().getEntryList());
+                            break;
                         case QUERIES:
                             queries.addAll(value.getQueries().getQueryList());
                             break;
@@ -248,6 +251,9 @@ class GrpcServerWrapper {
                         case AUX_THREAD_PROFILE:
                             auxThreadProfile = value.getAuxThreadProfile();
                             break;
+                        case ALLOCATION_PROFILE:
+                            // allocation profiles are not currently verified by the harness
+                            break;
                         case HEADER:
                             header = value.getHeader();
                             break;
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.plugin.kafka;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+
+import org.glowroot.agent.plugin.api.Agent;
+import org.glowroot.agent.plugin.api.Message;
+import org.glowroot.agent.plugin.api.MessageSupplier;
+import org.glowroot.agent.plugin.api.OptionalThreadContext;
+import org.glowroot.agent.plugin.api.TimerName;
+import org.glowroot.agent.plugin.api.TraceEntry;
+import org.glowroot.agent.plugin.api.checker.Nullable;
+import org.glowroot.agent.plugin.api.config.BooleanProperty;
+import org.glowroot.agent.plugin.api.config.ConfigService;
+import org.glowroot.agent.plugin.api.weaving.BindReceiver;
+import org.glowroot.agent.plugin.api.weaving.BindReturn;
+import org.glowroot.agent.plugin.api.weaving.BindThrowable;
+import org.glowroot.agent.plugin.api.weaving.BindTraveler;
+import org.glowroot.agent.plugin.api.weaving.Mixin;
+import org.glowroot.agent.plugin.api.weaving.OnBefore;
+import org.glowroot.agent.plugin.api.weaving.OnReturn;
+import org.glowroot.agent.plugin.api.weaving.OnThrow;
+import org.glowroot.agent.plugin.api.weaving.Pointcut;
+
+// kafka consumers typically poll in a loop on a dedicated thread, outside of any transaction, so
+// each non-empty batch of records returned from poll() is captured as a transaction which covers
+// the processing of the batch, i.e. until the next call to poll() (or close())
+//
+// there is nothing captured per record, so the per record path has no overhead (and no
+// allocations), which matters for high throughput consumers
+//
+// when poll() is called inside of an existing transaction, it is captured as a service call
+// instead
+//
+// the number of records per poll and the age of the oldest record in each batch (which
+// approximates the consumer lag) are captured as transaction attributes of the batch transaction,
+// or in the message of the poll service call when poll() is called inside of an existing
+// transaction
+public class ConsumerAspect {
+
+    private static final ConfigService configService = Agent.getConfigService("kafka");
+
+    private static final BooleanProperty captureBatchTransactions =
+            configService.getBooleanProperty("captureBatchTransactions");
+
+    // the field and method names are verbose since they will be mixed in to existing classes
+    @Mixin("org.apache.kafka.clients.consumer.Consumer")
+    public static class ConsumerImpl implements ConsumerMixin {
+
+        // kafka consumers are not thread safe, and so applications must already provide
+        // visibility when they (rarely) hand off consumers between threads
+        private transient @Nullable TraceEntry glowroot$batchTraceEntry;
+        private transient @Nullable String glowroot$topics;
+
+        @Override
+        public @Nullable TraceEntry glowroot$getBatchTraceEntry() {
+            return glowroot$batchTraceEntry;
+        }
+
+        @Override
+        public void glowroot$setBatchTraceEntry(@Nullable TraceEntry batchTraceEntry) {
+            glowroot$batchTraceEntry = batchTraceEntry;
+        }
+
+        @Override
+        public @Nullable String glowroot$getTopics() {
+            return glowroot$topics;
+        }
+
+        @Override
+        public void glowroot$setTopics(@Nullable String topics) {
+            glowroot$topics = topics;
+        }
+    }
+
+    // the method names are verbose since they will be mixed in to existing classes
+    public interface ConsumerMixin {
+
+        @Nullable
+        TraceEntry glowroot$getBatchTraceEntry();
+
+        void glowroot$setBatchTraceEntry(@Nullable TraceEntry batchTraceEntry);
+
+        @Nullable
+        String glowroot$getTopics();
+
+        void glowroot$setTopics(@Nullable String topics);
+    }
+
+    // the batch returned from the prior poll has been processed
+    //
+    // this is a separate advice (ordered before PollAdvice) so that PollAdvice binds the thread
+    // context after the batch transaction has ended, otherwise it would bind the thread context of
+    // the (just ended) batch transaction and a new batch transaction would not be started
+    @Pointcut(className = "org.apache.kafka.clients.consumer.Consumer", methodName = "poll",
+            methodParameterTypes = {"long|java.time.Duration"}, order = -1)
+    public static class EndBatchAdvice {
+
+        @OnBefore
+        public static void onBefore(@BindReceiver ConsumerMixin consumer) {
+            endBatch(consumer);
+        }
+    }
+
+    @Pointcut(className = "org.apache.kafka.clients.consumer.Consumer", methodName = "poll",
+            methodParameterTypes = {"long|java.time.Duration"}, nestingGroup = "kafka-poll",
+            timerName = "kafka poll")
+    public static class PollAdvice {
+
+        private static final TimerName timerName = Agent.getTimerName(PollAdvice.class);
+
+        private static final TimerName batchTimerName = Agent.getTimerName("kafka batch");
+
+        @OnBefore
+        public static @Nullable PollTraveler onBefore(OptionalThreadContext context,
+                @BindReceiver ConsumerMixin consumer) {
+            if (!context.isInTransaction()) {
+                return null;
+            }
+            PollMessageSupplier messageSupplier = new PollMessageSupplier(getTopics(consumer));
+            TraceEntry traceEntry = context.startServiceCallEntry("Kafka",
+                    "poll " + messageSupplier.topics, messageSupplier, timerName);
+            return new PollTraveler(traceEntry, messageSupplier);
+        }
+
+        @OnReturn
+        public static void onReturn(@BindReturn @Nullable ConsumerRecords<?, ?> records,
+                OptionalThreadContext context, @BindReceiver ConsumerMixin consumer,
+                @BindTraveler @Nullable PollTraveler traveler) {
+            int count = records == null ? 0 : records.count();
+            if (traveler != null) {
+                if (count != 0 && records != null) {
+                    traveler.messageSupplier.maxRecordAgeMillis = getMaxRecordAgeMillis(records);
+                }
+                traveler.messageSupplier.recordCount = count;
+                traveler.traceEntry.end();
+                return;
+            }
+            if (count == 0 || records == null || !captureBatchTransactions.value()) {
+                return;
+            }
+            String topics = getTopics(consumer);
+            TraceEntry traceEntry = context.startTransaction("Background",
+                    "Kafka consumer: " + topics,
+                    MessageSupplier.create("kafka batch: {} => {} records", topics,
+                            Integer.toString(count)),
+                    batchTimerName);
+            context.addTransactionAttribute("Kafka records", Integer.toString(count));
+            long maxRecordAgeMillis = getMaxRecordAgeMillis(records);
+            if (maxRecordAgeMillis != -1) {
+                context.addTransactionAttribute("Kafka max record age (ms)",
+                        Long.toString(maxRecordAgeMillis));
+            }
+            consumer.glowroot$setBatchTraceEntry(traceEntry);
+        }
+
+        @OnThrow
+        public static void onThrow(@BindThrowable Throwable t,
+                @BindTraveler @Nullable PollTraveler traveler) {
+            if (traveler != null) {
+                traveler.traceEntry.endWithError(t);
+            }
+        }
+    }
+
+    @Pointcut(className = "org.apache.kafka.clients.consumer.Consumer", methodName = "close",
+            methodParameterTypes = {".."}, nestingGroup = "kafka-close")
+    public static class CloseAdvice {
+
+        @OnBefore
+        public static void onBefore(@BindReceiver ConsumerMixin consumer) {
+            endBatch(consumer);
+        }
+    }
+
+    @Pointcut(className = "org.apache.kafka.clients.consumer.Consumer",
+            methodName = "subscribe|assign|unsubscribe", methodParameterTypes = {".."})
+    public static class SubscriptionAdvice {
+
+        @OnReturn
+        public static void onReturn(@BindReceiver ConsumerMixin consumer) {
+            // topics will be re-read on next poll
+            consumer.glowroot$setTopics(null);
+        }
+    }
+
+    private static void endBatch(ConsumerMixin consumer) {
+        TraceEntry batchTraceEntry = consumer.glowroot$getBatchTraceEntry();
+        if (batchTraceEntry != null) {
+            batchTraceEntry.end();
+            consumer.glowroot$setBatchTraceEntry(null);
+        }
+    }
+
+    private static String getTopics(ConsumerMixin consumer) {
+        String topics = consumer.glowroot$getTopics();
+        if (topics == null) {
+            Consumer<?, ?> kafkaConsumer = (Consumer<?, ?>) consumer;
+            Collection<String> subscription = kafkaConsumer.subscription();
+            if (subscription.isEmpty()) {
+                Set<String> assignedTopics = new TreeSet<String>();
+                for (TopicPartition topicPartition : kafkaConsumer.assignment()) {
+                    assignedTopics.add(topicPartition.topic());
+                }
+                subscription = assignedTopics;
+            }
+            topics = join(new TreeSet<String>(subscription));
+            consumer.glowroot$setTopics(topics);
+        }
+        return topics;
+    }
+
+    static String join(Set<String> topics) {
+        StringBuilder sb = new StringBuilder();
+        for (String topic : topics) {
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            sb.append(topic);
+        }
+        return sb.toString();
+    }
+
+    // the age of the oldest record in the batch approximates the consumer lag
+    //
+    // returns -1 if the records do not have timestamps
+    private static long getMaxRecordAgeMillis(ConsumerRecords<?, ?> records) {
+        long minTimestamp = Long.MAX_VALUE;
+        for (ConsumerRecord<?, ?> record : records) {
+            long timestamp = record.timestamp();
+            // timestamp is -1 when not available (e.g. older message format)
+            if (timestamp >= 0 && timestamp < minTimestamp) {
+                minTimestamp = timestamp;
+            }
+        }
+        if (minTimestamp == Long.MAX_VALUE) {
+            return -1;
+        }
+        return Math.max(0, System.currentTimeMillis() - minTimestamp);
+    }
+
+    private static class PollTraveler {
+
+        private final TraceEntry traceEntry;
+        private final PollMessageSupplier messageSupplier;
+
+        private PollTraveler(TraceEntry traceEntry, PollMessageSupplier messageSupplier) {
+            this.traceEntry = traceEntry;
+            this.messageSupplier = messageSupplier;
+        }
+    }
+
+    private static class PollMessageSupplier extends MessageSupplier {
+
+        private final String topics;
+        // maxRecordAgeMillis is written before recordCount, and read after it
+        private volatile long maxRecordAgeMillis = -1;
+        private volatile int recordCount = -1;
+
+        private PollMessageSupplier(String topics) {
+            this.topics = topics;
+        }
+
+        @Override
+        public Message get() {
+            int recordCount = this.recordCount;
+            if (recordCount == -1) {
+                return Message.create("kafka poll: {}", topics);
+            }
+            long maxRecordAgeMillis = this.maxRecordAgeMillis;
+            if (maxRecordAgeMillis == -1) {
+                return Message.create("kafka poll: {} => {} records", topics,
+                        Integer.toString(recordCount));
+            }
+            return Message.create("kafka poll: {} => {} records, max record age {} ms", topics,
+                    Integer.toString(recordCount), Long.toString(maxRecordAgeMillis));
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.plugin.kafka;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.common.TopicPartition;
+
+import org.glowroot.agent.plugin.api.Agent;
+import org.glowroot.agent.plugin.api.MessageSupplier;
+import org.glowroot.agent.plugin.api.OptionalThreadContext;
+import org.glowroot.agent.plugin.api.Timer;
+import org.glowroot.agent.plugin.api.TimerName;
+import org.glowroot.agent.plugin.api.TraceEntry;
+import org.glowroot.agent.plugin.api.checker.Nullable;
+import org.glowroot.agent.plugin.api.weaving.BindParameter;
+import org.glowroot.agent.plugin.api.weaving.BindThrowable;
+import org.glowroot.agent.plugin.api.weaving.BindTraveler;
+import org.glowroot.agent.plugin.api.weaving.OnBefore;
+import org.glowroot.agent.plugin.api.weaving.OnReturn;
+import org.glowroot.agent.plugin.api.weaving.OnThrow;
+import org.glowroot.agent.plugin.api.weaving.Pointcut;
+
+// spring kafka listener containers poll in a loop and then dispatch each record (or each batch, for
+// batch listeners) to the application's listener
+//
+// the container's poll is captured as a batch transaction (see ConsumerAspect), and each listener
+// invocation inside of it is only captured as a timer, so that the per record invocations are
+// coalesced into a single timer (with a count) instead of capturing a transaction per record,
+// which matters for high throughput consumers (and starting and stopping a timer does not allocate)
+//
+// when batch transactions are disabled, a transaction is captured per listener invocation instead
+public class ListenerContainerAspect {
+
+    private static final String LISTENER_CONSUMER_CLASS_NAME =
+            "org.springframework.kafka.listener.KafkaMessageListenerContainer$ListenerConsumer";
+
+    @Pointcut(className = LISTENER_CONSUMER_CLASS_NAME, methodName = "doInvokeRecordListener",
+            methodParameterTypes = {"org.apache.kafka.clients.consumer.ConsumerRecord", ".."},
+            nestingGroup = "kafka-listener", timerName = "kafka message")
+    public static class RecordListenerAdvice {
+
+        private static final TimerName timerName = Agent.getTimerName(RecordListenerAdvice.class);
+
+        // the traveler is either a Timer or a TraceEntry
+        @OnBefore
+        public static @Nullable Object onBefore(OptionalThreadContext context,
+                @BindParameter @Nullable ConsumerRecord<?, ?> record) {
+            if (context.isInTransaction()) {
+                return context.startTimer(timerName);
+            }
+            if (record == null) {
+                return null;
+            }
+            String topic = record.topic();
+            return context.startTransaction("Background", "Kafka consumer: " + topic,
+                    MessageSupplier.create("kafka message: {}", topic), timerName);
+        }
+
+        @OnReturn
+        public static void onReturn(@BindTraveler @Nullable Object traveler) {
+            end(traveler);
+        }
+
+        @OnThrow
+        public static void onThrow(@BindThrowable Throwable t, OptionalThreadContext context,
+                @BindTraveler @Nullable Object traveler) {
+            endWithError(t, context, traveler);
+        }
+    }
+
+    @Pointcut(className = LISTENER_CONSUMER_CLASS_NAME, methodName = "doInvokeBatchListener",
+            methodParameterTypes = {"org.apache.kafka.clients.consumer.ConsumerRecords", ".."},
+            nestingGroup = "kafka-listener", timerName = "kafka batch listener")
+    public static class BatchListenerAdvice {
+
+        private static final TimerName timerName = Agent.getTimerName(BatchListenerAdvice.class);
+
+        // the traveler is either a Timer or a TraceEntry
+        @OnBefore
+        public static @Nullable Object onBefore(OptionalThreadContext context,
+                @BindParameter @Nullable ConsumerRecords<?, ?> records) {
+            if (context.isInTransaction()) {
+                return context.startTimer(timerName);
+            }
+            if (records == null) {
+                return null;
+            }
+            Set<String> topics = new TreeSet<String>();
+            for (TopicPartition topicPartition : records.partitions()) {
+                topics.add(topicPartition.topic());
+            }
+            String joinedTopics = ConsumerAspect.join(topics);
+            String count = Integer.toString(records.count());
+            TraceEntry traceEntry = context.startTransaction("Background",
+                    "Kafka consumer: " + joinedTopics,
+                    MessageSupplier.create("kafka batch: {} => {} records", joinedTopics, count),
+                    timerName);
+            context.addTransactionAttribute("Kafka records", count);
+            return traceEntry;
+        }
+
+        @OnReturn
+        public static void onReturn(@BindTraveler @Nullable Object traveler) {
+            end(traveler);
+        }
+
+        @OnThrow
+        public static void onThrow(@BindThrowable Throwable t, OptionalThreadContext context,
+                @BindTraveler @Nullable Object traveler) {
+            endWithError(t, context, traveler);
+        }
+    }
+
+    private static void end(@Nullable Object traveler) {
+        if (traveler instanceof TraceEntry) {
+            ((TraceEntry) traveler).end();
+        } else if (traveler instanceof Timer) {
+            ((Timer) traveler).stop();
+        }
+    }
+
+    private static void endWithError(Throwable t, OptionalThreadContext context,
+            @Nullable Object traveler) {
+        if (traveler instanceof TraceEntry) {
+            ((TraceEntry) traveler).endWithError(t);
+        } else if (traveler instanceof Timer) {
+            ((Timer) traveler).stop();
+            // the error is recorded on the batch transaction
+            context.setTransactionError(t);
+        }
+    }
+}
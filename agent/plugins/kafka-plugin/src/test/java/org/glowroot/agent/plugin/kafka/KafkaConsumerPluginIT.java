@@ -0,0 +1,233 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.plugin.kafka;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.record.TimestampType;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import org.glowroot.agent.it.harness.AppUnderTest;
+import org.glowroot.agent.it.harness.Container;
+import org.glowroot.agent.it.harness.Containers;
+import org.glowroot.agent.it.harness.TransactionMarker;
+import org.glowroot.wire.api.model.TraceOuterClass.Trace;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// uses the in-jvm MockConsumer, so no kafka broker is needed
+public class KafkaConsumerPluginIT {
+
+    private static Container container;
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        container = Containers.create();
+    }
+
+    @AfterAll
+    public static void tearDown() throws Exception {
+        container.close();
+    }
+
+    @AfterEach
+    public void afterEachTest() throws Exception {
+        container.checkAndReset();
+    }
+
+    @Test
+    public void shouldCaptureBatchTransaction() throws Exception {
+        // when
+        Trace trace = container.execute(PollBatch.class, "Background");
+
+        // then
+        Trace.Header header = trace.getHeader();
+        assertThat(header.getTransactionName()).isEqualTo("Kafka consumer: demo");
+        assertThat(header.getHeadline()).isEqualTo("kafka batch: demo => 3 records");
+        // records created without a timestamp, so no max record age
+        assertThat(header.getAttributeList()).hasSize(1);
+        assertThat(header.getAttribute(0).getName()).isEqualTo("Kafka records");
+        assertThat(header.getAttribute(0).getValueList()).containsExactly("3");
+        assertThat(trace.getEntryList()).isEmpty();
+        assertThat(trace.getQueryList()).isEmpty();
+    }
+
+    @Test
+    public void shouldCaptureMaxRecordAge() throws Exception {
+        // when
+        Trace trace = container.execute(PollBatchWithTimestamps.class, "Background");
+
+        // then
+        Trace.Header header = trace.getHeader();
+        List<String> attributeNames = Lists.newArrayList();
+        for (Trace.Attribute attribute : header.getAttributeList()) {
+            attributeNames.add(attribute.getName());
+        }
+        assertThat(attributeNames).containsExactlyInAnyOrder("Kafka records",
+                "Kafka max record age (ms)");
+        assertThat(trace.getEntryList()).isEmpty();
+    }
+
+    @Test
+    public void shouldCaptureConsecutiveBatches() throws Exception {
+        // when
+        Trace trace = container.execute(PollConsecutiveBatches.class, "Background",
+                "Kafka consumer: other");
+
+        // then
+        assertThat(trace.getHeader().getHeadline()).isEqualTo("kafka batch: other => 2 records");
+    }
+
+    @Test
+    public void shouldNotCaptureEmptyBatch() throws Exception {
+        container.executeNoExpectedTrace(PollEmptyBatch.class);
+    }
+
+    @Test
+    public void shouldCapturePollInsideTransaction() throws Exception {
+        // when
+        Trace trace = container.execute(PollInsideTransaction.class);
+
+        // then
+        List<Trace.Timer> nestedTimers =
+                trace.getHeader().getMainThreadRootTimer().getChildTimerList();
+        assertThat(nestedTimers).hasSize(1);
+        assertThat(nestedTimers.get(0).getName()).isEqualTo("kafka poll");
+        List<Trace.Entry> entries = trace.getEntryList();
+        assertThat(entries).hasSize(1);
+        assertThat(entries.get(0).getMessage()).isEqualTo("kafka poll: demo => 1 records");
+        assertThat(trace.getQueryList()).isEmpty();
+    }
+
+    @Test
+    public void shouldCaptureMaxRecordAgeInsideTransaction() throws Exception {
+        // when
+        Trace trace = container.execute(PollWithTimestampsInsideTransaction.class);
+
+        // then
+        List<Trace.Entry> entries = trace.getEntryList();
+        assertThat(entries).hasSize(1);
+        assertThat(entries.get(0).getMessage())
+                .matches("kafka poll: demo => 1 records, max record age [0-9]+ ms");
+    }
+
+    private static MockConsumer<Long, String> createConsumer(int recordCount) {
+        return createConsumer(recordCount, ConsumerRecord.NO_TIMESTAMP);
+    }
+
+    private static MockConsumer<Long, String> createConsumer(int recordCount, long timestamp) {
+        MockConsumer<Long, String> consumer =
+                new MockConsumer<Long, String>(OffsetResetStrategy.EARLIEST);
+        TopicPartition topicPartition = new TopicPartition("demo", 0);
+        consumer.assign(Collections.singletonList(topicPartition));
+        consumer.updateBeginningOffsets(Collections.singletonMap(topicPartition, 0L));
+        for (int i = 0; i < recordCount; i++) {
+            consumer.addRecord(new ConsumerRecord<Long, String>("demo", 0, i, timestamp,
+                    TimestampType.CREATE_TIME, ConsumerRecord.NULL_CHECKSUM,
+                    ConsumerRecord.NULL_SIZE, ConsumerRecord.NULL_SIZE, (long) i, "value"));
+        }
+        return consumer;
+    }
+
+    public static class PollBatch implements AppUnderTest {
+        @Override
+        public void executeApp() throws Exception {
+            MockConsumer<Long, String> consumer = createConsumer(3);
+            consumer.poll(100);
+            consumer.close();
+        }
+    }
+
+    public static class PollBatchWithTimestamps implements AppUnderTest {
+        @Override
+        public void executeApp() throws Exception {
+            MockConsumer<Long, String> consumer =
+                    createConsumer(3, System.currentTimeMillis() - 1000);
+            consumer.poll(100);
+            consumer.close();
+        }
+    }
+
+    public static class PollConsecutiveBatches implements AppUnderTest {
+        @Override
+        public void executeApp() throws Exception {
+            MockConsumer<Long, String> consumer = createConsumer(3);
+            consumer.poll(100);
+            TopicPartition topicPartition = new TopicPartition("other", 0);
+            consumer.assign(Collections.singletonList(topicPartition));
+            consumer.updateBeginningOffsets(Collections.singletonMap(topicPartition, 0L));
+            for (int i = 0; i < 2; i++) {
+                consumer.addRecord(
+                        new ConsumerRecord<Long, String>("other", 0, i, (long) i, "value"));
+            }
+            consumer.poll(100);
+            consumer.close();
+        }
+    }
+
+    public static class PollEmptyBatch implements AppUnderTest {
+        @Override
+        public void executeApp() throws Exception {
+            MockConsumer<Long, String> consumer = createConsumer(0);
+            consumer.poll(100);
+            consumer.close();
+        }
+    }
+
+    public static class PollInsideTransaction implements AppUnderTest, TransactionMarker {
+
+        private MockConsumer<Long, String> consumer;
+
+        @Override
+        public void executeApp() throws Exception {
+            consumer = createConsumer(1);
+            transactionMarker();
+            consumer.close();
+        }
+
+        @Override
+        public void transactionMarker() throws Exception {
+            consumer.poll(100);
+        }
+    }
+
+    public static class PollWithTimestampsInsideTransaction
+            implements AppUnderTest, TransactionMarker {
+
+        private MockConsumer<Long, String> consumer;
+
+        @Override
+        public void executeApp() throws Exception {
+            consumer = createConsumer(1, System.currentTimeMillis() - 1000);
+            transactionMarker();
+            consumer.close();
+        }
+
+        @Override
+        public void transactionMarker() throws Exception {
+            consumer.poll(100);
+        }
+    }
+}
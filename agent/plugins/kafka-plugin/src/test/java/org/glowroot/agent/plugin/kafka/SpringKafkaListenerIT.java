@@ -0,0 +1,203 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.plugin.kafka;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.listener.BatchMessageListener;
+import org.springframework.kafka.listener.KafkaMessageListenerContainer;
+import org.springframework.kafka.listener.MessageListener;
+import org.springframework.kafka.listener.config.ContainerProperties;
+import org.springframework.kafka.support.TopicPartitionInitialOffset;
+
+import org.glowroot.agent.it.harness.AppUnderTest;
+import org.glowroot.agent.it.harness.Container;
+import org.glowroot.agent.it.harness.Containers;
+import org.glowroot.wire.api.model.TraceOuterClass.Trace;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// uses a spring kafka listener container on top of the in-jvm MockConsumer, so no kafka broker is
+// needed
+public class SpringKafkaListenerIT {
+
+    private static Container container;
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        container = Containers.create();
+    }
+
+    @AfterAll
+    public static void tearDown() throws Exception {
+        container.close();
+    }
+
+    @AfterEach
+    public void afterEachTest() throws Exception {
+        container.checkAndReset();
+    }
+
+    @Test
+    public void shouldCoalesceRecordListenerInvocations() throws Exception {
+        // when
+        Trace trace = container.execute(RecordListener.class, "Background");
+
+        // then
+        Trace.Header header = trace.getHeader();
+        assertThat(header.getTransactionName()).isEqualTo("Kafka consumer: demo");
+        assertThat(header.getHeadline()).isEqualTo("kafka batch: demo => 3 records");
+        Trace.Timer rootTimer = header.getMainThreadRootTimer();
+        assertThat(rootTimer.getName()).isEqualTo("kafka batch");
+        Trace.Timer listenerTimer = findChildTimer(rootTimer, "kafka message");
+        assertThat(listenerTimer).isNotNull();
+        assertThat(listenerTimer.getCount()).isEqualTo(3);
+        // nothing captured per record
+        assertThat(trace.getEntryList()).isEmpty();
+    }
+
+    @Test
+    public void shouldCaptureBatchListenerInvocation() throws Exception {
+        // when
+        Trace trace = container.execute(BatchListener.class, "Background");
+
+        // then
+        Trace.Header header = trace.getHeader();
+        assertThat(header.getTransactionName()).isEqualTo("Kafka consumer: demo");
+        Trace.Timer listenerTimer =
+                findChildTimer(header.getMainThreadRootTimer(), "kafka batch listener");
+        assertThat(listenerTimer).isNotNull();
+        assertThat(listenerTimer.getCount()).isEqualTo(1);
+    }
+
+    private static Trace.Timer findChildTimer(Trace.Timer timer, String name) {
+        for (Trace.Timer childTimer : timer.getChildTimerList()) {
+            if (childTimer.getName().equals(name)) {
+                return childTimer;
+            }
+        }
+        return null;
+    }
+
+    private static void runContainer(Object messageListener, CountDownLatch latch)
+            throws Exception {
+        ContainerProperties containerProperties =
+                new ContainerProperties(new TopicPartitionInitialOffset("demo", 0, 0L));
+        containerProperties.setMessageListener(messageListener);
+        containerProperties.setPollTimeout(100);
+        KafkaMessageListenerContainer<Long, String> listenerContainer =
+                new KafkaMessageListenerContainer<Long, String>(new MockConsumerFactory(3),
+                        containerProperties);
+        listenerContainer.start();
+        try {
+            assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            // stopping the container closes the consumer, which ends the batch transaction
+            listenerContainer.stop();
+        }
+    }
+
+    public static class RecordListener implements AppUnderTest {
+        @Override
+        public void executeApp() throws Exception {
+            final CountDownLatch latch = new CountDownLatch(3);
+            runContainer(new MessageListener<Long, String>() {
+                @Override
+                public void onMessage(ConsumerRecord<Long, String> record) {
+                    latch.countDown();
+                }
+            }, latch);
+        }
+    }
+
+    public static class BatchListener implements AppUnderTest {
+        @Override
+        public void executeApp() throws Exception {
+            final CountDownLatch latch = new CountDownLatch(1);
+            runContainer(new BatchMessageListener<Long, String>() {
+                @Override
+                public void onMessage(List<ConsumerRecord<Long, String>> records) {
+                    latch.countDown();
+                }
+            }, latch);
+        }
+    }
+
+    private static class MockConsumerFactory implements ConsumerFactory<Long, String> {
+
+        private final int recordCount;
+
+        private MockConsumerFactory(int recordCount) {
+            this.recordCount = recordCount;
+        }
+
+        @Override
+        public Consumer<Long, String> createConsumer() {
+            MockConsumer<Long, String> consumer =
+                    new MockConsumer<Long, String>(OffsetResetStrategy.EARLIEST);
+            TopicPartition topicPartition = new TopicPartition("demo", 0);
+            // records can only be added to an assigned partition, the container re-assigns the
+            // same partition when it starts
+            consumer.assign(Collections.singletonList(topicPartition));
+            consumer.updateBeginningOffsets(Collections.singletonMap(topicPartition, 0L));
+            for (int i = 0; i < recordCount; i++) {
+                consumer.addRecord(
+                        new ConsumerRecord<Long, String>("demo", 0, i, (long) i, "value"));
+            }
+            return consumer;
+        }
+
+        @Override
+        public Consumer<Long, String> createConsumer(String clientIdSuffix) {
+            return createConsumer();
+        }
+
+        @Override
+        public Consumer<Long, String> createConsumer(String groupId, String clientIdSuffix) {
+            return createConsumer();
+        }
+
+        @Override
+        public Consumer<Long, String> createConsumer(String groupId, String clientIdPrefix,
+                String clientIdSuffix) {
+            return createConsumer();
+        }
+
+        @Override
+        public boolean isAutoCommit() {
+            return false;
+        }
+
+        @Override
+        public Map<String, Object> getConfigurationProperties() {
+            return Collections.emptyMap();
+        }
+    }
+}
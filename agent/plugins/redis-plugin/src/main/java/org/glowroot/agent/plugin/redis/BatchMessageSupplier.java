@@ -0,0 +1,61 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.plugin.redis;
+
+import org.glowroot.agent.plugin.api.Message;
+import org.glowroot.agent.plugin.api.MessageSupplier;
+import org.glowroot.agent.plugin.api.checker.Nullable;
+
+// pipelined (and multi/exec) commands are coalesced into a single trace entry per batch, both to
+// keep the per command overhead small and to avoid blowing past maxTraceEntriesPerTransaction
+class BatchMessageSupplier extends MessageSupplier {
+
+    private final @Nullable String address;
+    private final String batchKind;
+
+    // only updated by the thread building the batch
+    private volatile int commandCount;
+
+    BatchMessageSupplier(@Nullable String address, String batchKind, int commandCount) {
+        this.address = address;
+        this.batchKind = batchKind;
+        this.commandCount = commandCount;
+    }
+
+    void incrementCommandCount() {
+        commandCount++;
+    }
+
+    @Override
+    public Message get() {
+        String commandCount = Integer.toString(this.commandCount);
+        if (address == null) {
+            return Message.create("redis {} => {} commands", batchKind, commandCount);
+        } else {
+            return Message.create("redis {} {} => {} commands", address, batchKind,
+                    commandCount);
+        }
+    }
+
+    static MessageSupplier createCommandMessageSupplier(@Nullable String address,
+            String command) {
+        if (address == null) {
+            return MessageSupplier.create("redis {}", command);
+        } else {
+            return MessageSupplier.create("redis {} {}", address, command);
+        }
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.plugin.redis;
+
+import redis.clients.jedis.Connection;
+
+import org.glowroot.agent.plugin.api.Agent;
+import org.glowroot.agent.plugin.api.OptionalThreadContext;
+import org.glowroot.agent.plugin.api.ThreadContext;
+import org.glowroot.agent.plugin.api.TimerName;
+import org.glowroot.agent.plugin.api.TraceEntry;
+import org.glowroot.agent.plugin.api.checker.Nullable;
+import org.glowroot.agent.plugin.api.weaving.BindParameter;
+import org.glowroot.agent.plugin.api.weaving.BindReceiver;
+import org.glowroot.agent.plugin.api.weaving.BindThrowable;
+import org.glowroot.agent.plugin.api.weaving.BindTraveler;
+import org.glowroot.agent.plugin.api.weaving.Mixin;
+import org.glowroot.agent.plugin.api.weaving.OnBefore;
+import org.glowroot.agent.plugin.api.weaving.OnReturn;
+import org.glowroot.agent.plugin.api.weaving.OnThrow;
+import org.glowroot.agent.plugin.api.weaving.Pointcut;
+
+public class JedisAspect {
+
+    private static final String PIPELINE = "pipeline";
+    private static final String MULTI = "multi";
+
+    // the field and method names are verbose since they will be mixed in to existing classes
+    @Mixin("redis.clients.jedis.Connection")
+    public static class ConnectionImpl implements ConnectionMixin {
+
+        // jedis connections are not thread safe, so no need for volatile
+        private transient @Nullable String glowroot$batchKind;
+        private transient int glowroot$batchCommandCount;
+
+        @Override
+        public @Nullable String glowroot$getBatchKind() {
+            return glowroot$batchKind;
+        }
+
+        @Override
+        public void glowroot$startBatch(String batchKind) {
+            glowroot$batchKind = batchKind;
+            glowroot$batchCommandCount = 0;
+        }
+
+        @Override
+        public void glowroot$incrementBatchCommandCount() {
+            glowroot$batchCommandCount++;
+        }
+
+        @Override
+        public int glowroot$endBatch() {
+            int batchCommandCount = glowroot$batchCommandCount;
+            glowroot$batchKind = null;
+            glowroot$batchCommandCount = 0;
+            return batchCommandCount;
+        }
+    }
+
+    // the field and method names are verbose since they will be mixed in to existing classes
+    @Mixin("redis.clients.jedis.MultiKeyPipelineBase")
+    public static class PipelineBaseImpl implements PipelineBaseMixin {
+
+        private transient @Nullable ConnectionMixin glowroot$connection;
+
+        @Override
+        public @Nullable ConnectionMixin glowroot$getConnection() {
+            return glowroot$connection;
+        }
+
+        @Override
+        public void glowroot$setConnection(@Nullable ConnectionMixin connection) {
+            glowroot$connection = connection;
+        }
+    }
+
+    // the method names are verbose since they will be mixed in to existing classes
+    public interface ConnectionMixin {
+
+        @Nullable
+        String glowroot$getBatchKind();
+
+        void glowroot$startBatch(String batchKind);
+
+        void glowroot$incrementBatchCommandCount();
+
+        int glowroot$endBatch();
+    }
+
+    // the method names are verbose since they will be mixed in to existing classes
+    public interface PipelineBaseMixin {
+
+        @Nullable
+        ConnectionMixin glowroot$getConnection();
+
+        void glowroot$setConnection(@Nullable ConnectionMixin connection);
+    }
+
+    @Pointcut(className = "redis.clients.jedis.Connection", methodName = "sendCommand",
+            methodParameterTypes = {"*", ".."}, nestingGroup = "redis", timerName = "redis")
+    public static class SendCommandAdvice {
+
+        private static final TimerName timerName = Agent.getTimerName(SendCommandAdvice.class);
+
+        @OnBefore
+        public static @Nullable TraceEntry onBefore(ThreadContext context,
+                @BindReceiver ConnectionMixin connection,
+                @BindParameter @Nullable Object command) {
+            if (connection.glowroot$getBatchKind() != null) {
+                // pipelined commands are only written to the output buffer here, the trace entry
+                // is captured when the batch is sent and the replies are read
+                connection.glowroot$incrementBatchCommandCount();
+                return null;
+            }
+            return context.startTraceEntry(BatchMessageSupplier.createCommandMessageSupplier(
+                    getAddress(connection), String.valueOf(command)), timerName);
+        }
+
+        @OnReturn
+        public static void onReturn(@BindTraveler @Nullable TraceEntry traceEntry) {
+            if (traceEntry != null) {
+                traceEntry.end();
+            }
+        }
+
+        @OnThrow
+        public static void onThrow(@BindThrowable Throwable t,
+                @BindTraveler @Nullable TraceEntry traceEntry) {
+            if (traceEntry != null) {
+                traceEntry.endWithError(t);
+            }
+        }
+    }
+
+    @Pointcut(className = "redis.clients.jedis.Pipeline", methodName = "setClient",
+            methodParameterTypes = {"redis.clients.jedis.Client"})
+    public static class PipelineSetClientAdvice {
+
+        @OnReturn
+        public static void onReturn(@BindReceiver PipelineBaseMixin pipeline,
+                @BindParameter @Nullable ConnectionMixin connection) {
+            pipeline.glowroot$setConnection(connection);
+            if (connection != null) {
+                connection.glowroot$startBatch(PIPELINE);
+            }
+        }
+    }
+
+    // the pipeline can continue to be used after sync(), in which case batching is resumed here,
+    // since every single key pipeline command goes through getClient()
+    @Pointcut(className = "redis.clients.jedis.Pipeline", methodName = "getClient",
+            methodParameterTypes = {".."})
+    public static class PipelineGetClientAdvice {
+
+        @OnBefore
+        public static void onBefore(@BindReceiver PipelineBaseMixin pipeline) {
+            ConnectionMixin connection = pipeline.glowroot$getConnection();
+            if (connection != null && connection.glowroot$getBatchKind() == null) {
+                connection.glowroot$startBatch(PIPELINE);
+            }
+        }
+    }
+
+    @Pointcut(className = "redis.clients.jedis.Pipeline", methodName = "sync|syncAndReturnAll",
+            methodParameterTypes = {}, nestingGroup = "redis", timerName = "redis")
+    public static class PipelineSyncAdvice {
+
+        private static final TimerName timerName = Agent.getTimerName(PipelineSyncAdvice.class);
+
+        @OnBefore
+        public static @Nullable TraceEntry onBefore(OptionalThreadContext context,
+                @BindReceiver PipelineBaseMixin pipeline) {
+            return startBatchEntry(context, pipeline, PIPELINE, timerName);
+        }
+
+        @OnReturn
+        public static void onReturn(@BindTraveler @Nullable TraceEntry traceEntry) {
+            if (traceEntry != null) {
+                traceEntry.end();
+            }
+        }
+
+        @OnThrow
+        public static void onThrow(@BindThrowable Throwable t,
+                @BindTraveler @Nullable TraceEntry traceEntry) {
+            if (traceEntry != null) {
+                traceEntry.endWithError(t);
+            }
+        }
+    }
+
+    @Pointcut(className = "redis.clients.jedis.Transaction", methodName = "<init>",
+            methodParameterTypes = {"redis.clients.jedis.Client"})
+    public static class TransactionInitAdvice {
+
+        @OnReturn
+        public static void onReturn(@BindReceiver PipelineBaseMixin transaction,
+                @BindParameter @Nullable ConnectionMixin connection) {
+            transaction.glowroot$setConnection(connection);
+            if (connection != null) {
+                connection.glowroot$startBatch(MULTI);
+            }
+        }
+    }
+
+    @Pointcut(className = "redis.clients.jedis.Transaction",
+            methodName = "exec|execGetResponse|discard", methodParameterTypes = {},
+            nestingGroup = "redis", timerName = "redis")
+    public static class TransactionExecAdvice {
+
+        private static final TimerName timerName =
+                Agent.getTimerName(TransactionExecAdvice.class);
+
+        @OnBefore
+        public static @Nullable TraceEntry onBefore(OptionalThreadContext context,
+                @BindReceiver PipelineBaseMixin transaction) {
+            return startBatchEntry(context, transaction, MULTI, timerName);
+        }
+
+        @OnReturn
+        public static void onReturn(@BindTraveler @Nullable TraceEntry traceEntry) {
+            if (traceEntry != null) {
+                traceEntry.end();
+            }
+        }
+
+        @OnThrow
+        public static void onThrow(@BindThrowable Throwable t,
+                @BindTraveler @Nullable TraceEntry traceEntry) {
+            if (traceEntry != null) {
+                traceEntry.endWithError(t);
+            }
+        }
+    }
+
+    // close() syncs any remaining pipelined commands (or discards the transaction) first, which is
+    // why batching is ended after close()
+    @Pointcut(className = "redis.clients.jedis.Pipeline|redis.clients.jedis.Transaction",
+            methodName = "close|clear", methodParameterTypes = {})
+    public static class CloseAdvice {
+
+        @OnReturn
+        public static void onReturn(@BindReceiver PipelineBaseMixin pipeline) {
+            ConnectionMixin connection = pipeline.glowroot$getConnection();
+            if (connection != null) {
+                connection.glowroot$endBatch();
+            }
+        }
+    }
+
+    private static @Nullable TraceEntry startBatchEntry(OptionalThreadContext context,
+            PipelineBaseMixin pipeline, String batchKind, TimerName timerName) {
+        ConnectionMixin connection = pipeline.glowroot$getConnection();
+        if (connection == null) {
+            return null;
+        }
+        int commandCount = connection.glowroot$endBatch();
+        if (commandCount == 0 || !context.isInTransaction()) {
+            return null;
+        }
+        return context.startTraceEntry(
+                new BatchMessageSupplier(getAddress(connection), batchKind, commandCount),
+                timerName);
+    }
+
+    private static String getAddress(ConnectionMixin connection) {
+        Connection jedisConnection = (Connection) connection;
+        return jedisConnection.getHost() + ":" + jedisConnection.getPort();
+    }
+}
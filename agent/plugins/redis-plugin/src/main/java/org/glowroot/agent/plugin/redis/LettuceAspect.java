@@ -0,0 +1,477 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.plugin.redis;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.lettuce.core.RedisURI;
+import io.lettuce.core.protocol.AsyncCommand;
+import io.lettuce.core.protocol.RedisCommand;
+
+import org.glowroot.agent.plugin.api.Agent;
+import org.glowroot.agent.plugin.api.AsyncTraceEntry;
+import org.glowroot.agent.plugin.api.ThreadContext;
+import org.glowroot.agent.plugin.api.Timer;
+import org.glowroot.agent.plugin.api.TimerName;
+import org.glowroot.agent.plugin.api.checker.NonNull;
+import org.glowroot.agent.plugin.api.checker.Nullable;
+import org.glowroot.agent.plugin.api.weaving.BindParameter;
+import org.glowroot.agent.plugin.api.weaving.BindParameterArray;
+import org.glowroot.agent.plugin.api.weaving.BindReceiver;
+import org.glowroot.agent.plugin.api.weaving.BindThrowable;
+import org.glowroot.agent.plugin.api.weaving.BindTraveler;
+import org.glowroot.agent.plugin.api.weaving.IsEnabled;
+import org.glowroot.agent.plugin.api.weaving.Mixin;
+import org.glowroot.agent.plugin.api.weaving.OnAfter;
+import org.glowroot.agent.plugin.api.weaving.OnBefore;
+import org.glowroot.agent.plugin.api.weaving.OnReturn;
+import org.glowroot.agent.plugin.api.weaving.OnThrow;
+import org.glowroot.agent.plugin.api.weaving.Pointcut;
+
+// lettuce commands are asynchronous all the way down (the sync api waits on the async command), so
+// each command is captured as an async trace entry which is ended when the command completes
+//
+// commands that are dispatched while auto flush is disabled (manual pipelining), or between MULTI
+// and EXEC, are coalesced into a single async trace entry per batch
+public class LettuceAspect {
+
+    private static final String PIPELINE = "pipeline";
+    private static final String MULTI = "multi";
+
+    // the field and method names are verbose since they will be mixed in to existing classes
+    @Mixin("io.lettuce.core.RedisChannelHandler")
+    public static class ChannelHandlerImpl implements ChannelHandlerMixin {
+
+        private transient volatile @Nullable String glowroot$address;
+        private transient volatile boolean glowroot$autoFlushDisabled;
+        private transient volatile boolean glowroot$inMulti;
+        private transient volatile @Nullable Object glowroot$batch;
+
+        @Override
+        public @Nullable String glowroot$getAddress() {
+            return glowroot$address;
+        }
+
+        @Override
+        public void glowroot$setAddress(@Nullable String address) {
+            glowroot$address = address;
+        }
+
+        @Override
+        public boolean glowroot$isAutoFlushDisabled() {
+            return glowroot$autoFlushDisabled;
+        }
+
+        @Override
+        public void glowroot$setAutoFlushDisabled(boolean autoFlushDisabled) {
+            glowroot$autoFlushDisabled = autoFlushDisabled;
+        }
+
+        @Override
+        public boolean glowroot$isInMulti() {
+            return glowroot$inMulti;
+        }
+
+        @Override
+        public void glowroot$setInMulti(boolean inMulti) {
+            glowroot$inMulti = inMulti;
+        }
+
+        @Override
+        public @Nullable Object glowroot$getBatch() {
+            return glowroot$batch;
+        }
+
+        @Override
+        public void glowroot$setBatch(@Nullable Object batch) {
+            glowroot$batch = batch;
+        }
+    }
+
+    // the field and method names are verbose since they will be mixed in to existing classes
+    @Mixin("io.lettuce.core.protocol.AsyncCommand")
+    public static class AsyncCommandImpl implements AsyncCommandMixin {
+
+        private transient volatile @Nullable AsyncTraceEntry glowroot$asyncTraceEntry;
+        private transient volatile @Nullable Object glowroot$batch;
+
+        @Override
+        public @Nullable AsyncTraceEntry glowroot$getAsyncTraceEntry() {
+            return glowroot$asyncTraceEntry;
+        }
+
+        @Override
+        public void glowroot$setAsyncTraceEntry(@Nullable AsyncTraceEntry asyncTraceEntry) {
+            glowroot$asyncTraceEntry = asyncTraceEntry;
+        }
+
+        @Override
+        public @Nullable Object glowroot$getBatch() {
+            return glowroot$batch;
+        }
+
+        @Override
+        public void glowroot$setBatch(@Nullable Object batch) {
+            glowroot$batch = batch;
+        }
+    }
+
+    // the method names are verbose since they will be mixed in to existing classes
+    public interface ChannelHandlerMixin {
+
+        @Nullable
+        String glowroot$getAddress();
+
+        void glowroot$setAddress(@Nullable String address);
+
+        boolean glowroot$isAutoFlushDisabled();
+
+        void glowroot$setAutoFlushDisabled(boolean autoFlushDisabled);
+
+        boolean glowroot$isInMulti();
+
+        void glowroot$setInMulti(boolean inMulti);
+
+        // typed as Object since mixin interfaces are not renamed along with the other plugin
+        // classes when the plugin is collocated
+        @Nullable
+        Object glowroot$getBatch();
+
+        void glowroot$setBatch(@Nullable Object batch);
+    }
+
+    // the method names are verbose since they will be mixed in to existing classes
+    public interface AsyncCommandMixin {
+
+        @Nullable
+        AsyncTraceEntry glowroot$getAsyncTraceEntry();
+
+        void glowroot$setAsyncTraceEntry(@Nullable AsyncTraceEntry asyncTraceEntry);
+
+        @Nullable
+        Object glowroot$getBatch();
+
+        void glowroot$setBatch(@Nullable Object batch);
+    }
+
+    // the redis uri is not retained by the connection, so it is captured here, binding the
+    // parameter array since the signature of this (private) method varies across lettuce versions
+    @Pointcut(className = "io.lettuce.core.RedisClient", methodName = "connectStatefulAsync",
+            methodParameterTypes = {"io.lettuce.core.StatefulRedisConnectionImpl", ".."})
+    public static class ConnectAdvice {
+
+        @OnBefore
+        public static void onBefore(@BindParameterArray Object[] args) {
+            if (args.length == 0 || !(args[0] instanceof ChannelHandlerMixin)) {
+                return;
+            }
+            ChannelHandlerMixin connection = (ChannelHandlerMixin) args[0];
+            for (Object arg : args) {
+                if (arg instanceof RedisURI) {
+                    RedisURI redisURI = (RedisURI) arg;
+                    String host = redisURI.getHost();
+                    if (host != null) {
+                        connection.glowroot$setAddress(host + ":" + redisURI.getPort());
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    @Pointcut(className = "io.lettuce.core.RedisChannelHandler",
+            methodName = "setAutoFlushCommands", methodParameterTypes = {"boolean"})
+    public static class SetAutoFlushCommandsAdvice {
+
+        @OnReturn
+        public static void onReturn(@BindReceiver ChannelHandlerMixin connection,
+                @BindParameter boolean autoFlush) {
+            connection.glowroot$setAutoFlushDisabled(!autoFlush);
+        }
+    }
+
+    @Pointcut(className = "io.lettuce.core.RedisChannelHandler", methodName = "flushCommands",
+            methodParameterTypes = {})
+    public static class FlushCommandsAdvice {
+
+        @OnBefore
+        public static void onBefore(@BindReceiver ChannelHandlerMixin connection) {
+            if (connection.glowroot$isInMulti()) {
+                // the batch is closed by EXEC (or DISCARD)
+                return;
+            }
+            closeBatch(connection);
+        }
+    }
+
+    @Pointcut(className = "io.lettuce.core.RedisChannelHandler", methodName = "dispatch",
+            methodParameterTypes = {"io.lettuce.core.protocol.RedisCommand"},
+            nestingGroup = "redis", timerName = "redis")
+    public static class DispatchAdvice {
+
+        private static final TimerName timerName = Agent.getTimerName(DispatchAdvice.class);
+
+        @OnBefore
+        public static @Nullable AsyncTraceEntry onBefore(ThreadContext context,
+                @BindReceiver ChannelHandlerMixin connection,
+                @BindParameter @Nullable Object command) {
+            if (!(command instanceof AsyncCommandMixin)) {
+                // e.g. reactive api commands
+                return null;
+            }
+            // the command has not been written yet, so it cannot complete before the async trace
+            // entry (or batch) is set on it below
+            AsyncCommandMixin asyncCommand = (AsyncCommandMixin) command;
+            String commandName = ((RedisCommand<?, ?, ?>) command).getType().name();
+            if (commandName.equals("MULTI")) {
+                closeBatch(connection);
+                connection.glowroot$setInMulti(true);
+                return null;
+            }
+            if (connection.glowroot$isInMulti()) {
+                if (commandName.equals("EXEC") || commandName.equals("DISCARD")) {
+                    // the queued commands are completed when the EXEC reply is received
+                    connection.glowroot$setInMulti(false);
+                    if (closeBatch(connection)) {
+                        return null;
+                    }
+                } else if (addToBatch(context, connection, asyncCommand, MULTI)) {
+                    return null;
+                }
+            } else if (connection.glowroot$isAutoFlushDisabled()
+                    && addToBatch(context, connection, asyncCommand, PIPELINE)) {
+                return null;
+            }
+            AsyncTraceEntry asyncTraceEntry = context.startAsyncTraceEntry(
+                    BatchMessageSupplier.createCommandMessageSupplier(
+                            connection.glowroot$getAddress(), commandName),
+                    timerName);
+            asyncCommand.glowroot$setAsyncTraceEntry(asyncTraceEntry);
+            return asyncTraceEntry;
+        }
+
+        @OnReturn
+        public static void onReturn(@BindTraveler @Nullable AsyncTraceEntry asyncTraceEntry) {
+            if (asyncTraceEntry != null) {
+                asyncTraceEntry.stopSyncTimer();
+            }
+        }
+
+        @OnThrow
+        public static void onThrow(@BindThrowable Throwable t,
+                @BindTraveler @Nullable AsyncTraceEntry asyncTraceEntry) {
+            if (asyncTraceEntry != null) {
+                asyncTraceEntry.stopSyncTimer();
+                asyncTraceEntry.endWithError(t);
+            }
+        }
+    }
+
+    // using @OnBefore instead of @OnReturn on the completion methods to ensure that the async trace
+    // entry is ended prior to an overall transaction that may be waiting on this command has a
+    // chance to end
+    @Pointcut(className = "io.lettuce.core.protocol.AsyncCommand", methodName = "completeResult",
+            methodParameterTypes = {})
+    public static class CompleteResultAdvice {
+
+        @OnBefore
+        public static void onBefore(@BindReceiver AsyncCommandMixin asyncCommand) {
+            onComplete(asyncCommand, ((AsyncCommand<?, ?, ?>) asyncCommand).getError(), null);
+        }
+    }
+
+    @Pointcut(className = "io.lettuce.core.protocol.AsyncCommand",
+            methodName = "completeExceptionally", methodParameterTypes = {"java.lang.Throwable"})
+    public static class CompleteExceptionallyAdvice {
+
+        @OnBefore
+        public static void onBefore(@BindReceiver AsyncCommandMixin asyncCommand,
+                @BindParameter @Nullable Throwable t) {
+            onComplete(asyncCommand, null, t);
+        }
+    }
+
+    @Pointcut(className = "io.lettuce.core.protocol.AsyncCommand", methodName = "cancel",
+            methodParameterTypes = {".."})
+    public static class CancelAdvice {
+
+        @OnBefore
+        public static void onBefore(@BindReceiver AsyncCommandMixin asyncCommand) {
+            onComplete(asyncCommand, "cancelled", null);
+        }
+    }
+
+    // waiting on async result (this is how the sync api waits on commands)
+    @Pointcut(className = "io.lettuce.core.protocol.AsyncCommand", methodName = "await",
+            methodParameterTypes = {"long", "java.util.concurrent.TimeUnit"},
+            suppressionKey = "wait-on-future")
+    public static class AwaitAdvice {
+
+        @IsEnabled
+        public static boolean isEnabled(@BindReceiver AsyncCommandMixin asyncCommand) {
+            return getAsyncTraceEntry(asyncCommand) != null;
+        }
+
+        @OnBefore
+        public static Timer onBefore(ThreadContext threadContext,
+                @BindReceiver AsyncCommandMixin asyncCommand) {
+            @SuppressWarnings("nullness") // just checked above in isEnabled()
+            @NonNull
+            AsyncTraceEntry asyncTraceEntry = getAsyncTraceEntry(asyncCommand);
+            return asyncTraceEntry.extendSyncTimer(threadContext);
+        }
+
+        @OnAfter
+        public static void onAfter(@BindTraveler Timer timer) {
+            timer.stop();
+        }
+    }
+
+    @Pointcut(className = "java.util.concurrent.Future",
+            subTypeRestriction = "io.lettuce.core.protocol.AsyncCommand", methodName = "get",
+            methodParameterTypes = {".."}, suppressionKey = "wait-on-future")
+    public static class FutureGetAdvice {
+
+        @IsEnabled
+        public static boolean isEnabled(@BindReceiver AsyncCommandMixin asyncCommand) {
+            return AwaitAdvice.isEnabled(asyncCommand);
+        }
+
+        @OnBefore
+        public static Timer onBefore(ThreadContext threadContext,
+                @BindReceiver AsyncCommandMixin asyncCommand) {
+            return AwaitAdvice.onBefore(threadContext, asyncCommand);
+        }
+
+        @OnAfter
+        public static void onAfter(@BindTraveler Timer timer) {
+            AwaitAdvice.onAfter(timer);
+        }
+    }
+
+    private static boolean addToBatch(ThreadContext context, ChannelHandlerMixin connection,
+            AsyncCommandMixin asyncCommand, String batchKind) {
+        CommandBatch batch = (CommandBatch) connection.glowroot$getBatch();
+        if (batch == null) {
+            batch = new CommandBatch(context, connection.glowroot$getAddress(), batchKind);
+            connection.glowroot$setBatch(batch);
+        } else if (batch.thread != Thread.currentThread()) {
+            // lettuce connections are thread safe, but auto flush and multi apply to all threads
+            // sharing the connection, and the other threads' commands belong to their own
+            // transactions
+            return false;
+        }
+        batch.add(asyncCommand);
+        return true;
+    }
+
+    private static boolean closeBatch(ChannelHandlerMixin connection) {
+        CommandBatch batch = (CommandBatch) connection.glowroot$getBatch();
+        if (batch == null || batch.thread != Thread.currentThread()) {
+            return false;
+        }
+        connection.glowroot$setBatch(null);
+        batch.close();
+        return true;
+    }
+
+    private static void onComplete(AsyncCommandMixin asyncCommand, @Nullable String error,
+            @Nullable Throwable exception) {
+        // ok if end() happens to get called twice
+        AsyncTraceEntry asyncTraceEntry = asyncCommand.glowroot$getAsyncTraceEntry();
+        if (asyncTraceEntry != null) {
+            endAsyncTraceEntry(asyncTraceEntry, error, exception);
+        }
+        CommandBatch batch = (CommandBatch) asyncCommand.glowroot$getBatch();
+        if (batch != null) {
+            // clearing the batch so that the command is only counted once as completed
+            asyncCommand.glowroot$setBatch(null);
+            batch.commandCompleted(error, exception);
+        }
+    }
+
+    private static @Nullable AsyncTraceEntry getAsyncTraceEntry(AsyncCommandMixin asyncCommand) {
+        AsyncTraceEntry asyncTraceEntry = asyncCommand.glowroot$getAsyncTraceEntry();
+        if (asyncTraceEntry != null) {
+            return asyncTraceEntry;
+        }
+        CommandBatch batch = (CommandBatch) asyncCommand.glowroot$getBatch();
+        return batch == null ? null : batch.asyncTraceEntry;
+    }
+
+    private static void endAsyncTraceEntry(AsyncTraceEntry asyncTraceEntry,
+            @Nullable String error, @Nullable Throwable exception) {
+        if (exception != null) {
+            asyncTraceEntry.endWithError(exception);
+        } else if (error != null) {
+            asyncTraceEntry.endWithError(error);
+        } else {
+            asyncTraceEntry.end();
+        }
+    }
+
+    // the commands in a batch are completed (on the event loop) only after the batch is flushed,
+    // so the batch entry is ended once it is closed and all of its commands have completed
+    static class CommandBatch {
+
+        private final Thread thread;
+        private final BatchMessageSupplier messageSupplier;
+        private final AsyncTraceEntry asyncTraceEntry;
+
+        private final AtomicInteger pendingCount = new AtomicInteger();
+        private volatile boolean closed;
+
+        private volatile @Nullable String error;
+        private volatile @Nullable Throwable exception;
+
+        private CommandBatch(ThreadContext context, @Nullable String address, String batchKind) {
+            thread = Thread.currentThread();
+            messageSupplier = new BatchMessageSupplier(address, batchKind, 0);
+            asyncTraceEntry = context.startAsyncTraceEntry(messageSupplier,
+                    DispatchAdvice.timerName);
+            // the sync timer is extended while waiting on the commands
+            asyncTraceEntry.stopSyncTimer();
+        }
+
+        private void add(AsyncCommandMixin asyncCommand) {
+            messageSupplier.incrementCommandCount();
+            pendingCount.incrementAndGet();
+            asyncCommand.glowroot$setBatch(this);
+        }
+
+        private void close() {
+            closed = true;
+            if (pendingCount.get() == 0) {
+                end();
+            }
+        }
+
+        private void commandCompleted(@Nullable String error, @Nullable Throwable exception) {
+            if (exception != null && this.exception == null) {
+                this.exception = exception;
+            } else if (error != null && this.error == null) {
+                this.error = error;
+            }
+            if (pendingCount.decrementAndGet() == 0 && closed) {
+                end();
+            }
+        }
+
+        private void end() {
+            endAsyncTraceEntry(asyncTraceEntry, error, exception);
+        }
+    }
+}
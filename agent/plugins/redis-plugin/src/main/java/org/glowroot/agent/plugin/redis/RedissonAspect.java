@@ -0,0 +1,318 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.plugin.redis;
+
+import org.redisson.client.protocol.RedisCommand;
+
+import org.glowroot.agent.plugin.api.Agent;
+import org.glowroot.agent.plugin.api.AsyncTraceEntry;
+import org.glowroot.agent.plugin.api.ThreadContext;
+import org.glowroot.agent.plugin.api.Timer;
+import org.glowroot.agent.plugin.api.TimerName;
+import org.glowroot.agent.plugin.api.checker.NonNull;
+import org.glowroot.agent.plugin.api.checker.Nullable;
+import org.glowroot.agent.plugin.api.weaving.BindParameter;
+import org.glowroot.agent.plugin.api.weaving.BindReceiver;
+import org.glowroot.agent.plugin.api.weaving.BindReturn;
+import org.glowroot.agent.plugin.api.weaving.BindThrowable;
+import org.glowroot.agent.plugin.api.weaving.BindTraveler;
+import org.glowroot.agent.plugin.api.weaving.IsEnabled;
+import org.glowroot.agent.plugin.api.weaving.Mixin;
+import org.glowroot.agent.plugin.api.weaving.OnAfter;
+import org.glowroot.agent.plugin.api.weaving.OnBefore;
+import org.glowroot.agent.plugin.api.weaving.OnReturn;
+import org.glowroot.agent.plugin.api.weaving.OnThrow;
+import org.glowroot.agent.plugin.api.weaving.Pointcut;
+
+// redisson sync and async operations go through CommandAsyncService.async(), which is called on the
+// caller's thread, and which completes the promise that is returned to the caller
+//
+// commands added to an RBatch are coalesced into a single async trace entry when the batch is
+// executed
+public class RedissonAspect {
+
+    // the field and method names are verbose since they will be mixed in to existing classes
+    @Mixin("org.redisson.misc.RedissonPromise")
+    public static class PromiseImpl implements PromiseMixin {
+
+        private transient volatile boolean glowroot$completed;
+        private transient volatile @Nullable Throwable glowroot$exception;
+        private transient volatile @Nullable AsyncTraceEntry glowroot$asyncTraceEntry;
+
+        @Override
+        public void glowroot$setCompleted() {
+            glowroot$completed = true;
+        }
+
+        @Override
+        public boolean glowroot$isCompleted() {
+            return glowroot$completed;
+        }
+
+        @Override
+        public void glowroot$setException(Throwable exception) {
+            glowroot$exception = exception;
+        }
+
+        @Override
+        public @Nullable Throwable glowroot$getException() {
+            return glowroot$exception;
+        }
+
+        @Override
+        public @Nullable AsyncTraceEntry glowroot$getAsyncTraceEntry() {
+            return glowroot$asyncTraceEntry;
+        }
+
+        @Override
+        public void glowroot$setAsyncTraceEntry(@Nullable AsyncTraceEntry asyncTraceEntry) {
+            glowroot$asyncTraceEntry = asyncTraceEntry;
+        }
+    }
+
+    // the field and method names are verbose since they will be mixed in to existing classes
+    @Mixin("org.redisson.command.CommandBatchService")
+    public static class BatchServiceImpl implements BatchServiceMixin {
+
+        // batches are normally built up by a single thread, and a lost update (in the rare case of
+        // concurrent use) only affects the reported command count
+        private transient volatile int glowroot$commandCount;
+
+        @Override
+        public void glowroot$incrementCommandCount() {
+            glowroot$commandCount++;
+        }
+
+        @Override
+        public int glowroot$getAndResetCommandCount() {
+            int commandCount = glowroot$commandCount;
+            glowroot$commandCount = 0;
+            return commandCount;
+        }
+    }
+
+    // the method names are verbose since they will be mixed in to existing classes
+    public interface PromiseMixin {
+
+        void glowroot$setCompleted();
+
+        boolean glowroot$isCompleted();
+
+        void glowroot$setException(Throwable t);
+
+        @Nullable
+        Throwable glowroot$getException();
+
+        @Nullable
+        AsyncTraceEntry glowroot$getAsyncTraceEntry();
+
+        void glowroot$setAsyncTraceEntry(@Nullable AsyncTraceEntry asyncTraceEntry);
+    }
+
+    // the method names are verbose since they will be mixed in to existing classes
+    public interface BatchServiceMixin {
+
+        void glowroot$incrementCommandCount();
+
+        int glowroot$getAndResetCommandCount();
+    }
+
+    @Pointcut(className = "org.redisson.command.CommandAsyncService", methodName = "async",
+            methodParameterTypes = {"boolean", "org.redisson.connection.NodeSource",
+                    "org.redisson.client.codec.Codec", "org.redisson.client.protocol.RedisCommand",
+                    "java.lang.Object[]", "org.redisson.misc.RPromise", ".."},
+            nestingGroup = "redis", timerName = "redis")
+    public static class AsyncAdvice {
+
+        private static final TimerName timerName = Agent.getTimerName(AsyncAdvice.class);
+
+        @OnBefore
+        public static @Nullable AsyncTraceEntry onBefore(ThreadContext context,
+                @BindReceiver Object commandService,
+                @BindParameter boolean readOnly,
+                @BindParameter @Nullable Object source,
+                @BindParameter @Nullable Object codec,
+                @BindParameter @Nullable RedisCommand<?> command,
+                @BindParameter @Nullable Object params,
+                @BindParameter @Nullable Object promise) {
+            if (commandService instanceof BatchServiceMixin) {
+                // the batch entry is captured when the batch is executed
+                ((BatchServiceMixin) commandService).glowroot$incrementCommandCount();
+                return null;
+            }
+            if (command == null || !(promise instanceof PromiseMixin)) {
+                return null;
+            }
+            AsyncTraceEntry asyncTraceEntry = context.startAsyncTraceEntry(
+                    BatchMessageSupplier.createCommandMessageSupplier(null, command.getName()),
+                    timerName);
+            // the command has not been sent yet, so the promise cannot complete before the async
+            // trace entry is set on it
+            ((PromiseMixin) promise).glowroot$setAsyncTraceEntry(asyncTraceEntry);
+            return asyncTraceEntry;
+        }
+
+        @OnReturn
+        public static void onReturn(@BindTraveler @Nullable AsyncTraceEntry asyncTraceEntry) {
+            if (asyncTraceEntry != null) {
+                asyncTraceEntry.stopSyncTimer();
+            }
+        }
+
+        @OnThrow
+        public static void onThrow(@BindThrowable Throwable t,
+                @BindTraveler @Nullable AsyncTraceEntry asyncTraceEntry) {
+            if (asyncTraceEntry != null) {
+                asyncTraceEntry.stopSyncTimer();
+                asyncTraceEntry.endWithError(t);
+            }
+        }
+    }
+
+    @Pointcut(className = "org.redisson.command.CommandBatchService", methodName = "executeAsync",
+            methodParameterTypes = {}, nestingGroup = "redis", timerName = "redis")
+    public static class BatchExecuteAsyncAdvice {
+
+        private static final TimerName timerName =
+                Agent.getTimerName(BatchExecuteAsyncAdvice.class);
+
+        @OnBefore
+        public static @Nullable AsyncTraceEntry onBefore(ThreadContext context,
+                @BindReceiver BatchServiceMixin batchService) {
+            int commandCount = batchService.glowroot$getAndResetCommandCount();
+            if (commandCount == 0) {
+                return null;
+            }
+            return context.startAsyncTraceEntry(
+                    new BatchMessageSupplier(null, "batch", commandCount), timerName);
+        }
+
+        @OnReturn
+        public static void onReturn(@BindReturn @Nullable Object future,
+                @BindTraveler @Nullable AsyncTraceEntry asyncTraceEntry) {
+            if (asyncTraceEntry == null) {
+                return;
+            }
+            asyncTraceEntry.stopSyncTimer();
+            if (!(future instanceof PromiseMixin)) {
+                asyncTraceEntry.end();
+                return;
+            }
+            PromiseMixin promise = (PromiseMixin) future;
+            // to prevent race condition, setting async trace entry before getting completed status,
+            // and the converse is done when getting async trace entry
+            // ok if end() happens to get called twice
+            promise.glowroot$setAsyncTraceEntry(asyncTraceEntry);
+            if (promise.glowroot$isCompleted()) {
+                // batch completed really fast, prior to @OnReturn
+                Throwable exception = promise.glowroot$getException();
+                if (exception == null) {
+                    asyncTraceEntry.end();
+                } else {
+                    asyncTraceEntry.endWithError(exception);
+                }
+            }
+        }
+
+        @OnThrow
+        public static void onThrow(@BindThrowable Throwable t,
+                @BindTraveler @Nullable AsyncTraceEntry asyncTraceEntry) {
+            if (asyncTraceEntry != null) {
+                asyncTraceEntry.stopSyncTimer();
+                asyncTraceEntry.endWithError(t);
+            }
+        }
+    }
+
+    // using @OnBefore instead of @OnReturn on the completion methods to ensure that the async trace
+    // entry is ended prior to an overall transaction that may be waiting on this promise has a
+    // chance to end
+    @Pointcut(className = "org.redisson.misc.RedissonPromise", methodName = "trySuccess",
+            methodParameterTypes = {"java.lang.Object"})
+    public static class PromiseTrySuccessAdvice {
+
+        @OnBefore
+        public static void onBefore(@BindReceiver PromiseMixin promise) {
+            // to prevent race condition, setting completed status before getting async trace
+            // entry, and the converse is done when setting async trace entry
+            // ok if end() happens to get called twice
+            promise.glowroot$setCompleted();
+            AsyncTraceEntry asyncTraceEntry = promise.glowroot$getAsyncTraceEntry();
+            if (asyncTraceEntry != null) {
+                asyncTraceEntry.end();
+            }
+        }
+    }
+
+    @Pointcut(className = "org.redisson.misc.RedissonPromise", methodName = "tryFailure",
+            methodParameterTypes = {"java.lang.Throwable"})
+    public static class PromiseTryFailureAdvice {
+
+        @OnBefore
+        public static void onBefore(@BindReceiver PromiseMixin promise,
+                @BindParameter @Nullable Throwable t) {
+            if (t == null) {
+                return;
+            }
+            // to prevent race condition, setting completed/exception status before getting async
+            // trace entry, and the converse is done when setting async trace entry
+            // ok if end() happens to get called twice
+            promise.glowroot$setException(t);
+            promise.glowroot$setCompleted();
+            AsyncTraceEntry asyncTraceEntry = promise.glowroot$getAsyncTraceEntry();
+            if (asyncTraceEntry != null) {
+                asyncTraceEntry.endWithError(t);
+            }
+        }
+    }
+
+    @Pointcut(className = "org.redisson.misc.RedissonPromise", methodName = "cancel",
+            methodParameterTypes = {"boolean"})
+    public static class PromiseCancelAdvice {
+
+        @OnBefore
+        public static void onBefore(@BindReceiver PromiseMixin promise) {
+            PromiseTrySuccessAdvice.onBefore(promise);
+        }
+    }
+
+    // waiting on async result (this is how the sync api waits on commands)
+    @Pointcut(className = "org.redisson.command.CommandAsyncService",
+            methodName = "get|getInterrupted", methodParameterTypes = {"org.redisson.api.RFuture"},
+            suppressionKey = "wait-on-future")
+    public static class GetAdvice {
+
+        @IsEnabled
+        public static boolean isEnabled(@BindParameter @Nullable Object future) {
+            return future instanceof PromiseMixin
+                    && ((PromiseMixin) future).glowroot$getAsyncTraceEntry() != null;
+        }
+
+        @OnBefore
+        public static Timer onBefore(ThreadContext threadContext,
+                @BindParameter Object future) {
+            @SuppressWarnings("nullness") // just checked above in isEnabled()
+            @NonNull
+            AsyncTraceEntry asyncTraceEntry = ((PromiseMixin) future).glowroot$getAsyncTraceEntry();
+            return asyncTraceEntry.extendSyncTimer(threadContext);
+        }
+
+        @OnAfter
+        public static void onAfter(@BindTraveler Timer timer) {
+            timer.stop();
+        }
+    }
+}
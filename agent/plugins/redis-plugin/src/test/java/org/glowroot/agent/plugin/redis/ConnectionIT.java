@@ -1,5 +1,5 @@
 /*
- * Copyright 2016-2017 the original author or authors.
+ * Copyright 2016-2026 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -22,6 +22,8 @@ import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Transaction;
 
 import org.glowroot.agent.it.harness.AppUnderTest;
 import org.glowroot.agent.it.harness.Container;
@@ -95,6 +97,44 @@ public class ConnectionIT {
         assertThat(i.hasNext()).isFalse();
     }
 
+    @Test
+    public void shouldTracePipeline() throws Exception {
+        // when
+        Trace trace = container.execute(JedisPipeline.class);
+
+        // then
+        Iterator<Trace.Entry> i = trace.getEntryList().iterator();
+
+        Trace.Entry entry = i.next();
+        assertThat(entry.getDepth()).isEqualTo(0);
+        assertThat(entry.getMessage()).matches("redis localhost:\\d+ pipeline => 3 commands");
+
+        entry = i.next();
+        assertThat(entry.getDepth()).isEqualTo(0);
+        assertThat(entry.getMessage()).matches("redis localhost:\\d+ GET");
+
+        assertThat(i.hasNext()).isFalse();
+    }
+
+    @Test
+    public void shouldTraceMulti() throws Exception {
+        // when
+        Trace trace = container.execute(JedisMulti.class);
+
+        // then
+        Iterator<Trace.Entry> i = trace.getEntryList().iterator();
+
+        Trace.Entry entry = i.next();
+        assertThat(entry.getDepth()).isEqualTo(0);
+        assertThat(entry.getMessage()).matches("redis localhost:\\d+ MULTI");
+
+        entry = i.next();
+        assertThat(entry.getDepth()).isEqualTo(0);
+        assertThat(entry.getMessage()).matches("redis localhost:\\d+ multi => 2 commands");
+
+        assertThat(i.hasNext()).isFalse();
+    }
+
     private abstract static class JedisBase implements AppUnderTest, TransactionMarker {
 
         private RedisMockServer redisMockServer;
@@ -134,4 +174,27 @@ public class ConnectionIT {
             getJedis().ping();
         }
     }
+
+    public static class JedisPipeline extends JedisBase implements TransactionMarker {
+        @Override
+        public void transactionMarker() {
+            Pipeline pipeline = getJedis().pipelined();
+            pipeline.set("key", "value");
+            pipeline.get("key");
+            pipeline.get("key");
+            pipeline.sync();
+            // not pipelined
+            getJedis().get("key");
+        }
+    }
+
+    public static class JedisMulti extends JedisBase implements TransactionMarker {
+        @Override
+        public void transactionMarker() {
+            Transaction transaction = getJedis().multi();
+            transaction.set("key", "value");
+            transaction.get("key");
+            transaction.exec();
+        }
+    }
 }
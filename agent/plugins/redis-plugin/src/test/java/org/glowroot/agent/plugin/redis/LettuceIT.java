@@ -0,0 +1,177 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.plugin.redis;
+
+import java.util.Iterator;
+
+import io.lettuce.core.LettuceFutures;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import org.glowroot.agent.it.harness.AppUnderTest;
+import org.glowroot.agent.it.harness.Container;
+import org.glowroot.agent.it.harness.Containers;
+import org.glowroot.agent.it.harness.TransactionMarker;
+import org.glowroot.wire.api.model.TraceOuterClass.Trace;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class LettuceIT {
+
+    private static Container container;
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        container = Containers.create();
+    }
+
+    @AfterAll
+    public static void tearDown() throws Exception {
+        container.close();
+    }
+
+    @AfterEach
+    public void afterEachTest() throws Exception {
+        container.checkAndReset();
+    }
+
+    @Test
+    public void shouldTraceSyncSet() throws Exception {
+        // when
+        Trace trace = container.execute(LettuceSyncSet.class);
+
+        // then
+        Iterator<Trace.Entry> i = trace.getEntryList().iterator();
+
+        Trace.Entry entry = i.next();
+        assertThat(entry.getDepth()).isEqualTo(0);
+        assertThat(entry.getMessage()).matches("redis localhost:\\d+ SET");
+
+        assertThat(i.hasNext()).isFalse();
+    }
+
+    @Test
+    public void shouldTraceAsyncGet() throws Exception {
+        // when
+        Trace trace = container.execute(LettuceAsyncGet.class);
+
+        // then
+        Iterator<Trace.Entry> i = trace.getEntryList().iterator();
+
+        Trace.Entry entry = i.next();
+        assertThat(entry.getDepth()).isEqualTo(0);
+        assertThat(entry.getMessage()).matches("redis localhost:\\d+ GET");
+
+        assertThat(i.hasNext()).isFalse();
+    }
+
+    @Test
+    public void shouldTracePipeline() throws Exception {
+        // when
+        Trace trace = container.execute(LettucePipeline.class);
+
+        // then
+        Iterator<Trace.Entry> i = trace.getEntryList().iterator();
+
+        Trace.Entry entry = i.next();
+        assertThat(entry.getDepth()).isEqualTo(0);
+        assertThat(entry.getMessage()).matches("redis localhost:\\d+ pipeline => 3 commands");
+
+        assertThat(i.hasNext()).isFalse();
+    }
+
+    @Test
+    public void shouldTraceMulti() throws Exception {
+        // when
+        Trace trace = container.execute(LettuceMulti.class);
+
+        // then
+        Iterator<Trace.Entry> i = trace.getEntryList().iterator();
+
+        Trace.Entry entry = i.next();
+        assertThat(entry.getDepth()).isEqualTo(0);
+        assertThat(entry.getMessage()).matches("redis localhost:\\d+ multi => 2 commands");
+
+        assertThat(i.hasNext()).isFalse();
+    }
+
+    private abstract static class LettuceBase implements AppUnderTest, TransactionMarker {
+
+        private StatefulRedisConnection<String, String> connection;
+
+        @Override
+        public void executeApp() throws Exception {
+            RedisMockServer redisMockServer = new RedisMockServer();
+            RedisClient client =
+                    RedisClient.create("redis://localhost:" + redisMockServer.getPort());
+            connection = client.connect();
+            transactionMarker();
+            connection.close();
+            client.shutdown(0, 10, SECONDS);
+            redisMockServer.close();
+        }
+
+        protected StatefulRedisConnection<String, String> getConnection() {
+            return connection;
+        }
+    }
+
+    public static class LettuceSyncSet extends LettuceBase {
+        @Override
+        public void transactionMarker() {
+            getConnection().sync().set("key", "value");
+        }
+    }
+
+    public static class LettuceAsyncGet extends LettuceBase {
+        @Override
+        public void transactionMarker() throws Exception {
+            getConnection().async().get("key").get();
+        }
+    }
+
+    public static class LettucePipeline extends LettuceBase {
+        @Override
+        public void transactionMarker() {
+            RedisAsyncCommands<String, String> async = getConnection().async();
+            getConnection().setAutoFlushCommands(false);
+            RedisFuture<?> future1 = async.set("key", "value");
+            RedisFuture<?> future2 = async.get("key");
+            RedisFuture<?> future3 = async.get("key");
+            getConnection().flushCommands();
+            getConnection().setAutoFlushCommands(true);
+            LettuceFutures.awaitAll(10, SECONDS, future1, future2, future3);
+        }
+    }
+
+    public static class LettuceMulti extends LettuceBase {
+        @Override
+        public void transactionMarker() throws Exception {
+            RedisAsyncCommands<String, String> async = getConnection().async();
+            async.multi().get();
+            async.set("key", "value");
+            async.get("key");
+            async.exec().get();
+        }
+    }
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2016 the original author or authors.
+ * Copyright 2016-2026 the original author or authors.
  *
  * Licensed under the Apache License, Version 2.0 (the "License");
  * you may not use this file except in compliance with the License.
@@ -15,18 +15,23 @@
  */
 package org.glowroot.agent.plugin.redis;
 
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.io.UnsupportedEncodingException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 class RedisMockServer implements Runnable {
@@ -91,25 +96,93 @@ class RedisMockServer implements Runnable {
             }
         }
 
-        private void runInternal() throws IOException, UnsupportedEncodingException {
-            byte[] request = new byte[1024];
-            InputStream socketIn = socket.getInputStream();
+        private void runInternal() throws IOException {
+            InputStream socketIn = new BufferedInputStream(socket.getInputStream());
             OutputStream socketOut = socket.getOutputStream();
-            int nBytes;
-            while ((nBytes = socketIn.read(request)) != -1) {
-                String command = new String(request, 0, nBytes, "UTF-8").replaceAll("\r\n", " ");
-                String response = getResponse(command);
-                socketOut.write(response.getBytes());
+            List<String> queuedResponses = null;
+            List<String> command;
+            while ((command = readCommand(socketIn)) != null) {
+                String commandName = command.get(0).toUpperCase(Locale.ENGLISH);
+                String response;
+                if (commandName.equals("MULTI")) {
+                    queuedResponses = new ArrayList<String>();
+                    response = "+OK\r\n";
+                } else if (commandName.equals("EXEC") && queuedResponses != null) {
+                    StringBuilder sb = new StringBuilder();
+                    sb.append("*" + queuedResponses.size() + "\r\n");
+                    for (String queuedResponse : queuedResponses) {
+                        sb.append(queuedResponse);
+                    }
+                    queuedResponses = null;
+                    response = sb.toString();
+                } else if (commandName.equals("DISCARD")) {
+                    queuedResponses = null;
+                    response = "+OK\r\n";
+                } else if (queuedResponses != null) {
+                    queuedResponses.add(getResponse(commandName));
+                    response = "+QUEUED\r\n";
+                } else {
+                    response = getResponse(commandName);
+                }
+                socketOut.write(response.getBytes(UTF_8));
+                socketOut.flush();
             }
         }
 
-        private String getResponse(String command) {
-            if (command.equals("*1 $4 PING ")) {
+        // commands are sent as RESP arrays of bulk strings
+        private List<String> readCommand(InputStream in) throws IOException {
+            String line = readLine(in);
+            if (line == null) {
+                return null;
+            }
+            if (!line.startsWith("*")) {
+                // inline command
+                return Arrays.asList(line.split(" "));
+            }
+            int count = Integer.parseInt(line.substring(1));
+            List<String> command = new ArrayList<String>(count);
+            for (int i = 0; i < count; i++) {
+                String lengthLine = readLine(in);
+                if (lengthLine == null) {
+                    return null;
+                }
+                byte[] bytes = new byte[Integer.parseInt(lengthLine.substring(1))];
+                int offset = 0;
+                while (offset < bytes.length) {
+                    int n = in.read(bytes, offset, bytes.length - offset);
+                    if (n == -1) {
+                        return null;
+                    }
+                    offset += n;
+                }
+                // trailing \r\n
+                readLine(in);
+                command.add(new String(bytes, UTF_8));
+            }
+            return command;
+        }
+
+        private String readLine(InputStream in) throws IOException {
+            StringBuilder sb = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1) {
+                if (c == '\n') {
+                    int length = sb.length();
+                    if (length > 0 && sb.charAt(length - 1) == '\r') {
+                        sb.setLength(length - 1);
+                    }
+                    return sb.toString();
+                }
+                sb.append((char) c);
+            }
+            return null;
+        }
+
+        private String getResponse(String commandName) {
+            if (commandName.equals("PING")) {
                 return "+PONG\r\n";
-            } else if (command.equals("*2 $3 GET $3 key ")) {
+            } else if (commandName.equals("GET")) {
                 return "$5\r\nvalue\r\n";
-            } else if (command.equals("*3 $3 SET $3 key $5 value ")) {
-                return "+OK\r\n";
             } else {
                 return "+OK\r\n";
             }
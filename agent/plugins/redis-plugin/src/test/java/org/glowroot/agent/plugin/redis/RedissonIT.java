@@ -0,0 +1,153 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.agent.plugin.redis;
+
+import java.util.Iterator;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.redisson.Redisson;
+import org.redisson.api.RBatch;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.redisson.config.Config;
+
+import org.glowroot.agent.it.harness.AppUnderTest;
+import org.glowroot.agent.it.harness.Container;
+import org.glowroot.agent.it.harness.Containers;
+import org.glowroot.agent.it.harness.TransactionMarker;
+import org.glowroot.wire.api.model.TraceOuterClass.Trace;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RedissonIT {
+
+    private static Container container;
+
+    @BeforeAll
+    public static void setUp() throws Exception {
+        container = Containers.create();
+    }
+
+    @AfterAll
+    public static void tearDown() throws Exception {
+        container.close();
+    }
+
+    @AfterEach
+    public void afterEachTest() throws Exception {
+        container.checkAndReset();
+    }
+
+    @Test
+    public void shouldTraceGet() throws Exception {
+        // when
+        Trace trace = container.execute(RedissonGet.class);
+
+        // then
+        Iterator<Trace.Entry> i = trace.getEntryList().iterator();
+
+        Trace.Entry entry = i.next();
+        assertThat(entry.getDepth()).isEqualTo(0);
+        assertThat(entry.getMessage()).isEqualTo("redis GET");
+
+        assertThat(i.hasNext()).isFalse();
+    }
+
+    @Test
+    public void shouldTraceAsyncSet() throws Exception {
+        // when
+        Trace trace = container.execute(RedissonAsyncSet.class);
+
+        // then
+        Iterator<Trace.Entry> i = trace.getEntryList().iterator();
+
+        Trace.Entry entry = i.next();
+        assertThat(entry.getDepth()).isEqualTo(0);
+        assertThat(entry.getMessage()).isEqualTo("redis SET");
+
+        assertThat(i.hasNext()).isFalse();
+    }
+
+    @Test
+    public void shouldTraceBatch() throws Exception {
+        // when
+        Trace trace = container.execute(RedissonBatch.class);
+
+        // then
+        Iterator<Trace.Entry> i = trace.getEntryList().iterator();
+
+        Trace.Entry entry = i.next();
+        assertThat(entry.getDepth()).isEqualTo(0);
+        assertThat(entry.getMessage()).isEqualTo("redis batch => 3 commands");
+
+        assertThat(i.hasNext()).isFalse();
+    }
+
+    private abstract static class RedissonBase implements AppUnderTest, TransactionMarker {
+
+        private RedissonClient redisson;
+
+        @Override
+        public void executeApp() throws Exception {
+            RedisMockServer redisMockServer = new RedisMockServer();
+            Config config = new Config();
+            config.setCodec(StringCodec.INSTANCE);
+            config.useSingleServer()
+                    .setAddress("redis://localhost:" + redisMockServer.getPort())
+                    .setConnectionMinimumIdleSize(1)
+                    .setConnectionPoolSize(1)
+                    .setSubscriptionConnectionMinimumIdleSize(1)
+                    .setSubscriptionConnectionPoolSize(1);
+            redisson = Redisson.create(config);
+            transactionMarker();
+            redisson.shutdown(0, 10, SECONDS);
+            redisMockServer.close();
+        }
+
+        protected RedissonClient getRedisson() {
+            return redisson;
+        }
+    }
+
+    public static class RedissonGet extends RedissonBase {
+        @Override
+        public void transactionMarker() {
+            getRedisson().<String>getBucket("key").get();
+        }
+    }
+
+    public static class RedissonAsyncSet extends RedissonBase {
+        @Override
+        public void transactionMarker() throws Exception {
+            getRedisson().<String>getBucket("key").setAsync("value").get();
+        }
+    }
+
+    public static class RedissonBatch extends RedissonBase {
+        @Override
+        public void transactionMarker() {
+            RBatch batch = getRedisson().createBatch();
+            batch.<String>getBucket("key").setAsync("value");
+            batch.<String>getBucket("key").getAsync();
+            batch.<String>getBucket("key").getAsync();
+            batch.execute();
+        }
+    }
+}
@@ -257,6 +257,7 @@ public class CentralModule {
                     .confDirs(Arrays.asList(directories.getConfDir()))
                     .logDir(directories.getLogDir())
                     .logFileNamePattern(Pattern.compile("glowroot-central.*\\.log"))
+                    .ticker(ticker)
                     .clock(clock)
                     .liveJvmService(new LiveJvmServiceImpl(downstreamService))
                     .agentDisplayRepository(repos.getAgentDisplayDao())
@@ -276,6 +277,7 @@ public class CentralModule {
                     .rollupLevelService(repos.getRollupLevelService())
                     .liveTraceRepository(new LiveTraceRepositoryImpl(downstreamService))
                     .liveAggregateRepository(new LiveAggregateRepositoryNop())
+                    .liveMetricsRepository(grpcServer.getLiveMetricsRepository())
                     .liveWeavingService(new LiveWeavingServiceImpl(downstreamService))
                     .sessionMapFactory(new SessionMapFactory() {
                         @Override
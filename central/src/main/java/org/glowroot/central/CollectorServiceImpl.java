@@ -96,6 +96,7 @@ class CollectorServiceImpl extends CollectorServiceGrpc.CollectorServiceImplBase
     private final V09AgentRollupDao v09AgentRollupDao;
     private final GrpcCommon grpcCommon;
     private final CentralAlertingService centralAlertingService;
+    private final LiveMetricsRepositoryImpl liveMetricsRepository;
     private final Clock clock;
     private final String version;
 
@@ -115,7 +116,8 @@ class CollectorServiceImpl extends CollectorServiceGrpc.CollectorServiceImplBase
             ActiveAgentDao activeAgentDao, EnvironmentDao environmentDao, HeartbeatDao heartbeatDao,
             AggregateDao aggregateDao, GaugeValueDao gaugeValueDao, TraceDao traceDao,
             V09AgentRollupDao v09AgentRollupDao, GrpcCommon grpcCommon,
-            CentralAlertingService centralAlertingService, Clock clock, String version) {
+            CentralAlertingService centralAlertingService,
+            LiveMetricsRepositoryImpl liveMetricsRepository, Clock clock, String version) {
         this.agentDisplayDao = agentDisplayDao;
         this.agentConfigDao = agentConfigDao;
         this.activeAgentDao = activeAgentDao;
@@ -127,6 +129,7 @@ class CollectorServiceImpl extends CollectorServiceGrpc.CollectorServiceImplBase
         this.v09AgentRollupDao = v09AgentRollupDao;
         this.grpcCommon = grpcCommon;
         this.centralAlertingService = centralAlertingService;
+        this.liveMetricsRepository = liveMetricsRepository;
         this.clock = clock;
         this.version = version;
     }
@@ -339,6 +342,13 @@ class CollectorServiceImpl extends CollectorServiceGrpc.CollectorServiceImplBase
                             responseObserver.onError(t);
                             return;
                         }
+                        try {
+                            liveMetricsRepository.collectAggregates(postV09AgentId,
+                                    aggregatesByTypeList);
+                        } catch (Exception e) {
+                            // log as error, but not worth failing for this
+                            logger.error("{} - {}", postV09AgentId, e.getMessage(), e);
+                        }
                         String agentDisplay;
                         try {
                             agentDisplay = agentDisplayDao.readFullDisplay(postV09AgentId);
@@ -382,6 +392,7 @@ class CollectorServiceImpl extends CollectorServiceGrpc.CollectorServiceImplBase
         try {
             List<GaugeValue> gaugeValues = getFutureProofGaugeValues(request.getGaugeValueList());
             gaugeValueDao.store(postV09AgentId, gaugeValues);
+            liveMetricsRepository.collectGaugeValues(postV09AgentId, gaugeValues);
             for (GaugeValue gaugeValue : gaugeValues) {
                 maxCaptureTime = Math.max(maxCaptureTime, gaugeValue.getCaptureTime());
             }
@@ -658,9 +669,12 @@ class CollectorServiceImpl extends CollectorServiceGrpc.CollectorServiceImplBase
         private List<Trace.SharedQueryText> sharedQueryTexts = new ArrayList<>();
         private @MonotonicNonNull Trace trace;
         private List<Trace.Entry> entries = new ArrayList<>();
+        // only populated when streamHeader.incremental_entries is true
+        private List<Integer> entryIndexes = new ArrayList<>();
         private List<Aggregate.Query> queries = new ArrayList<>();
         private @MonotonicNonNull Profile mainThreadProfile;
         private @MonotonicNonNull Profile auxThreadProfile;
+        private @MonotonicNonNull Profile allocationProfile;
         private Trace. /*@MonotonicNonNull*/ Header header;
         private @MonotonicNonNull TraceStreamCounts streamCounts;
 
@@ -708,8 +722,13 @@ class CollectorServiceImpl extends CollectorServiceGrpc.CollectorServiceImplBase
                     trace = value.getTrace();
                     break;
                 case ENTRY:
+                    // this is for 0.13.x and prior agents
                     entries.add(value.getEntry());
                     break;
+                case ENTRIES:
+                    entries.addAll(value.getEntries().getEntryList());
+                    entryIndexes.addAll(value.getEntries().getIndexList());
+                    break;
                 case QUERIES:
                     queries.addAll(value.getQueries().getQueryList());
                     break;
@@ -719,6 +738,9 @@ class CollectorServiceImpl extends CollectorServiceGrpc.CollectorServiceImplBase
                 case AUX_THREAD_PROFILE:
                     auxThreadProfile = value.getAuxThreadProfile();
                     break;
+                case ALLOCATION_PROFILE:
+                    allocationProfile = value.getAllocationProfile();
+                    break;
                 case HEADER:
                     header = value.getHeader();
                     break;
@@ -746,7 +768,9 @@ class CollectorServiceImpl extends CollectorServiceGrpc.CollectorServiceImplBase
                         .setId(streamHeader.getTraceId())
                         .setUpdate(streamHeader.getUpdate())
                         .setHeader(checkNotNull(header))
+                        .setIncrementalEntries(streamHeader.getIncrementalEntries())
                         .addAllEntry(entries)
+                        .addAllEntryIndex(entryIndexes)
                         .addAllQuery(queries)
                         .addAllSharedQueryText(sharedQueryTexts);
                 if (mainThreadProfile != null) {
@@ -755,6 +779,9 @@ class CollectorServiceImpl extends CollectorServiceGrpc.CollectorServiceImplBase
                 if (auxThreadProfile != null) {
                     builder.setAuxThreadProfile(auxThreadProfile);
                 }
+                if (allocationProfile != null) {
+                    builder.setAllocationProfile(allocationProfile);
+                }
                 trace = builder.build();
             } else {
                 trace = trace.toBuilder()
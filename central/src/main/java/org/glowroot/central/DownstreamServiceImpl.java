@@ -16,9 +16,14 @@
 package org.glowroot.central;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Exchanger;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
@@ -27,6 +32,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import com.google.common.base.Optional;
 import com.google.common.base.Stopwatch;
+import com.google.common.base.Strings;
 import com.google.common.cache.CacheBuilder;
 import io.grpc.stub.StreamObserver;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
@@ -37,10 +43,13 @@ import org.infinispan.util.function.SerializableFunction;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.glowroot.central.repo.AgentRollupIds;
 import org.glowroot.central.util.ClusterManager;
 import org.glowroot.central.util.DistributedExecutionMap;
+import org.glowroot.central.util.MoreExecutors2;
 import org.glowroot.common.live.ImmutableEntries;
 import org.glowroot.common.live.ImmutableQueries;
+import org.glowroot.common.live.ImmutableTracePoint;
 import org.glowroot.common.live.LiveJvmService.AgentNotConnectedException;
 import org.glowroot.common.live.LiveJvmService.AgentUnsupportedOperationException;
 import org.glowroot.common.live.LiveJvmService.DirectoryDoesNotExistException;
@@ -48,9 +57,14 @@ import org.glowroot.common.live.LiveJvmService.UnavailableDueToRunningInJ9JvmExc
 import org.glowroot.common.live.LiveJvmService.UnavailableDueToRunningInJreException;
 import org.glowroot.common.live.LiveTraceRepository.Entries;
 import org.glowroot.common.live.LiveTraceRepository.Queries;
+import org.glowroot.common.live.LiveTraceRepository.TraceKind;
+import org.glowroot.common.live.LiveTraceRepository.TracePoint;
+import org.glowroot.common.live.LiveTraceRepository.TracePointFilter;
+import org.glowroot.common.live.StringComparator;
 import org.glowroot.common.util.OnlyUsedByTests;
 import org.glowroot.wire.api.model.AgentConfigOuterClass.AgentConfig;
 import org.glowroot.wire.api.model.AggregateOuterClass.Aggregate;
+import org.glowroot.wire.api.model.Proto.OptionalInt64;
 import org.glowroot.wire.api.model.DownstreamServiceGrpc.DownstreamServiceImplBase;
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.AgentConfigUpdateRequest;
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.AgentResponse;
@@ -92,6 +106,10 @@ import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MainThreadProfile
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MatchingClassNamesRequest;
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MatchingMBeanObjectNamesRequest;
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MatchingMethodNamesRequest;
+import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MatchingTraceCountRequest;
+import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MatchingTracePointsRequest;
+import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MatchingTracePointsRequest.TracePointSource;
+import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MatchingTracePointsResponse;
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MethodSignature;
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MethodSignaturesRequest;
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.PreloadClasspathCacheRequest;
@@ -108,21 +126,34 @@ import static com.google.common.base.Preconditions.checkState;
 import static java.util.concurrent.TimeUnit.HOURS;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 import static java.util.concurrent.TimeUnit.MINUTES;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 class DownstreamServiceImpl extends DownstreamServiceImplBase {
 
     private static final Logger logger = LoggerFactory.getLogger(DownstreamServiceImpl.class);
 
+    private static final int MAX_CONCURRENT_AGENT_REQUESTS = 16;
+
+    // this is the overall timeout when sending a request to all agents under an agent rollup
+    // (each individual agent request has its own shorter timeout, see runOnCluster())
+    private static final int AGENT_ROLLUP_TIMEOUT_SECONDS = 10;
+
     private final GrpcCommon grpcCommon;
 
     private final DistributedExecutionMap<String, ConnectedAgent> connectedAgents;
 
     private final ReadWriteLock shuttingDownLock = new ReentrantReadWriteLock(true);
 
+    // bounds the number of concurrent downstream requests when sending a request to all agents
+    // under an agent rollup
+    private final ExecutorService agentRollupExecutor;
+
     DownstreamServiceImpl(GrpcCommon grpcCommon, ClusterManager clusterManager) {
         this.grpcCommon = grpcCommon;
         connectedAgents = clusterManager.createDistributedExecutionMap("connectedAgents");
+        agentRollupExecutor = MoreExecutors2.newFixedThreadPool(MAX_CONCURRENT_AGENT_REQUESTS,
+                "Downstream-Agent-Rollup-Worker-%d");
     }
 
     void stopSendingDownstreamRequests() {
@@ -212,9 +243,12 @@ class DownstreamServiceImpl extends DownstreamServiceImplBase {
         return response.getHeapDumpFileInfo();
     }
 
-    HeapHistogram heapHistogram(String agentId) throws Exception {
+    HeapHistogram heapHistogram(String agentId, int maxClasses, int compareIntervalSeconds)
+            throws Exception {
         AgentResponse responseWrapper = runOnCluster(agentId, CentralRequest.newBuilder()
-                .setHeapHistogramRequest(HeapHistogramRequest.newBuilder())
+                .setHeapHistogramRequest(HeapHistogramRequest.newBuilder()
+                        .setMaxClasses(maxClasses)
+                        .setCompareIntervalSeconds(compareIntervalSeconds))
                 .build());
         HeapHistogramResponse response = responseWrapper.getHeapHistogramResponse();
         if (response.getUnavailableDueToRunningInJre()) {
@@ -432,6 +466,104 @@ class DownstreamServiceImpl extends DownstreamServiceImplBase {
         }
     }
 
+    int getMatchingTraceCount(String agentRollupId, String transactionType,
+            @Nullable String transactionName) throws Exception {
+        Map<String, AgentResponse> responses = runOnAgentRollup(agentRollupId,
+                CentralRequest.newBuilder()
+                        .setMatchingTraceCountRequest(MatchingTraceCountRequest.newBuilder()
+                                .setTransactionType(transactionType)
+                                .setTransactionName(Strings.nullToEmpty(transactionName)))
+                        .build());
+        int count = 0;
+        for (AgentResponse response : responses.values()) {
+            count += response.getMatchingTraceCountResponse().getCount();
+        }
+        return count;
+    }
+
+    List<TracePoint> getMatchingActiveTracePoints(String agentRollupId, TraceKind traceKind,
+            String transactionType, @Nullable String transactionName, TracePointFilter filter,
+            int limit, long captureTime) throws Exception {
+        return getMatchingTracePoints(agentRollupId, createMatchingTracePointsRequest(
+                TracePointSource.ACTIVE, traceKind, transactionType, transactionName, filter)
+                        .setLimit(limit)
+                        .setCaptureTime(captureTime)
+                        .build());
+    }
+
+    List<TracePoint> getMatchingPendingPoints(String agentRollupId, TraceKind traceKind,
+            String transactionType, @Nullable String transactionName, TracePointFilter filter)
+            throws Exception {
+        return getMatchingTracePoints(agentRollupId, createMatchingTracePointsRequest(
+                TracePointSource.PENDING, traceKind, transactionType, transactionName, filter)
+                        .build());
+    }
+
+    void close() throws InterruptedException {
+        agentRollupExecutor.shutdown();
+        if (!agentRollupExecutor.awaitTermination(10, SECONDS)) {
+            throw new IllegalStateException(
+                    "Timed out waiting for agent rollup request threads to terminate");
+        }
+    }
+
+    private List<TracePoint> getMatchingTracePoints(String agentRollupId,
+            MatchingTracePointsRequest request) throws Exception {
+        Map<String, AgentResponse> responses = runOnAgentRollup(agentRollupId,
+                CentralRequest.newBuilder()
+                        .setMatchingTracePointsRequest(request)
+                        .build());
+        List<TracePoint> points = new ArrayList<>();
+        for (Map.Entry<String, AgentResponse> entry : responses.entrySet()) {
+            for (MatchingTracePointsResponse.TracePoint point : entry.getValue()
+                    .getMatchingTracePointsResponse().getPointList()) {
+                points.add(ImmutableTracePoint.builder()
+                        .agentId(entry.getKey())
+                        .traceId(point.getTraceId())
+                        .captureTime(point.getCaptureTime())
+                        .durationNanos(point.getDurationNanos())
+                        .partial(point.getPartial())
+                        .error(point.getError())
+                        .checkLiveTraces(true)
+                        .build());
+            }
+        }
+        return points;
+    }
+
+    // sends the request to all connected agents under the agent rollup (across all central cluster
+    // nodes), in parallel but with bounded concurrency, and returns the responses by agent id
+    //
+    // agents that are not connected, that do not support the request (older agents), or that do
+    // not respond in time are left out of the responses, so that a few unhealthy agents cannot
+    // hold up (or fail) the whole request
+    private Map<String, AgentResponse> runOnAgentRollup(String agentRollupId,
+            CentralRequest centralRequest) throws Exception {
+        Map<String, Future<AgentResponse>> futures = new HashMap<>();
+        for (String agentId : connectedAgents.keySet(AGENT_ROLLUP_TIMEOUT_SECONDS)) {
+            if (AgentRollupIds.getAgentRollupIds(agentId).contains(agentRollupId)) {
+                futures.put(agentId, agentRollupExecutor
+                        .submit(() -> runOnCluster(agentId, centralRequest)));
+            }
+        }
+        Map<String, AgentResponse> responses = new HashMap<>();
+        long deadlineNanos = System.nanoTime() + SECONDS.toNanos(AGENT_ROLLUP_TIMEOUT_SECONDS);
+        for (Map.Entry<String, Future<AgentResponse>> entry : futures.entrySet()) {
+            String agentId = entry.getKey();
+            Future<AgentResponse> future = entry.getValue();
+            try {
+                responses.put(agentId, future.get(
+                        Math.max(0, deadlineNanos - System.nanoTime()), NANOSECONDS));
+            } catch (ExecutionException e) {
+                logger.debug("{} - {}", agentId, e.getMessage(), e);
+            } catch (TimeoutException e) {
+                logger.debug("{} - timed out waiting for response", agentId, e);
+                future.cancel(true);
+            }
+        }
+        return responses;
+    }
+
     private AgentResponse runOnCluster(String agentId, CentralRequest centralRequest)
             throws Exception {
         int timeoutSeconds;
@@ -441,11 +573,18 @@ class DownstreamServiceImpl extends DownstreamServiceImplBase {
             case MAIN_THREAD_PROFILE_REQUEST:
             case AUX_THREAD_PROFILE_REQUEST:
             case FULL_TRACE_REQUEST:
+            case MATCHING_TRACE_COUNT_REQUEST:
+            case MATCHING_TRACE_POINTS_REQUEST:
                 timeoutSeconds = 5;
                 break;
             case HEAP_DUMP_REQUEST:
                 timeoutSeconds = 300;
                 break;
+            case HEAP_HISTOGRAM_REQUEST:
+                // the agent waits in between the two histograms when comparing
+                timeoutSeconds = 60
+                        + centralRequest.getHeapHistogramRequest().getCompareIntervalSeconds();
+                break;
             default:
                 timeoutSeconds = 60;
         }
@@ -656,6 +795,38 @@ class DownstreamServiceImpl extends DownstreamServiceImplBase {
         }
     }
 
+    private static MatchingTracePointsRequest.Builder createMatchingTracePointsRequest(
+            TracePointSource source, TraceKind traceKind, String transactionType,
+            @Nullable String transactionName, TracePointFilter filter) {
+        MatchingTracePointsRequest.Builder request = MatchingTracePointsRequest.newBuilder()
+                .setSource(source)
+                .setTraceKind(traceKind == TraceKind.ERROR
+                        ? MatchingTracePointsRequest.TraceKind.ERROR
+                        : MatchingTracePointsRequest.TraceKind.SLOW)
+                .setTransactionType(transactionType)
+                .setTransactionName(Strings.nullToEmpty(transactionName))
+                .setDurationNanosLow(filter.durationNanosLow())
+                .setHeadlineComparator(toProto(filter.headlineComparator()))
+                .setHeadline(Strings.nullToEmpty(filter.headline()))
+                .setErrorMessageComparator(toProto(filter.errorMessageComparator()))
+                .setErrorMessage(Strings.nullToEmpty(filter.errorMessage()))
+                .setUserComparator(toProto(filter.userComparator()))
+                .setUser(Strings.nullToEmpty(filter.user()))
+                .setAttributeName(Strings.nullToEmpty(filter.attributeName()))
+                .setAttributeValueComparator(toProto(filter.attributeValueComparator()))
+                .setAttributeValue(Strings.nullToEmpty(filter.attributeValue()));
+        Long durationNanosHigh = filter.durationNanosHigh();
+        if (durationNanosHigh != null) {
+            request.setDurationNanosHigh(OptionalInt64.newBuilder()
+                    .setValue(durationNanosHigh));
+        }
+        return request;
+    }
+
+    private static String toProto(@Nullable StringComparator comparator) {
+        return comparator == null ? "" : comparator.name();
+    }
+
     private static class ResponseHolder {
         private final Exchanger<AgentResponse> response = new Exchanger<>();
     }
@@ -68,6 +68,7 @@ class GrpcServer {
     private static final Logger logger = LoggerFactory.getLogger(GrpcServer.class);
 
     private final DownstreamServiceImpl downstreamService;
+    private final LiveMetricsRepositoryImpl liveMetricsRepository;
 
     private final @Nullable Server httpServer;
     private final @Nullable Server httpsServer;
@@ -83,11 +84,12 @@ class GrpcServer {
 
         GrpcCommon grpcCommon = new GrpcCommon(v09AgentRollupDao);
         downstreamService = new DownstreamServiceImpl(grpcCommon, clusterManager);
+        liveMetricsRepository = new LiveMetricsRepositoryImpl();
 
         CollectorServiceImpl collectorService = new CollectorServiceImpl(agentDisplayDao,
                 agentConfigDao, activeAgentDao, environmentDao, heartbeatDao, aggregateDao,
                 gaugeValueDao, traceDao, v09AgentRollupDao, grpcCommon, centralAlertingService,
-                clock, version);
+                liveMetricsRepository, clock, version);
 
         if (httpPort == null) {
             httpServer = null;
@@ -139,6 +141,10 @@ class GrpcServer {
         return downstreamService;
     }
 
+    LiveMetricsRepositoryImpl getLiveMetricsRepository() {
+        return liveMetricsRepository;
+    }
+
     void close(boolean jvmTermination) throws InterruptedException {
         if (confDirWatchExecutor != null && !jvmTermination) {
             // shutdownNow() is needed here to send interrupt to conf dir watching thread
@@ -201,6 +207,7 @@ class GrpcServer {
                 && !httpServer.awaitTermination(remainingMillis, MILLISECONDS)) {
             throw new IllegalStateException("Timed out waiting for grpc server to terminate");
         }
+        downstreamService.close();
     }
 
     private static class DelegatingSslContext extends SslContext {
@@ -61,8 +61,9 @@ class LiveJvmServiceImpl implements LiveJvmService {
     }
 
     @Override
-    public HeapHistogram heapHistogram(String agentId) throws Exception {
-        return downstreamService.heapHistogram(agentId);
+    public HeapHistogram heapHistogram(String agentId, int maxClasses,
+            int compareIntervalSeconds) throws Exception {
+        return downstreamService.heapHistogram(agentId, maxClasses, compareIntervalSeconds);
     }
 
     @Override
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.central;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import org.glowroot.common.live.LiveMetricsRepository;
+import org.glowroot.common.model.LazyHistogram;
+import org.glowroot.common.model.TransactionTypeMetrics;
+import org.glowroot.wire.api.model.AggregateOuterClass.Aggregate;
+import org.glowroot.wire.api.model.AggregateOuterClass.OldAggregatesByType;
+import org.glowroot.wire.api.model.CollectorServiceOuterClass.GaugeValueMessage.GaugeValue;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+
+// metrics are accumulated from the aggregates and gauge values as they are ingested, so this is
+// node-local, i.e. each central node only serves metrics for the agents that report to it (which
+// is fine since prometheus scrapes each node individually anyways)
+class LiveMetricsRepositoryImpl implements LiveMetricsRepository {
+
+    // access time is not reset by iterating over asMap(), so agents that stop reporting drop out
+    private final Cache<String, AgentMetrics> agentMetrics = CacheBuilder.newBuilder()
+            .expireAfterAccess(1, HOURS)
+            .build();
+
+    @Override
+    public void accept(MetricsVisitor visitor) throws Exception {
+        for (Map.Entry<String, AgentMetrics> entry : agentMetrics.asMap().entrySet()) {
+            String agentId = entry.getKey();
+            AgentMetrics metrics = entry.getValue();
+            for (Map.Entry<String, TransactionTypeMetrics> typeEntry : metrics.transactionTypes
+                    .entrySet()) {
+                visitor.visitTransactionType(agentId, typeEntry.getKey(), typeEntry.getValue());
+            }
+            for (GaugeValue gaugeValue : metrics.gaugeValues.values()) {
+                visitor.visitGauge(agentId, gaugeValue.getGaugeName(), gaugeValue.getValue());
+            }
+        }
+    }
+
+    void collectAggregates(String agentId, List<OldAggregatesByType> aggregatesByTypeList)
+            throws ExecutionException {
+        AgentMetrics metrics = getAgentMetrics(agentId);
+        for (OldAggregatesByType aggregatesByType : aggregatesByTypeList) {
+            Aggregate overallAggregate = aggregatesByType.getOverallAggregate();
+            metrics.transactionTypes
+                    .computeIfAbsent(aggregatesByType.getTransactionType(),
+                            k -> new TransactionTypeMetrics())
+                    .merge(overallAggregate.getTransactionCount(),
+                            overallAggregate.getErrorCount(),
+                            overallAggregate.getTotalDurationNanos(),
+                            new LazyHistogram(overallAggregate.getDurationNanosHistogram()));
+        }
+    }
+
+    void collectGaugeValues(String agentId, List<GaugeValue> gaugeValues)
+            throws ExecutionException {
+        AgentMetrics metrics = getAgentMetrics(agentId);
+        for (GaugeValue gaugeValue : gaugeValues) {
+            // gauge values can be batched (e.g. after a network outage), so retain the latest
+            metrics.gaugeValues.merge(gaugeValue.getGaugeName(), gaugeValue,
+                    (existing, value) -> value.getCaptureTime() >= existing.getCaptureTime()
+                            ? value : existing);
+        }
+    }
+
+    private AgentMetrics getAgentMetrics(String agentId) throws ExecutionException {
+        return agentMetrics.get(agentId, AgentMetrics::new);
+    }
+
+    private static class AgentMetrics {
+
+        private final ConcurrentMap<String, TransactionTypeMetrics> transactionTypes =
+                new ConcurrentHashMap<>();
+        private final ConcurrentMap<String, GaugeValue> gaugeValues = new ConcurrentHashMap<>();
+    }
+}
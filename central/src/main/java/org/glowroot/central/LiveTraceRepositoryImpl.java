@@ -15,10 +15,11 @@
  */
 package org.glowroot.central;
 
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Set;
 
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
@@ -65,21 +66,36 @@ class LiveTraceRepositoryImpl implements LiveTraceRepository {
     }
 
     @Override
-    public int getMatchingTraceCount(String transactionType, @Nullable String transactionName) {
-        return 0;
+    public int getMatchingTraceCount(String agentRollupId, String transactionType,
+            @Nullable String transactionName) throws Exception {
+        return downstreamService.getMatchingTraceCount(agentRollupId, transactionType,
+                transactionName);
     }
 
     @Override
-    public List<TracePoint> getMatchingActiveTracePoints(TraceKind traceKind,
-            String transactionType, @Nullable String transactionName, TracePointFilter filter,
-            int limit, long captureTime, long captureTick) {
-        return ImmutableList.of();
+    public List<TracePoint> getMatchingActiveTracePoints(String agentRollupId,
+            TraceKind traceKind, String transactionType, @Nullable String transactionName,
+            TracePointFilter filter, int limit, long captureTime, long captureTick)
+            throws Exception {
+        // capture tick is not passed along since it is not comparable across JVMs, each agent
+        // reads its own ticker instead
+        List<TracePoint> points = downstreamService.getMatchingActiveTracePoints(agentRollupId,
+                traceKind, transactionType, transactionName, filter, limit, captureTime);
+        // merge the points from all of the agents, keeping the longest running
+        List<TracePoint> orderedPoints = new ArrayList<>(points);
+        orderedPoints.sort(Comparator.comparingLong(TracePoint::durationNanos).reversed());
+        if (limit != 0 && orderedPoints.size() > limit) {
+            return orderedPoints.subList(0, limit);
+        }
+        return orderedPoints;
     }
 
     @Override
-    public List<TracePoint> getMatchingPendingPoints(TraceKind traceKind, String transactionType,
-            @Nullable String transactionName, TracePointFilter filter, long captureTime) {
-        return ImmutableList.of();
+    public List<TracePoint> getMatchingPendingPoints(String agentRollupId, TraceKind traceKind,
+            String transactionType, @Nullable String transactionName, TracePointFilter filter,
+            long captureTime) throws Exception {
+        return downstreamService.getMatchingPendingPoints(agentRollupId, traceKind,
+                transactionType, transactionName, filter);
     }
 
     @Override
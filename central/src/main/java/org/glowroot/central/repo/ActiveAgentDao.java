@@ -15,6 +15,7 @@
  */
 package org.glowroot.central.repo;
 
+import java.io.Serializable;
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -26,6 +27,7 @@ import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
 
 import javax.annotation.Nullable;
@@ -38,9 +40,13 @@ import com.google.common.collect.Multimap;
 import com.google.common.primitives.Ints;
 
 import edu.umd.cs.findbugs.annotations.CheckReturnValue;
+import org.immutables.value.Value;
+
+import org.glowroot.central.util.ClusterManager;
 import org.glowroot.central.util.Session;
 import org.glowroot.common.util.CaptureTimes;
 import org.glowroot.common.util.Clock;
+import org.glowroot.common.util.Styles;
 import org.glowroot.common2.repo.ActiveAgentRepository;
 import org.glowroot.common2.repo.ConfigRepository.RollupConfig;
 import org.glowroot.common2.repo.ImmutableAgentRollup;
@@ -69,9 +75,14 @@ public class ActiveAgentDao implements ActiveAgentRepository {
     private final ImmutableList<PreparedStatement> insertChildPS;
     private final ImmutableList<PreparedStatement> readChildPS;
 
+    // rows are keyed by rollup capture time, so once an agent has been inserted for the current
+    // interval of a rollup level, re-inserting it (e.g. on every minute of aggregates) only
+    // re-writes the same row, this cache is only to remove those redundant writes
+    private final ConcurrentMap<ActiveAgentKey, Long> lastInsertedRollupCaptureTimes;
+
     ActiveAgentDao(Session session, AgentDisplayDao agentDisplayDao, AgentConfigDao agentConfigDao,
             ConfigRepositoryImpl configRepository, RollupLevelService rollupLevelService,
-            Clock clock) throws Exception {
+            ClusterManager clusterManager, Clock clock) throws Exception {
         this.session = session;
         this.agentDisplayDao = agentDisplayDao;
         this.agentConfigDao = agentConfigDao;
@@ -109,6 +120,11 @@ public class ActiveAgentDao implements ActiveAgentRepository {
         this.readTopLevelPS = ImmutableList.copyOf(readTopLevelPS);
         this.insertChildPS = ImmutableList.copyOf(insertChildPS);
         this.readChildPS = ImmutableList.copyOf(readChildPS);
+
+        // replicated so that agents that reconnect to a different central node are not
+        // re-inserted, expiration is only to clean up after agents that are no longer active
+        lastInsertedRollupCaptureTimes = clusterManager
+                .createReplicatedMap("activeAgentLastInsertedRollupCaptureTimes", 1, DAYS);
     }
 
     @Override
@@ -198,6 +214,12 @@ public class ActiveAgentDao implements ActiveAgentRepository {
         for (int rollupLevel = 0; rollupLevel < rollupConfigs.size(); rollupLevel++) {
             long rollupIntervalMillis = getRollupIntervalMillis(rollupConfigs, rollupLevel);
             long rollupCaptureTime = CaptureTimes.getRollup(captureTime, rollupIntervalMillis);
+            ActiveAgentKey key = ImmutableActiveAgentKey.of(agentId, rollupLevel);
+            Long lastInsertedRollupCaptureTime = lastInsertedRollupCaptureTimes.get(key);
+            if (lastInsertedRollupCaptureTime != null
+                    && lastInsertedRollupCaptureTime == rollupCaptureTime) {
+                continue;
+            }
             int ttl = Ints.saturatedCast(HOURS.toSeconds(rollupExpirationHours.get(rollupLevel)));
             int adjustedTTL = Common.getAdjustedTTL(ttl, rollupCaptureTime, clock);
 
@@ -206,7 +228,7 @@ public class ActiveAgentDao implements ActiveAgentRepository {
                 .setInstant(i++, Instant.ofEpochMilli(rollupCaptureTime))
                 .setString(i++, topLevelId)
                 .setInt(i++, adjustedTTL);
-            futures.add(session.writeAsync(boundStatement).toCompletableFuture());
+            CompletableFuture<?> future = session.writeAsync(boundStatement).toCompletableFuture();
 
             if (childAgentId != null) {
                 i = 0;
@@ -215,8 +237,13 @@ public class ActiveAgentDao implements ActiveAgentRepository {
                     .setInstant(i++, Instant.ofEpochMilli(rollupCaptureTime))
                     .setString(i++, childAgentId)
                     .setInt(i++, adjustedTTL);
-                futures.add(session.writeAsync(boundStatement).toCompletableFuture());
+                future = CompletableFuture.allOf(future,
+                        session.writeAsync(boundStatement).toCompletableFuture());
             }
+            // update the cache only once the inserts are successful (if inserts for consecutive
+            // intervals complete out of order, the worst case is one redundant insert)
+            futures.add(future.thenRun(
+                    () -> lastInsertedRollupCaptureTimes.put(key, rollupCaptureTime)));
         }
         return futures;
     }
@@ -313,4 +340,11 @@ public class ActiveAgentDao implements ActiveAgentRepository {
         }
         return null;
     }
+
+    @Value.Immutable
+    @Styles.AllParameters
+    interface ActiveAgentKey extends Serializable {
+        String agentId();
+        int rollupLevel();
+    }
 }
@@ -84,7 +84,7 @@ public class CentralRepoModule {
         alertingDisabledDao = new AlertingDisabledDao(session, clock);
         rollupLevelService = new RollupLevelService(configRepository, clock);
         activeAgentDao = new ActiveAgentDao(session, agentDisplayDao, agentConfigDao,
-                configRepository, rollupLevelService, clock);
+                configRepository, rollupLevelService, clusterManager, clock);
         environmentDao = new EnvironmentDao(session);
         heartbeatDao = new HeartbeatDao(session, clock);
         incidentDao = new IncidentDao(session, clock);
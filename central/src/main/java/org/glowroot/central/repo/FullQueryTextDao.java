@@ -58,6 +58,11 @@ class FullQueryTextDao {
 
     private final RateLimiter<String> rateLimiter = new RateLimiter<>(100000, true);
 
+    // check rows that have been stored recently (exact keys, so the first sighting of a key is
+    // always written), re-writing a check row (bumping its TTL) at most once a day is covered by
+    // the extra days in getTTL(), and a key that is evicted early is just written again
+    private final RateLimiter<FullQueryTextKey> checkRateLimiter = new RateLimiter<>(100000, true);
+
     FullQueryTextDao(Session session, ConfigRepositoryImpl configRepository, Executor asyncExecutor)
             throws Exception {
         this.session = session;
@@ -91,6 +96,8 @@ class FullQueryTextDao {
         MBeanServer platformMBeanServer = ManagementFactory.getPlatformMBeanServer();
         platformMBeanServer.registerMBean(rateLimiter.getLocalCacheStats(), ObjectName
                 .getInstance("org.glowroot.central:type=FullQueryTextRateLimiter"));
+        platformMBeanServer.registerMBean(checkRateLimiter.getLocalCacheStats(), ObjectName
+                .getInstance("org.glowroot.central:type=FullQueryTextCheckRateLimiter"));
     }
 
     @Nullable
@@ -106,12 +113,26 @@ class FullQueryTextDao {
         // relying on agent side to rate limit (re-)sending the same full text
         List<CompletableFuture<?>> futures = new ArrayList<>();
         for (String agentRollupId : agentRollupIds) {
-            int i = 0;
-            BoundStatement boundStatement = insertCheckV2PS.bind()
-                .setString(i++, agentRollupId)
-                .setString(i++, fullTextSha1)
-                .setInt(i, getTTL());
-            futures.add(session.writeAsync(boundStatement).toCompletableFuture());
+            FullQueryTextKey key = ImmutableFullQueryTextKey.of(agentRollupId, fullTextSha1);
+            if (!checkRateLimiter.tryAcquire(key)) {
+                continue;
+            }
+            try {
+                int i = 0;
+                BoundStatement boundStatement = insertCheckV2PS.bind()
+                    .setString(i++, agentRollupId)
+                    .setString(i++, fullTextSha1)
+                    .setInt(i, getTTL());
+                futures.add(session.writeAsync(boundStatement)
+                        .whenComplete((ret, throwable) -> {
+                            if (throwable != null) {
+                                checkRateLimiter.release(key);
+                            }
+                        }).toCompletableFuture());
+            } catch (RuntimeException t) {
+                checkRateLimiter.release(key);
+                throw t;
+            }
         }
         if (!rateLimiter.tryAcquire(fullTextSha1)) {
             return futures;
@@ -201,6 +222,8 @@ class FullQueryTextDao {
         MBeanServer platformMBeanServer = ManagementFactory.getPlatformMBeanServer();
         platformMBeanServer.unregisterMBean(ObjectName
                 .getInstance("org.glowroot.central:type=FullQueryTextRateLimiter"));
+        platformMBeanServer.unregisterMBean(ObjectName
+                .getInstance("org.glowroot.central:type=FullQueryTextCheckRateLimiter"));
     }
 
     @Value.Immutable
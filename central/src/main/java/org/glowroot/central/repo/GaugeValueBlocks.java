@@ -0,0 +1,236 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.central.repo;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.glowroot.wire.api.model.CollectorServiceOuterClass.GaugeValueMessage.GaugeValue;
+
+// packs a window of gauge values (ordered by capture time) into a single blob, using the
+// delta-of-delta encoding for capture times and the XOR encoding for values that are described in
+// "Gorilla: A Fast, Scalable, In-Memory Time Series Database"
+//
+// gauge values are collected at a fixed interval and most gauges change slowly (or not at all), so
+// most capture times and many values are encoded in a single bit
+class GaugeValueBlocks {
+
+    private GaugeValueBlocks() {}
+
+    static ByteBuffer encode(List<GaugeValue> gaugeValues) {
+        BitOutput out = new BitOutput();
+        out.writeBits(gaugeValues.size(), 32);
+        if (gaugeValues.isEmpty()) {
+            return out.toByteBuffer();
+        }
+        GaugeValue first = gaugeValues.get(0);
+        long prevCaptureTime = first.getCaptureTime();
+        long prevDelta = 0;
+        long prevValueBits = Double.doubleToRawLongBits(first.getValue());
+        long prevWeight = first.getWeight();
+        int prevLeadingZeros = -1;
+        int prevTrailingZeros = -1;
+        out.writeBits(prevCaptureTime, 64);
+        out.writeBits(prevValueBits, 64);
+        out.writeBits(prevWeight, 64);
+        for (int i = 1; i < gaugeValues.size(); i++) {
+            GaugeValue gaugeValue = gaugeValues.get(i);
+            long captureTime = gaugeValue.getCaptureTime();
+            long delta = captureTime - prevCaptureTime;
+            writeDeltaOfDelta(out, delta - prevDelta);
+            prevCaptureTime = captureTime;
+            prevDelta = delta;
+
+            long valueBits = Double.doubleToRawLongBits(gaugeValue.getValue());
+            long xor = valueBits ^ prevValueBits;
+            if (xor == 0) {
+                out.writeBit(false);
+            } else {
+                out.writeBit(true);
+                int leadingZeros = Long.numberOfLeadingZeros(xor);
+                int trailingZeros = Long.numberOfTrailingZeros(xor);
+                if (prevLeadingZeros != -1 && leadingZeros >= prevLeadingZeros
+                        && trailingZeros >= prevTrailingZeros) {
+                    // meaningful bits fit inside the previous meaningful bits
+                    out.writeBit(false);
+                    out.writeBits(xor >>> prevTrailingZeros,
+                            64 - prevLeadingZeros - prevTrailingZeros);
+                } else {
+                    out.writeBit(true);
+                    int meaningfulBits = 64 - leadingZeros - trailingZeros;
+                    out.writeBits(leadingZeros, 6);
+                    out.writeBits(meaningfulBits - 1, 6);
+                    out.writeBits(xor >>> trailingZeros, meaningfulBits);
+                    prevLeadingZeros = leadingZeros;
+                    prevTrailingZeros = trailingZeros;
+                }
+            }
+            prevValueBits = valueBits;
+
+            long weight = gaugeValue.getWeight();
+            if (weight == prevWeight) {
+                out.writeBit(false);
+            } else {
+                out.writeBit(true);
+                out.writeBits(weight, 64);
+                prevWeight = weight;
+            }
+        }
+        return out.toByteBuffer();
+    }
+
+    static List<GaugeValue> decode(ByteBuffer buffer) {
+        BitInput in = new BitInput(buffer);
+        int count = (int) in.readBits(32);
+        List<GaugeValue> gaugeValues = new ArrayList<>(count);
+        if (count == 0) {
+            return gaugeValues;
+        }
+        long captureTime = in.readBits(64);
+        long valueBits = in.readBits(64);
+        long weight = in.readBits(64);
+        long delta = 0;
+        int leadingZeros = -1;
+        int trailingZeros = -1;
+        gaugeValues.add(newGaugeValue(captureTime, valueBits, weight));
+        for (int i = 1; i < count; i++) {
+            delta += readDeltaOfDelta(in);
+            captureTime += delta;
+
+            if (in.readBit()) {
+                if (in.readBit()) {
+                    leadingZeros = (int) in.readBits(6);
+                    int meaningfulBits = (int) in.readBits(6) + 1;
+                    trailingZeros = 64 - leadingZeros - meaningfulBits;
+                }
+                int meaningfulBits = 64 - leadingZeros - trailingZeros;
+                valueBits ^= in.readBits(meaningfulBits) << trailingZeros;
+            }
+
+            if (in.readBit()) {
+                weight = in.readBits(64);
+            }
+            gaugeValues.add(newGaugeValue(captureTime, valueBits, weight));
+        }
+        return gaugeValues;
+    }
+
+    private static void writeDeltaOfDelta(BitOutput out, long deltaOfDelta) {
+        // zig-zag encoding so that small negative values also use few bits
+        long zigZag = (deltaOfDelta << 1) ^ (deltaOfDelta >> 63);
+        if (zigZag == 0) {
+            out.writeBit(false);
+        } else if (zigZag >>> 7 == 0) {
+            out.writeBits(0b10, 2);
+            out.writeBits(zigZag, 7);
+        } else if (zigZag >>> 9 == 0) {
+            out.writeBits(0b110, 3);
+            out.writeBits(zigZag, 9);
+        } else if (zigZag >>> 12 == 0) {
+            out.writeBits(0b1110, 4);
+            out.writeBits(zigZag, 12);
+        } else if (zigZag >>> 32 == 0) {
+            out.writeBits(0b11110, 5);
+            out.writeBits(zigZag, 32);
+        } else {
+            out.writeBits(0b11111, 5);
+            out.writeBits(zigZag, 64);
+        }
+    }
+
+    private static long readDeltaOfDelta(BitInput in) {
+        long zigZag;
+        if (!in.readBit()) {
+            return 0;
+        } else if (!in.readBit()) {
+            zigZag = in.readBits(7);
+        } else if (!in.readBit()) {
+            zigZag = in.readBits(9);
+        } else if (!in.readBit()) {
+            zigZag = in.readBits(12);
+        } else if (!in.readBit()) {
+            zigZag = in.readBits(32);
+        } else {
+            zigZag = in.readBits(64);
+        }
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    private static GaugeValue newGaugeValue(long captureTime, long valueBits, long weight) {
+        return GaugeValue.newBuilder()
+                .setCaptureTime(captureTime)
+                .setValue(Double.longBitsToDouble(valueBits))
+                .setWeight(weight)
+                .build();
+    }
+
+    private static class BitOutput {
+
+        private byte[] bytes = new byte[64];
+        private int bitCount;
+
+        private void writeBit(boolean bit) {
+            int byteIndex = bitCount >>> 3;
+            if (byteIndex == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            if (bit) {
+                bytes[byteIndex] |= (byte) (0x80 >>> (bitCount & 7));
+            }
+            bitCount++;
+        }
+
+        // writes the lowest bitCount bits of value, most significant bit first
+        private void writeBits(long value, int bitCount) {
+            for (int i = bitCount - 1; i >= 0; i--) {
+                writeBit(((value >>> i) & 1) != 0);
+            }
+        }
+
+        private ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(bytes, 0, (bitCount + 7) >>> 3).slice();
+        }
+    }
+
+    private static class BitInput {
+
+        private final ByteBuffer buffer;
+        private final int offset;
+        private int bitIndex;
+
+        private BitInput(ByteBuffer buffer) {
+            this.buffer = buffer;
+            offset = buffer.position();
+        }
+
+        private boolean readBit() {
+            int b = buffer.get(offset + (bitIndex >>> 3));
+            boolean bit = (b & (0x80 >>> (bitIndex & 7))) != 0;
+            bitIndex++;
+            return bit;
+        }
+
+        private long readBits(int bitCount) {
+            long value = 0;
+            for (int i = 0; i < bitCount; i++) {
+                value = (value << 1) | (readBit() ? 1 : 0);
+            }
+            return value;
+        }
+    }
+}
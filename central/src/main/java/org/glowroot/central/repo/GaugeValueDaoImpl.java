@@ -67,6 +67,14 @@ import static java.util.concurrent.TimeUnit.MINUTES;
 
 public class GaugeValueDaoImpl implements GaugeValueDao {
 
+    // when enabled, each closed window of raw (rollup level 0) gauge values is packed into a
+    // single compressed block as part of the level 1 rollup, and the raw rows are only retained
+    // long enough for the rollup to occur
+    private static final boolean BLOCK_STORAGE =
+            Boolean.getBoolean("glowroot.central.gaugeValueBlockStorage");
+
+    private static final int RAW_ROW_EXPIRATION_HOURS_WITH_BLOCK_STORAGE = 24;
+
     private final Session session;
     private final ConfigRepositoryImpl configRepository;
     private final ExecutorService asyncExecutor;
@@ -81,6 +89,12 @@ public class GaugeValueDaoImpl implements GaugeValueDao {
     private final ImmutableList<PreparedStatement> readValueForRollupPS;
     private final PreparedStatement readValueForRollupFromChildPS;
 
+    // these are only used when block storage is enabled
+    private final @Nullable PreparedStatement insertBlockPS;
+    private final @Nullable PreparedStatement readBlockPS;
+    private final @Nullable PreparedStatement readOldestBlockPS;
+    private final @Nullable PreparedStatement readRawValueForBlockPS;
+
     private final List<PreparedStatement> insertNeedsRollup;
     private final List<PreparedStatement> readNeedsRollup;
     private final List<PreparedStatement> deleteNeedsRollup;
@@ -140,6 +154,29 @@ public class GaugeValueDaoImpl implements GaugeValueDao {
                 + " gauge_value_rollup_1 where agent_rollup = ? and gauge_name = ? and"
                 + " capture_time = ?");
 
+        if (BLOCK_STORAGE) {
+            // capture_time is the end of the (level 1 rollup) window that the block covers
+            session.createTableWithTWCS("create table if not exists gauge_value_block_0"
+                    + " (agent_rollup varchar, gauge_name varchar, capture_time timestamp, block"
+                    + " blob, primary key ((agent_rollup, gauge_name), capture_time))",
+                    rollupExpirationHours.get(0));
+            insertBlockPS = session.prepare("insert into gauge_value_block_0 (agent_rollup,"
+                    + " gauge_name, capture_time, block) values (?, ?, ?, ?) using ttl ?");
+            readBlockPS = session.prepare("select capture_time, block from gauge_value_block_0"
+                    + " where agent_rollup = ? and gauge_name = ? and capture_time >= ? and"
+                    + " capture_time <= ?");
+            readOldestBlockPS = session.prepare("select block from gauge_value_block_0 where"
+                    + " agent_rollup = ? and gauge_name = ? limit 1");
+            readRawValueForBlockPS = session.prepare("select capture_time, value, weight from"
+                    + " gauge_value_rollup_0 where agent_rollup = ? and gauge_name = ? and"
+                    + " capture_time > ? and capture_time <= ?");
+        } else {
+            insertBlockPS = null;
+            readBlockPS = null;
+            readOldestBlockPS = null;
+            readRawValueForBlockPS = null;
+        }
+
         List<PreparedStatement> insertNeedsRollup = new ArrayList<>();
         List<PreparedStatement> readNeedsRollup = new ArrayList<>();
         List<PreparedStatement> deleteNeedsRollup = new ArrayList<>();
@@ -188,7 +225,7 @@ public class GaugeValueDaoImpl implements GaugeValueDao {
         if (gaugeValues.isEmpty()) {
             return;
         }
-        int ttl = getTTLs().get(0);
+        int ttl = getRawRowTTL();
         long maxCaptureTime = 0;
         List<CompletableFuture<?>> futures = new ArrayList<>();
         for (GaugeValue gaugeValue : gaugeValues) {
@@ -280,6 +317,83 @@ public class GaugeValueDaoImpl implements GaugeValueDao {
     @Override
     public List<GaugeValue> readGaugeValues(String agentRollupId, String gaugeName, long from,
             long to, int rollupLevel) {
+        if (rollupLevel == 0 && BLOCK_STORAGE) {
+            return readGaugeValuesUsingBlocks(agentRollupId, gaugeName, from, to);
+        }
+        return readGaugeValueRows(agentRollupId, gaugeName, from, to, rollupLevel);
+    }
+
+    @Override
+    public long getOldestCaptureTime(String agentRollupId, String gaugeName, int rollupLevel) {
+        int i = 0;
+        BoundStatement boundStatement = readOldestCaptureTimePS.get(rollupLevel).bind()
+            .setString(i++, agentRollupId)
+            .setString(i++, gaugeName);
+        ResultSet results = session.read(boundStatement);
+        Row row = results.one();
+        long oldestCaptureTime =
+                row == null ? Long.MAX_VALUE : checkNotNull(row.getInstant(0)).toEpochMilli();
+        if (rollupLevel == 0 && BLOCK_STORAGE) {
+            // raw rows expire long before the blocks that they are packed into
+            i = 0;
+            boundStatement = checkNotNull(readOldestBlockPS).bind()
+                .setString(i++, agentRollupId)
+                .setString(i++, gaugeName);
+            row = session.read(boundStatement).one();
+            if (row != null) {
+                List<GaugeValue> gaugeValues =
+                        GaugeValueBlocks.decode(checkNotNull(row.getByteBuffer(0)));
+                if (!gaugeValues.isEmpty()) {
+                    oldestCaptureTime =
+                            Math.min(oldestCaptureTime, gaugeValues.get(0).getCaptureTime());
+                }
+            }
+        }
+        return oldestCaptureTime;
+    }
+
+    // from is INCLUSIVE
+    private List<GaugeValue> readGaugeValuesUsingBlocks(String agentRollupId, String gaugeName,
+            long from, long to) {
+        long blockIntervalMillis = configRepository.getRollupConfigs().get(0).intervalMillis();
+        int i = 0;
+        BoundStatement boundStatement = checkNotNull(readBlockPS).bind()
+            .setString(i++, agentRollupId)
+            .setString(i++, gaugeName)
+            .setInstant(i++, Instant.ofEpochMilli(from))
+            .setInstant(i++, Instant.ofEpochMilli(CaptureTimes.getRollup(to, blockIntervalMillis)));
+        ResultSet results = session.read(boundStatement);
+        List<GaugeValue> gaugeValues = new ArrayList<>();
+        // windows that have not been packed into blocks (yet) are read from the raw rows, which
+        // in the steady state is only the most recent window(s) that have not been rolled up yet
+        long nonInclusiveFrom = from - 1;
+        for (Row row : results) {
+            i = 0;
+            long blockCaptureTime = checkNotNull(row.getInstant(i++)).toEpochMilli();
+            long blockFrom = blockCaptureTime - blockIntervalMillis;
+            if (blockFrom > nonInclusiveFrom) {
+                gaugeValues.addAll(readGaugeValueRows(agentRollupId, gaugeName,
+                        nonInclusiveFrom + 1, blockFrom, 0));
+            }
+            for (GaugeValue gaugeValue : GaugeValueBlocks
+                    .decode(checkNotNull(row.getByteBuffer(i++)))) {
+                long captureTime = gaugeValue.getCaptureTime();
+                if (captureTime >= from && captureTime <= to) {
+                    gaugeValues.add(gaugeValue);
+                }
+            }
+            nonInclusiveFrom = blockCaptureTime;
+        }
+        if (nonInclusiveFrom < to) {
+            gaugeValues.addAll(
+                    readGaugeValueRows(agentRollupId, gaugeName, nonInclusiveFrom + 1, to, 0));
+        }
+        return gaugeValues;
+    }
+
+    // from is INCLUSIVE
+    private List<GaugeValue> readGaugeValueRows(String agentRollupId, String gaugeName, long from,
+            long to, int rollupLevel) {
         int i = 0;
         BoundStatement boundStatement = readValuePS.get(rollupLevel).bind()
             .setString(i++, agentRollupId)
@@ -299,17 +413,6 @@ public class GaugeValueDaoImpl implements GaugeValueDao {
         return gaugeValues;
     }
 
-    @Override
-    public long getOldestCaptureTime(String agentRollupId, String gaugeName, int rollupLevel) {
-        int i = 0;
-        BoundStatement boundStatement = readOldestCaptureTimePS.get(rollupLevel).bind()
-            .setString(i++, agentRollupId)
-            .setString(i++, gaugeName);
-        ResultSet results = session.read(boundStatement);
-        Row row = results.one();
-        return row == null ? Long.MAX_VALUE : checkNotNull(row.getInstant(0)).toEpochMilli();
-    }
-
     @Override
     public void rollup(String agentRollupId) throws Exception {
         rollup(agentRollupId, AgentRollupIds.getParent(agentRollupId),
@@ -406,9 +509,18 @@ public class GaugeValueDaoImpl implements GaugeValueDao {
             int adjustedTTL = Common.getAdjustedTTL(ttl, captureTime, clock);
             Set<String> gaugeNames = needsRollup.getKeys();
             List<CompletableFuture<?>> futures = new ArrayList<>();
-            for (String gaugeName : gaugeNames) {
-                futures.add(rollupOne(rollupLevel, agentRollupId, gaugeName, from, captureTime,
-                        adjustedTTL));
+            if (rollupLevel == 1 && BLOCK_STORAGE) {
+                int blockAdjustedTTL =
+                        Common.getAdjustedTTL(getTTLs().get(0), captureTime, clock);
+                for (String gaugeName : gaugeNames) {
+                    futures.add(rollupOneWithBlock(agentRollupId, gaugeName, from, captureTime,
+                            adjustedTTL, blockAdjustedTTL));
+                }
+            } else {
+                for (String gaugeName : gaugeNames) {
+                    futures.add(rollupOne(rollupLevel, agentRollupId, gaugeName, from,
+                            captureTime, adjustedTTL));
+                }
             }
             if (futures.isEmpty()) {
                 // no rollups occurred, warning already logged inside rollupOne() above
@@ -492,6 +604,67 @@ public class GaugeValueDaoImpl implements GaugeValueDao {
         });
     }
 
+    // from is non-inclusive
+    //
+    // the raw (rollup level 0) values of the window are packed into a block at the same time that
+    // they are rolled up, since they need to be read for the rollup anyways
+    private CompletableFuture<?> rollupOneWithBlock(String agentRollupId, String gaugeName,
+            long from, long to, int adjustedTTL, int blockAdjustedTTL) {
+        int i = 0;
+        BoundStatement boundStatement = checkNotNull(readRawValueForBlockPS).bind()
+            .setString(i++, agentRollupId)
+            .setString(i++, gaugeName)
+            .setInstant(i++, Instant.ofEpochMilli(from))
+            .setInstant(i++, Instant.ofEpochMilli(to));
+        CompletableFuture<AsyncResultSet> future = session.readAsyncWarnIfNoRows(boundStatement,
+                "no gauge value table records found for agentRollupId={}, gaugeName={}, from={},"
+                        + " to={}, level={}",
+                agentRollupId, gaugeName, from, to, 1).toCompletableFuture();
+        return MoreFutures.rollupAsync(future, asyncExecutor, new MoreFutures.DoRollup() {
+            @Override
+            public CompletableFuture<?> execute(AsyncResultSet results) {
+                List<GaugeValue> gaugeValues = new ArrayList<>();
+                return readRawValues(results, gaugeValues).thenCompose(ignored -> {
+                    double totalWeightedValue = 0;
+                    long totalWeight = 0;
+                    for (GaugeValue gaugeValue : gaugeValues) {
+                        totalWeightedValue += gaugeValue.getValue() * gaugeValue.getWeight();
+                        totalWeight += gaugeValue.getWeight();
+                    }
+                    int j = 0;
+                    BoundStatement boundStatement = checkNotNull(insertBlockPS).bind()
+                        .setString(j++, agentRollupId)
+                        .setString(j++, gaugeName)
+                        .setInstant(j++, Instant.ofEpochMilli(to))
+                        .setByteBuffer(j++, GaugeValueBlocks.encode(gaugeValues))
+                        .setInt(j++, blockAdjustedTTL);
+                    List<CompletableFuture<?>> futures = new ArrayList<>();
+                    futures.add(session.writeAsync(boundStatement).toCompletableFuture());
+                    futures.add(insertRollupValue(1, agentRollupId, gaugeName, to,
+                            totalWeightedValue, totalWeight, adjustedTTL));
+                    return CompletableFutures.allAsList(futures);
+                });
+            }
+        });
+    }
+
+    private static CompletableFuture<?> readRawValues(AsyncResultSet results,
+            List<GaugeValue> gaugeValues) {
+        for (Row row : results.currentPage()) {
+            int i = 0;
+            gaugeValues.add(GaugeValue.newBuilder()
+                    .setCaptureTime(checkNotNull(row.getInstant(i++)).toEpochMilli())
+                    .setValue(row.getDouble(i++))
+                    .setWeight(row.getLong(i++))
+                    .build());
+        }
+        if (results.hasMorePages()) {
+            return results.fetchNextPage().toCompletableFuture()
+                    .thenCompose(nextResults -> readRawValues(nextResults, gaugeValues));
+        }
+        return CompletableFuture.completedFuture(null);
+    }
+
     private CompletableFuture<?> rollupOneFromRows(int rollupLevel, String agentRollupId,
             String gaugeName, long to, int adjustedTTL, List<AsyncResultSet> results) {
         DoubleAccumulator totalWeightedValue = new DoubleAccumulator(Double::sum, 0.0);
@@ -513,20 +686,38 @@ public class GaugeValueDaoImpl implements GaugeValueDao {
             }
         };
         return CompletableFutures.allAsList(results.stream().map(compute::apply).collect(Collectors.toList()))
-                .thenCompose(ignored -> {
-                    int i = 0;
-                    BoundStatement boundStatement = insertValuePS.get(rollupLevel).bind()
-                            .setString(i++, agentRollupId)
-                            .setString(i++, gaugeName)
-                            .setInstant(i++, Instant.ofEpochMilli(to));
-                    // individual gauge value weights cannot be zero, and rows is non-empty
-                    // (see callers of this method), so totalWeight is guaranteed non-zero
-                    checkState(totalWeight.get() != 0);
-                    boundStatement = boundStatement.setDouble(i++, totalWeightedValue.get() / totalWeight.get())
-                            .setLong(i++, totalWeight.get())
-                            .setInt(i++, adjustedTTL);
-                    return session.writeAsync(boundStatement).toCompletableFuture();
-                });
+                .thenCompose(ignored -> insertRollupValue(rollupLevel, agentRollupId, gaugeName,
+                        to, totalWeightedValue.get(), totalWeight.get(), adjustedTTL));
+    }
+
+    private CompletableFuture<?> insertRollupValue(int rollupLevel, String agentRollupId,
+            String gaugeName, long to, double totalWeightedValue, long totalWeight,
+            int adjustedTTL) {
+        int i = 0;
+        BoundStatement boundStatement = insertValuePS.get(rollupLevel).bind()
+                .setString(i++, agentRollupId)
+                .setString(i++, gaugeName)
+                .setInstant(i++, Instant.ofEpochMilli(to));
+        // individual gauge value weights cannot be zero, and rows is non-empty
+        // (see callers of this method), so totalWeight is guaranteed non-zero
+        checkState(totalWeight != 0);
+        boundStatement = boundStatement.setDouble(i++, totalWeightedValue / totalWeight)
+                .setLong(i++, totalWeight)
+                .setInt(i++, adjustedTTL);
+        return session.writeAsync(boundStatement).toCompletableFuture();
+    }
+
+    private int getRawRowTTL() {
+        int ttl = getTTLs().get(0);
+        if (!BLOCK_STORAGE) {
+            return ttl;
+        }
+        // raw rows only need to be retained until they are packed into blocks (which happens
+        // during the level 1 rollup), this leaves plenty of room for the rollup to catch up after
+        // an outage
+        int maxTTL = Ints.saturatedCast(
+                HOURS.toSeconds(RAW_ROW_EXPIRATION_HOURS_WITH_BLOCK_STORAGE));
+        return ttl == 0 ? maxTTL : Math.min(ttl, maxTTL);
     }
 
     private List<Integer> getTTLs() {
@@ -549,6 +740,9 @@ public class GaugeValueDaoImpl implements GaugeValueDao {
         for (int i = 1; i <= configRepository.getRollupConfigs().size(); i++) {
             session.updateSchemaWithRetry("truncate gauge_needs_rollup_" + i);
         }
+        if (BLOCK_STORAGE) {
+            session.updateSchemaWithRetry("truncate gauge_value_block_0");
+        }
         session.updateSchemaWithRetry("truncate gauge_name");
         session.updateSchemaWithRetry("truncate gauge_needs_rollup_from_child");
     }
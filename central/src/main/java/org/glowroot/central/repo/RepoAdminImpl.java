@@ -172,6 +172,8 @@ public class RepoAdminImpl implements RepoAdmin {
             } else {
                 return storageConfig.rollupExpirationHours().get(rollupLevel - 1);
             }
+        } else if (tableName.equals("gauge_value_block_0")) {
+            return storageConfig.rollupExpirationHours().get(0);
         } else if (tableName.startsWith("aggregate_tt_query_")
                 || tableName.startsWith("aggregate_tn_query_")
                 || tableName.startsWith("aggregate_tt_service_call_")
@@ -84,6 +84,14 @@ public class TraceDaoImpl implements TraceDao {
     @SuppressWarnings("deprecation")
     private static final HashFunction SHA_1 = Hashing.sha1();
 
+    // entries are all in the same partition, so each unlogged batch is applied as a single
+    // mutation, the limits keep each batch around Cassandra's default
+    // batch_size_warn_threshold_in_kb (5kb), well clear of batch_size_fail_threshold_in_kb (50kb)
+    // which would otherwise reject the batch (the statement limit bounds the per-row overhead
+    // that is not included in the serialized size of the entries)
+    private static final int ENTRY_BATCH_MAX_STATEMENTS = 25;
+    private static final int ENTRY_BATCH_MAX_BYTES = 5 * 1024;
+
     private final Session session;
     private final TransactionTypeDao transactionTypeDao;
     private final FullQueryTextDao fullQueryTextDao;
@@ -114,10 +122,12 @@ public class TraceDaoImpl implements TraceDao {
 
     private final PreparedStatement insertHeaderV2;
     private final PreparedStatement insertEntryV2;
+    private final PreparedStatement deleteEntriesV2;
     private final PreparedStatement insertQueryV2;
     private final PreparedStatement insertSharedQueryTextV2;
     private final PreparedStatement insertMainThreadProfileV2;
     private final PreparedStatement insertAuxThreadProfileV2;
+    private final PreparedStatement insertAllocationProfile;
 
     private final PreparedStatement readOverallSlowCount;
     private final PreparedStatement readOverallSlowCountPartial;
@@ -150,6 +160,7 @@ public class TraceDaoImpl implements TraceDao {
     private final PreparedStatement readSharedQueryTextsV2;
     private final PreparedStatement readMainThreadProfileV2;
     private final PreparedStatement readAuxThreadProfileV2;
+    private final PreparedStatement readAllocationProfile;
 
     private final PreparedStatement deleteOverallSlowCountPartial;
     private final PreparedStatement deleteTransactionSlowCountPartial;
@@ -336,6 +347,10 @@ public class TraceDaoImpl implements TraceDao {
                 + " (agent_id varchar, trace_id varchar, profile blob, primary key ((agent_id,"
                 + " trace_id)))", expirationHours);
 
+        session.createTableWithTWCS("create table if not exists trace_allocation_profile"
+                + " (agent_id varchar, trace_id varchar, profile blob, primary key ((agent_id,"
+                + " trace_id)))", expirationHours);
+
         insertOverallSlowCount = session.prepare("insert into trace_tt_slow_count (agent_rollup,"
                 + " transaction_type, capture_time, agent_id, trace_id) values (?, ?, ?, ?, ?)"
                 + " using ttl ?");
@@ -408,6 +423,15 @@ public class TraceDaoImpl implements TraceDao {
                 + " location_stack_trace, error) values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)"
                 + " using ttl ?");
 
+        if (cassandra2x) {
+            // Cassandra 2.x doesn't support range deletions
+            deleteEntriesV2 = session.prepare("delete from trace_entry_v2 where agent_id = ? and"
+                    + " trace_id = ? and index_ = ?");
+        } else {
+            deleteEntriesV2 = session.prepare("delete from trace_entry_v2 where agent_id = ? and"
+                    + " trace_id = ? and index_ >= ?");
+        }
+
         insertQueryV2 = session.prepare("insert into trace_query_v2 (agent_id, trace_id, type,"
                 + " shared_query_text_index, total_duration_nanos, execution_count, total_rows,"
                 + " active) values (?, ?, ?, ?, ?, ?, ?, ?) using ttl ?");
@@ -422,6 +446,9 @@ public class TraceDaoImpl implements TraceDao {
         insertAuxThreadProfileV2 = session.prepare("insert into trace_aux_thread_profile_v2"
                 + " (agent_id, trace_id, profile) values (?, ?, ?) using ttl ?");
 
+        insertAllocationProfile = session.prepare("insert into trace_allocation_profile"
+                + " (agent_id, trace_id, profile) values (?, ?, ?) using ttl ?");
+
         readOverallSlowCount = session.prepare("select count(*) from trace_tt_slow_count where"
                 + " agent_rollup = ? and transaction_type = ? and capture_time > ? and capture_time"
                 + " <= ?");
@@ -560,6 +587,9 @@ public class TraceDaoImpl implements TraceDao {
         readAuxThreadProfileV2 = session.prepare("select profile from trace_aux_thread_profile_v2"
                 + " where agent_id = ? and trace_id = ?");
 
+        readAllocationProfile = session.prepare("select profile from trace_allocation_profile"
+                + " where agent_id = ? and trace_id = ?");
+
         deleteOverallSlowCountPartial = session.prepare("delete from trace_tt_slow_count_partial"
                 + " where agent_rollup = ? and transaction_type = ? and capture_time = ? and"
                 + " agent_id = ? and trace_id = ?");
@@ -604,14 +634,15 @@ public class TraceDaoImpl implements TraceDao {
             List<String> agentRollupIdsForMeta, Trace trace) {
         String traceId = trace.getId();
         Trace.Header priorHeader = trace.getUpdate() ? readHeader(agentId, traceId) : null;
-        Trace.Header headerTmp = trace.getHeader();
-        if (headerTmp.getPartial()) {
-            headerTmp = headerTmp.toBuilder()
-                    .setCaptureTimePartialRollup(
-                            getCaptureTimePartialRollup(headerTmp.getCaptureTime()))
-                    .build();
+        int priorEntryRowCount = priorHeader == null ? 0 : priorHeader.getEntryRowCount();
+        int entryRowCount = getEntryRowCount(trace, priorEntryRowCount);
+        Trace.Header.Builder headerBuilder = trace.getHeader().toBuilder()
+                .setEntryRowCount(entryRowCount);
+        if (headerBuilder.getPartial()) {
+            headerBuilder.setCaptureTimePartialRollup(
+                    getCaptureTimePartialRollup(headerBuilder.getCaptureTime()));
         }
-        final Trace.Header header = headerTmp;
+        final Trace.Header header = headerBuilder.build();
         List<CompletableFuture<?>> completableFutures = new ArrayList<>();
 
         List<Trace.SharedQueryText> sharedQueryTexts = new ArrayList<>();
@@ -760,13 +791,19 @@ public class TraceDaoImpl implements TraceDao {
                 .setInt(i++, adjustedTTL);
             futures.add(session.writeAsync(boundStatement).toCompletableFuture());
 
-            int index = 0;
-            for (Trace.Entry entry : trace.getEntryList()) {
+            List<BatchableStatement<?>> entryBatch = new ArrayList<>();
+            int entryBatchBytes = 0;
+            List<Trace.Entry> entries = trace.getEntryList();
+            for (int k = 0; k < entries.size(); k++) {
+                Trace.Entry entry = entries.get(k);
+                // incremental entries overwrite (or append to) the entries from the prior partial
+                // trace stores, since index_ is the clustering column
+                int index = trace.getIncrementalEntries() ? trace.getEntryIndex(k) : k;
                 i = 0;
                 boundStatement = insertEntryV2.bind()
                     .setString(i++, agentId)
                     .setString(i++, traceId)
-                    .setInt(i++, index++)
+                    .setInt(i++, index)
                     .setInt(i++, entry.getDepth())
                     .setLong(i++, entry.getStartOffsetNanos())
                     .setLong(i++, entry.getDurationNanos())
@@ -803,7 +840,52 @@ public class TraceDaoImpl implements TraceDao {
                     boundStatement = boundStatement.setToNull(i++);
                 }
                 boundStatement = boundStatement.setInt(i++, adjustedTTL);
-                futures.add(session.writeAsync(boundStatement).toCompletableFuture());
+                if (cassandra2x) {
+                    // Cassandra 2.x warns about (and can reject) large batches even when they
+                    // only touch a single partition
+                    futures.add(session.writeAsync(boundStatement).toCompletableFuture());
+                    continue;
+                }
+                int entryBytes = entry.getSerializedSize();
+                if (!entryBatch.isEmpty()
+                        && entryBatchBytes + entryBytes > ENTRY_BATCH_MAX_BYTES) {
+                    // flush before adding so the batch never goes over the limit (an entry that is
+                    // larger than the limit by itself is written as a single statement)
+                    futures.add(writeEntryBatch(entryBatch));
+                    entryBatch = new ArrayList<>();
+                    entryBatchBytes = 0;
+                }
+                entryBatch.add(boundStatement);
+                entryBatchBytes += entryBytes;
+                if (entryBatch.size() >= ENTRY_BATCH_MAX_STATEMENTS) {
+                    futures.add(writeEntryBatch(entryBatch));
+                    entryBatch = new ArrayList<>();
+                    entryBatchBytes = 0;
+                }
+            }
+            if (!entryBatch.isEmpty()) {
+                futures.add(writeEntryBatch(entryBatch));
+            }
+            if (!trace.getIncrementalEntries() && priorEntryRowCount > entryRowCount) {
+                // a full store can have fewer entries than were stored by the prior (incremental)
+                // partial trace stores, e.g. after entries were collapsed, so need to delete the
+                // entries beyond the new end (otherwise they would be read back as part of this
+                // trace)
+                if (cassandra2x) {
+                    for (int k = entryRowCount; k < priorEntryRowCount; k++) {
+                        boundStatement = deleteEntriesV2.bind()
+                            .setString(0, agentId)
+                            .setString(1, traceId)
+                            .setInt(2, k);
+                        futures.add(session.writeAsync(boundStatement).toCompletableFuture());
+                    }
+                } else {
+                    boundStatement = deleteEntriesV2.bind()
+                        .setString(0, agentId)
+                        .setString(1, traceId)
+                        .setInt(2, entryRowCount);
+                    futures.add(session.writeAsync(boundStatement).toCompletableFuture());
+                }
             }
 
             for (Aggregate.Query query : trace.getQueryList()) {
@@ -825,7 +907,7 @@ public class TraceDaoImpl implements TraceDao {
                 futures.add(session.writeAsync(boundStatement).toCompletableFuture());
             }
 
-            index = 0;
+            int index = 0;
             for (Trace.SharedQueryText sharedQueryText : sharedQueryTexts) {
                 i = 0;
                 boundStatement = insertSharedQueryTextV2.bind()
@@ -859,6 +941,13 @@ public class TraceDaoImpl implements TraceDao {
                         adjustedTTL);
                 futures.add(session.writeAsync(boundStatement).toCompletableFuture());
             }
+
+            if (trace.hasAllocationProfile()) {
+                boundStatement = insertAllocationProfile.bind();
+                boundStatement = bindThreadProfile(boundStatement, agentId, traceId,
+                        trace.getAllocationProfile(), adjustedTTL);
+                futures.add(session.writeAsync(boundStatement).toCompletableFuture());
+            }
             futures.addAll(
                     transactionTypeDao.store(agentRollupIdsForMeta, header.getTransactionType()));
             return CompletableFutures.allAsList(futures);
@@ -1131,6 +1220,20 @@ public class TraceDaoImpl implements TraceDao {
         return readAuxThreadProfileUsingPS(agentId, traceId, readAuxThreadProfileV1);
     }
 
+    @Override
+    public @Nullable Profile readAllocationProfile(String agentId, String traceId)
+            throws Exception {
+        BoundStatement boundStatement = readAllocationProfile.bind()
+            .setString(0, agentId)
+            .setString(1, traceId);
+        ResultSet results = session.read(boundStatement);
+        Row row = results.one();
+        if (row == null) {
+            return null;
+        }
+        return Profile.parseFrom(checkNotNull(row.getByteBuffer(0)));
+    }
+
     public @Nullable Profile readAuxThreadProfileUsingPS(String agentId, String traceId,
             PreparedStatement readPS) throws Exception {
         BoundStatement boundStatement = readPS.bind()
@@ -1315,6 +1418,17 @@ public class TraceDaoImpl implements TraceDao {
         session.updateSchemaWithRetry("truncate table trace_shared_query_text_v2");
         session.updateSchemaWithRetry("truncate table trace_main_thread_profile_v2");
         session.updateSchemaWithRetry("truncate table trace_aux_thread_profile_v2");
+        session.updateSchemaWithRetry("truncate table trace_allocation_profile");
+    }
+
+    private CompletableFuture<?> writeEntryBatch(List<BatchableStatement<?>> entryBatch) {
+        Statement<?> statement;
+        if (entryBatch.size() == 1) {
+            statement = entryBatch.get(0);
+        } else {
+            statement = BatchStatement.newInstance(DefaultBatchType.UNLOGGED, entryBatch);
+        }
+        return session.writeAsync(statement).toCompletableFuture();
     }
 
     @CheckReturnValue
@@ -1457,6 +1571,19 @@ public class TraceDaoImpl implements TraceDao {
         return boundStatement;
     }
 
+    // priorEntryRowCount is 0 when there is no prior store (or when the prior store was by a central
+    // collector prior to 0.14.0, which did not support incremental entries)
+    private static int getEntryRowCount(Trace trace, int priorEntryRowCount) {
+        if (!trace.getIncrementalEntries()) {
+            return trace.getEntryCount();
+        }
+        int entryRowCount = priorEntryRowCount;
+        for (int index : trace.getEntryIndexList()) {
+            entryRowCount = Math.max(entryRowCount, index + 1);
+        }
+        return entryRowCount;
+    }
+
     private static long getCaptureTimePartialRollup(long captureTime) {
         // it's not really relevant that the 30-min interval matches any of the aggregate rollups,
         // this is just to help reduce proliferation of Cassandra tombstones
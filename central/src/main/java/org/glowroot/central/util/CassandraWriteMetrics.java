@@ -155,6 +155,12 @@ public class CassandraWriteMetrics {
     }
 
     private void recordMetricsInternal(Statement statement) {
+        if (statement instanceof BatchStatement) {
+            for (BatchableStatement<?> batchedStatement : (BatchStatement) statement) {
+                recordMetricsInternal(batchedStatement);
+            }
+            return;
+        }
         if (!(statement instanceof BoundStatement)) {
             return;
         }
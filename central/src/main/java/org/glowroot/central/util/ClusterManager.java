@@ -17,10 +17,14 @@ package org.glowroot.central.util;
 
 import java.io.File;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Queue;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
@@ -484,6 +488,23 @@ public abstract class ClusterManager {
                 return Optional.of(consumer.values.remove());
             }
         }
+
+        @Override
+        public Set<K> keySet(int timeoutSeconds) throws Exception {
+            CollectingConsumer<ArrayList<K>> consumer = new CollectingConsumer<ArrayList<K>>();
+            CompletableFuture<Void> future = cache.getCacheManager().executor().submitConsumer(
+                    new KeySetFunction<K>(cache.getName()), consumer);
+            future.get(timeoutSeconds, SECONDS);
+            if (consumer.logStackTrace) {
+                logger.warn("context for remote error(s) logged above",
+                        new Exception("location stack trace"));
+            }
+            Set<K> keys = new HashSet<>();
+            for (List<K> values : consumer.values) {
+                keys.addAll(values);
+            }
+            return keys;
+        }
     }
 
     private static class NonClusterDistributedExecutionMapImpl<K extends /*@NonNull*/ Serializable, V extends /*@NonNull*/ Object>
@@ -517,6 +538,11 @@ public abstract class ClusterManager {
             }
             return Optional.of(task.apply(value));
         }
+
+        @Override
+        public Set<K> keySet(int timeoutSeconds) {
+            return new HashSet<>(cache.keySet());
+        }
     }
 
     @SuppressWarnings("serial")
@@ -547,6 +573,27 @@ public abstract class ClusterManager {
         }
     }
 
+    @SuppressWarnings("serial")
+    private static class KeySetFunction<K>
+            implements SerializableFunction<EmbeddedCacheManager, Optional<ArrayList<K>>> {
+
+        private final String cacheName;
+
+        private KeySetFunction(String cacheName) {
+            this.cacheName = cacheName;
+        }
+
+        @Override
+        public Optional<ArrayList<K>> apply(EmbeddedCacheManager cacheManager) {
+            org.infinispan.Cache<K, ?> cache = cacheManager.getCache(cacheName, false);
+            if (cache == null) {
+                return Optional.empty();
+            }
+            // the cache is local to each node, so this only returns the keys on this node
+            return Optional.of(new ArrayList<K>(cache.keySet()));
+        }
+    }
+
     private static class CollectingConsumer<V extends /*@NonNull*/ Object>
             implements TriConsumer<Address, /*@Nullable*/ Optional<V>, /*@Nullable*/ Throwable> {
 
@@ -17,6 +17,7 @@ package org.glowroot.central.util;
 
 import java.io.Serializable;
 import java.util.Optional;
+import java.util.Set;
 
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.infinispan.util.function.SerializableFunction;
@@ -32,4 +33,7 @@ public interface DistributedExecutionMap<K extends /*@NonNull*/ Serializable, V
 
     <R extends Serializable> Optional<R> execute(String key, int timeoutSeconds,
             SerializableFunction<V, R> task) throws Exception;
+
+    // returns the keys across all cluster nodes
+    Set<K> keySet(int timeoutSeconds) throws Exception;
 }
@@ -188,6 +188,13 @@ public class TraceDaoWithV09Support implements TraceDao {
         return profile;
     }
 
+    @Override
+    public @Nullable Profile readAllocationProfile(String agentId, String traceId)
+            throws Exception {
+        // allocation profiles are never stored under v09 agent ids
+        return delegate.readAllocationProfile(agentId, traceId);
+    }
+
     private boolean checkV09(String agentId, String traceId) throws Exception {
         if (!agentRollupIdsWithV09Data.contains(agentId)) {
             return false;
@@ -21,10 +21,13 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
 import org.glowroot.central.util.ClusterManager;
+import org.glowroot.common.live.ImmutableTracePointFilter;
 import org.glowroot.common.live.LiveJvmService.AgentNotConnectedException;
+import org.glowroot.common.live.LiveTraceRepository.TraceKind;
 import org.glowroot.wire.api.model.AgentConfigOuterClass.AgentConfig;
 import org.glowroot.wire.api.model.DownstreamServiceOuterClass.MBeanDumpRequest.MBeanDumpKind;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.mock;
 
@@ -170,4 +173,16 @@ public class DownstreamServiceNotConnectedTest {
         assertThrows(AgentNotConnectedException.class, () ->
             downstreamService.getFullTrace("a", "dummy"));
     }
+
+    @Test
+    public void shouldNotCountMatchingTracesWhenNoAgentsConnected() throws Exception {
+        assertThat(downstreamService.getMatchingTraceCount("a::", "Web", null)).isZero();
+    }
+
+    @Test
+    public void shouldNotFindMatchingActiveTracePointsWhenNoAgentsConnected() throws Exception {
+        assertThat(downstreamService.getMatchingActiveTracePoints("a::", TraceKind.SLOW, "Web",
+                null, ImmutableTracePointFilter.builder().durationNanosLow(0).build(), 10, 0))
+                        .isEmpty();
+    }
 }
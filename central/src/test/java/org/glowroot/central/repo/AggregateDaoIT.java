@@ -109,7 +109,7 @@ public class AggregateDaoIT {
         RollupLevelService rollupLevelService =
                 new RollupLevelService(configRepository, Clock.systemClock());
         activeAgentDao = new ActiveAgentDao(session, agentDisplayDao, agentConfigDao,
-                configRepository, rollupLevelService, Clock.systemClock());
+                configRepository, rollupLevelService, clusterManager, Clock.systemClock());
         aggregateDao = new AggregateDaoWithV09Support(ImmutableSet.of(), 0, 0, Clock.systemClock(),
                 new AggregateDaoImpl(session, activeAgentDao, transactionTypeDao, fullQueryTextDao,
                         configRepository, asyncExecutor, 0, Clock.systemClock()));
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.central.repo;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import org.glowroot.wire.api.model.CollectorServiceOuterClass.GaugeValueMessage.GaugeValue;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class GaugeValueBlocksTest {
+
+    @Test
+    public void shouldRoundTripEmptyBlock() {
+        // when
+        List<GaugeValue> gaugeValues = GaugeValueBlocks.decode(GaugeValueBlocks.encode(
+                new ArrayList<>()));
+
+        // then
+        assertThat(gaugeValues).isEmpty();
+    }
+
+    @Test
+    public void shouldRoundTripRegularValues() {
+        // given
+        List<GaugeValue> gaugeValues = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            gaugeValues.add(newGaugeValue(1500000000000L + i * 5000, 123.5, 5000));
+        }
+
+        // when
+        ByteBuffer block = GaugeValueBlocks.encode(gaugeValues);
+
+        // then
+        assertThat(GaugeValueBlocks.decode(block)).isEqualTo(gaugeValues);
+        // header and first value (224 bits), first delta (37 bits), then one bit per capture
+        // time, value and weight (33 bits)
+        assertThat(block.remaining()).isEqualTo(37);
+    }
+
+    @Test
+    public void shouldRoundTripIrregularValues() {
+        // given
+        Random random = new Random(0);
+        List<GaugeValue> gaugeValues = new ArrayList<>();
+        long captureTime = 1500000000000L;
+        for (int i = 0; i < 1000; i++) {
+            captureTime += random.nextInt(10) == 0 ? random.nextInt(100000) : 5000;
+            double value;
+            switch (random.nextInt(4)) {
+                case 0:
+                    value = random.nextDouble();
+                    break;
+                case 1:
+                    value = -random.nextLong();
+                    break;
+                case 2:
+                    value = Double.NaN;
+                    break;
+                default:
+                    value = 42;
+            }
+            gaugeValues.add(newGaugeValue(captureTime, value, 1 + random.nextInt(3) * 5000));
+        }
+
+        // when
+        List<GaugeValue> decoded = GaugeValueBlocks.decode(GaugeValueBlocks.encode(gaugeValues));
+
+        // then
+        assertThat(decoded).isEqualTo(gaugeValues);
+    }
+
+    @Test
+    public void shouldDecodeFromBufferPosition() {
+        // given
+        List<GaugeValue> gaugeValues = new ArrayList<>();
+        gaugeValues.add(newGaugeValue(1000, 1, 1));
+        gaugeValues.add(newGaugeValue(2000, 2, 1));
+        ByteBuffer block = GaugeValueBlocks.encode(gaugeValues);
+        ByteBuffer buffer = ByteBuffer.allocate(block.remaining() + 3);
+        buffer.position(3);
+        buffer.put(block);
+        buffer.position(3);
+
+        // when
+        List<GaugeValue> decoded = GaugeValueBlocks.decode(buffer);
+
+        // then
+        assertThat(decoded).isEqualTo(gaugeValues);
+    }
+
+    private static GaugeValue newGaugeValue(long captureTime, double value, long weight) {
+        return GaugeValue.newBuilder()
+                .setCaptureTime(captureTime)
+                .setValue(value)
+                .setWeight(weight)
+                .build();
+    }
+}
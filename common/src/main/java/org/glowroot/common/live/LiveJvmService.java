@@ -38,7 +38,9 @@ public interface LiveJvmService {
 
     HeapDumpFileInfo heapDump(String agentId, String directory) throws Exception;
 
-    HeapHistogram heapHistogram(String agentId) throws Exception;
+    // maxClasses zero means no limit, compareIntervalSeconds zero means no comparison
+    HeapHistogram heapHistogram(String agentId, int maxClasses, int compareIntervalSeconds)
+            throws Exception;
 
     boolean isExplicitGcDisabled(String agentId) throws Exception;
 
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.common.live;
+
+import org.glowroot.common.model.TransactionTypeMetrics;
+
+// in-memory metrics (cumulative transaction counters and latest gauge values), used to serve
+// metric scrapes without reading from storage
+public interface LiveMetricsRepository {
+
+    void accept(MetricsVisitor visitor) throws Exception;
+
+    interface MetricsVisitor {
+
+        // agentId is empty for embedded
+        void visitTransactionType(String agentId, String transactionType,
+                TransactionTypeMetrics metrics) throws Exception;
+
+        // agentId is empty for embedded
+        void visitGauge(String agentId, String gaugeName, double value) throws Exception;
+    }
+
+    class LiveMetricsRepositoryNop implements LiveMetricsRepository {
+
+        @Override
+        public void accept(MetricsVisitor visitor) {}
+    }
+}
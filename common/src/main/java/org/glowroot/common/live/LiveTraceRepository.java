@@ -63,14 +63,16 @@ public interface LiveTraceRepository {
     @Nullable
     Trace getFullTrace(String agentId, String traceId) throws Exception;
 
-    int getMatchingTraceCount(String transactionType, @Nullable String transactionName);
+    int getMatchingTraceCount(String agentRollupId, String transactionType,
+            @Nullable String transactionName) throws Exception;
 
-    List<TracePoint> getMatchingActiveTracePoints(TraceKind traceKind, String transactionType,
-            @Nullable String transactionName, TracePointFilter filter, int limit, long captureTime,
-            long captureTick);
+    List<TracePoint> getMatchingActiveTracePoints(String agentRollupId, TraceKind traceKind,
+            String transactionType, @Nullable String transactionName, TracePointFilter filter,
+            int limit, long captureTime, long captureTick) throws Exception;
 
-    List<TracePoint> getMatchingPendingPoints(TraceKind traceKind, String transactionType,
-            @Nullable String transactionName, TracePointFilter filter, long captureTime);
+    List<TracePoint> getMatchingPendingPoints(String agentRollupId, TraceKind traceKind,
+            String transactionType, @Nullable String transactionName, TracePointFilter filter,
+            long captureTime) throws Exception;
 
     Set<String> getTransactionTypes(String agentId);
 
@@ -222,21 +224,22 @@ public interface LiveTraceRepository {
         }
 
         @Override
-        public int getMatchingTraceCount(String transactionType, @Nullable String transactionName) {
+        public int getMatchingTraceCount(String agentRollupId, String transactionType,
+                @Nullable String transactionName) {
             return 0;
         }
 
         @Override
-        public List<TracePoint> getMatchingActiveTracePoints(TraceKind traceKind,
-                String transactionType, @Nullable String transactionName, TracePointFilter filter,
-                int limit, long captureTime, long captureTick) {
+        public List<TracePoint> getMatchingActiveTracePoints(String agentRollupId,
+                TraceKind traceKind, String transactionType, @Nullable String transactionName,
+                TracePointFilter filter, int limit, long captureTime, long captureTick) {
             return ImmutableList.of();
         }
 
         @Override
-        public List<TracePoint> getMatchingPendingPoints(TraceKind traceKind,
-                String transactionType, @Nullable String transactionName, TracePointFilter filter,
-                long captureTime) {
+        public List<TracePoint> getMatchingPendingPoints(String agentRollupId,
+                TraceKind traceKind, String transactionType, @Nullable String transactionName,
+                TracePointFilter filter, long captureTime) {
             return ImmutableList.of();
         }
     }
@@ -133,6 +133,31 @@ public class LazyHistogram {
         return histogram.getValueAtPercentile(percentile);
     }
 
+    public long getCountAtOrBelow(long value) {
+        if (histogram == null) {
+            if (!sorted) {
+                sortValues();
+            }
+            // binary search for the first value greater than the given value
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (values[mid] <= value) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+        if (value >= histogram.getMaxValue()) {
+            // this also avoids index overflow inside HdrHistogram for very large values
+            return histogram.getTotalCount();
+        }
+        return histogram.getCountBetweenValues(0, value);
+    }
+
     @VisibleForTesting
     public void add(long value) {
         ensureCapacity(size + 1);
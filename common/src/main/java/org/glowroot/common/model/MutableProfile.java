@@ -75,6 +75,13 @@ public class MutableProfile {
     }
 
     public void merge(List<StackTraceElement> stackTraceElements, Thread.State threadState) {
+        merge(stackTraceElements, threadState, 1);
+    }
+
+    // weight is used by allocation profiles, where each sample counts as the number of bytes that
+    // it represents
+    public void merge(List<StackTraceElement> stackTraceElements, Thread.State threadState,
+            long weight) {
         PeekingIterator<StackTraceElement> i =
                 Iterators.peekingIterator(Lists.reverse(stackTraceElements).iterator());
         ProfileNode lastMatchedNode = null;
@@ -121,7 +128,7 @@ public class MutableProfile {
                         fileNameIndex, lineNumber, leafThreadState);
                 mergeIntoNodes.add(node);
             }
-            node.sampleCount++;
+            node.sampleCount += weight;
             lastMatchedNode = node;
             mergeIntoNodes = lastMatchedNode.childNodes;
         }
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.common.model;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+// cumulative (since startup) transaction counters for a single transaction type, bucketed by
+// duration in the same shape as a prometheus histogram, so that reading them (e.g. on scrape)
+// is just a handful of volatile reads
+//
+// counters are updated independently, so a concurrent reader can see a count that is very
+// slightly ahead of the others, which is fine for monitoring purposes
+public class TransactionTypeMetrics {
+
+    // inclusive upper bounds of the duration buckets (these are the prometheus client default
+    // buckets), the last bucket (+Inf) is implicit
+    private static final long[] BUCKET_UPPER_BOUND_NANOS = {
+            MILLISECONDS.toNanos(5),
+            MILLISECONDS.toNanos(10),
+            MILLISECONDS.toNanos(25),
+            MILLISECONDS.toNanos(50),
+            MILLISECONDS.toNanos(100),
+            MILLISECONDS.toNanos(250),
+            MILLISECONDS.toNanos(500),
+            MILLISECONDS.toNanos(1000),
+            MILLISECONDS.toNanos(2500),
+            MILLISECONDS.toNanos(5000),
+            MILLISECONDS.toNanos(10000)};
+
+    private static final int ERROR_COUNT_INDEX = 0;
+    private static final int TOTAL_DURATION_NANOS_INDEX = 1;
+    private static final int FIRST_BUCKET_INDEX = 2;
+
+    private final AtomicLongArray counters =
+            new AtomicLongArray(FIRST_BUCKET_INDEX + BUCKET_UPPER_BOUND_NANOS.length + 1);
+
+    public void add(long durationNanos, boolean error) {
+        counters.getAndIncrement(FIRST_BUCKET_INDEX + getBucketIndex(durationNanos));
+        counters.getAndAdd(TOTAL_DURATION_NANOS_INDEX, durationNanos);
+        if (error) {
+            counters.getAndIncrement(ERROR_COUNT_INDEX);
+        }
+    }
+
+    public void merge(long transactionCount, long errorCount, double totalDurationNanos,
+            LazyHistogram durationNanosHistogram) {
+        long countAtOrBelowPriorBound = 0;
+        for (int i = 0; i < BUCKET_UPPER_BOUND_NANOS.length; i++) {
+            long countAtOrBelow = Math.min(
+                    durationNanosHistogram.getCountAtOrBelow(BUCKET_UPPER_BOUND_NANOS[i]),
+                    transactionCount);
+            counters.getAndAdd(FIRST_BUCKET_INDEX + i, countAtOrBelow - countAtOrBelowPriorBound);
+            countAtOrBelowPriorBound = countAtOrBelow;
+        }
+        counters.getAndAdd(FIRST_BUCKET_INDEX + BUCKET_UPPER_BOUND_NANOS.length,
+                transactionCount - countAtOrBelowPriorBound);
+        counters.getAndAdd(TOTAL_DURATION_NANOS_INDEX, (long) totalDurationNanos);
+        counters.getAndAdd(ERROR_COUNT_INDEX, errorCount);
+    }
+
+    public long getErrorCount() {
+        return counters.get(ERROR_COUNT_INDEX);
+    }
+
+    public long getTotalDurationNanos() {
+        return counters.get(TOTAL_DURATION_NANOS_INDEX);
+    }
+
+    // not cumulative, i.e. this is the count of transactions with duration greater than the prior
+    // bucket's upper bound and less than or equal to this bucket's upper bound
+    public long getBucketCount(int index) {
+        return counters.get(FIRST_BUCKET_INDEX + index);
+    }
+
+    // includes the implicit +Inf bucket
+    public static int getBucketCount() {
+        return BUCKET_UPPER_BOUND_NANOS.length + 1;
+    }
+
+    // returns Long.MAX_VALUE for the implicit +Inf bucket
+    public static long getBucketUpperBoundNanos(int index) {
+        if (index == BUCKET_UPPER_BOUND_NANOS.length) {
+            return Long.MAX_VALUE;
+        }
+        return BUCKET_UPPER_BOUND_NANOS[index];
+    }
+
+    private static int getBucketIndex(long durationNanos) {
+        // linear search is faster than binary search for this small number of buckets, and most
+        // transactions land in the first few buckets anyways
+        for (int i = 0; i < BUCKET_UPPER_BOUND_NANOS.length; i++) {
+            if (durationNanos <= BUCKET_UPPER_BOUND_NANOS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_UPPER_BOUND_NANOS.length;
+    }
+}
@@ -34,6 +34,13 @@ public class LazyHistogramTest {
         shouldTestPercentiles(100000000);
     }
 
+    @Test
+    public void shouldTestCountAtOrBelow() {
+        // test both before and after conversion to HdrHistogram
+        shouldTestCountAtOrBelow(1000);
+        shouldTestCountAtOrBelow(100000);
+    }
+
     @Test
     public void shouldTestEncodeDecode() throws Exception {
         // test smaller numbers in more detail since that is where laziness occurs
@@ -93,6 +100,22 @@ public class LazyHistogramTest {
         assertPercentile(lazyHistogram, num, 99.99);
     }
 
+    private void shouldTestCountAtOrBelow(int num) {
+        // given
+        LazyHistogram lazyHistogram = new LazyHistogram();
+        // when
+        for (int i = num; i > 0; i--) {
+            lazyHistogram.add(i * 1000000L);
+        }
+        // then
+        assertThat(lazyHistogram.getCountAtOrBelow(0)).isEqualTo(0);
+        assertThat(lazyHistogram.getCountAtOrBelow(500000)).isEqualTo(0);
+        assertThat(lazyHistogram.getCountAtOrBelow(1000000)).isEqualTo(1);
+        assertThat(lazyHistogram.getCountAtOrBelow(num * 500000L)).isEqualTo(num / 2);
+        assertThat(lazyHistogram.getCountAtOrBelow(num * 1000000L)).isEqualTo(num);
+        assertThat(lazyHistogram.getCountAtOrBelow(Long.MAX_VALUE)).isEqualTo(num);
+    }
+
     private void shouldTestEncodeDecode(int num) throws Exception {
         // given
         LazyHistogram lazyHistogram = new LazyHistogram();
@@ -84,6 +84,10 @@ public interface TraceRepository {
     @Nullable
     Profile readAuxThreadProfile(String agentId, String traceId) throws Exception;
 
+    // null return value means trace not found or was found but had no allocation profile
+    @Nullable
+    Profile readAllocationProfile(String agentId, String traceId) throws Exception;
+
     @Value.Immutable
     interface TraceQuery {
         String transactionType();
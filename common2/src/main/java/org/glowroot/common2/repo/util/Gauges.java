@@ -75,6 +75,13 @@ public class Gauges {
                 "bytes"));
         patterns.add(
                 new UnitPattern("org.glowroot:type=FileSystem,name=.*:PercentFull", "percent"));
+        patterns.add(
+                new UnitPattern("org.glowroot:type=GaugeCollector:CollectionTime", "milliseconds"));
+        patterns.add(new UnitPattern(
+                "org.glowroot:type=AgentOverhead:(Instrumentation|Completion)Time", "milliseconds"));
+        patterns.add(new UnitPattern(
+                "org.glowroot:type=AgentOverhead:(Instrumentation|Completion)AllocatedBytes",
+                "bytes"));
         patterns.add(new UnitPattern("org.apache.cassandra.metrics:type=ColumnFamily,"
                 + "keyspace=[^,]+,scope=[^,]+,name=LiveDiskSpaceUsed:Count", "bytes"));
         patterns.add(new UnitPattern("org.apache.cassandra.metrics:type=ColumnFamily,"
@@ -164,7 +164,7 @@ glowroot.controller('JvmHeapHistogramCtrl', [
     };
 
     $scope.refresh = function (deferred) {
-      $http.post('backend/jvm/heap-histogram?agent-id=' + encodeURIComponent($scope.agentId))
+      $http.post('backend/jvm/heap-histogram?agent-id=' + encodeURIComponent($scope.agentId), {})
           .then(function (response) {
             $scope.loaded = true;
             var data = response.data;
@@ -320,11 +320,13 @@ class JvmJsonService {
     }
 
     @POST(path = "/backend/jvm/heap-histogram", permission = "agent:jvm:heapHistogram")
-    String heapHistogram(@BindAgentId String agentId) throws Exception {
+    String heapHistogram(@BindAgentId String agentId, @BindRequest HeapHistogramRequest request)
+            throws Exception {
         checkNotNull(liveJvmService);
         HeapHistogram heapHistogram;
         try {
-            heapHistogram = liveJvmService.heapHistogram(agentId);
+            heapHistogram = liveJvmService.heapHistogram(agentId, request.maxClasses(),
+                    request.compareIntervalSeconds());
         } catch (AgentNotConnectedException e) {
             logger.debug(e.getMessage(), e);
             return "{\"agentNotConnected\":true}";
@@ -349,18 +351,38 @@ class JvmJsonService {
             jg.writeArrayFieldStart("items");
             long totalBytes = 0;
             long totalCount = 0;
+            boolean compare = heapHistogram.getCompareIntervalSeconds() != 0;
             for (HeapHistogram.ClassInfo classInfo : heapHistogram.getClassInfoList()) {
                 jg.writeStartObject();
                 jg.writeStringField("className", classInfo.getClassName());
                 jg.writeNumberField("bytes", classInfo.getBytes());
                 jg.writeNumberField("count", classInfo.getCount());
+                if (!classInfo.getModule().isEmpty()) {
+                    jg.writeStringField("module", classInfo.getModule());
+                }
+                if (classInfo.getLoaderCount() > 1) {
+                    jg.writeNumberField("loaderCount", classInfo.getLoaderCount());
+                }
+                if (compare) {
+                    jg.writeNumberField("bytesDelta", classInfo.getBytesDelta());
+                    jg.writeNumberField("countDelta", classInfo.getCountDelta());
+                }
                 jg.writeEndObject();
                 totalBytes += classInfo.getBytes();
                 totalCount += classInfo.getCount();
             }
             jg.writeEndArray();
+            if (heapHistogram.getTotalBytes() != 0) {
+                // totals include classes that were not retained due to maxClasses
+                totalBytes = heapHistogram.getTotalBytes();
+                totalCount = heapHistogram.getTotalCount();
+            }
             jg.writeNumberField("totalBytes", totalBytes);
             jg.writeNumberField("totalCount", totalCount);
+            if (compare) {
+                jg.writeNumberField("compareIntervalSeconds",
+                        heapHistogram.getCompareIntervalSeconds());
+            }
             jg.writeEndObject();
         } finally {
             jg.close();
@@ -751,6 +773,18 @@ class JvmJsonService {
         String directory();
     }
 
+    @Value.Immutable
+    abstract static class HeapHistogramRequest {
+        @Value.Default
+        int maxClasses() { // zero means no limit
+            return 0;
+        }
+        @Value.Default
+        int compareIntervalSeconds() {
+            return 0;
+        }
+    }
+
     @Value.Immutable
     interface MBeanTreeRequest {
         List<String> expanded();
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.ui;
+
+import java.util.Map;
+
+import com.google.common.collect.Maps;
+import com.google.common.net.MediaType;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import org.glowroot.common.live.LiveMetricsRepository;
+import org.glowroot.common.live.LiveMetricsRepository.MetricsVisitor;
+import org.glowroot.common.model.TransactionTypeMetrics;
+import org.glowroot.ui.CommonHandler.CommonRequest;
+import org.glowroot.ui.CommonHandler.CommonResponse;
+import org.glowroot.ui.HttpSessionManager.Authentication;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.FORBIDDEN;
+import static io.netty.handler.codec.http.HttpResponseStatus.OK;
+import static io.netty.handler.codec.http.HttpResponseStatus.UNAUTHORIZED;
+
+// serves the in-memory metrics in the prometheus text exposition format, without any storage
+// reads, so that frequent scrapes are cheap
+//
+// transaction metrics are cumulative since startup (prometheus counters and histograms), so
+// throughput and error rates are derived on the prometheus side, e.g. using rate()
+class PrometheusHttpService implements HttpService {
+
+    static final MediaType MEDIA_TYPE =
+            MediaType.PLAIN_TEXT_UTF_8.withParameter("version", "0.0.4");
+
+    private static final String TRANSACTION_PERMISSION = "agent:transaction:overview";
+    private static final String GAUGE_PERMISSION = "agent:jvm:gauges";
+
+    private static final String[] BUCKET_LE_TEXT;
+
+    static {
+        BUCKET_LE_TEXT = new String[TransactionTypeMetrics.getBucketCount()];
+        for (int i = 0; i < BUCKET_LE_TEXT.length - 1; i++) {
+            BUCKET_LE_TEXT[i] =
+                    Double.toString(TransactionTypeMetrics.getBucketUpperBoundNanos(i) / 1e9);
+        }
+        BUCKET_LE_TEXT[BUCKET_LE_TEXT.length - 1] = "+Inf";
+    }
+
+    private final boolean central;
+    private final LiveMetricsRepository liveMetricsRepository;
+
+    PrometheusHttpService(boolean central, LiveMetricsRepository liveMetricsRepository) {
+        this.central = central;
+        this.liveMetricsRepository = liveMetricsRepository;
+    }
+
+    @Override
+    public String getPermission() {
+        // permissions are checked per agent below
+        return "";
+    }
+
+    @Override
+    public CommonResponse handleRequest(CommonRequest request, Authentication authentication)
+            throws Exception {
+        if (!authentication.isPermittedForSomeAgentRollup(TRANSACTION_PERMISSION)
+                && !authentication.isPermittedForSomeAgentRollup(GAUGE_PERMISSION)) {
+            return new CommonResponse(authentication.anonymous() ? UNAUTHORIZED : FORBIDDEN);
+        }
+        return new CommonResponse(OK, MEDIA_TYPE, getMetricsText(authentication));
+    }
+
+    String getMetricsText(Authentication authentication) throws Exception {
+        Encoder encoder = new Encoder(central, authentication);
+        liveMetricsRepository.accept(encoder);
+        return encoder.toText();
+    }
+
+    private static class Encoder implements MetricsVisitor {
+
+        private final boolean central;
+        private final Authentication authentication;
+
+        // metric families must not be interleaved, so each family is encoded into its own buffer
+        private final StringBuilder durations = new StringBuilder(4096);
+        private final StringBuilder errors = new StringBuilder(1024);
+        private final StringBuilder gauges = new StringBuilder(4096);
+
+        // permissions are only checked once per agent per scrape
+        private final Map<String, Boolean> transactionPermitted = Maps.newHashMap();
+        private final Map<String, Boolean> gaugePermitted = Maps.newHashMap();
+
+        private Encoder(boolean central, Authentication authentication) {
+            this.central = central;
+            this.authentication = authentication;
+        }
+
+        @Override
+        public void visitTransactionType(String agentId, String transactionType,
+                TransactionTypeMetrics metrics) throws Exception {
+            if (!isPermitted(transactionPermitted, agentId, TRANSACTION_PERMISSION)) {
+                return;
+            }
+            long cumulativeCount = 0;
+            for (int i = 0; i < BUCKET_LE_TEXT.length; i++) {
+                cumulativeCount += metrics.getBucketCount(i);
+                durations.append("glowroot_transaction_duration_seconds_bucket");
+                appendLabels(durations, agentId, "transaction_type", transactionType,
+                        BUCKET_LE_TEXT[i]);
+                durations.append(' ')
+                        .append(cumulativeCount)
+                        .append('\n');
+            }
+            durations.append("glowroot_transaction_duration_seconds_sum");
+            appendLabels(durations, agentId, "transaction_type", transactionType, null);
+            durations.append(' ')
+                    .append(metrics.getTotalDurationNanos() / 1e9)
+                    .append('\n');
+            durations.append("glowroot_transaction_duration_seconds_count");
+            appendLabels(durations, agentId, "transaction_type", transactionType, null);
+            durations.append(' ')
+                    .append(cumulativeCount)
+                    .append('\n');
+            errors.append("glowroot_transaction_errors_total");
+            appendLabels(errors, agentId, "transaction_type", transactionType, null);
+            errors.append(' ')
+                    .append(metrics.getErrorCount())
+                    .append('\n');
+        }
+
+        @Override
+        public void visitGauge(String agentId, String gaugeName, double value) throws Exception {
+            if (!isPermitted(gaugePermitted, agentId, GAUGE_PERMISSION)) {
+                return;
+            }
+            gauges.append("glowroot_gauge");
+            appendLabels(gauges, agentId, "gauge", gaugeName, null);
+            gauges.append(' ');
+            appendValue(gauges, value);
+            gauges.append('\n');
+        }
+
+        private String toText() {
+            StringBuilder sb = new StringBuilder(
+                    durations.length() + errors.length() + gauges.length() + 512);
+            if (durations.length() > 0) {
+                sb.append("# HELP glowroot_transaction_duration_seconds Transaction durations.\n");
+                sb.append("# TYPE glowroot_transaction_duration_seconds histogram\n");
+                sb.append(durations);
+            }
+            if (errors.length() > 0) {
+                sb.append("# HELP glowroot_transaction_errors_total Transactions with errors.\n");
+                sb.append("# TYPE glowroot_transaction_errors_total counter\n");
+                sb.append(errors);
+            }
+            if (gauges.length() > 0) {
+                sb.append("# HELP glowroot_gauge Most recently collected gauge values.\n");
+                sb.append("# TYPE glowroot_gauge gauge\n");
+                sb.append(gauges);
+            }
+            return sb.toString();
+        }
+
+        private boolean isPermitted(Map<String, Boolean> permitted, String agentId,
+                String permission) throws Exception {
+            Boolean value = permitted.get(agentId);
+            if (value == null) {
+                value = authentication.isPermittedForAgentRollup(agentId, permission);
+                permitted.put(agentId, value);
+            }
+            return value;
+        }
+
+        private void appendLabels(StringBuilder sb, String agentId, String labelName,
+                String labelValue, @Nullable String le) {
+            sb.append('{');
+            if (central) {
+                sb.append("agent_id=\"");
+                appendEscaped(sb, agentId);
+                sb.append("\",");
+            }
+            sb.append(labelName)
+                    .append("=\"");
+            appendEscaped(sb, labelValue);
+            sb.append('"');
+            if (le != null) {
+                sb.append(",le=\"")
+                        .append(le)
+                        .append('"');
+            }
+            sb.append('}');
+        }
+    }
+
+    private static void appendValue(StringBuilder sb, double value) {
+        if (Double.isNaN(value)) {
+            sb.append("NaN");
+        } else if (value == Double.POSITIVE_INFINITY) {
+            sb.append("+Inf");
+        } else if (value == Double.NEGATIVE_INFINITY) {
+            sb.append("-Inf");
+        } else {
+            sb.append(value);
+        }
+    }
+
+    private static void appendEscaped(StringBuilder sb, String labelValue) {
+        for (int i = 0; i < labelValue.length(); i++) {
+            char c = labelValue.charAt(i);
+            if (c == '\\') {
+                sb.append("\\\\");
+            } else if (c == '"') {
+                sb.append("\\\"");
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+}
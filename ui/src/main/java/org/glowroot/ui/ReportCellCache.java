@@ -0,0 +1,128 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.ui;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.base.Function;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import org.immutables.value.Value;
+
+import static java.util.concurrent.TimeUnit.HOURS;
+
+// caches the rolled up value of each closed report period (e.g. each day of a daily report), so
+// that a report only needs to read and merge the periods that it does not share with earlier
+// reports
+class ReportCellCache {
+
+    private static final int MAX_CELLS = 50000;
+
+    // absent value is cached for closed periods with no data
+    private final Cache<ReportCellKey, Optional<Object>> cache = CacheBuilder.newBuilder()
+            .maximumSize(MAX_CELLS)
+            .expireAfterAccess(1, HOURS)
+            .build();
+
+    // from is non-inclusive, periods that end on or before closedBefore are cached
+    <T extends /*@NonNull*/ Object> List<T> read(ReportCellQuery query, long from, long to,
+            long closedBefore, Function<Long, Long> rollupCaptureTimeFn,
+            CellReader<T> cellReader) throws Exception {
+        List<T> values = Lists.newArrayList();
+        List<ReportCellKey> misses = Lists.newArrayList();
+        long periodFrom = from;
+        while (periodFrom < to) {
+            long captureTime = rollupCaptureTimeFn.apply(periodFrom + 1);
+            long periodTo = Math.min(captureTime, to);
+            ReportCellKey cell = ImmutableReportCellKey.builder()
+                    .query(query)
+                    .from(periodFrom)
+                    .to(periodTo)
+                    .captureTime(captureTime)
+                    .build();
+            Optional<Object> cached = periodTo <= closedBefore ? cache.getIfPresent(cell) : null;
+            if (cached == null) {
+                misses.add(cell);
+            } else {
+                // consecutive misses are read using a single query
+                readMisses(misses, closedBefore, cellReader, values);
+                if (cached.isPresent()) {
+                    @SuppressWarnings("unchecked")
+                    T value = (T) cached.get();
+                    values.add(value);
+                }
+            }
+            periodFrom = periodTo;
+        }
+        readMisses(misses, closedBefore, cellReader, values);
+        return values;
+    }
+
+    private <T extends /*@NonNull*/ Object> void readMisses(List<ReportCellKey> misses,
+            long closedBefore, CellReader<T> cellReader, List<T> values) throws Exception {
+        if (misses.isEmpty()) {
+            return;
+        }
+        // + 1 to make from non-inclusive, since data points are displayed as midpoint of time
+        // range
+        List<T> readValues =
+                cellReader.read(misses.get(0).from() + 1, misses.get(misses.size() - 1).to());
+        Map<Long, T> readValuesByCaptureTime = Maps.newHashMap();
+        for (T readValue : readValues) {
+            readValuesByCaptureTime.put(cellReader.getCaptureTime(readValue), readValue);
+        }
+        for (ReportCellKey miss : misses) {
+            T value = readValuesByCaptureTime.get(miss.captureTime());
+            if (value != null) {
+                values.add(value);
+            }
+            if (miss.to() <= closedBefore) {
+                cache.put(miss, Optional.<Object>fromNullable(value));
+            }
+        }
+        misses.clear();
+    }
+
+    interface CellReader<T extends /*@NonNull*/ Object> {
+
+        // returns values rolled up to the report periods, with each capture time set to the
+        // rollup capture time of its period, from is inclusive
+        List<T> read(long from, long to) throws Exception;
+
+        long getCaptureTime(T value);
+    }
+
+    @Value.Immutable
+    interface ReportCellQuery {
+        String agentRollupId();
+        String dataKind(); // e.g. "overview", "percentile", "throughput", "gauge"
+        String name(); // transaction type or gauge name
+        String subName(); // transaction name or empty
+        int rollupLevel();
+    }
+
+    @Value.Immutable
+    interface ReportCellKey {
+        ReportCellQuery query();
+        long from();
+        long to();
+        long captureTime();
+    }
+}
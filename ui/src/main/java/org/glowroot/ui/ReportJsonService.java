@@ -53,6 +53,7 @@ import org.glowroot.common.live.LiveAggregateRepository.PercentileAggregate;
 import org.glowroot.common.live.LiveAggregateRepository.ThroughputAggregate;
 import org.glowroot.common.model.LazyHistogram;
 import org.glowroot.common.util.CaptureTimes;
+import org.glowroot.common.util.Clock;
 import org.glowroot.common.util.ObjectMappers;
 import org.glowroot.common2.repo.ActiveAgentRepository;
 import org.glowroot.common2.repo.ActiveAgentRepository.AgentRollup;
@@ -69,6 +70,8 @@ import org.glowroot.ui.GaugeValueJsonService.GaugeOrdering;
 import org.glowroot.ui.HttpSessionManager.Authentication;
 import org.glowroot.ui.LayoutJsonService.AgentRollupSmall;
 import org.glowroot.ui.LayoutService.Permissions;
+import org.glowroot.ui.ReportCellCache.CellReader;
+import org.glowroot.ui.ReportCellCache.ReportCellQuery;
 import org.glowroot.wire.api.model.CollectorServiceOuterClass.GaugeValueMessage.GaugeValue;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -92,15 +95,18 @@ class ReportJsonService {
     private final GaugeValueRepository gaugeValueRepository;
     private final LiveAggregateRepository liveAggregateRepository;
     private final RollupLevelService rollupLevelService;
+    private final Clock clock;
 
     private final ExecutorService executor;
 
+    private final ReportCellCache reportCellCache = new ReportCellCache();
+
     ReportJsonService(AgentDisplayRepository agentDisplayRepository,
             ConfigRepository configRepository, ActiveAgentRepository activeAgentRepository,
             TransactionTypeRepository transactionTypeRepository,
             AggregateRepository aggregateRepository, GaugeValueRepository gaugeValueRepository,
             LiveAggregateRepository liveAggregateRepository,
-            RollupLevelService rollupLevelService, ExecutorService executor) {
+            RollupLevelService rollupLevelService, Clock clock, ExecutorService executor) {
         this.agentDisplayRepository = agentDisplayRepository;
         this.configRepository = configRepository;
         this.activeAgentRepository = activeAgentRepository;
@@ -109,6 +115,7 @@ class ReportJsonService {
         this.gaugeValueRepository = gaugeValueRepository;
         this.liveAggregateRepository = liveAggregateRepository;
         this.rollupLevelService = rollupLevelService;
+        this.clock = clock;
         this.executor = executor;
     }
 
@@ -212,10 +219,10 @@ class ReportJsonService {
             if (rollupLevel == 3) {
                 verifyFourHourAggregateTimeZone(timeZone);
             }
-            dataSeriesFutures = getTransactionReport(request, timeZone, from, to, rollupLevel,
-                    rollupCaptureTimeFn, gapMillis);
             dataPointIntervalMillis =
                     configRepository.getRollupConfigs().get(rollupLevel).intervalMillis();
+            dataSeriesFutures = getTransactionReport(request, timeZone, from, to, rollupLevel,
+                    rollupCaptureTimeFn, gapMillis, getClosedBefore(dataPointIntervalMillis));
         } else if (metric.startsWith("gauge:")) {
             // level 3 (30 min intervals) is the minimum level needed
             final int rollupLevel =
@@ -224,6 +231,13 @@ class ReportJsonService {
                 verifyFourHourAggregateTimeZone(timeZone);
             }
             final String gaugeName = metric.substring("gauge:".length());
+            if (rollupLevel == 0) {
+                dataPointIntervalMillis = configRepository.getGaugeCollectionIntervalMillis();
+            } else {
+                dataPointIntervalMillis =
+                        configRepository.getRollupConfigs().get(rollupLevel - 1).intervalMillis();
+            }
+            final long closedBefore = getClosedBefore(dataPointIntervalMillis);
             dataSeriesFutures = Lists.newArrayList();
             for (final String agentRollupId : request.agentRollupIds()) {
                 dataSeriesFutures.add(executor.submit(new Callable<DataSeries>() {
@@ -231,19 +245,16 @@ class ReportJsonService {
                     public DataSeries call() throws Exception {
                         return getDataSeriesForGauge(agentRollupId, gaugeName, from, to,
                                 rollupLevel, rollupCaptureTimeFn, request.rollup(), timeZone,
-                                gapMillis);
+                                gapMillis, closedBefore);
                     }
                 }));
             }
-            if (rollupLevel == 0) {
-                dataPointIntervalMillis = configRepository.getGaugeCollectionIntervalMillis();
-            } else {
-                dataPointIntervalMillis =
-                        configRepository.getRollupConfigs().get(rollupLevel - 1).intervalMillis();
-            }
         } else {
             throw new IllegalStateException("Unexpected metric: " + metric);
         }
+        // the data series are all read before writing the response (instead of streaming each
+        // data series as it completes), so that this does not block a netty event loop thread, and
+        // so that a failure results in an error response instead of a truncated json response
         List<DataSeries> dataSeriesList = Lists.newArrayList();
         for (Future<DataSeries> dataSeriesFuture : dataSeriesFutures) {
             dataSeriesList.add(dataSeriesFuture.get());
@@ -261,6 +272,12 @@ class ReportJsonService {
         return sb.toString();
     }
 
+    // report periods that ended before this are not expected to receive any more data (allowing
+    // for the data to be rolled up), so their rolled up values can be cached
+    private long getClosedBefore(long dataPointIntervalMillis) {
+        return clock.currentTimeMillis() - dataPointIntervalMillis - HOURS.toMillis(1);
+    }
+
     private static FromToPair parseDates(String fromDate, String toDate, TimeZone timeZone)
             throws ParseException {
         SimpleDateFormat simpleDateFormat = new SimpleDateFormat("yyyyMMdd");
@@ -279,8 +296,8 @@ class ReportJsonService {
 
     private List<Future<DataSeries>> getTransactionReport(final ReportRequest request,
             final TimeZone timeZone, Date from, Date to, int rollupLevel,
-            final RollupCaptureTimeFn rollupCaptureTimeFn, final double gapMillis)
-            throws Exception {
+            final RollupCaptureTimeFn rollupCaptureTimeFn, final double gapMillis,
+            final long closedBefore) throws Exception {
         final AggregateQuery query = ImmutableAggregateQuery.builder()
                 .transactionType(checkNotNull(request.transactionType()))
                 .transactionName(Strings.emptyToNull(checkNotNull(request.transactionName())))
@@ -297,7 +314,7 @@ class ReportJsonService {
                 @Override
                 public DataSeries call() throws Exception {
                     return getTransactionReport(request, timeZone, rollupCaptureTimeFn, gapMillis,
-                            query, metric, agentRollupId);
+                            closedBefore, query, metric, agentRollupId);
                 }
             }));
         }
@@ -305,51 +322,55 @@ class ReportJsonService {
     }
 
     private DataSeries getTransactionReport(ReportRequest request, TimeZone timeZone,
-            RollupCaptureTimeFn rollupCaptureTimeFn, double gapMillis, AggregateQuery query,
-            String metric, String agentRollupId) throws Exception {
+            RollupCaptureTimeFn rollupCaptureTimeFn, double gapMillis, long closedBefore,
+            AggregateQuery query, String metric, String agentRollupId) throws Exception {
         if (metric.equals("transaction:average")) {
             return getDataSeriesForAverage(agentRollupId, query, rollupCaptureTimeFn,
-                    request.rollup(), timeZone, gapMillis);
+                    request.rollup(), timeZone, gapMillis, closedBefore);
         } else if (metric.equals("transaction:x-percentile")) {
             return getDataSeriesForPercentile(agentRollupId, query,
                     checkNotNull(request.percentile()), rollupCaptureTimeFn, request.rollup(),
-                    timeZone, gapMillis);
+                    timeZone, gapMillis, closedBefore);
         } else if (metric.equals("transaction:count")) {
             return getDataSeriesForThroughput(agentRollupId, query, rollupCaptureTimeFn,
-                    request.rollup(), timeZone, gapMillis, new CountCalculator());
+                    request.rollup(), timeZone, gapMillis, closedBefore, new CountCalculator());
         } else if (metric.equals("error:rate")) {
             return getDataSeriesForThroughput(agentRollupId, query, rollupCaptureTimeFn,
-                    request.rollup(), timeZone, gapMillis, new ErrorRateCalculator());
+                    request.rollup(), timeZone, gapMillis, closedBefore,
+                    new ErrorRateCalculator());
         } else if (metric.equals("error:count")) {
             return getDataSeriesForThroughput(agentRollupId, query, rollupCaptureTimeFn,
-                    request.rollup(), timeZone, gapMillis, new ErrorCountCalculator());
+                    request.rollup(), timeZone, gapMillis, closedBefore,
+                    new ErrorCountCalculator());
         } else {
             throw new IllegalStateException("Unexpected metric: " + metric);
         }
     }
 
-    private DataSeries getDataSeriesForAverage(String agentRollupId, AggregateQuery query,
-            RollupCaptureTimeFn rollupCaptureTimeFn, ROLLUP rollup,
-            TimeZone timeZone, double gapMillis) throws Exception {
+    private DataSeries getDataSeriesForAverage(final String agentRollupId,
+            final AggregateQuery query, final RollupCaptureTimeFn rollupCaptureTimeFn,
+            ROLLUP rollup, TimeZone timeZone, double gapMillis, long closedBefore)
+            throws Exception {
 
         DataSeries dataSeries =
                 new DataSeries(agentDisplayRepository.readFullDisplay(agentRollupId));
-        List<OverviewAggregate> aggregates =
-                aggregateRepository.readOverviewAggregates(agentRollupId, query);
-        aggregates =
-                TransactionCommonService.rollUpOverviewAggregates(aggregates, rollupCaptureTimeFn);
+        List<OverviewAggregate> aggregates = reportCellCache.read(
+                getCellQuery(agentRollupId, "overview", query), query.from() - 1, query.to(),
+                closedBefore, rollupCaptureTimeFn, new CellReader<OverviewAggregate>() {
+                    @Override
+                    public List<OverviewAggregate> read(long from, long to) throws Exception {
+                        return readOverviewAggregates(agentRollupId,
+                                ImmutableAggregateQuery.copyOf(query).withFrom(from).withTo(to),
+                                rollupCaptureTimeFn);
+                    }
+                    @Override
+                    public long getCaptureTime(OverviewAggregate value) {
+                        return value.captureTime();
+                    }
+                });
         if (aggregates.isEmpty()) {
             return dataSeries;
         }
-        OverviewAggregate lastAggregate = Iterables.getLast(aggregates);
-        long lastCaptureTime = lastAggregate.captureTime();
-        long lastRollupCaptureTime = rollupCaptureTimeFn.apply(lastCaptureTime);
-        if (lastCaptureTime != lastRollupCaptureTime) {
-            aggregates.set(aggregates.size() - 1, ImmutableOverviewAggregate.builder()
-                    .copyFrom(lastAggregate)
-                    .captureTime(lastRollupCaptureTime)
-                    .build());
-        }
         OverviewAggregate priorAggregate = null;
         for (OverviewAggregate aggregate : aggregates) {
             if (priorAggregate != null
@@ -375,27 +396,29 @@ class ReportJsonService {
         return dataSeries;
     }
 
-    private DataSeries getDataSeriesForPercentile(String agentRollupId, AggregateQuery query,
-            double percentile, RollupCaptureTimeFn rollupCaptureTimeFn, ROLLUP rollup,
-            TimeZone timeZone, double gapMillis) throws Exception {
+    private DataSeries getDataSeriesForPercentile(final String agentRollupId,
+            final AggregateQuery query, double percentile,
+            final RollupCaptureTimeFn rollupCaptureTimeFn, ROLLUP rollup, TimeZone timeZone,
+            double gapMillis, long closedBefore) throws Exception {
         DataSeries dataSeries =
                 new DataSeries(agentDisplayRepository.readFullDisplay(agentRollupId));
-        List<PercentileAggregate> aggregates =
-                aggregateRepository.readPercentileAggregates(agentRollupId, query);
-        aggregates = TransactionCommonService.rollUpPercentileAggregates(aggregates,
-                rollupCaptureTimeFn);
+        List<PercentileAggregate> aggregates = reportCellCache.read(
+                getCellQuery(agentRollupId, "percentile", query), query.from() - 1, query.to(),
+                closedBefore, rollupCaptureTimeFn, new CellReader<PercentileAggregate>() {
+                    @Override
+                    public List<PercentileAggregate> read(long from, long to) throws Exception {
+                        return readPercentileAggregates(agentRollupId,
+                                ImmutableAggregateQuery.copyOf(query).withFrom(from).withTo(to),
+                                rollupCaptureTimeFn);
+                    }
+                    @Override
+                    public long getCaptureTime(PercentileAggregate value) {
+                        return value.captureTime();
+                    }
+                });
         if (aggregates.isEmpty()) {
             return dataSeries;
         }
-        PercentileAggregate lastAggregate = Iterables.getLast(aggregates);
-        long lastCaptureTime = lastAggregate.captureTime();
-        long lastRollupCaptureTime = rollupCaptureTimeFn.apply(lastCaptureTime);
-        if (lastCaptureTime != lastRollupCaptureTime) {
-            aggregates.set(aggregates.size() - 1, ImmutablePercentileAggregate.builder()
-                    .copyFrom(lastAggregate)
-                    .captureTime(lastRollupCaptureTime)
-                    .build());
-        }
         PercentileAggregate priorAggregate = null;
         for (PercentileAggregate aggregate : aggregates) {
             if (priorAggregate != null
@@ -418,27 +441,29 @@ class ReportJsonService {
         return dataSeries;
     }
 
-    private DataSeries getDataSeriesForThroughput(String agentRollupId, AggregateQuery query,
-            RollupCaptureTimeFn rollupCaptureTimeFn, ROLLUP rollup, TimeZone timeZone,
-            double gapMillis, ThroughputAggregateFn throughputAggregateFn) throws Exception {
+    private DataSeries getDataSeriesForThroughput(final String agentRollupId,
+            final AggregateQuery query, final RollupCaptureTimeFn rollupCaptureTimeFn,
+            ROLLUP rollup, TimeZone timeZone, double gapMillis, long closedBefore,
+            ThroughputAggregateFn throughputAggregateFn) throws Exception {
         DataSeries dataSeries =
                 new DataSeries(agentDisplayRepository.readFullDisplay(agentRollupId));
-        List<ThroughputAggregate> aggregates =
-                aggregateRepository.readThroughputAggregates(agentRollupId, query);
-        aggregates = TransactionCommonService.rollUpThroughputAggregates(aggregates,
-                rollupCaptureTimeFn);
+        List<ThroughputAggregate> aggregates = reportCellCache.read(
+                getCellQuery(agentRollupId, "throughput", query), query.from() - 1, query.to(),
+                closedBefore, rollupCaptureTimeFn, new CellReader<ThroughputAggregate>() {
+                    @Override
+                    public List<ThroughputAggregate> read(long from, long to) throws Exception {
+                        return readThroughputAggregates(agentRollupId,
+                                ImmutableAggregateQuery.copyOf(query).withFrom(from).withTo(to),
+                                rollupCaptureTimeFn);
+                    }
+                    @Override
+                    public long getCaptureTime(ThroughputAggregate value) {
+                        return value.captureTime();
+                    }
+                });
         if (aggregates.isEmpty()) {
             return dataSeries;
         }
-        ThroughputAggregate lastAggregate = Iterables.getLast(aggregates);
-        long lastCaptureTime = lastAggregate.captureTime();
-        long lastRollupCaptureTime = rollupCaptureTimeFn.apply(lastCaptureTime);
-        if (lastCaptureTime != lastRollupCaptureTime) {
-            aggregates.set(aggregates.size() - 1, ImmutableThroughputAggregate.builder()
-                    .copyFrom(lastAggregate)
-                    .captureTime(lastRollupCaptureTime)
-                    .build());
-        }
         ThroughputAggregate priorAggregate = null;
         for (ThroughputAggregate aggregate : aggregates) {
             long rollupIntervalMillis =
@@ -461,28 +486,34 @@ class ReportJsonService {
         return dataSeries;
     }
 
-    private DataSeries getDataSeriesForGauge(String agentRollupId, String gaugeName, Date from,
-            Date to, int rollupLevel, RollupCaptureTimeFn rollupCaptureTimeFn, ROLLUP rollup,
-            TimeZone timeZone, double gapMillis) throws Exception {
+    private DataSeries getDataSeriesForGauge(final String agentRollupId, final String gaugeName,
+            Date from, Date to, final int rollupLevel,
+            final RollupCaptureTimeFn rollupCaptureTimeFn, ROLLUP rollup, TimeZone timeZone,
+            double gapMillis, long closedBefore) throws Exception {
         DataSeries dataSeries =
                 new DataSeries(agentDisplayRepository.readFullDisplay(agentRollupId));
-        // from + 1 to make from non-inclusive, since data points are displayed as midpoint of
-        // time range
-        List<GaugeValue> gaugeValues = gaugeValueRepository.readGaugeValues(agentRollupId,
-                gaugeName, from.getTime() + 1, to.getTime(), rollupLevel);
-        gaugeValues = GaugeValueJsonService.rollUpGaugeValues(gaugeValues, gaugeName,
-                rollupCaptureTimeFn);
+        ReportCellQuery cellQuery = ImmutableReportCellQuery.builder()
+                .agentRollupId(agentRollupId)
+                .dataKind("gauge")
+                .name(gaugeName)
+                .subName("")
+                .rollupLevel(rollupLevel)
+                .build();
+        List<GaugeValue> gaugeValues = reportCellCache.read(cellQuery, from.getTime(),
+                to.getTime(), closedBefore, rollupCaptureTimeFn, new CellReader<GaugeValue>() {
+                    @Override
+                    public List<GaugeValue> read(long from, long to) throws Exception {
+                        return readGaugeValues(agentRollupId, gaugeName, from, to, rollupLevel,
+                                rollupCaptureTimeFn);
+                    }
+                    @Override
+                    public long getCaptureTime(GaugeValue value) {
+                        return value.getCaptureTime();
+                    }
+                });
         if (gaugeValues.isEmpty()) {
             return dataSeries;
         }
-        GaugeValue lastGaugeValue = Iterables.getLast(gaugeValues);
-        long lastCaptureTime = lastGaugeValue.getCaptureTime();
-        long lastRollupCaptureTime = rollupCaptureTimeFn.apply(lastCaptureTime);
-        if (lastCaptureTime != lastRollupCaptureTime) {
-            gaugeValues.set(gaugeValues.size() - 1, lastGaugeValue.toBuilder()
-                    .setCaptureTime(lastRollupCaptureTime)
-                    .build());
-        }
         GaugeValue priorGaugeValue = null;
         for (GaugeValue gaugeValue : gaugeValues) {
             if (priorGaugeValue != null
@@ -506,6 +537,100 @@ class ReportJsonService {
         return dataSeries;
     }
 
+    private List<OverviewAggregate> readOverviewAggregates(String agentRollupId,
+            AggregateQuery query, RollupCaptureTimeFn rollupCaptureTimeFn) throws Exception {
+        List<OverviewAggregate> aggregates =
+                aggregateRepository.readOverviewAggregates(agentRollupId, query);
+        aggregates =
+                TransactionCommonService.rollUpOverviewAggregates(aggregates, rollupCaptureTimeFn);
+        if (aggregates.isEmpty()) {
+            return aggregates;
+        }
+        OverviewAggregate lastAggregate = Iterables.getLast(aggregates);
+        long lastCaptureTime = lastAggregate.captureTime();
+        long lastRollupCaptureTime = rollupCaptureTimeFn.apply(lastCaptureTime);
+        if (lastCaptureTime != lastRollupCaptureTime) {
+            aggregates.set(aggregates.size() - 1, ImmutableOverviewAggregate.builder()
+                    .copyFrom(lastAggregate)
+                    .captureTime(lastRollupCaptureTime)
+                    .build());
+        }
+        return aggregates;
+    }
+
+    private List<PercentileAggregate> readPercentileAggregates(String agentRollupId,
+            AggregateQuery query, RollupCaptureTimeFn rollupCaptureTimeFn) throws Exception {
+        List<PercentileAggregate> aggregates =
+                aggregateRepository.readPercentileAggregates(agentRollupId, query);
+        aggregates = TransactionCommonService.rollUpPercentileAggregates(aggregates,
+                rollupCaptureTimeFn);
+        if (aggregates.isEmpty()) {
+            return aggregates;
+        }
+        PercentileAggregate lastAggregate = Iterables.getLast(aggregates);
+        long lastCaptureTime = lastAggregate.captureTime();
+        long lastRollupCaptureTime = rollupCaptureTimeFn.apply(lastCaptureTime);
+        if (lastCaptureTime != lastRollupCaptureTime) {
+            aggregates.set(aggregates.size() - 1, ImmutablePercentileAggregate.builder()
+                    .copyFrom(lastAggregate)
+                    .captureTime(lastRollupCaptureTime)
+                    .build());
+        }
+        return aggregates;
+    }
+
+    private List<ThroughputAggregate> readThroughputAggregates(String agentRollupId,
+            AggregateQuery query, RollupCaptureTimeFn rollupCaptureTimeFn) throws Exception {
+        List<ThroughputAggregate> aggregates =
+                aggregateRepository.readThroughputAggregates(agentRollupId, query);
+        aggregates = TransactionCommonService.rollUpThroughputAggregates(aggregates,
+                rollupCaptureTimeFn);
+        if (aggregates.isEmpty()) {
+            return aggregates;
+        }
+        ThroughputAggregate lastAggregate = Iterables.getLast(aggregates);
+        long lastCaptureTime = lastAggregate.captureTime();
+        long lastRollupCaptureTime = rollupCaptureTimeFn.apply(lastCaptureTime);
+        if (lastCaptureTime != lastRollupCaptureTime) {
+            aggregates.set(aggregates.size() - 1, ImmutableThroughputAggregate.builder()
+                    .copyFrom(lastAggregate)
+                    .captureTime(lastRollupCaptureTime)
+                    .build());
+        }
+        return aggregates;
+    }
+
+    private List<GaugeValue> readGaugeValues(String agentRollupId, String gaugeName, long from,
+            long to, int rollupLevel, RollupCaptureTimeFn rollupCaptureTimeFn) throws Exception {
+        List<GaugeValue> gaugeValues = gaugeValueRepository.readGaugeValues(agentRollupId,
+                gaugeName, from, to, rollupLevel);
+        gaugeValues = GaugeValueJsonService.rollUpGaugeValues(gaugeValues, gaugeName,
+                rollupCaptureTimeFn);
+        if (gaugeValues.isEmpty()) {
+            return gaugeValues;
+        }
+        GaugeValue lastGaugeValue = Iterables.getLast(gaugeValues);
+        long lastCaptureTime = lastGaugeValue.getCaptureTime();
+        long lastRollupCaptureTime = rollupCaptureTimeFn.apply(lastCaptureTime);
+        if (lastCaptureTime != lastRollupCaptureTime) {
+            gaugeValues.set(gaugeValues.size() - 1, lastGaugeValue.toBuilder()
+                    .setCaptureTime(lastRollupCaptureTime)
+                    .build());
+        }
+        return gaugeValues;
+    }
+
+    private static ReportCellQuery getCellQuery(String agentRollupId, String dataKind,
+            AggregateQuery query) {
+        return ImmutableReportCellQuery.builder()
+                .agentRollupId(agentRollupId)
+                .dataKind(dataKind)
+                .name(query.transactionType())
+                .subName(Strings.nullToEmpty(query.transactionName()))
+                .rollupLevel(query.rollupLevel())
+                .build();
+    }
+
     // need to filter out agent rollups with no access rights
     private static List<FilteredAgentRollup> filterAndSort(List<AgentRollup> agentRollups,
             Authentication authentication) throws Exception {
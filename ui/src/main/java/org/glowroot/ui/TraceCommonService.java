@@ -142,6 +142,15 @@ class TraceCommonService {
         return toJson(getAuxThreadProfile(agentId, traceId, checkLiveTraces));
     }
 
+    // allocation profiles are only available once the trace is stored, since allocation samples
+    // are not exposed for active/pending traces
+    @Nullable
+    String getAllocationProfileJson(String agentId, String traceId, boolean checkLiveTraces)
+            throws Exception {
+        return toJson(getStoredAllocationProfile(agentId, traceId,
+                new RetryCountdown(checkLiveTraces)));
+    }
+
     @Nullable
     Profile getMainThreadProfile(String agentId, String traceId, boolean checkLiveTraces)
             throws Exception {
@@ -306,6 +315,17 @@ class TraceCommonService {
         return profile;
     }
 
+    private @Nullable Profile getStoredAllocationProfile(String agentId, String traceId,
+            RetryCountdown retryCountdown) throws Exception {
+        Profile profile = traceRepository.readAllocationProfile(agentId, traceId);
+        while (profile == null && retryCountdown.remaining-- > 0) {
+            // trace may be completed, but still in transit from agent to the central collector
+            MILLISECONDS.sleep(500);
+            profile = traceRepository.readAllocationProfile(agentId, traceId);
+        }
+        return profile;
+    }
+
     private static @Nullable String toJson(@Nullable Entries entries) throws IOException {
         if (entries == null) {
             return null;
@@ -576,6 +596,17 @@ class TraceCommonService {
                 jg.writeBooleanField("auxThreadProfileSampleLimitExceeded",
                         auxThreadProfileSampleLimitExceeded);
             }
+            long allocationProfileSampleCount = header.getAllocationProfileSampleCount();
+            if (allocationProfileSampleCount > 0) {
+                jg.writeNumberField("allocationProfileSampleCount",
+                        allocationProfileSampleCount);
+            }
+            boolean allocationProfileSampleLimitExceeded =
+                    header.getAllocationProfileSampleLimitExceeded();
+            if (allocationProfileSampleLimitExceeded) {
+                jg.writeBooleanField("allocationProfileSampleLimitExceeded",
+                        allocationProfileSampleLimitExceeded);
+            }
             jg.writeStringField("entriesExistence",
                     entriesExistence.name().toLowerCase(Locale.ENGLISH));
             jg.writeStringField("queriesExistence",
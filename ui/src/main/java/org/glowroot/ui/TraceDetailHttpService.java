@@ -111,6 +111,14 @@ class TraceDetailHttpService implements HttpService {
             }
             return ChunkSource.wrap(profileJson);
         }
+        if (traceComponent.equals("allocation-profile")) {
+            String profileJson =
+                    traceCommonService.getAllocationProfileJson(agentId, traceId, checkLiveTraces);
+            if (profileJson == null) {
+                return null;
+            }
+            return ChunkSource.wrap(profileJson);
+        }
         throw new IllegalStateException("Unexpected trace component: " + traceComponent);
     }
 }
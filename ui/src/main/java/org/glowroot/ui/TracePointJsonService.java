@@ -54,7 +54,8 @@ class TracePointJsonService {
     private final TraceRepository traceRepository;
     private final LiveTraceRepository liveTraceRepository;
     private final ConfigRepository configRepository;
-    // null in the central ui (due to shading issue, and not needed in the central ui anyways)
+    // both the embedded and central ui pass a ticker, it is only null if the ui module is built
+    // without one, in which case active trace points are not captured
     private final @Nullable Ticker ticker;
     private final Clock clock;
 
@@ -79,8 +80,8 @@ class TracePointJsonService {
         long traceCount = traceRepository.readSlowCount(agentRollupId, query);
         boolean includeActiveTraces = shouldIncludeActiveTraces(request);
         if (includeActiveTraces) {
-            traceCount += liveTraceRepository.getMatchingTraceCount(request.transactionType(),
-                    request.transactionName());
+            traceCount += liveTraceRepository.getMatchingTraceCount(agentRollupId,
+                    request.transactionType(), request.transactionName());
         }
         return Long.toString(traceCount);
     }
@@ -167,9 +168,9 @@ class TracePointJsonService {
                 captureTick = ticker.read();
                 // capture active traces first to make sure that none are missed in the transition
                 // between active and pending/stored (possible duplicates are removed below)
-                activeTracePoints.addAll(liveTraceRepository.getMatchingActiveTracePoints(traceKind,
-                        query.transactionType(), query.transactionName(), filter, limit,
-                        captureTime, captureTick));
+                activeTracePoints.addAll(liveTraceRepository.getMatchingActiveTracePoints(
+                        agentRollupId, traceKind, query.transactionType(),
+                        query.transactionName(), filter, limit, captureTime, captureTick));
             }
             Result<TracePoint> queryResult =
                     getStoredAndPendingPoints(captureTime, captureActiveTracePoints);
@@ -194,8 +195,9 @@ class TracePointJsonService {
             if (captureActiveTraces) {
                 // important to grab pending traces before stored points to ensure none are
                 // missed in the transition between pending and stored
-                matchingPendingPoints = liveTraceRepository.getMatchingPendingPoints(traceKind,
-                        query.transactionType(), query.transactionName(), filter, captureTime);
+                matchingPendingPoints = liveTraceRepository.getMatchingPendingPoints(
+                        agentRollupId, traceKind, query.transactionType(),
+                        query.transactionName(), filter, captureTime);
             } else {
                 matchingPendingPoints = ImmutableList.of();
             }
@@ -18,9 +18,14 @@ package org.glowroot.ui;
 import java.util.List;
 
 import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
+import com.google.protobuf.ByteString;
 import org.checkerframework.checker.nullness.qual.Nullable;
+import org.immutables.value.Value;
 
 import org.glowroot.common.ConfigDefaults;
 import org.glowroot.common.live.ImmutableAggregateQuery;
@@ -44,29 +49,66 @@ import org.glowroot.common.model.TransactionNameSummaryCollector.SummarySortOrde
 import org.glowroot.common.model.TransactionNameSummaryCollector.TransactionNameSummary;
 import org.glowroot.common.util.CaptureTimes;
 import org.glowroot.common.util.Clock;
+import org.glowroot.common.util.Styles;
 import org.glowroot.common2.repo.AggregateRepository;
 import org.glowroot.common2.repo.ConfigRepository;
 import org.glowroot.common2.repo.ConfigRepository.AgentConfigNotFoundException;
 import org.glowroot.common2.repo.MutableAggregate;
 import org.glowroot.wire.api.model.AgentConfigOuterClass.AgentConfig.AdvancedConfig;
 import org.glowroot.wire.api.model.AggregateOuterClass.Aggregate;
+import org.glowroot.wire.api.model.ProfileOuterClass.Profile;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.HOURS;
 
 class TransactionCommonService {
 
+    // the merged profile cache and the rendered profile cache (see TransactionJsonService) are each
+    // limited to this size, the default is much smaller in the embedded ui since there the caches
+    // live in the heap of the monitored jvm (0 disables the caches)
+    private static final @Nullable Integer PROFILE_CACHE_MAX_MEGABYTES =
+            Integer.getInteger("glowroot.ui.profileCache.maxMegabytes");
+
     private final AggregateRepository aggregateRepository;
     private final LiveAggregateRepository liveAggregateRepository;
     private final ConfigRepository configRepository;
     private final Clock clock;
 
+    // unfiltered merged profiles of closed time ranges, so that re-visiting a range, or
+    // re-rendering it with different filter/truncation parameters, does not need to re-read and
+    // re-merge every profile in the range
+    //
+    // the profiles are held in serialized form, so that the weight is their actual size (the
+    // parsed form takes several times its serialized size)
+    private final Cache<MergedProfileKey, MergedProfile> mergedProfileCache;
+
     TransactionCommonService(AggregateRepository aggregateRepository,
             LiveAggregateRepository liveAggregateRepository, ConfigRepository configRepository,
-            Clock clock) {
+            Clock clock, boolean central) {
         this.aggregateRepository = aggregateRepository;
         this.liveAggregateRepository = liveAggregateRepository;
         this.configRepository = configRepository;
         this.clock = clock;
+        mergedProfileCache = CacheBuilder.newBuilder()
+                .maximumWeight(getProfileCacheMaxBytes(central))
+                .weigher(new Weigher<MergedProfileKey, MergedProfile>() {
+                    @Override
+                    public int weigh(MergedProfileKey key, MergedProfile value) {
+                        return value.serializedProfile().size();
+                    }
+                })
+                .expireAfterAccess(1, HOURS)
+                .build();
+    }
+
+    static long getProfileCacheMaxBytes(boolean central) {
+        int maxMegabytes;
+        if (PROFILE_CACHE_MAX_MEGABYTES == null) {
+            maxMegabytes = central ? 50 : 2;
+        } else {
+            maxMegabytes = Math.max(PROFILE_CACHE_MAX_MEGABYTES, 0);
+        }
+        return maxMegabytes * 1024L * 1024;
     }
 
     // query.from() is non-inclusive
@@ -360,7 +402,23 @@ class TransactionCommonService {
     ProfileCollector getMergedProfile(String agentRollupId, AggregateQuery query, boolean auxiliary,
             List<String> includes, List<String> excludes, double truncateBranchPercentage)
             throws Exception {
-        ProfileCollector profileCollector = getMergedProfile(agentRollupId, query, auxiliary);
+        ProfileCollector profileCollector;
+        if (isClosed(query)) {
+            MergedProfileKey key = ImmutableMergedProfileKey.of(agentRollupId, query, auxiliary);
+            MergedProfile mergedProfile = mergedProfileCache.getIfPresent(key);
+            if (mergedProfile == null) {
+                profileCollector = getMergedProfile(agentRollupId, query, auxiliary);
+                mergedProfileCache.put(key, ImmutableMergedProfile.of(
+                        profileCollector.getProfile().toProto().toByteString(),
+                        profileCollector.getLastCaptureTime()));
+            } else {
+                profileCollector = new ProfileCollector();
+                profileCollector.mergeProfile(Profile.parseFrom(mergedProfile.serializedProfile()));
+                profileCollector.updateLastCaptureTime(mergedProfile.lastCaptureTime());
+            }
+        } else {
+            profileCollector = getMergedProfile(agentRollupId, query, auxiliary);
+        }
         MutableProfile profile = profileCollector.getProfile();
         if (!includes.isEmpty() || !excludes.isEmpty()) {
             profile.filter(includes, excludes);
@@ -369,6 +427,14 @@ class TransactionCommonService {
         return profileCollector;
     }
 
+    // closed time ranges will not receive any more data (allowing an hour for late arriving data
+    // from agents), so results for these ranges can be cached
+    boolean isClosed(AggregateQuery query) {
+        long rollupIntervalMillis =
+                configRepository.getRollupConfigs().get(query.rollupLevel()).intervalMillis();
+        return query.to() < clock.currentTimeMillis() - rollupIntervalMillis - HOURS.toMillis(1);
+    }
+
     @Nullable
     String readFullQueryText(String agentRollupId, String fullQueryTextSha1) throws Exception {
         // checking live data is not efficient since must perform many sha1 hashes
@@ -600,4 +666,19 @@ class TransactionCommonService {
             return CaptureTimes.getRollup(captureTime, fixedIntervalMillis);
         }
     }
+
+    @Value.Immutable
+    @Styles.AllParameters
+    interface MergedProfileKey {
+        String agentRollupId();
+        AggregateQuery query();
+        boolean auxiliary();
+    }
+
+    @Value.Immutable
+    @Styles.AllParameters
+    interface MergedProfile {
+        ByteString serializedProfile();
+        long lastCaptureTime();
+    }
 }
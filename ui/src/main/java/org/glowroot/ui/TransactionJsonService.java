@@ -24,6 +24,9 @@ import java.util.Map;
 import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Function;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
@@ -57,6 +60,7 @@ import org.glowroot.common.model.TransactionNameSummaryCollector.TransactionName
 import org.glowroot.common.util.CaptureTimes;
 import org.glowroot.common.util.Clock;
 import org.glowroot.common.util.ObjectMappers;
+import org.glowroot.common.util.Styles;
 import org.glowroot.common2.repo.AggregateRepository;
 import org.glowroot.common2.repo.ConfigRepository;
 import org.glowroot.common2.repo.ConfigRepository.RollupConfig;
@@ -69,6 +73,7 @@ import org.glowroot.wire.api.model.AggregateOuterClass.Aggregate;
 import org.glowroot.wire.api.model.ProfileOuterClass.Profile;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.HOURS;
 
 @JsonService
 class TransactionJsonService {
@@ -84,15 +89,31 @@ class TransactionJsonService {
     private final RollupLevelService rollupLevelService;
     private final Clock clock;
 
+    // rendered profile tree and flame graph responses for closed time ranges, keyed by the
+    // request which includes the filter and truncation parameters
+    private final Cache<RenderedProfileKey, String> renderedProfileCache;
+
     TransactionJsonService(TransactionCommonService transactionCommonService,
             TraceCommonService traceCommonService, AggregateRepository aggregateRepository,
-            ConfigRepository configRepository, RollupLevelService rollupLevelService, Clock clock) {
+            ConfigRepository configRepository, RollupLevelService rollupLevelService, Clock clock,
+            boolean central) {
         this.transactionCommonService = transactionCommonService;
         this.traceCommonService = traceCommonService;
         this.aggregateRepository = aggregateRepository;
         this.configRepository = configRepository;
         this.rollupLevelService = rollupLevelService;
         this.clock = clock;
+        renderedProfileCache = CacheBuilder.newBuilder()
+                .maximumWeight(TransactionCommonService.getProfileCacheMaxBytes(central))
+                .weigher(new Weigher<RenderedProfileKey, String>() {
+                    @Override
+                    public int weigh(RenderedProfileKey key, String value) {
+                        // 2 bytes per char (without compact strings)
+                        return 2 * value.length();
+                    }
+                })
+                .expireAfterAccess(1, HOURS)
+                .build();
     }
 
     @GET(path = "/backend/transaction/average", permission = "agent:transaction:overview")
@@ -349,6 +370,20 @@ class TransactionJsonService {
     String getProfile(@BindAgentRollupId String agentRollupId,
             @BindRequest TransactionProfileRequest request) throws Exception {
         AggregateQuery query = toQuery(request, DataKind.PROFILE);
+        if (!transactionCommonService.isClosed(query)) {
+            return readProfile(agentRollupId, request, query);
+        }
+        RenderedProfileKey key = ImmutableRenderedProfileKey.of(agentRollupId, request);
+        String profile = renderedProfileCache.getIfPresent(key);
+        if (profile == null) {
+            profile = readProfile(agentRollupId, request, query);
+            renderedProfileCache.put(key, profile);
+        }
+        return profile;
+    }
+
+    private String readProfile(String agentRollupId, TransactionProfileRequest request,
+            AggregateQuery query) throws Exception {
         ProfileCollector profileCollector =
                 transactionCommonService.getMergedProfile(agentRollupId, query, request.auxiliary(),
                         request.include(), request.exclude(), request.truncateBranchPercentage());
@@ -469,6 +504,20 @@ class TransactionJsonService {
     String getFlameGraph(@BindAgentRollupId String agentRollupId,
             @BindRequest FlameGraphRequest request) throws Exception {
         AggregateQuery query = toQuery(request, DataKind.PROFILE);
+        if (!transactionCommonService.isClosed(query)) {
+            return readFlameGraph(agentRollupId, request, query);
+        }
+        RenderedProfileKey key = ImmutableRenderedProfileKey.of(agentRollupId, request);
+        String flameGraph = renderedProfileCache.getIfPresent(key);
+        if (flameGraph == null) {
+            flameGraph = readFlameGraph(agentRollupId, request, query);
+            renderedProfileCache.put(key, flameGraph);
+        }
+        return flameGraph;
+    }
+
+    private String readFlameGraph(String agentRollupId, FlameGraphRequest request,
+            AggregateQuery query) throws Exception {
         ProfileCollector profileCollector =
                 transactionCommonService.getMergedProfile(agentRollupId, query, request.auxiliary(),
                         request.include(), request.exclude(), request.truncateBranchPercentage());
@@ -935,6 +984,13 @@ class TransactionJsonService {
         double truncateBranchPercentage();
     }
 
+    @Value.Immutable
+    @Styles.AllParameters
+    interface RenderedProfileKey {
+        String agentRollupId();
+        RequestBase request(); // TransactionProfileRequest or FlameGraphRequest
+    }
+
     @Value.Immutable
     abstract static class TraceFlameGraphRequest {
         abstract String traceId();
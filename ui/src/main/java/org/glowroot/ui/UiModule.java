@@ -38,6 +38,7 @@ import org.slf4j.LoggerFactory;
 
 import org.glowroot.common.live.LiveAggregateRepository;
 import org.glowroot.common.live.LiveJvmService;
+import org.glowroot.common.live.LiveMetricsRepository;
 import org.glowroot.common.live.LiveTraceRepository;
 import org.glowroot.common.live.LiveWeavingService;
 import org.glowroot.common.util.Clock;
@@ -106,6 +107,7 @@ public class UiModule {
             RollupLevelService rollupLevelService,
             LiveTraceRepository liveTraceRepository,
             LiveAggregateRepository liveAggregateRepository,
+            LiveMetricsRepository liveMetricsRepository,
             @Nullable LiveWeavingService liveWeavingService,
             SessionMapFactory sessionMapFactory,
             HttpClient httpClient,
@@ -113,7 +115,7 @@ public class UiModule {
             String version) throws Exception {
 
         TransactionCommonService transactionCommonService = new TransactionCommonService(
-                aggregateRepository, liveAggregateRepository, configRepository, clock);
+                aggregateRepository, liveAggregateRepository, configRepository, clock, central);
         TraceCommonService traceCommonService = new TraceCommonService(traceRepository,
                 liveTraceRepository, agentDisplayRepository);
         ErrorCommonService errorCommonService =
@@ -134,8 +136,12 @@ public class UiModule {
             ThreadFactory threadFactory = new ThreadFactoryBuilder()
                     .setNameFormat("Glowroot-UI-Report-Worker")
                     .build();
-            reportingExecutor = new ThreadPoolExecutor(0, 10, 60, SECONDS,
+            // core pool size must be the max pool size since the queue is unbounded (otherwise
+            // the pool never grows past a single thread and multi-agent reports run serially)
+            ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(10, 10, 60, SECONDS,
                     new LinkedBlockingQueue<Runnable>(), threadFactory);
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+            reportingExecutor = threadPoolExecutor;
         } else {
             reportingExecutor = MoreExecutors.newDirectExecutorService();
         }
@@ -143,7 +149,7 @@ public class UiModule {
         List<Object> jsonServices = Lists.newArrayList();
         jsonServices.add(new LayoutJsonService(activeAgentRepository, layoutService));
         jsonServices.add(new TransactionJsonService(transactionCommonService, traceCommonService,
-                aggregateRepository, configRepository, rollupLevelService, clock));
+                aggregateRepository, configRepository, rollupLevelService, clock, central));
         jsonServices.add(new TracePointJsonService(traceRepository, liveTraceRepository,
                 configRepository, ticker, clock));
         jsonServices.add(new TraceJsonService(traceCommonService));
@@ -157,7 +163,7 @@ public class UiModule {
                 agentDisplayRepository, configRepository, syntheticResultRepository, clock));
         jsonServices.add(new ReportJsonService(agentDisplayRepository, configRepository,
                 activeAgentRepository, transactionTypeRepository, aggregateRepository,
-                gaugeValueRepository, liveAggregateRepository, rollupLevelService,
+                gaugeValueRepository, liveAggregateRepository, rollupLevelService, clock,
                 reportingExecutor));
         jsonServices.add(new ConfigJsonService(transactionTypeRepository, gaugeValueRepository,
                 liveAggregateRepository, configRepository));
@@ -210,8 +216,12 @@ public class UiModule {
                 traceDetailHttpService);
         httpServices.put(Pattern.compile("^/backend/trace/aux-thread-profile$"),
                 traceDetailHttpService);
+        httpServices.put(Pattern.compile("^/backend/trace/allocation-profile$"),
+                traceDetailHttpService);
         httpServices.put(Pattern.compile("^/log$"), glowrootLogHttpService);
         httpServices.put(Pattern.compile("^/health$"), healthCheckHttpService);
+        httpServices.put(Pattern.compile("^/metrics$"),
+                new PrometheusHttpService(central, liveMetricsRepository));
 
         if (central) {
             httpServices.put(Pattern.compile("^/synthetic-monitors$"), indexHtmlHttpService);
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.ui;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import org.glowroot.common.live.LiveMetricsRepository;
+import org.glowroot.common.model.TransactionTypeMetrics;
+import org.glowroot.ui.HttpSessionManager.Authentication;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class PrometheusHttpServiceTest {
+
+    private TransactionTypeMetrics webMetrics;
+    private Authentication authentication;
+
+    @BeforeEach
+    public void beforeEach() throws Exception {
+        webMetrics = new TransactionTypeMetrics();
+        authentication = mock(Authentication.class);
+        when(authentication.isPermittedForAgentRollup(anyString(), anyString())).thenReturn(true);
+    }
+
+    @Test
+    public void shouldEncodeEmbedded() throws Exception {
+        // given
+        webMetrics.add(MILLISECONDS.toNanos(3), false);
+        webMetrics.add(MILLISECONDS.toNanos(20), true);
+        webMetrics.add(MILLISECONDS.toNanos(20000), false);
+        PrometheusHttpService service =
+                new PrometheusHttpService(false, new TestLiveMetricsRepository(""));
+
+        // when
+        String text = service.getMetricsText(authentication);
+
+        // then
+        assertThat(text).contains("# TYPE glowroot_transaction_duration_seconds histogram\n"
+                + "glowroot_transaction_duration_seconds_bucket{transaction_type=\"Web\","
+                + "le=\"0.005\"} 1\n"
+                + "glowroot_transaction_duration_seconds_bucket{transaction_type=\"Web\","
+                + "le=\"0.01\"} 1\n"
+                + "glowroot_transaction_duration_seconds_bucket{transaction_type=\"Web\","
+                + "le=\"0.025\"} 2\n");
+        assertThat(text).contains("glowroot_transaction_duration_seconds_bucket"
+                + "{transaction_type=\"Web\",le=\"10.0\"} 2\n"
+                + "glowroot_transaction_duration_seconds_bucket{transaction_type=\"Web\","
+                + "le=\"+Inf\"} 3\n"
+                + "glowroot_transaction_duration_seconds_sum{transaction_type=\"Web\"} 20.023\n"
+                + "glowroot_transaction_duration_seconds_count{transaction_type=\"Web\"} 3\n");
+        assertThat(text).contains("# TYPE glowroot_transaction_errors_total counter\n"
+                + "glowroot_transaction_errors_total{transaction_type=\"Web\"} 1\n");
+        assertThat(text).contains("# TYPE glowroot_gauge gauge\n"
+                + "glowroot_gauge{gauge=\"java.lang:type=Memory:\\\"x\\\"\"} 1.5\n"
+                + "glowroot_gauge{gauge=\"nan\"} NaN\n");
+    }
+
+    @Test
+    public void shouldOnlyIncludePermittedAgents() throws Exception {
+        // given
+        webMetrics.add(MILLISECONDS.toNanos(3), false);
+        when(authentication.isPermittedForAgentRollup(eq("agent-1"), anyString()))
+                .thenReturn(false);
+        LiveMetricsRepository liveMetricsRepository = new LiveMetricsRepository() {
+            @Override
+            public void accept(MetricsVisitor visitor) throws Exception {
+                new TestLiveMetricsRepository("agent-1").accept(visitor);
+                new TestLiveMetricsRepository("agent-2").accept(visitor);
+            }
+        };
+        PrometheusHttpService service = new PrometheusHttpService(true, liveMetricsRepository);
+
+        // when
+        String text = service.getMetricsText(authentication);
+
+        // then
+        assertThat(text).doesNotContain("agent-1");
+        assertThat(text).contains("glowroot_transaction_errors_total"
+                + "{agent_id=\"agent-2\",transaction_type=\"Web\"} 0\n");
+        assertThat(text).contains("glowroot_gauge"
+                + "{agent_id=\"agent-2\",gauge=\"java.lang:type=Memory:\\\"x\\\"\"} 1.5\n");
+    }
+
+    private class TestLiveMetricsRepository implements LiveMetricsRepository {
+
+        private final String agentId;
+
+        private TestLiveMetricsRepository(String agentId) {
+            this.agentId = agentId;
+        }
+
+        @Override
+        public void accept(MetricsVisitor visitor) throws Exception {
+            visitor.visitTransactionType(agentId, "Web", webMetrics);
+            visitor.visitGauge(agentId, "java.lang:type=Memory:\"x\"", 1.5);
+            visitor.visitGauge(agentId, "nan", Double.NaN);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.ui;
+
+import java.util.List;
+
+import com.google.common.base.Function;
+import com.google.common.collect.Lists;
+import org.junit.jupiter.api.Test;
+
+import org.glowroot.ui.ReportCellCache.CellReader;
+import org.glowroot.ui.ReportCellCache.ReportCellQuery;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReportCellCacheTest {
+
+    private static final ReportCellQuery QUERY = ImmutableReportCellQuery.builder()
+            .agentRollupId("abc")
+            .dataKind("overview")
+            .name("Web")
+            .subName("")
+            .rollupLevel(2)
+            .build();
+
+    @Test
+    public void shouldOnlyReadPeriodsThatAreNotCached() throws Exception {
+        // given
+        ReportCellCache reportCellCache = new ReportCellCache();
+        TestCellReader cellReader = new TestCellReader(20);
+        reportCellCache.read(QUERY, 0, 50, 30, new CeilFn(), cellReader);
+        cellReader.reads.clear();
+
+        // when
+        List<Long> values = reportCellCache.read(QUERY, 0, 60, 40, new CeilFn(), cellReader);
+
+        // then
+        assertThat(values).containsExactly(10L, 30L, 40L, 50L, 60L);
+        assertThat(cellReader.reads).containsExactly("31-60");
+    }
+
+    @Test
+    public void shouldReadConsecutiveMissesTogether() throws Exception {
+        // given
+        ReportCellCache reportCellCache = new ReportCellCache();
+        TestCellReader cellReader = new TestCellReader(-1);
+        reportCellCache.read(QUERY, 20, 40, 100, new CeilFn(), cellReader);
+        cellReader.reads.clear();
+
+        // when
+        List<Long> values = reportCellCache.read(QUERY, 0, 60, 100, new CeilFn(), cellReader);
+
+        // then
+        assertThat(values).containsExactly(10L, 20L, 30L, 40L, 50L, 60L);
+        assertThat(cellReader.reads).containsExactly("1-20", "41-60");
+    }
+
+    @Test
+    public void shouldNotCachePeriodsThatAreNotClosed() throws Exception {
+        // given
+        ReportCellCache reportCellCache = new ReportCellCache();
+        TestCellReader cellReader = new TestCellReader(-1);
+        reportCellCache.read(QUERY, 0, 30, 15, new CeilFn(), cellReader);
+        cellReader.reads.clear();
+
+        // when
+        reportCellCache.read(QUERY, 0, 30, 15, new CeilFn(), cellReader);
+
+        // then
+        assertThat(cellReader.reads).containsExactly("11-30");
+    }
+
+    // rolls up to periods of 10
+    private static class CeilFn implements Function<Long, Long> {
+        @Override
+        public Long apply(Long captureTime) {
+            return (long) Math.ceil(captureTime / 10.0) * 10;
+        }
+    }
+
+    private static class TestCellReader implements CellReader<Long> {
+
+        private final long emptyCaptureTime;
+        private final List<String> reads = Lists.newArrayList();
+
+        private TestCellReader(long emptyCaptureTime) {
+            this.emptyCaptureTime = emptyCaptureTime;
+        }
+
+        @Override
+        public List<Long> read(long from, long to) {
+            reads.add(from + "-" + to);
+            List<Long> values = Lists.newArrayList();
+            for (long captureTime = from + 9; captureTime <= to; captureTime += 10) {
+                if (captureTime != emptyCaptureTime) {
+                    values.add(captureTime);
+                }
+            }
+            return values;
+        }
+
+        @Override
+        public long getCaptureTime(Long value) {
+            return value;
+        }
+    }
+}
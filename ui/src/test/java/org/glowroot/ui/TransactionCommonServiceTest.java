@@ -0,0 +1,125 @@
+/*
+ * Copyright 2026 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.glowroot.ui;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import org.glowroot.common.live.ImmutableAggregateQuery;
+import org.glowroot.common.live.LiveAggregateRepository.AggregateQuery;
+import org.glowroot.common.live.LiveAggregateRepository.LiveAggregateRepositoryNop;
+import org.glowroot.common.model.MutableProfile;
+import org.glowroot.common.model.ProfileCollector;
+import org.glowroot.common.util.Clock;
+import org.glowroot.common2.repo.AggregateRepository;
+import org.glowroot.common2.repo.ConfigRepository;
+import org.glowroot.common2.repo.ConfigRepository.RollupConfig;
+
+import static java.util.concurrent.TimeUnit.DAYS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TransactionCommonServiceTest {
+
+    private AggregateRepository aggregateRepository;
+    private TransactionCommonService transactionCommonService;
+
+    @BeforeEach
+    public void beforeEach() throws Exception {
+        aggregateRepository = mock(AggregateRepository.class);
+        doAnswer(new MergeProfileAnswer()).when(aggregateRepository)
+                .mergeMainThreadProfilesInto(anyString(), any(AggregateQuery.class),
+                        any(ProfileCollector.class));
+        ConfigRepository configRepository = mock(ConfigRepository.class);
+        when(configRepository.getRollupConfigs())
+                .thenReturn(RollupConfig.buildRollupConfigs());
+        Clock clock = mock(Clock.class);
+        when(clock.currentTimeMillis()).thenReturn(DAYS.toMillis(10));
+        transactionCommonService = new TransactionCommonService(aggregateRepository,
+                new LiveAggregateRepositoryNop(), configRepository, clock, true);
+    }
+
+    @Test
+    public void shouldReuseMergedProfileOfClosedRange() throws Exception {
+        // given
+        AggregateQuery query = query(DAYS.toMillis(1), DAYS.toMillis(2));
+        transactionCommonService.getMergedProfile("", query, false,
+                ImmutableList.of("Excluded"), ImmutableList.<String>of(), 0);
+
+        // when
+        MutableProfile profile = transactionCommonService.getMergedProfile("", query, false,
+                ImmutableList.<String>of(), ImmutableList.<String>of(), 0).getProfile();
+
+        // then
+        verify(aggregateRepository, times(1)).mergeMainThreadProfilesInto(anyString(),
+                any(AggregateQuery.class), any(ProfileCollector.class));
+        assertThat(profile.getSampleCount()).isEqualTo(1);
+        assertThat(profile.getUnfilteredSampleCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void shouldNotReuseMergedProfileOfOpenRange() throws Exception {
+        // given
+        AggregateQuery query = query(DAYS.toMillis(9), DAYS.toMillis(10));
+        transactionCommonService.getMergedProfile("", query, false, ImmutableList.<String>of(),
+                ImmutableList.<String>of(), 0);
+
+        // when
+        transactionCommonService.getMergedProfile("", query, false, ImmutableList.<String>of(),
+                ImmutableList.<String>of(), 0);
+
+        // then
+        verify(aggregateRepository, times(2)).mergeMainThreadProfilesInto(anyString(),
+                any(AggregateQuery.class), any(ProfileCollector.class));
+    }
+
+    @Test
+    public void shouldUseSmallerProfileCacheInEmbeddedUi() {
+        assertThat(TransactionCommonService.getProfileCacheMaxBytes(false))
+                .isLessThan(TransactionCommonService.getProfileCacheMaxBytes(true));
+    }
+
+    private static AggregateQuery query(long from, long to) {
+        return ImmutableAggregateQuery.builder()
+                .transactionType("Web")
+                .from(from)
+                .to(to)
+                .rollupLevel(0)
+                .build();
+    }
+
+    private static class MergeProfileAnswer implements Answer<Void> {
+        @Override
+        public Void answer(InvocationOnMock invocation) {
+            ProfileCollector collector = invocation.getArgument(2);
+            MutableProfile profile = new MutableProfile();
+            profile.merge(ImmutableList.of(new StackTraceElement("Included", "run", "", 1)),
+                    Thread.State.RUNNABLE);
+            collector.mergeProfile(profile.toProto());
+            collector.updateLastCaptureTime(DAYS.toMillis(2));
+            return null;
+        }
+    }
+}